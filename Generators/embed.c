@@ -711,6 +711,13 @@ readgraph_vega(FILE *fp, GRAPH *G_out, POSITIONING *P_out)
     /* --- processing of this input line is done --- */
   }
 
+  /* --- an input without vertices is no graph --- */
+
+  if (nv == 0) {
+    status = BAD_INPUT;
+    goto fail;
+  }
+
   /* --- Check if every edge has an inverse --- */
 
   for (vert = 1; vert <= nv; vert++) {
@@ -2878,6 +2885,11 @@ usage(void)
     "              p     planar",
     "              s     spherical",
     "              t     tubular",
+    "  -l          embed many graphs: every graph comes as a record of",
+    "              a 4 byte length (most significant byte first) and",
+    "              that many bytes of input, and every result goes out",
+    "              as such a record; an empty result record means the",
+    "              graph couldn't be embedded",
     "  -f x,y,z    multiply default number of iteration steps",
     "              in phases 1,2,3 by factors x,y,z, respectively",
     "  -o order    for dimension 2 only: use the order for the",
@@ -2949,10 +2961,46 @@ print_error(char *where, int code) {
   fprintf(stderr, "\n");
 }
 
+/* --- the settings given on the command line ------------------------- */
+
+typedef struct Settings {
+  int     augment;
+  int     dimension;
+  int     end;
+  double  factor1;
+  double  factor2;
+  double  factor3;
+  int     helix_mode;
+  int     helix_winding;
+  char    init_mode;
+  int     output_augmented;
+  char    output_format;
+  int     output_subdivision;
+  int     override_factors;
+  PLACER *placer;
+  int     renumber;
+  int     start;
+  int     subdivide;
+  int     verbose;
+  int     outer_face_selection[3];
+  double  c_x, c_y;
+  int     contained_option;
+} SETTINGS;
+
+int
+embed_graph(FILE *in, FILE *out, SETTINGS s);
+
+int
+serve_graphs(SETTINGS *s);
+
+/* Both macros jump to the label fail of the calling function, which frees
+** whatever was allocated so far and returns 1.
+*/
+
 #define CHECK(expr) \
   if (!(expr)) { \
     print_error(#expr, status); \
-    return 1; \
+    goto fail; \
   }
 
 #define ITERATE(G, P, vfl, efl, plc, vls, tpf, fac, stp) { \
@@ -2960,9 +3008,9 @@ print_error(char *where, int code) {
 			(int)((fac)*(double)(stp)+0.5), 1, 1.0e-4); \
   if (n < 0) { \
     fprintf(stderr, "Error %d in iterate_positions\n", status); \
-    return 1; \
+    goto fail; \
   } \
-  else if (verbose)  { \
+  else if (s.verbose)  { \
     fprintf(stderr, "used %d iterations\n", n); \
     fprintf(stderr, "average edge length = %f\n", \
 	    average_edge_length(G, P)); \
@@ -2972,58 +3020,52 @@ print_error(char *where, int code) {
 int
 main(int argc, char *argv[])
 {
-  GRAPH *G_in, *G_aug, *G_sub, *G_out;
-  EDGE *f_in, *f_aug, *f_sub;
-  POSITIONING *P;
-  int *forbidden;
-  int *v_list;
-  int *v_list_sub_0_1;
-  int *v_list_sub_1_0;
-  int *v_list_aug_1_1;
-  int *v_list_in_1_1;
-  int c, max_gap, n, steps, i;
-
-  int     augment            = 1;
-  int     dimension          = 2;
-  int     end                = 0;
-  double  factor1            = 1.0;
-  double  factor2            = 1.0;
-  double  factor3            = 1.0;
-  int     helix_mode         = 0;
-  int     helix_winding      = 1;
-  char    init_mode          = 0;
-  int     output_augmented   = 0;
-  char    output_format      = 'v';
-  int     output_subdivision = 0;
-  int     override_factors   = 0;
-  PLACER *placer             = NULL;
-  int     renumber           = 0;
-  int     start              = 0;
-  int     subdivide          = 1;
-  int     verbose            = 0;
-  
-  int     outer_face_selection[3] = {0, 0, 0};
-
-  double  c_x, c_y;
-  int     contained_option   = 0;
+  SETTINGS s;
+  int c, i;
+  int serve = 0;
+
+  s.augment            = 1;
+  s.dimension          = 2;
+  s.end                = 0;
+  s.factor1            = 1.0;
+  s.factor2            = 1.0;
+  s.factor3            = 1.0;
+  s.helix_mode         = 0;
+  s.helix_winding      = 1;
+  s.init_mode          = 0;
+  s.output_augmented   = 0;
+  s.output_format      = 'v';
+  s.output_subdivision = 0;
+  s.override_factors   = 0;
+  s.placer             = NULL;
+  s.renumber           = 0;
+  s.start              = 0;
+  s.subdivide          = 1;
+  s.verbose            = 0;
+
+  s.outer_face_selection[0] = 0;
+  s.outer_face_selection[1] = 0;
+  s.outer_face_selection[2] = 0;
+
+  s.contained_option   = 0;
 
   /* --- Parse the command line --- */
 
-  while ((c = getopt(argc, argv, "ASa:b:c:d:f:hi:o:p:rs:tvw:x:z")) != EOF) {
+  while ((c = getopt(argc, argv, "ASa:b:c:d:f:hi:lo:p:rs:tvw:x:z")) != EOF) {
     switch (c) {
     case 'A':
-      output_augmented = 1;
+      s.output_augmented = 1;
       break;
     case 'S':
-      output_subdivision = 1;
+      s.output_subdivision = 1;
       break;
     case 'a':
       switch(optarg[0]) {
       case '+':
-	augment = 1;
+	s.augment = 1;
 	break;
       case '-':
-	augment = 0;
+	s.augment = 0;
 	break;
       default:
 	usage();
@@ -3031,41 +3073,41 @@ main(int argc, char *argv[])
       }
       break;
     case 'b':
-      if (sscanf(optarg, "%d,%d", &start, &end) == 2) {
-        contained_option = 0;
+      if (sscanf(optarg, "%d,%d", &s.start, &s.end) == 2) {
+        s.contained_option = 0;
       }
       break;
     case 'c':
-      if (sscanf (optarg, "%lf,%lf", &c_x, &c_y) == 2) {
-        contained_option = 1;
+      if (sscanf (optarg, "%lf,%lf", &s.c_x, &s.c_y) == 2) {
+        s.contained_option = 1;
       }
       break;
     case 'd':
-      dimension = atoi(optarg);
-      if (dimension != 2 && dimension != 3) {
+      s.dimension = atoi(optarg);
+      if (s.dimension != 2 && s.dimension != 3) {
 	usage();
 	return 1;
       }
       break;
     case 'f':
-      sscanf(optarg, "%lf,%lf,%lf", &factor1, &factor2, &factor3);
-      override_factors = 1;
+      sscanf(optarg, "%lf,%lf,%lf", &s.factor1, &s.factor2, &s.factor3);
+      s.override_factors = 1;
       break;
     case 'h':
       usage();
       return 0;
     case 'i':
-      init_mode = optarg[0];
-      switch (init_mode) {
+      s.init_mode = optarg[0];
+      switch (s.init_mode) {
       case 'k': /* keep original */
       case 'p':	/* planar */
       case 's':	/* spherical */
         break;
       case 't':	/* tubular */
-        if(!outer_face_selection[0]){
-            outer_face_selection[0] = 3;
-            outer_face_selection[1] = 1;
-            outer_face_selection[2] = 2;
+        if(!s.outer_face_selection[0]){
+            s.outer_face_selection[0] = 3;
+            s.outer_face_selection[1] = 1;
+            s.outer_face_selection[2] = 2;
         }
 	break;
       default:
@@ -3073,26 +3115,29 @@ main(int argc, char *argv[])
 	return 1;
       }
       break;
+    case 'l':
+      serve = 1;
+      break;
     case 'o':
         for(i = 0; i < 3; i++){
             switch (optarg[i]) {
                 case 's':
-                    outer_face_selection[i] = -1;
+                    s.outer_face_selection[i] = -1;
                     break;
                 case 'S':
-                    outer_face_selection[i] = 1;
+                    s.outer_face_selection[i] = 1;
                     break;
                 case 'y':
-                    outer_face_selection[i] = -2;
+                    s.outer_face_selection[i] = -2;
                     break;
                 case 'Y':
-                    outer_face_selection[i] = 2;
+                    s.outer_face_selection[i] = 2;
                     break;
                 case 'd':
-                    outer_face_selection[i] = -3;
+                    s.outer_face_selection[i] = -3;
                     break;
                 case 'D':
-                    outer_face_selection[i] = 3;
+                    s.outer_face_selection[i] = 3;
                     break;
                 default:
                     usage();
@@ -3103,13 +3148,13 @@ main(int argc, char *argv[])
     case 'p':
       switch (optarg[0]) {
       case 'a':
-	placer = equal_area;
+	s.placer = equal_area;
 	break;
       case 't':
-	placer = tutte;
+	s.placer = tutte;
 	break;
       case 'l':
-	placer = equal_lengths;
+	s.placer = equal_lengths;
 	break;
       default:
 	usage();
@@ -3117,15 +3162,15 @@ main(int argc, char *argv[])
       }
       break;
     case 'r':
-      renumber = 1;
+      s.renumber = 1;
       break;
     case 's':
       switch(optarg[0]) {
       case '+':
-	subdivide = 1;
+	s.subdivide = 1;
 	break;
       case '-':
-	subdivide = 0;
+	s.subdivide = 0;
 	break;
       default:
 	usage();
@@ -3133,11 +3178,11 @@ main(int argc, char *argv[])
       }
       break;
     case 'v':
-      verbose = 1;
+      s.verbose = 1;
       break;
     case 'w':
-      output_format = optarg[0];
-      switch(output_format) {
+      s.output_format = optarg[0];
+      switch(s.output_format) {
       case 'b': /* Brookhaven PDB */
       case 'n': /* no output */
       case 'p':	/* planar code */
@@ -3149,8 +3194,8 @@ main(int argc, char *argv[])
       }
       break;
     case 'x':
-      helix_mode = 1;
-      helix_winding = atoi(optarg);
+      s.helix_mode = 1;
+      s.helix_winding = atoi(optarg);
       break;
     case 'z':
       fprintf(stdout,"%d\n",getpid());  fflush(stdout);
@@ -3161,50 +3206,139 @@ main(int argc, char *argv[])
     }
   }
   
-  if(!outer_face_selection[0]){
-      outer_face_selection[0] = 1;
-      outer_face_selection[1] = 2;
-      outer_face_selection[2] = -3;
+  if(!s.outer_face_selection[0]){
+      s.outer_face_selection[0] = 1;
+      s.outer_face_selection[1] = 2;
+      s.outer_face_selection[2] = -3;
+  }
+
+  if (serve)
+    return serve_graphs(&s);
+  else
+    return embed_graph(stdin, stdout, s);
+}
+
+/*
+** Embeds the graphs that come in as records on the standard input and
+** writes the results as records to the standard output, see option -l.
+** A record is a length of 4 bytes, most significant byte first, and then
+** that many bytes. A graph that can't be embedded gets an empty record
+** (the error goes to the standard error output as usual) and the next
+** graph is read, so one bad graph doesn't end the process.
+*/
+
+int
+serve_graphs(SETTINGS *s)
+{
+  unsigned char head[4];
+  char *record = NULL, *result;
+  size_t capacity = 0, length, result_length;
+  FILE *in, *out;
+  int failed;
+
+  while (fread(head, 1, 4, stdin) == 4) {
+    length = (size_t)head[0] << 24 | (size_t)head[1] << 16
+      | (size_t)head[2] << 8 | (size_t)head[3];
+    if (length > capacity) {
+      capacity = 2 * length;
+      if (!(record = realloc(record, capacity))) {
+	fprintf(stderr, "No memory for a record of %lu bytes\n",
+		(unsigned long)length);
+	return 1;
+      }
+    }
+    if (fread(record, 1, length, stdin) != length) {
+      fprintf(stderr, "Record ends early\n");
+      return 1;
+    }
+
+    result = NULL;
+    result_length = 0;
+    if (!(out = open_memstream(&result, &result_length))) {
+      perror("open_memstream");
+      return 1;
+    }
+    in = length > 0 ? fmemopen(record, length, "r") : NULL;
+    failed = in == NULL || embed_graph(in, out, *s);
+    if (in)
+      fclose(in);
+    fclose(out);
+    if (failed)
+      result_length = 0;
+
+    head[0] = result_length >> 24;
+    head[1] = result_length >> 16;
+    head[2] = result_length >> 8;
+    head[3] = result_length;
+    if (fwrite(head, 1, 4, stdout) != 4
+	|| fwrite(result, 1, result_length, stdout) != result_length
+	|| fflush(stdout) != 0) {
+      free(result);
+      return 1;
+    }
+    free(result);
   }
 
+  free(record);
+  return 0;
+}
+
+/*
+** Embeds one graph with the settings s. The settings are a copy, so the
+** choices made for this graph don't carry over to the next one.
+*/
+
+int
+embed_graph(FILE *in, FILE *out, SETTINGS s)
+{
+  GRAPH *G_in = NULL, *G_aug = NULL, *G_sub = NULL, *G_out;
+  EDGE *f_in, *f_aug, *f_sub;
+  POSITIONING *P = NULL;
+  int *forbidden = NULL;
+  int *v_list;
+  int *v_list_sub_0_1 = NULL;
+  int *v_list_sub_1_0 = NULL;
+  int *v_list_aug_1_1 = NULL;
+  int *v_list_in_1_1 = NULL;
+  int max_gap, n, steps, result = 1;
+
   /* --- Read the input graph and positioning --- */
 
   CHECK(G_in = new_graph(0));
   CHECK(P = new_positioning(0,0));
-  CHECK(readgraph_vega(stdin, G_in, P));
+  CHECK(readgraph_vega(in, G_in, P));
 
   /* --- Determine an outer face for the embedding --- */
 
-  if (contained_option) {
-    if (! find_edge_from_contained_point(G_in, P, c_x, c_y, &start, &end)) {
-      CHECK(! write_result(G_in, P, stdout, output_format));
-      free_graph(G_in);
-      free_positioning(P);
-      return 0;
+  if (s.contained_option) {
+    if (! find_edge_from_contained_point(G_in, P, s.c_x, s.c_y, &s.start, &s.end)) {
+      CHECK(! write_result(G_in, P, out, s.output_format));
+      result = 0;
+      goto fail;
     }
   }
-  if (start && end) {
-    if (!(f_in = find_edge(G_in, start, end))) {
-      fprintf(stderr, "Start edge %d->%d does not exist\n", start, end);
-      return 1;
+  if (s.start && s.end) {
+    if (!(f_in = find_edge(G_in, s.start, s.end))) {
+      fprintf(stderr, "Start edge %d->%d does not exist\n", s.start, s.end);
+      goto fail;
     }
   }
   else {
-    CHECK(f_in = best_outer_face_configured(G_in, outer_face_selection));
+    CHECK(f_in = best_outer_face_configured(G_in, s.outer_face_selection));
   }
 
   /* --- Determine an init mode if none was requested --- */
 
-  if (!init_mode) {
-    if (dimension == 3 && outer_curvature(G_in, f_in) <= 0.0)
-      init_mode = 's';
+  if (!s.init_mode) {
+    if (s.dimension == 3 && outer_curvature(G_in, f_in) <= 0.0)
+      s.init_mode = 's';
     else
-      init_mode = 'p';
+      s.init_mode = 'p';
   }
 
   /* --- Renumber the graph if necessary --- */
 
-  if (renumber) {
+  if (s.renumber) {
     CHECK(bfs_renumber_graph(G_in, f_in, 1));
     f_in = find_edge(G_in, 1, 2);
   }
@@ -3213,19 +3347,19 @@ main(int argc, char *argv[])
 
   CHECK(G_aug = copy_of_graph(G_in));
   f_aug = find_edge(G_aug, f_in->start, f_in->end);
-  if (augment) {
+  if (s.augment) {
     CHECK(f_aug = normalize_graph(G_aug, f_aug, &max_gap));
   }
 
   /* --- Switch on helix mode if necessary --- */
 
-  if (dimension > 2 && max_gap >= 6)
-    helix_mode = 1;
+  if (s.dimension > 2 && max_gap >= 6)
+    s.helix_mode = 1;
 
   /* --- Make some adjustments for helix mode --- */
 
-  if (helix_mode) {
-    init_mode = 'p';
+  if (s.helix_mode) {
+    s.init_mode = 'p';
     CHECK(f_in = best_outer_face_tubular(G_in));
   }
 
@@ -3236,11 +3370,11 @@ main(int argc, char *argv[])
 
   /* --- Triangulate the graph if necessary --- */
 
-  if (subdivide) {
-    if (dimension == 3 && has_small_faces(G_aug))
+  if (s.subdivide) {
+    if (s.dimension == 3 && has_small_faces(G_aug))
       split_edges(G_sub, NULL);
 
-    if (init_mode == 'p') {
+    if (s.init_mode == 'p') {
       CHECK(forbidden = make_edge_flags(G_sub, 0));
       mark_face(f_sub, forbidden, 1);
     }
@@ -3249,26 +3383,27 @@ main(int argc, char *argv[])
 
     CHECK(triangulate(G_sub, forbidden));
     free(forbidden);
+    forbidden = NULL;
 
-    if (init_mode != 'p')
+    if (s.init_mode != 'p')
       f_sub = f_sub->next->inverse;
   }
 
   /* --- Phase 0: determine an initial positioning --- */
 
-  CHECK(resize_positioning(P, G_sub->size, dimension));
+  CHECK(resize_positioning(P, G_sub->size, s.dimension));
 
-  if (init_mode != 'k') {
+  if (s.init_mode != 'k') {
     int at_face, dim, tubular, winding;
 
     clear_positioning(P);
 
-    if (init_mode == 'p') {
+    if (s.init_mode == 'p') {
       at_face = 1;
       dim = 2;
       tubular = 0;
-      if (dimension == 3 && helix_mode)
-	winding = helix_winding;
+      if (s.dimension == 3 && s.helix_mode)
+	winding = s.helix_winding;
       else
 	winding = 1;
     }
@@ -3276,7 +3411,7 @@ main(int argc, char *argv[])
       at_face = 0;
       dim = 3;
       winding = 1;
-      tubular = (init_mode == 't');
+      tubular = (s.init_mode == 't');
     }
 
     CHECK(init_positions(G_sub, P, f_sub, at_face, dim, tubular, winding));
@@ -3298,10 +3433,10 @@ main(int argc, char *argv[])
 
   /* --- Adjust phase specific factors for numbers of steps --- */
 
-  if (init_mode == 't' && !override_factors)
-    factor1 = 0.0;
-  if (dimension == 2 && !override_factors)
-    factor3 = 0.0;
+  if (s.init_mode == 't' && !s.override_factors)
+    s.factor1 = 0.0;
+  if (s.dimension == 2 && !s.override_factors)
+    s.factor3 = 0.0;
 
   /* --- Make all vertex lists which might be needed --- */
 
@@ -3312,79 +3447,82 @@ main(int argc, char *argv[])
 
   /* --- Phase 1: Modified Tutte placement --- */
 
-  if (init_mode == 'p') {
+  if (s.init_mode == 'p') {
     ITERATE(G_sub, P, NULL, NULL, equal_lengths,
-	    v_list_sub_1_0, fast, factor1/4, steps);
+	    v_list_sub_1_0, fast, s.factor1/4, steps);
   }
   else {
     ITERATE(G_sub, P, NULL, NULL, equal_lengths_on_sphere,
-	    v_list_sub_0_1, fast, factor1/2, steps);
+	    v_list_sub_0_1, fast, s.factor1/2, steps);
   }
 
-  if (dimension == 3 && init_mode == 'p' && !helix_mode) {
+  if (s.dimension == 3 && s.init_mode == 'p' && !s.helix_mode) {
     CHECK(lift_vertices(G_sub, P, f_sub, 0.01));
   }
 
   /* --- Phase 2  --- */
 
-  if (helix_mode) {
+  if (s.helix_mode) {
     scale_positioning(P, 1.0 / average_edge_length(G_in, P));
     ITERATE(G_in, P, NULL, NULL, local_2d,
-	    v_list_in_1_1, slow, factor2, steps);
+	    v_list_in_1_1, slow, s.factor2, steps);
     CHECK(lift_vertices(G_in, P, f_in, 0.25));
   }
   else {
-    if (dimension == 3) {
-      placer = central_3d;
+    if (s.dimension == 3) {
+      s.placer = central_3d;
       v_list = v_list_sub_0_1;
       scale_positioning(P, 0.1 / average_edge_length(G_in, P));
     }
     else {
-      if (!placer) placer = equal_area;
+      if (!s.placer) s.placer = equal_area;
       v_list = v_list_sub_1_0;
     }
-    ITERATE(G_sub, P, NULL, NULL, placer, v_list, slow, factor2, steps);
+    ITERATE(G_sub, P, NULL, NULL, s.placer, v_list, slow, s.factor2, steps);
   }
 
   /* --- Phase 3 --- */
 
   scale_positioning(P, 1.0 / average_edge_length(G_in, P));
 
-  if (dimension == 3) {
-    if (init_mode == 'p')
+  if (s.dimension == 3) {
+    if (s.init_mode == 'p')
       v_list = v_list_in_1_1;
     else
       v_list = v_list_aug_1_1;
 
-    ITERATE(G_in, P, NULL, NULL, local_3d, v_list, slow, factor3, steps);
+    ITERATE(G_in, P, NULL, NULL, local_3d, v_list, slow, s.factor3, steps);
   }
   else
     ITERATE(G_in, P, NULL, NULL, local_2d,
-	    v_list_in_1_1, slow, factor3, steps);
+	    v_list_in_1_1, slow, s.factor3, steps);
 
   /* --- Determine which version of the graph to write --- */
 
-  if (output_subdivision)
+  if (s.output_subdivision)
     G_out = G_sub;
-  else if (output_augmented)
+  else if (s.output_augmented)
     G_out = G_aug;
   else
     G_out = G_in;
 
   /* --- Normalize the final positioning --- */
 
-  CHECK(resize_positioning(P, G_out->size, dimension));
+  CHECK(resize_positioning(P, G_out->size, s.dimension));
   CHECK(recenter_positioning(P));
   scale_positioning(P, 1.4 / average_edge_length(G_in, P));
-  if (init_mode == 't')
+  if (s.init_mode == 't')
     xz_swap_positioning(P);
 
   /* --- Write the results --- */
 
-  CHECK(! write_result(G_out, P, stdout, output_format));
+  CHECK(! write_result(G_out, P, out, s.output_format));
+  result = 0;
 
   /* --- Clean up --- */
 
+ fail:
+  free(forbidden);
   free(v_list_sub_0_1);
   free(v_list_sub_1_0);
   free(v_list_aug_1_1);
@@ -3395,7 +3533,7 @@ main(int argc, char *argv[])
   free_graph(G_sub);
   free_positioning(P);
 
-  return 0;
+  return result;
 }
 
 int
@@ -3413,6 +3551,9 @@ write_result(GRAPH *G, POSITIONING *P, FILE *f, char output_format)
     break;
   }
   return 0;
+
+ fail:
+  return 1;
 }
 
 
@@ -55,6 +55,7 @@ struct pipe_status
   dstring header;
   int format, graphno_fire_interval, advanced1;
   dstring current_graph_encoding, last_graph_encoding;
+  skip_buffer skip;
   jclass class;
   jfieldID status_field, graphno_field, flowing_field, running_field;
   jfieldID reader_field;
@@ -73,6 +74,7 @@ int read_next (pipe_status *pipestat)
   int format;
   format = get_format (pipestat->format);
   if (format > 0 && format <= FORMATS) {
+      pipestat->skip.has_previous = 0;
       return reader [format-1]
        (pipestat->file, pipestat->format, & pipestat->current_graph_encoding);
   } else {
@@ -81,6 +83,23 @@ int read_next (pipe_status *pipestat)
 }
 
 
+/*
+   Attempts to skip up to "max" graphs, see the skippers in read_graphs.h.
+   Returns the number of graphs skipped, or -1.
+*/
+int skip_next (pipe_status *pipestat, int max)
+{
+  int format;
+  format = get_format (pipestat->format);
+  if (format > 0 && format <= FORMATS) {
+      return skipper [format-1] (pipestat->file, pipestat->format, max,
+       & pipestat->skip, & pipestat->current_graph_encoding);
+  } else {
+      return 0;
+  }
+}
+
+
 /*
    These functions provide for the transfer of the pipe status
    between the JNI funtions and the Java object for which they work.
@@ -273,6 +292,7 @@ JNIEXPORT void JNICALL Java_cage_NativeCaGePipe_initCaGePipe
   pipestat->file = NULL;
   pipestat->current_graph_encoding = new_dstring;
   pipestat->last_graph_encoding = new_dstring;
+  pipestat->skip = new_skip_buffer;
   pipestat->header = new_dstring;
   set_status (env, this, pipestat);
   if (debug_native_pipe) fprintf (stderr, "} initCaGePipe\n");
@@ -295,6 +315,7 @@ JNIEXPORT void JNICALL Java_cage_NativeCaGePipe_startCaGePipe
   clear_dstring (& pipestat->header);
   clear_dstring (& pipestat->last_graph_encoding);
   clear_dstring (& pipestat->current_graph_encoding);
+  clear_skip_buffer (& pipestat->skip);
   pipestat->format = 0;
   pipestat->advanced1 = 0;
   outfd = (int) (*env)->GetIntField (env, this, pipestat->reader_field);
@@ -326,6 +347,7 @@ JNIEXPORT void JNICALL Java_cage_NativeCaGePipe_finalizeCaGePipe
   clear_dstring (& pipestat->header);
   clear_dstring (& pipestat->current_graph_encoding);
   clear_dstring (& pipestat->last_graph_encoding);
+  clear_skip_buffer (& pipestat->skip);
   (*env)->DeleteGlobalRef (env, pipestat->class);
   free (pipestat);
   pipestat = NULL;
@@ -338,7 +360,7 @@ JNIEXPORT void JNICALL Java_cage_NativeCaGePipe_nStartAdvancing
   (JNIEnv *env, jobject this)
 {
   pipe_status *pipestat;
-  int graphno, last_graphno, remainder, c;
+  int graphno, last_graphno, remainder, c, max, skipped;
   int read_error, reset_flow, graphno_fire_interval;
 
   setJNIEnv (env);
@@ -371,9 +393,30 @@ JNIEXPORT void JNICALL Java_cage_NativeCaGePipe_nStartAdvancing
   remainder = -1;
   read_error = 0;
   reset_flow = 1;
+  /* after graphs were skipped, the next one is committed even out of flow */
+  skipped = 0;
 
-  while (short_of_advance_target (env, this, graphno, pipestat))
+  while (skipped || short_of_advance_target (env, this, graphno, pipestat))
   {
+    if (! pipestat->advanced1) {
+	/* the graphs up to the target or the next graphno event are skipped */
+	max = get_advance_target (env, this, pipestat) - graphno - 1;
+	if (graphno_fire_interval > 0
+	 && max > graphno_fire_interval - 1 - graphno % graphno_fire_interval) {
+	    max = graphno_fire_interval - 1 - graphno % graphno_fire_interval;
+	}
+	if (max > 0 && get_flowing (env, this, pipestat)) {
+	    /* -1 means the graph skipped last is kept after all */
+	    c = skip_next (pipestat, max);
+	    graphno += c;
+	    if (c) skipped = 1;
+	    if (pipestat->current_graph_encoding.length > 0) {
+		pipestat->advanced1 = 1;
+	    } else if (c > 0) {
+		continue;
+	    }
+	}
+    }
     if (! pipestat->advanced1) {
 	if (read_next (pipestat)) {
 	    read_error = 1;
@@ -381,7 +424,7 @@ JNIEXPORT void JNICALL Java_cage_NativeCaGePipe_nStartAdvancing
 	}
 	pipestat->advanced1 = 1;
     }
-    if (! get_flowing (env, this, pipestat)) {
+    if (! skipped && ! get_flowing (env, this, pipestat)) {
 	if (debug_native_pipe) fprintf (stderr, "out of flow while advancing\n");
 	reset_flow = 0;
 	break;
@@ -394,6 +437,7 @@ JNIEXPORT void JNICALL Java_cage_NativeCaGePipe_nStartAdvancing
     ++graphno;
     set_graphno (env, this, pipestat, graphno);
     (*env)->MonitorExit (env, this);
+    skipped = 0;
     if (graphno_fire_interval > 0
      && (remainder = graphno % graphno_fire_interval) == 0) {
 	fire_graphno_changed (env, this, pipestat);
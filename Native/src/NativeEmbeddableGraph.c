@@ -138,6 +138,14 @@ JNIEXPORT jobject JNICALL Java_cage_NativeEmbeddableGraph_nGetEdgeIterator
 }
 
 
+JNIEXPORT jint JNICALL Java_cage_NativeEmbeddableGraph_nGetNeighbour
+  (JNIEnv *env, jobject this, jlong nGraph, jint vertex, jint index)
+{
+  return (jint) get_edge (jlong2adr (nGraph, void *),
+   (g_int) vertex, (g_int) index);
+}
+
+
 JNIEXPORT jboolean JNICALL Java_cage_NativeEmbeddableGraph_nHas2DCoordinates
   (JNIEnv *env, jobject this, jlong nGraph)
 {
@@ -152,6 +160,20 @@ JNIEXPORT jfloatArray JNICALL Java_cage_NativeEmbeddableGraph_nGet2DCoordinates
    get_2d_coordinates (jlong2adr (nGraph, void *), (g_int) vertex), 2);
 }
 
+JNIEXPORT void JNICALL Java_cage_NativeEmbeddableGraph_nCopy2DCoordinates
+  (JNIEnv *env, jobject this, jlong nGraph, jint vertex, jfloatArray coords)
+{
+  g_float *value;
+  jfloat element [2];
+  int i;
+  value = get_2d_coordinates (jlong2adr (nGraph, void *), (g_int) vertex);
+  for (i = 2-1; i >= 0; --i)
+  {
+    element [i] = value [i];
+  }
+  (*env)->SetFloatArrayRegion (env, coords, 0, 2, element);
+}
+
 JNIEXPORT jobjectArray JNICALL Java_cage_NativeEmbeddableGraph_nGetAll2DCoordinates
   (JNIEnv *env, jobject this, jlong nGraph)
 {
@@ -198,6 +220,20 @@ JNIEXPORT jfloatArray JNICALL Java_cage_NativeEmbeddableGraph_nGet3DCoordinates
    get_3d_coordinates (jlong2adr (nGraph, void *), (g_int) vertex), 3);
 }
 
+JNIEXPORT void JNICALL Java_cage_NativeEmbeddableGraph_nCopy3DCoordinates
+  (JNIEnv *env, jobject this, jlong nGraph, jint vertex, jfloatArray coords)
+{
+  g_float *value;
+  jfloat element [3];
+  int i;
+  value = get_3d_coordinates (jlong2adr (nGraph, void *), (g_int) vertex);
+  for (i = 3-1; i >= 0; --i)
+  {
+    element [i] = value [i];
+  }
+  (*env)->SetFloatArrayRegion (env, coords, 0, 3, element);
+}
+
 JNIEXPORT jobjectArray JNICALL Java_cage_NativeEmbeddableGraph_nGetAll3DCoordinates
   (JNIEnv *env, jobject this, jlong nGraph)
 {
@@ -87,6 +87,14 @@ JNIEXPORT jint JNICALL Java_cage_NativeEmbeddableGraph_nGetValency
 JNIEXPORT jobject JNICALL Java_cage_NativeEmbeddableGraph_nGetEdgeIterator
   (JNIEnv *, jobject, jlong, jint);
 
+/*
+ * Class:     cage_NativeEmbeddableGraph
+ * Method:    nGetNeighbour
+ * Signature: (JII)I
+ */
+JNIEXPORT jint JNICALL Java_cage_NativeEmbeddableGraph_nGetNeighbour
+  (JNIEnv *, jobject, jlong, jint, jint);
+
 /*
  * Class:     cage_NativeEmbeddableGraph
  * Method:    nHas2DCoordinates
@@ -103,6 +111,14 @@ JNIEXPORT jboolean JNICALL Java_cage_NativeEmbeddableGraph_nHas2DCoordinates
 JNIEXPORT jfloatArray JNICALL Java_cage_NativeEmbeddableGraph_nGet2DCoordinates
   (JNIEnv *, jobject, jlong, jint);
 
+/*
+ * Class:     cage_NativeEmbeddableGraph
+ * Method:    nCopy2DCoordinates
+ * Signature: (JI[F)V
+ */
+JNIEXPORT void JNICALL Java_cage_NativeEmbeddableGraph_nCopy2DCoordinates
+  (JNIEnv *, jobject, jlong, jint, jfloatArray);
+
 /*
  * Class:     cage_NativeEmbeddableGraph
  * Method:    nGetAll2DCoordinates
@@ -135,6 +151,14 @@ JNIEXPORT jboolean JNICALL Java_cage_NativeEmbeddableGraph_nHas3DCoordinates
 JNIEXPORT jfloatArray JNICALL Java_cage_NativeEmbeddableGraph_nGet3DCoordinates
   (JNIEnv *, jobject, jlong, jint);
 
+/*
+ * Class:     cage_NativeEmbeddableGraph
+ * Method:    nCopy3DCoordinates
+ * Signature: (JI[F)V
+ */
+JNIEXPORT void JNICALL Java_cage_NativeEmbeddableGraph_nCopy3DCoordinates
+  (JNIEnv *, jobject, jlong, jint, jfloatArray);
+
 /*
  * Class:     cage_NativeEmbeddableGraph
  * Method:    nGetAll3DCoordinates
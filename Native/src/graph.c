@@ -160,6 +160,14 @@ get_next_edge (void *edge_iterator)
   return *(i->edge++);
 }
 
+g_int
+get_edge (void *g, g_int from, g_int index)
+{
+  embedded_graph *graph;
+  graph = g;
+  return graph->edgespace [graph->vertex [from-1].edgeind + index];
+}
+
 
 int has_2d_coordinates (void *g)
 {
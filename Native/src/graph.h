@@ -97,6 +97,14 @@ extern int has_next_edge (void *edge_iterator);
    Returns 1 if it is ok to call get_next_edge on edge_iterator.
 */
 
+extern g_int get_edge (void *graph, g_int from, g_int index);
+/*
+   Returns the number of the vertex at position "index" (starting at zero)
+   in the list of edges of vertex "from", i.e. the same vertex that the
+   ("index"+1)-th call of get_next_edge would return.
+   "index" must be smaller than the valency of "from".
+*/
+
 extern int has_2d_coordinates (void *graph);
 extern void set_2d_coordinates (void *graph, g_int vertex, g_float *coords);
 extern g_float *get_2d_coordinates (void *graph, g_int vertex);
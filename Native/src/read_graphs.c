@@ -10,6 +10,8 @@
 
 # include "graph.h"
 
+# include "skip_buffer.h"
+
 
 extern int debug_read_graphs;
 
@@ -168,6 +170,169 @@ int (*reader [FORMATS]) (FILE *file, int format, dstring *graph_encoding)
  = { read_writegraph, read_planar };
 
 
+/*
+   Skippers pass over the encodings of up to "max" graphs without storing
+   them, for jumping ahead to a graph far down the stream.  They find the
+   end of a graph by the same rules as the readers.  See read_graphs.h for
+   the return values.
+   The raw bytes of the graph being passed over, and of the one passed over
+   before it, are kept in the skip_buffer, whose memory is only ever grown.
+   This way the last complete graph can still be stored as a reader would
+   store it, when the data ends after it or in the middle of the next one.
+*/
+
+const skip_buffer new_skip_buffer = { { { NULL, 0, 0 }, { NULL, 0, 0 } }, { 0, 0 }, 0, 0 };
+
+# define  keep_byte(sb,slot,c) \
+ { if ((sb)->used [slot] == (sb)->bytes [slot].length) \
+       set_length ((sb)->bytes + (slot), (sb)->used [slot] + 1024); \
+   (sb)->bytes [slot].base [(sb)->used [slot]++] = (char) (c); }
+
+/*
+   Stores the raw bytes in the given slot like the reader for "format"
+   would store them.  For two-byte planar code the raw bytes start with
+   the 0 byte that marks it.
+*/
+static void store_skipped (skip_buffer *sb, int slot, int format,
+ dstring *graph_encoding)
+{
+  int i, codelen;
+  unsigned char *code = (unsigned char *) sb->bytes [slot].base;
+  unsigned short n;
+  if (format_equals (format, WRITEGRAPHxD_FORMAT)) {
+      add_bytes (graph_encoding, (char *) code, sb->used [slot]);
+      add_char (graph_encoding, '\0');
+      return;
+  }
+  codelen = code [0] ? 1 : 2;
+  for (i = codelen - 1; i < sb->used [slot]; i += codelen) {
+      n = codelen == 1 ? code [i] : decode_word (code + i, format);
+      add_bytes (graph_encoding, (char *) &n, sizeof (n));
+  }
+}
+
+/*
+   Handles the end of the data after "skipped" graphs.  "complete" tells
+   whether the bytes in the current slot form a complete graph.
+*/
+static int skip_end (skip_buffer *sb, int format, int skipped, int complete,
+ dstring *graph_encoding)
+{
+  if (complete) {
+      store_skipped (sb, sb->current, format, graph_encoding);
+  } else if (sb->has_previous) {
+      store_skipped (sb, 1 - sb->current, format, graph_encoding);
+      sb->has_previous = 0;
+      return skipped - 1;
+  }
+  return skipped;
+}
+
+int skip_writegraph (FILE *file, int format, int max,
+ skip_buffer *sb, dstring *graph_encoding)
+{
+  int c, status, skipped = 0;
+  if (debug_read_graphs) fprintf (stderr, "skipping writegraph\n");
+  while (skipped < max)
+  {
+    sb->current = 1 - sb->current;
+    sb->used [sb->current] = 0;
+    status = 0;
+    while ((c = getc (file)) != EOF)
+    {
+      keep_byte (sb, sb->current, c);
+      switch (status)
+      {
+        case 0:
+          if (isdigit (c)) status = 1;
+          break;
+        case 1:
+          if (c == '\n') status = 2;
+          break;
+        case 2:
+          if (c == '0') status = 3;
+          else if (! isspace (c)) status = 1;
+          break;
+        case 3:
+          if (c == '\n') status = 4;
+          else if (! isspace (c)) status = 1;
+          break;
+      }
+      if (status == 4) break;
+    }
+    if (status == 4) {
+        while ((c = getc (file)) != EOF && ! isdigit (c));
+    }
+    if (c == EOF) {
+        return skip_end (sb, format, skipped,
+         status == 2 || status == 4, graph_encoding);
+    }
+    ungetc (c, file);
+    sb->has_previous = 1;
+    ++skipped;
+  }
+  return skipped;
+}
+
+int skip_planar (FILE *file, int format, int max,
+ skip_buffer *sb, dstring *graph_encoding)
+{
+  int c, codelen, state, i, skipped = 0;
+  unsigned short vertices, n;
+  unsigned char *code;
+  if (debug_read_graphs) fprintf (stderr, "skipping planar\n");
+  while (skipped < max)
+  {
+    if ((c = getc (file)) == EOF) break;
+    sb->current = 1 - sb->current;
+    sb->used [sb->current] = 0;
+    codelen = c ? 1 : 2;
+    if (codelen == 1) {
+        ungetc (c, file);
+    } else {
+        keep_byte (sb, sb->current, c);
+    }
+    state = 0;
+    vertices = 0;
+    do {
+      for (i = 0; i < codelen; ++i) {
+	  if ((c = getc (file)) == EOF) {
+	      return skip_end (sb, format, skipped, 0, graph_encoding);
+	  }
+	  keep_byte (sb, sb->current, c);
+      }
+      code = (unsigned char *) sb->bytes [sb->current].base
+       + sb->used [sb->current] - codelen;
+      n = codelen == 1 ? *code : decode_word (code, format);
+      if (state == 0) {
+	  vertices = n;
+	  state = 1;
+      } else if (! n) {
+	  --vertices;
+      }
+    } while (vertices);
+    if ((c = getc (file)) == EOF) {
+        return skip_end (sb, format, skipped, 1, graph_encoding);
+    }
+    ungetc (c, file);
+    sb->has_previous = 1;
+    ++skipped;
+  }
+  return skipped;
+}
+
+void clear_skip_buffer (skip_buffer *sb)
+{
+  clear_dstring (sb->bytes);
+  clear_dstring (sb->bytes + 1);
+  *sb = new_skip_buffer;
+}
+
+int (*skipper [FORMATS])
+ (FILE *file, int format, int max, skip_buffer *sb, dstring *graph_encoding)
+ = { skip_writegraph, skip_planar };
+
+
 /*
    strxpbrk does the same as strpbrk(3), only considers the
    trailing null byte part of the "accept" string
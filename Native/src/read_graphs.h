@@ -50,6 +50,30 @@ extern int read_planar (FILE *file, int format, dstring *graph_encoding);
 extern int (*reader [FORMATS])
  (FILE *file, int format, dstring *graph_encoding);
 
+/*
+   Skippers pass over up to "max" graph encodings without storing them and
+   return the number of graphs passed over.  They need a skip_buffer, which
+   is initialized to new_skip_buffer, reused between calls, and freed by
+   clear_skip_buffer; has_previous must be reset to 0 after a reader call.
+   If the data ends after a complete graph, or in the middle of the graph
+   after one that was passed over, that last complete graph isn't counted
+   but stored in *graph_encoding (which must be empty) like a reader would
+   store it, so it can still be handed out.  If that graph was passed over
+   by an earlier call, -1 is returned.
+*/
+# include "skip_buffer.h"
+
+extern int skip_writegraph (FILE *file, int format, int max,
+ skip_buffer *sb, dstring *graph_encoding);
+
+extern int skip_planar (FILE *file, int format, int max,
+ skip_buffer *sb, dstring *graph_encoding);
+
+extern int (*skipper [FORMATS])
+ (FILE *file, int format, int max, skip_buffer *sb, dstring *graph_encoding);
+
+extern void clear_skip_buffer (skip_buffer *sb);
+
 extern int parse_writegraph (dstring encoded_graph, int format, void *graph);
 
 extern int parse_planar (dstring encoded_graph, int format, void *graph);
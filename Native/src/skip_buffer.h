@@ -0,0 +1,24 @@
+
+# ifndef SKIP_BUFFER_INCLUDED
+# define SKIP_BUFFER_INCLUDED
+
+# include "dstring.h"
+
+/*
+   A skip_buffer keeps the raw bytes of the graph a skipper is passing over,
+   and of the one it passed over before it, so the last complete graph can
+   still be stored when the data ends (see the skippers in read_graphs.h).
+   It is initialized to new_skip_buffer and freed by clear_skip_buffer.
+   It has its own header because read_graphs.c can't include read_graphs.h.
+*/
+
+struct skip_buffer
+{
+  dstring bytes [2];
+  int used [2], current, has_previous;
+};
+typedef struct skip_buffer skip_buffer;
+extern const skip_buffer new_skip_buffer;
+
+# endif
+
@@ -0,0 +1,51 @@
+#!/bin/sh
+# Records the benchmark fixtures with the generators in Generators/.
+# Run from the CaGe directory after "make rebuild" and building the generators:
+#
+#     sh benchmark/fixtures/record-fixtures.sh
+#
+# The generators don't flush their output when it goes to a file, hence
+# stdbuf. The *.w3d files are embedded by embed, which only embeds the first
+# graph of its input, so they are made one graph at a time.
+
+set -e
+
+GEN=$(pwd)/Generators
+OUT=$(pwd)/benchmark/fixtures
+CP=.:benchmark/classes
+
+mkdir -p benchmark/classes
+javac -cp . -d benchmark/classes benchmark/src/cage/benchmark/Fixtures.java
+
+# some generators write log files into the current directory, so they run in
+# a directory of their own that is removed afterwards
+LOGDIR=$(mktemp -d)
+trap 'rm -rf "$LOGDIR"' EXIT
+
+record() {
+    name=$1
+    shift
+    (cd "$LOGDIR" && stdbuf -o0 "$@") > "$OUT/$name.plc" 2> /dev/null
+}
+
+embed3d() {
+    name=$1
+    n=1
+    printf '>>writegraph3d<<\n' > "$OUT/$name.w3d"
+    while :; do
+        java -cp "$CP" cage.benchmark.Fixtures 3 $n < "$OUT/$name.plc" > "$OUT/$name.tmp"
+        [ -s "$OUT/$name.tmp" ] || break
+        "$GEN/embed" -d3 < "$OUT/$name.tmp" | tail -n +2 >> "$OUT/$name.w3d"
+        n=$((n + 1))
+    done
+    rm -f "$OUT/$name.tmp"
+}
+
+record fullerenes-c40 "$GEN/fullgen" 40 code 1 stdout
+record triangulations-10 "$GEN/plantri" 10
+record benzenoids-h7 "$GEN/catacondensed" 7 p C b
+record nanocones-p2-s3-l4 "$GEN/cones/cone" -s 2 3 n 4
+record nanotubes-6-3 "$GEN/tubes/tube" 6 3 tube 6
+
+embed3d fullerenes-c40
+embed3d triangulations-10
@@ -0,0 +1,189 @@
+package cage.benchmark;
+
+import cage.EmbeddableGraph;
+import cage.decoration.Decoration;
+import cage.decoration.DecorationVertex;
+import cage.decoration.FacetType;
+import cage.decoration.VertexPosition;
+import cage.decoration.embedder.GeometricChamber;
+import cage.decoration.embedder.SingleChamberDecorationEmbedder;
+import cage.embedder.BenzenoidEmbedder;
+import cage.embedder.NanoconeEmbedder;
+import cage.embedder.NanotubeEmbedder;
+import cage.embedder.SpringEmbedder;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The Java embedders, each on all graphs of a fixture. CaGe starts a new
+ * embedder for every graph, so every graph gets its own embedder here too.
+ * The embedders print their result on standard output, which is discarded
+ * while the benchmark runs. The in-process <code>SpringEmbedder</code> is
+ * the exception: it works on the graphs in memory and one instance embeds
+ * all of them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EmbedderBenchmark {
+
+    @Param({"10"})
+    public int decorationSize;
+
+    private List<String> benzenoids;
+    private List<String> nanocones;
+    private List<String> nanotubes;
+    private List<EmbeddableGraph> fullerenes;
+    private final SpringEmbedder springEmbedder = new SpringEmbedder();
+    private final float[] springFactors = {1.0f, 1.0f, 1.0f};
+    private Decoration decoration;
+    private PrintStream systemOut;
+
+    @Setup
+    public void setup() throws IOException {
+        benzenoids = split(Fixtures.readGraphs("benzenoids-h7.plc"), 2);
+        nanocones = split(Fixtures.readGraphs("nanocones-p2-s3-l4.plc"), 3);
+        nanotubes = split(Fixtures.readGraphs("nanotubes-6-3.plc"), 3);
+        fullerenes = Fixtures.readGraphs("fullerenes-c40.plc");
+        decoration = triangleGrid(decorationSize);
+        systemOut = Fixtures.silenceSystemOut();
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.setOut(systemOut);
+    }
+
+    private static List<String> split(List<EmbeddableGraph> graphs, int dimension) {
+        List<String> inputs = new ArrayList<>();
+        for (EmbeddableGraph graph : graphs) {
+            inputs.add(Fixtures.toWritegraph(Collections.singletonList(graph), dimension));
+        }
+        return inputs;
+    }
+
+    @Benchmark
+    public void benzenoid() {
+        for (String input : benzenoids) {
+            new BenzenoidEmbedder(input).startEmbedding();
+        }
+    }
+
+    @Benchmark
+    public void nanocone() {
+        for (String input : nanocones) {
+            new NanoconeEmbedder(input).startEmbedding();
+        }
+    }
+
+    @Benchmark
+    public void nanotube() {
+        for (String input : nanotubes) {
+            new NanotubeEmbedder(input).startEmbedding();
+        }
+    }
+
+    @Benchmark
+    public void spring2D() throws InterruptedException {
+        for (EmbeddableGraph graph : fullerenes) {
+            springEmbedder.embed2D(graph, 0, 0);
+        }
+    }
+
+    @Benchmark
+    public void spring3D() throws InterruptedException {
+        for (EmbeddableGraph graph : fullerenes) {
+            springEmbedder.embed3D(graph, false, springFactors);
+        }
+    }
+
+    @Benchmark
+    public SingleChamberDecorationEmbedder decoration() {
+        return new SingleChamberDecorationEmbedder(GeometricChamber.squareTilingChamber())
+                .setDecoration(decoration)
+                .run();
+    }
+
+    /**
+     * Builds a decoration that fills the chamber with a triangular grid of
+     * <tt>size</tt> rows. Vertex (i,j) lies at i steps from the vertex corner
+     * towards the edge corner and j steps towards the face corner.
+     */
+    private static Decoration triangleGrid(int size) {
+        int[][] ids = new int[size + 1][];
+        List<DecorationVertex> vertices = new ArrayList<>();
+        for (int i = 0; i <= size; i++) {
+            ids[i] = new int[size + 1 - i];
+            for (int j = 0; i + j <= size; j++) {
+                VertexPosition position;
+                FacetType type = FacetType.VERTEX;
+                if (i == 0 && j == 0) {
+                    position = VertexPosition.CORNER_VERTEX;
+                } else if (j == 0 && i == size) {
+                    position = VertexPosition.CORNER_EDGE;
+                    type = FacetType.EDGE;
+                } else if (i == 0 && j == size) {
+                    position = VertexPosition.CORNER_FACE;
+                    type = FacetType.FACE;
+                } else if (j == 0) {
+                    position = VertexPosition.EDGE_FACE;
+                } else if (i + j == size) {
+                    position = VertexPosition.EDGE_VERTEX;
+                } else if (i == 0) {
+                    position = VertexPosition.EDGE_EDGE;
+                } else {
+                    position = VertexPosition.INTERNAL;
+                }
+                ids[i][j] = vertices.size();
+                vertices.add(new DecorationVertex(vertices.size(), position, type));
+            }
+        }
+        int[][] steps = {{1, 0}, {0, 1}, {-1, 1}, {-1, 0}, {0, -1}, {1, -1}};
+        Map<DecorationVertex, List<DecorationVertex>> neighbours = new HashMap<>();
+        for (int i = 0; i <= size; i++) {
+            for (int j = 0; i + j <= size; j++) {
+                List<DecorationVertex> list = new ArrayList<>();
+                for (int[] step : steps) {
+                    int ni = i + step[0];
+                    int nj = j + step[1];
+                    if (ni >= 0 && nj >= 0 && ni + nj <= size) {
+                        list.add(vertices.get(ids[ni][nj]));
+                    }
+                }
+                neighbours.put(vertices.get(ids[i][j]), list);
+            }
+        }
+        List<DecorationVertex> border = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            border.add(vertices.get(ids[i][0]));
+        }
+        for (int i = size; i > 0; i--) {
+            border.add(vertices.get(ids[i][size - i]));
+        }
+        for (int j = size; j > 0; j--) {
+            border.add(vertices.get(ids[0][j]));
+        }
+        return new Decoration(vertices, border, neighbours);
+    }
+}
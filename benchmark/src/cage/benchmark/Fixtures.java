@@ -0,0 +1,155 @@
+package cage.benchmark;
+
+import cage.CaGeResult;
+import cage.EmbeddableGraph;
+import cage.GraphStreamReader;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Access to the recorded generator output in <tt>benchmark/fixtures</tt>.
+ * The fixtures are read with a {@link GraphStreamReader}, so they can be in
+ * planar code or in writegraph format. The directory can be changed with the
+ * system property <tt>cage.benchmark.fixtures</tt>.
+ *
+ * Run as a program, this class converts graphs from standard input to
+ * writegraph format, which is how <tt>record-fixtures.sh</tt> prepares the
+ * input for <tt>embed</tt>.
+ */
+public final class Fixtures {
+
+    private Fixtures() {
+    }
+
+    /**
+     * Returns a stream that discards everything, so the benchmarks measure
+     * the encoding and not the file system.
+     */
+    public static OutputStream nullOutputStream() {
+        return new OutputStream() {
+
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        };
+    }
+
+    /**
+     * Replaces standard output by a stream that discards everything, for the
+     * embedders that print their result.
+     *
+     * @return the original standard output, to be restored afterwards
+     */
+    public static PrintStream silenceSystemOut() {
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(nullOutputStream()));
+        return out;
+    }
+
+    public static File getFile(String name) {
+        return new File(System.getProperty("cage.benchmark.fixtures", "benchmark/fixtures"), name);
+    }
+
+    public static List<EmbeddableGraph> readGraphs(String name) throws IOException {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(getFile(name)))) {
+            return readGraphs(in);
+        }
+    }
+
+    public static List<EmbeddableGraph> readGraphs(InputStream in) throws IOException {
+        List<EmbeddableGraph> graphs = new ArrayList<>();
+        GraphStreamReader reader = new GraphStreamReader(in);
+        if (reader.startReading()) {
+            while (reader.readNext()) {
+                reader.commit();
+                graphs.add(reader.takeGraph());
+            }
+        }
+        if (graphs.isEmpty()) {
+            throw new IOException("no graphs in fixture");
+        }
+        return graphs;
+    }
+
+    public static List<CaGeResult> readResults(String name) throws IOException {
+        List<CaGeResult> results = new ArrayList<>();
+        for (EmbeddableGraph graph : readGraphs(name)) {
+            results.add(new CaGeResult(graph, results.size() + 1));
+        }
+        return results;
+    }
+
+    /**
+     * Encodes graphs in writegraph format, the way CaGe hands them to an
+     * embedder: with coordinates of the given dimension, which are 0 if the
+     * graph has none.
+     *
+     * @param graphs the graphs to encode
+     * @param dimension 2 or 3
+     * @return the writegraph encoding, including header
+     */
+    public static String toWritegraph(List<EmbeddableGraph> graphs, int dimension) {
+        StringBuilder builder = new StringBuilder();
+        builder.append(">>writegraph").append(dimension).append("d<<\n");
+        float[] coords = new float[dimension];
+        for (EmbeddableGraph graph : graphs) {
+            boolean hasCoordinates = dimension == 2 ? graph.has2DCoordinates() : graph.has3DCoordinates();
+            for (int v = 1; v <= graph.getSize(); ++v) {
+                builder.append(String.format("%4d", v)).append('\t');
+                if (hasCoordinates) {
+                    if (dimension == 2) {
+                        graph.get2DCoordinates(v, coords);
+                    } else {
+                        graph.get3DCoordinates(v, coords);
+                    }
+                }
+                for (int i = 0; i < dimension; ++i) {
+                    builder.append('\t').append(hasCoordinates ? coords[i] : 0.0f);
+                }
+                builder.append("\t\t");
+                for (int i = 0; i < graph.getValency(v); ++i) {
+                    builder.append("  ").append(graph.getNeighbour(v, i));
+                }
+                builder.append('\n');
+            }
+            builder.append("0\n");
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Converts graphs from standard input to writegraph format. Since
+     * <tt>embed</tt> only embeds the first graph it reads, a single graph can
+     * be selected; nothing is written if there are fewer graphs.
+     *
+     * @param args the dimension of the coordinates, 2 or 3 (default), and
+     *        optionally the number of the graph to convert (starting at 1)
+     */
+    public static void main(String[] args) throws IOException {
+        int dimension = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+        List<EmbeddableGraph> graphs = readGraphs(System.in);
+        if (args.length > 1) {
+            int graphNo = Integer.parseInt(args[1]);
+            if (graphNo > graphs.size()) {
+                return;
+            }
+            graphs = graphs.subList(graphNo - 1, graphNo);
+        }
+        Writer out = new OutputStreamWriter(System.out);
+        out.write(toWritegraph(graphs, dimension));
+        out.flush();
+    }
+}
@@ -0,0 +1,80 @@
+package cage.benchmark;
+
+import cage.GraphStreamReader;
+import cage.embedder.IO;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Decoding of generator output: planar code by the {@link GraphStreamReader}
+ * that feeds the pipeline, and writegraph by the {@link IO} class the Java
+ * embedders read their input with. Each invocation decodes a whole fixture.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParseBenchmark {
+
+    @Param({"fullerenes-c40", "triangulations-10", "nanotubes-6-3"})
+    public String fixture;
+
+    private byte[] planarCode;
+    private String writegraph;
+
+    @Setup
+    public void setup() throws IOException {
+        planarCode = Files.readAllBytes(Fixtures.getFile(fixture + ".plc").toPath());
+        writegraph = Fixtures.toWritegraph(
+                Fixtures.readGraphs(new ByteArrayInputStream(planarCode)), 3);
+    }
+
+    @Benchmark
+    public void planarCode(Blackhole blackhole) throws IOException {
+        GraphStreamReader reader = new GraphStreamReader(new ByteArrayInputStream(planarCode));
+        if (reader.startReading()) {
+            while (reader.readNext()) {
+                reader.commit();
+                blackhole.consume(reader.takeGraph());
+            }
+        }
+    }
+
+    @Benchmark
+    public void writegraphForStream(Blackhole blackhole) throws IOException {
+        GraphStreamReader reader = new GraphStreamReader(
+                new ByteArrayInputStream(writegraph.getBytes()));
+        if (reader.startReading()) {
+            while (reader.readNext()) {
+                reader.commit();
+                blackhole.consume(reader.takeGraph());
+            }
+        }
+    }
+
+    @Benchmark
+    public void writegraphForEmbedder(Blackhole blackhole) {
+        IO io = new IO(writegraph, 100, 3);
+        int size;
+        while ((size = io.findNextGraph()) > 0) {
+            blackhole.consume(size);
+            blackhole.consume(io.getGraphCoords());
+        }
+    }
+}
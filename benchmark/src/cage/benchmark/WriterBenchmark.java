@@ -0,0 +1,149 @@
+package cage.benchmark;
+
+import cage.CaGeResult;
+import cage.ElementRule;
+import cage.Embedder;
+import cage.GeneratorInfo;
+import cage.SingleElementRule;
+import cage.writer.CMLWriter;
+import cage.writer.CaGeWriter;
+import cage.writer.OFFWriter;
+import cage.writer.ScadWriter;
+import cage.writer.SpinputWriter;
+import cage.writer.scad.BallStickType;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The Java writers, each writing all graphs of an embedded fixture in one
+ * block, the way the background runner hands them out. The output is
+ * discarded.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WriterBenchmark {
+
+    @Param({"fullerenes-c40", "triangulations-10"})
+    public String fixture;
+
+    @Param({"cml", "off", "spinput", "scad"})
+    public String format;
+
+    private List<CaGeResult> results;
+    private CaGeWriter writer;
+
+    @Setup
+    public void setup() throws IOException {
+        results = Fixtures.readResults(fixture + ".w3d");
+        if (format.equals("cml")) {
+            writer = new CMLWriter();
+        } else if (format.equals("off")) {
+            writer = new OFFWriter();
+        } else if (format.equals("spinput")) {
+            writer = new SpinputWriter();
+        } else if (format.equals("scad")) {
+            ScadWriter scadWriter = new ScadWriter();
+            scadWriter.setType(new BallStickType());
+            writer = scadWriter;
+        } else {
+            throw new IllegalArgumentException("unknown format " + format);
+        }
+        writer.setGeneratorInfo(new FixtureInfo(fixture));
+        writer.setDimension(3);
+        writer.setOutputStream(Fixtures.nullOutputStream());
+    }
+
+    @Benchmark
+    public void write() throws IOException {
+        writer.outputResults(results);
+        writer.throwLastIOException();
+    }
+
+    /**
+     * The generator info for a fixture. The writers only use the element
+     * rule, so there is no embedder (which would need the native library),
+     * and every atom is carbon, since the triangulations have valencies no
+     * element is assigned to.
+     */
+    private static class FixtureInfo extends GeneratorInfo {
+
+        private final String[][] generator = {{"benchmark"}};
+        private final String filename;
+        private final ElementRule elementRule = new SingleElementRule("C");
+
+        FixtureInfo(String filename) {
+            this.filename = filename;
+        }
+
+        @Override
+        public String[][] getGenerator() {
+            return generator;
+        }
+
+        @Override
+        public void setGenerator(String[][] generator) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String[][] getDefaultGenerator() {
+            return generator;
+        }
+
+        @Override
+        public Embedder getDefaultEmbedder() {
+            return null;
+        }
+
+        @Override
+        public Embedder getEmbedder() {
+            return null;
+        }
+
+        @Override
+        public void setEmbedder(Embedder embedder) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String getFilename() {
+            return filename;
+        }
+
+        @Override
+        public int getMaxFacesize() {
+            return 6;
+        }
+
+        @Override
+        public boolean isReembed2DEnabled() {
+            return false;
+        }
+
+        @Override
+        public ElementRule getElementRule() {
+            return elementRule;
+        }
+
+        @Override
+        public int getExpertMode() {
+            return NO_EXPERT_MODE;
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package cage;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Reads a file written by {@link cage.writer.BinaryWriter}. The file is
+ * memory-mapped, and any graph is found through the index at the end of the
+ * file without reading the graphs before it. All numbers are little-endian.
+ * <pre>
+ * header    8 bytes  magic "CaGeBIN1"
+ *           1 byte   dimension of the coordinates: 0, 2 or 3
+ *           7 bytes  zero
+ * graphs    varint   number of vertices n
+ *           varint   flags: 1 if the graph has coordinates
+ *           varints  for each vertex its neighbours, followed by 0
+ *           0-3 zero bytes, so the coordinates start at a multiple of 4
+ *           floats   if it has coordinates: n x, n y (and n z) values
+ * index     8 bytes  for each graph the offset of its record
+ *           4 bytes  for each graph its graph number
+ * trailer   8 bytes  offset of the index
+ *           8 bytes  number of graphs
+ *           4 bytes  length of the longest record
+ *           4 bytes  flags: 1 if the graph numbers are consecutive,
+ *                    2 if they are ascending
+ *           8 bytes  magic "CaGeIDX1"
+ * </pre>
+ * A varint holds 7 bits per byte, lowest first, with the high bit set on all
+ * bytes but the last. The neighbours are numbered from 1, like in
+ * <tt>planar_code</tt>.
+ *
+ * Reading is thread-safe: several threads can fetch graphs at once.
+ */
+public class BinaryGraphFile implements Closeable {
+
+    public static final byte[] HEADER_MAGIC = {'C', 'a', 'G', 'e', 'B', 'I', 'N', '1'};
+    public static final byte[] TRAILER_MAGIC = {'C', 'a', 'G', 'e', 'I', 'D', 'X', '1'};
+    public static final int HEADER_LENGTH = 16;
+    public static final int TRAILER_LENGTH = 32;
+    public static final int HAS_COORDINATES = 1;
+    public static final int CONSECUTIVE = 1;
+    public static final int ASCENDING = 2;
+
+    //a mapping can't be larger than 2GB, so large files are mapped in parts
+    private static final long segmentSize = 1L << 30;
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer[] segments;
+    private final int dimension;
+    private final long indexOffset;
+    private final long count;
+    private final int flags;
+    private final int firstGraphNo;
+
+    /**
+     * Opens and maps the given file.
+     *
+     * @param filename The file to read.
+     * @throws IOException if the file can't be read or isn't a complete
+     *         binary graph file
+     */
+    public BinaryGraphFile(File filename) throws IOException {
+        file = new RandomAccessFile(filename, "r");
+        try {
+            long size = file.length();
+            if (size < HEADER_LENGTH + TRAILER_LENGTH) {
+                throw new IOException(filename + " is too short for a binary graph file");
+            }
+            byte[] magic = new byte[8];
+            file.readFully(magic);
+            if (!Arrays.equals(magic, HEADER_MAGIC)) {
+                throw new IOException(filename + " is not a binary graph file");
+            }
+            dimension = file.read();
+            file.seek(size - TRAILER_LENGTH);
+            byte[] trailer = new byte[TRAILER_LENGTH];
+            file.readFully(trailer);
+            if (!Arrays.equals(Arrays.copyOfRange(trailer, 24, 32), TRAILER_MAGIC)) {
+                throw new IOException(filename + " has no index: it is incomplete");
+            }
+            ByteBuffer t = ByteBuffer.wrap(trailer).order(ByteOrder.LITTLE_ENDIAN);
+            indexOffset = t.getLong(0);
+            count = t.getLong(8);
+            int maxRecordLength = t.getInt(16);
+            flags = t.getInt(20);
+            if (indexOffset < HEADER_LENGTH || indexOffset + 12 * count + TRAILER_LENGTH != size) {
+                throw new IOException(filename + " has a damaged index");
+            }
+            // each part overlaps the next one by a record, so every record lies in one part
+            long overlap = Math.max(maxRecordLength, 8);
+            FileChannel channel = file.getChannel();
+            segments = new MappedByteBuffer[(int) ((size + segmentSize - 1) / segmentSize)];
+            for (int i = 0; i < segments.length; ++i) {
+                long start = i * segmentSize;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+                        start, Math.min(size - start, segmentSize + overlap));
+                segments[i].order(ByteOrder.LITTLE_ENDIAN);
+            }
+            firstGraphNo = count > 0 ? getInt(indexOffset + 8 * count) : 0;
+        } catch (IOException | RuntimeException ex) {
+            file.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Returns the dimension of the coordinates in this file, or 0 if it
+     * only holds adjacency information.
+     */
+    public int getDimension() {
+        return dimension;
+    }
+
+    /**
+     * Returns the number of graphs in this file.
+     */
+    public long getGraphCount() {
+        return count;
+    }
+
+    /**
+     * Returns the graph number of the graph at the given position.
+     *
+     * @param index The position of the graph in the file, starting from 0.
+     */
+    public int getGraphNo(long index) {
+        checkIndex(index);
+        return getInt(indexOffset + 8 * count + 4 * index);
+    }
+
+    /**
+     * Returns the position in the file of the graph with the given number,
+     * or -1 if it isn't in the file. This takes constant time if the graph
+     * numbers are consecutive, as in files written by a background run.
+     *
+     * @param graphNo The graph number.
+     */
+    public long indexOf(int graphNo) {
+        if ((flags & CONSECUTIVE) != 0) {
+            long index = (long) graphNo - firstGraphNo;
+            return index >= 0 && index < count ? index : -1;
+        } else if ((flags & ASCENDING) != 0) {
+            long low = 0, high = count - 1;
+            while (low <= high) {
+                long mid = (low + high) >>> 1;
+                int no = getGraphNo(mid);
+                if (no < graphNo) {
+                    low = mid + 1;
+                } else if (no > graphNo) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -1;
+        }
+        for (long index = 0; index < count; ++index) {
+            if (getGraphNo(index) == graphNo) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the graph with the given number, or <code>null</code> if it
+     * isn't in the file.
+     *
+     * @param graphNo The graph number.
+     */
+    public EmbeddableGraph getGraph(int graphNo) {
+        long index = indexOf(graphNo);
+        return index < 0 ? null : getGraphAt(index);
+    }
+
+    /**
+     * Decodes the graph at the given position.
+     *
+     * @param index The position of the graph in the file, starting from 0.
+     */
+    public EmbeddableGraph getGraphAt(long index) {
+        checkIndex(index);
+        long offset = getLong(indexOffset + 8 * index);
+        MappedByteBuffer segment = segments[(int) (offset / segmentSize)];
+        int[] position = {(int) (offset % segmentSize)};
+        int n = readVarint(segment, position);
+        int recordFlags = readVarint(segment, position);
+        JavaEmbeddableGraph graph = new JavaEmbeddableGraph(n);
+        for (int v = 1; v <= n; ++v) {
+            graph.addVertex();
+            int to;
+            while ((to = readVarint(segment, position)) != 0) {
+                graph.addEdge(to);
+            }
+        }
+        if ((recordFlags & HAS_COORDINATES) != 0 && dimension > 0) {
+            //the parts start at multiples of 4, so the padding is the same in the part
+            int p = (position[0] + 3) & ~3;
+            float[] coords = new float[dimension];
+            for (int v = 1; v <= n; ++v) {
+                for (int d = 0; d < dimension; ++d) {
+                    coords[d] = segment.getFloat(p + 4 * (d * n + v - 1));
+                }
+                if (dimension == 2) {
+                    graph.set2DCoordinates(v, coords);
+                } else {
+                    graph.set3DCoordinates(v, coords);
+                }
+            }
+        }
+        return graph;
+    }
+
+    private void checkIndex(long index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("no graph at position " + index);
+        }
+    }
+
+    private static int readVarint(MappedByteBuffer segment, int[] position) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = segment.get(position[0]++);
+            value |= (b & 0x7f) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    private long getLong(long offset) {
+        return segments[(int) (offset / segmentSize)].getLong((int) (offset % segmentSize));
+    }
+
+    private int getInt(long offset) {
+        return segments[(int) (offset / segmentSize)].getInt((int) (offset % segmentSize));
+    }
+
+    /**
+     * Closes the file. The mapping is released once the graphs that were
+     * read aren't used anymore.
+     */
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+}
@@ -432,7 +432,11 @@ public class CaGe implements ActionListener {
         } else {
             foldnetThread.exit();
             try {
-                new File(CaGe.config.getProperty("CaGe.Generators.ErrFile")).delete();
+                String errFile = CaGe.config.getProperty("CaGe.Generators.ErrFile");
+                new File(errFile).delete();
+                for (int i = 0; i < CaGePipeFactory.getPartitions(); ++i) {
+                    new File(errFile + "." + i).delete();
+                }
             } catch (Exception ex) {
             }
             System.exit(0);
@@ -0,0 +1,472 @@
+package cage;
+
+import cage.background.Checkpoint;
+import cage.background.DefaultBackgroundRunner;
+import cage.writer.CaGeWriter;
+import cage.writer.Compression;
+import cage.writer.WriterFactory;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import lisken.systoolbox.ProcessChain;
+import lisken.systoolbox.Systoolbox;
+
+/**
+ * Runs a generator in the background without any user interface: the graphs
+ * are generated, embedded and written by a {@link DefaultBackgroundRunner},
+ * just like a background run started from the wizard, but the options that
+ * the generator panels and the output panel collect are given on the command
+ * line instead. Swing isn't initialised, so this also works on machines
+ * without a display.
+ * <pre>
+ * java -Djava.awt.headless=true -cp CaGe.jar:. cage.CaGeBatch [options] name generator...
+ * </pre>
+ * <tt>name</tt> is one of the generators in <tt>CaGe.Generators</tt> (its
+ * title is used to describe the run) or any other name, and the remaining
+ * arguments are the generator command line, as the generator panel would
+ * build it. The options are:
+ * <dl>
+ * <dt><tt>-d</tt> <i>dimension</i></dt>
+ * <dd>embed in 2 or 3 dimensions, or 0 to write adjacency information only
+ *     (default 3)</dd>
+ * <dt><tt>-w</tt> <i>format</i>[<tt>,</tt><i>compression</i>]<tt>=</tt><i>destination</i></dt>
+ * <dd>write the graphs in the given format (see <tt>CaGe.Writers.*</tt>) to a
+ *     file or, if the destination starts with <tt>|</tt>, to a command,
+ *     compressed with <tt>gzip</tt> or <tt>fast</tt> if that is given; may be
+ *     given more than once</dd>
+ * <dt><tt>-e2</tt> <i>command</i>, <tt>-e3</tt> <i>command</i></dt>
+ * <dd>the 2D and 3D embedder commands (default <tt>embed</tt> and
+ *     <tt>embed -d3</tt>)</dd>
+ * <dt><tt>-f</tt> <i>command</i></dt>
+ * <dd>a filter that the generator output is piped through</dd>
+ * <dt><tt>-r</tt> <i>seconds</i></dt>
+ * <dd>the interval between throughput reports (default 10, 0 for none)</dd>
+ * <dt><tt>-c</tt> <i>file</i></dt>
+ * <dd>save a {@link Checkpoint} in this file every
+ *     <tt>CaGe.Background.CheckpointInterval</tt> seconds; the destinations
+ *     have to be files, and the generator isn't split in parts</dd>
+ * </dl>
+ * A run that was started with <tt>-c</tt> and didn't finish is resumed with
+ * <pre>
+ * java -Djava.awt.headless=true -cp CaGe.jar:. cage.CaGeBatch -R file
+ * </pre>
+ * which takes the options, the generator and the writers from the
+ * checkpoint, cuts the output files back to their length at the
+ * checkpoint, skips the generator's graphs up to there and appends the
+ * graphs after them. The checkpoint is deleted when the run finishes
+ * without errors.
+ *
+ * The number of graphs written and the graphs per second are reported on
+ * standard output; errors go to standard error and make the exit status 1.
+ */
+public class CaGeBatch {
+
+    private static final String[][] defaultEmbed2D = {{"embed"}};
+    private static final String[][] defaultEmbed3D = {{"embed", "-d3"}};
+
+    private final List<String> formats = new ArrayList<>();
+    private final List<String> destinations = new ArrayList<>();
+    private final List<Compression> compressions = new ArrayList<>();
+    private String name;
+    private String[][] generator, preFilter;
+    private String[][] embed2D = defaultEmbed2D, embed3D = defaultEmbed3D;
+    private int dimension = 3;
+    private long reportInterval = 10000;
+    private File checkpointFile;
+    private Checkpoint checkpoint;
+    private String[] arguments;
+    private int errors = 0;
+    private boolean interrupted = false;
+
+    //this class is only instantiated by main().
+    private CaGeBatch() {
+    }
+
+    /**
+     * Parses the arguments, or throws an <code>IllegalArgumentException</code>
+     * that describes what is wrong with them.
+     */
+    private void parseArguments(String[] args) {
+        if (args.length > 0 && args[0].equals("-R")) {
+            if (args.length != 2) {
+                throw new IllegalArgumentException("-R takes a checkpoint file and nothing else");
+            }
+            try {
+                checkpoint = Checkpoint.load(new File(args[1]));
+            } catch (IOException ex) {
+                throw new IllegalArgumentException("can't resume: " + ex.getMessage());
+            }
+            int count = Integer.parseInt(checkpoint.getProperty("arguments"));
+            args = new String[count];
+            for (int i = 0; i < count; ++i) {
+                args[i] = checkpoint.getProperty("argument." + i);
+            }
+        }
+        arguments = args;
+        int i = 0;
+        while (i < args.length && args[i].startsWith("-")) {
+            String option = args[i++];
+            if (option.equals("--")) {
+                break;
+            }
+            if (i >= args.length) {
+                throw new IllegalArgumentException("option " + option + " needs a value");
+            }
+            String value = args[i++];
+            switch (option) {
+                case "-d":
+                    dimension = Integer.parseInt(value);
+                    if (dimension < 0 || dimension > 3 || dimension == 1) {
+                        throw new IllegalArgumentException("dimension must be 0, 2 or 3");
+                    }
+                    break;
+                case "-w":
+                    int eq = value.indexOf('=');
+                    if (eq <= 0 || eq == value.length() - 1) {
+                        throw new IllegalArgumentException("writer must be given as format=destination: " + value);
+                    }
+                    String format = value.substring(0, eq);
+                    Compression compression = Compression.NONE;
+                    int comma = format.indexOf(',');
+                    if (comma >= 0) {
+                        compression = Compression.forName(format.substring(comma + 1));
+                        if (compression == null) {
+                            throw new IllegalArgumentException("unknown compression: " + value);
+                        }
+                        format = format.substring(0, comma);
+                    }
+                    formats.add(format);
+                    compressions.add(compression);
+                    destinations.add(value.substring(eq + 1));
+                    break;
+                case "-e2":
+                    embed2D = Systoolbox.parseCmdLine(value);
+                    break;
+                case "-e3":
+                    embed3D = Systoolbox.parseCmdLine(value);
+                    break;
+                case "-f":
+                    preFilter = Systoolbox.parseCmdLine(value);
+                    break;
+                case "-r":
+                    reportInterval = Math.round(Double.parseDouble(value) * 1000);
+                    break;
+                case "-c":
+                    checkpointFile = new File(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown option " + option);
+            }
+        }
+        if (args.length - i < 2) {
+            throw new IllegalArgumentException("generator name and command are missing");
+        }
+        name = args[i++];
+        generator = Systoolbox.parseCmdLine(
+                Systoolbox.join(Arrays.copyOfRange(args, i, args.length), " "));
+        if (formats.isEmpty()) {
+            throw new IllegalArgumentException("no writers given");
+        }
+        if (checkpointFile != null) {
+            for (String destination : destinations) {
+                if (destination.trim().startsWith("|")) {
+                    throw new IllegalArgumentException("with -c, the destinations have to be files: " + destination);
+                }
+            }
+        }
+    }
+
+    private GeneratorInfo createGeneratorInfo() {
+        String[][] generatorCmds = generator;
+        if (preFilter != null) {
+            generatorCmds = new String[generator.length + preFilter.length][];
+            System.arraycopy(generator, 0, generatorCmds, 0, generator.length);
+            System.arraycopy(preFilter, 0, generatorCmds, generator.length, preFilter.length);
+        }
+        Embedder embedder = EmbedFactory.createEmbedder(false, embed2D, embed3D);
+        embedder.setRunDir(CaGe.getCaGeProperty("CaGe.Generators.RunDir"));
+        embedder.setPath(CaGe.getCaGeProperty("CaGe.Generators.Path"));
+        GeneratorInfo generatorInfo = new StaticGeneratorInfo(
+                generatorCmds, embedder, name, 0);
+        generatorInfo.setGeneratorName(CaGe.getCaGeProperty(name + ".Title", name));
+        return generatorInfo;
+    }
+
+    private List<CaGeWriter> createWriters(GeneratorInfo generatorInfo) throws Exception {
+        List<CaGeWriter> writers = new ArrayList<>();
+        try {
+            for (int i = 0; i < formats.size(); ++i) {
+                CaGeWriter writer = WriterFactory.createCaGeWriter(formats.get(i));
+                if (writer == null) {
+                    throw new IllegalArgumentException("no writer for format " + formats.get(i));
+                }
+                if (dimension > 0) {
+                    writer.setDimension(dimension);
+                }
+                writer.setGeneratorInfo(generatorInfo);
+                if (checkpoint == null) {
+                    writer.setOutputStream(compressions.get(i).wrap(
+                            createOutputStream(destinations.get(i))));
+                } else {
+                    File file = resolve(destinations.get(i));
+                    OutputStream out = compressions.get(i).wrap(
+                            new BufferedOutputStream(checkpoint.openOutput(file)));
+                    if (checkpoint.isResumed()) {
+                        try (InputStream written = compressions.get(i) == Compression.NONE
+                                ? new FileInputStream(file)
+                                : new GZIPInputStream(new FileInputStream(file))) {
+                            writer.resumeOutputStream(out, written, checkpoint.getGraphNo());
+                        } catch (IOException ex) {
+                            out.close();
+                            throw new IOException("can't resume " + file + ": " + ex.getMessage(), ex);
+                        }
+                    } else {
+                        writer.setOutputStream(out);
+                    }
+                }
+                writers.add(writer);
+            }
+        } catch (Exception ex) {
+            for (CaGeWriter writer : writers) {
+                writer.stop();
+            }
+            throw ex;
+        }
+        return writers;
+    }
+
+    /*
+     * Opens a file or starts a command to write to. Without the native
+     * libraries, a command is started as a ProcessChain whose output is
+     * copied to our own.
+     */
+    private static OutputStream createOutputStream(String destination) throws Exception {
+        String runDir = CaGe.getCaGeProperty("CaGe.Generators.RunDir");
+        if (CaGe.nativesAvailable) {
+            return Systoolbox.createOutputStream(destination, runDir);
+        } else if (destination.trim().startsWith("|")) {
+            ProcessChain chain = new ProcessChain(
+                    Systoolbox.parseCmdLine(destination.trim().substring(1)));
+            chain.setRunDir(runDir);
+            chain.setPath(CaGe.getCaGeProperty("CaGe.Generators.Path"));
+            chain.start();
+            return new ChainOutputStream(chain);
+        } else {
+            return new BufferedOutputStream(new FileOutputStream(resolve(destination)));
+        }
+    }
+
+    //a file destination is relative to the run directory
+    private static File resolve(String destination) {
+        String runDir = CaGe.getCaGeProperty("CaGe.Generators.RunDir");
+        File file = new File(destination);
+        if (!file.isAbsolute() && runDir != null && runDir.length() > 0) {
+            file = new File(runDir, destination);
+        }
+        return file;
+    }
+
+    /*
+     * Prepares the checkpoint of a new run, which keeps the arguments to
+     * start the run again with.
+     */
+    private void createCheckpoint() {
+        checkpoint = new Checkpoint(checkpointFile);
+        checkpoint.setProperty("arguments", Integer.toString(arguments.length));
+        for (int i = 0; i < arguments.length; ++i) {
+            checkpoint.setProperty("argument." + i, arguments[i]);
+        }
+    }
+
+    private int run() throws Exception {
+        GeneratorInfo generatorInfo = createGeneratorInfo();
+        if (checkpointFile != null && checkpoint == null) {
+            createCheckpoint();
+        }
+        List<CaGeWriter> writers = createWriters(generatorInfo);
+        //a run is only resumed correctly if the graphs come in the same order
+        CaGePipe pipe = checkpoint != null
+                ? CaGePipeFactory.createCaGePipe(generatorInfo.getGenerator(),
+                        CaGe.getCaGeProperty("CaGe.Generators.ErrFile"))
+                : CaGePipeFactory.createUnorderedCaGePipe(generatorInfo.getGenerator(),
+                        CaGe.getCaGeProperty("CaGe.Generators.ErrFile"));
+        pipe.setRunDir(CaGe.getCaGeProperty("CaGe.Generators.RunDir"));
+        pipe.setPath(CaGe.getCaGeProperty("CaGe.Generators.Path"));
+        final DefaultBackgroundRunner runner = new DefaultBackgroundRunner(
+                pipe, generatorInfo, dimension == 2, dimension == 3,
+                writers, destinations);
+        if (checkpoint != null) {
+            runner.setCheckpoint(checkpoint);
+        }
+        runner.addPropertyChangeListener(new PropertyChangeListener() {
+
+            @Override
+            public void propertyChange(PropertyChangeEvent e) {
+                switch (e.getPropertyName()) {
+                    case "exception":
+                        System.err.println("CaGeBatch: " + e.getNewValue());
+                        errorOccurred();
+                        break;
+                    case "crashed":
+                        System.err.println("CaGeBatch: the generator stopped unexpectedly");
+                        errorOccurred();
+                        break;
+                }
+            }
+        });
+        // stop the generator and embedders when we are interrupted
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+
+            @Override
+            public void run() {
+                if (runner.isAlive()) {
+                    interruptOccurred();
+                    runner.abort();
+                }
+            }
+        });
+
+        System.out.println(runner.getInfoText());
+        int resumedGraphNo = 0;
+        if (checkpoint != null && checkpoint.isResumed()) {
+            resumedGraphNo = checkpoint.getGraphNo();
+            System.out.println("resuming after graph " + resumedGraphNo);
+        }
+        long start = System.currentTimeMillis();
+        runner.start();
+        int lastGraphNo = resumedGraphNo;
+        long lastReport = start;
+        while (runner.isAlive()) {
+            runner.join(reportInterval > 0 ? reportInterval : 0);
+            long now = System.currentTimeMillis();
+            if (reportInterval > 0 && runner.isAlive()) {
+                //while the resumed graphs are skipped, the graph number is still 0
+                int graphNo = Math.max(runner.getGraphNo(), lastGraphNo);
+                System.out.println(String.format("%d graphs, %.1f graphs/s",
+                        graphNo, rate(graphNo - lastGraphNo, now - lastReport)));
+                lastGraphNo = graphNo;
+                lastReport = now;
+            }
+        }
+        long elapsed = System.currentTimeMillis() - start;
+        int graphNo = runner.getGraphNo();
+        System.out.println(String.format("%d graphs in %.3f s, %.1f graphs/s",
+                graphNo, elapsed / 1000.0, rate(graphNo - resumedGraphNo, elapsed)));
+        System.out.println(runner.getMetrics().getSummary());
+        if (checkpoint != null && errors() == 0 && !interrupted()) {
+            checkpoint.delete();
+        }
+        return errors();
+    }
+
+    private static double rate(int graphs, long millis) {
+        return millis > 0 ? graphs * 1000.0 / millis : 0.0;
+    }
+
+    private synchronized void errorOccurred() {
+        ++errors;
+    }
+
+    private synchronized int errors() {
+        return errors;
+    }
+
+    private synchronized void interruptOccurred() {
+        interrupted = true;
+    }
+
+    private synchronized boolean interrupted() {
+        return interrupted;
+    }
+
+    private static void usage(String message) {
+        System.err.println("CaGeBatch: " + message);
+        System.err.println("usage: java cage.CaGeBatch [-d 0|2|3] -w format[,gzip|,fast]=destination [-w ...]");
+        System.err.println("           [-e2 embedder] [-e3 embedder] [-f filter] [-r seconds] [-c checkpoint]");
+        System.err.println("           name generator [arguments...]");
+        System.err.println("       java cage.CaGeBatch -R checkpoint");
+    }
+
+    public static void main(String[] args) {
+        // this has to be set before any AWT class is loaded
+        System.setProperty("java.awt.headless", "true");
+        CaGeBatch batch = new CaGeBatch();
+        try {
+            batch.parseArguments(args);
+        } catch (IllegalArgumentException ex) {
+            usage(ex.getMessage());
+            System.exit(2);
+        }
+        int status;
+        try {
+            status = batch.run() == 0 ? 0 : 1;
+        } catch (Exception ex) {
+            System.err.println("CaGeBatch: " + ex);
+            status = 1;
+        }
+        System.exit(status);
+    }
+
+    /**
+     * The input of a command that is run without the native libraries. The
+     * output of the command is copied to standard output, and closing the
+     * stream waits for the command to finish.
+     */
+    private static class ChainOutputStream extends FilterOutputStream {
+
+        private final ProcessChain chain;
+        private final Thread copier;
+
+        ChainOutputStream(final ProcessChain chain) {
+            super(new BufferedOutputStream(chain.getOutputStream()));
+            this.chain = chain;
+            copier = new Thread("Output-Copier") {
+
+                @Override
+                public void run() {
+                    byte[] buffer = new byte[8192];
+                    try (InputStream in = chain.getInputStream()) {
+                        int n;
+                        while ((n = in.read(buffer)) >= 0) {
+                            System.out.write(buffer, 0, n);
+                        }
+                    } catch (IOException ex) {
+                    }
+                    System.out.flush();
+                }
+            };
+            copier.setDaemon(true);
+            copier.start();
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            super.close();
+            try {
+                copier.join();
+            } catch (InterruptedException ex) {
+            }
+            int status = chain.waitForExit();
+            if (status != 0) {
+                throw new IOException(chain + " exited with status " + status);
+            }
+        }
+    }
+}
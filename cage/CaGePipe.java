@@ -18,6 +18,43 @@ public abstract class CaGePipe extends Pipe
 
     public abstract EmbeddableGraph getGraph() throws Exception;
 
+    /**
+     * Returns whether advancing to the next graph would have to wait for the
+     * generator.
+     *
+     * @return <tt>true</tt> if no further generator output is available yet
+     */
+    public abstract boolean wouldBlock();
+
+    /**
+     * Advances by up to <tt>max</tt> graphs in the calling thread and returns
+     * these graphs. This waits for the first graph, but stops as soon as
+     * reading another graph would block. The graphs have consecutive graph
+     * numbers, the last one being {@link #getGraphNo()} when this method
+     * returns. An empty list is returned if the generator has finished.
+     *
+     * This implementation advances one graph at a time, so listeners are
+     * notified of each graph. Subclasses may read the graphs in one go and
+     * only fire a single <tt>graphNo</tt> change for the whole batch.
+     *
+     * @param max The maximum number of graphs to return.
+     * @return The graphs read.
+     * @throws Exception
+     */
+    public List<EmbeddableGraph> nextBatch(int max) throws Exception {
+        List<EmbeddableGraph> graphs = new ArrayList<>();
+        while (graphs.size() < max && isRunning()
+                && (graphs.isEmpty() || !wouldBlock())) {
+            int n = getGraphNo();
+            yieldAndAdvanceBy(1);
+            if (getGraphNo() == n) {
+                break;
+            }
+            graphs.add(getGraph());
+        }
+        return graphs;
+    }
+
     public CaGePipe(String[][] generatorCmds,
             String inFilename, String outFilename, String errFilename)
             throws Exception {
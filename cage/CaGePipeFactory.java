@@ -0,0 +1,92 @@
+package cage;
+
+/**
+ * Utility class for the creation of generator pipes.
+ */
+public class CaGePipeFactory {
+
+    /**
+     * Whether the pure Java pipe should be used even if the native libraries
+     * are available. (Setting <tt>CaGe.Generators.JavaPipe</tt> in CaGe.ini)
+     */
+    private static final boolean preferJavaPipe =
+            CaGe.getCaGePropertyAsBoolean("CaGe.Generators.JavaPipe", false);
+
+    /**
+     * The number of parts in which background runs are split. (Setting
+     * <tt>CaGe.Generators.Partitions</tt> in CaGe.ini, but at most the number
+     * of processors: more copies of the generator only compete for them.)
+     */
+    private static final int partitions = Math.min(
+            CaGe.getCaGePropertyAsInt("CaGe.Generators.Partitions", 1),
+            Runtime.getRuntime().availableProcessors());
+
+    //this class shouldn't be instantiated.
+    private CaGePipeFactory() {
+    }
+
+    /**
+     * Creates a pipe for the given generator commands, writing the generator's
+     * error output to <tt>errFilename</tt>.
+     *
+     * @param generatorCmds The generator commands
+     * @param errFilename The file for the generator's error output
+     * @return a native pipe if the native libraries are available and the
+     *         Java pipe isn't preferred, a {@link JavaCaGePipe} otherwise.
+     * @throws Exception if the pipe can't be created
+     * @see NativeCaGePipe
+     * @see JavaCaGePipe
+     */
+    public static CaGePipe createCaGePipe(String[][] generatorCmds, String errFilename)
+            throws Exception {
+        return createCaGePipe(CaGe.nativesAvailable && !preferJavaPipe,
+                generatorCmds, errFilename);
+    }
+
+    /**
+     * Creates a pipe for a run that doesn't need the graphs in the order of
+     * the generator, like a background run. If <tt>CaGe.Generators.Partitions</tt>
+     * is larger than 1 and the generator can split its output, this is a
+     * {@link PartitionedCaGePipe} that runs that many copies of the generator
+     * at once.
+     *
+     * @param generatorCmds The generator commands
+     * @param errFilename The file for the generator's error output
+     * @return a new pipe
+     * @throws Exception if the pipe can't be created
+     */
+    public static CaGePipe createUnorderedCaGePipe(String[][] generatorCmds, String errFilename)
+            throws Exception {
+        if (partitions > 1 && PartitionedCaGePipe.partition(generatorCmds, 0, partitions) != null) {
+            return new PartitionedCaGePipe(generatorCmds, partitions, errFilename);
+        }
+        return createCaGePipe(generatorCmds, errFilename);
+    }
+
+    /**
+     * Returns the number of parts in which background runs are split.
+     */
+    public static int getPartitions() {
+        return partitions;
+    }
+
+    /**
+     * Creates a pipe for the given generator commands, writing the generator's
+     * error output to <tt>errFilename</tt>.
+     *
+     * @param useNatives Flag to indicate whether a native pipe should be created
+     * @param generatorCmds The generator commands
+     * @param errFilename The file for the generator's error output
+     * @return a new pipe
+     * @throws Exception if the pipe can't be created
+     */
+    public static CaGePipe createCaGePipe(boolean useNatives,
+            String[][] generatorCmds, String errFilename)
+            throws Exception {
+        if (useNatives) {
+            return new NativeCaGePipe(generatorCmds, errFilename);
+        } else {
+            return new JavaCaGePipe(generatorCmds, errFilename);
+        }
+    }
+}
@@ -7,6 +7,7 @@ public class CaGeResult {
     private int saved2DPS = 0;
     private boolean reembed2DMade = false;
     private boolean foldnetMade = false;
+    private HalfEdgeGraph halfEdgeGraph;
 
     public CaGeResult(EmbeddableGraph graph, int graphNo) {
         this.graph = graph;
@@ -21,6 +22,21 @@ public class CaGeResult {
         return graphNo;
     }
 
+    /**
+     * Returns the half-edges and faces of the graph. They are built the
+     * first time they are asked for, and shared by everyone who uses this
+     * result afterwards.
+     *
+     * @throws IllegalArgumentException if the graph has a loop or an edge
+     *         without an edge in the opposite direction
+     */
+    public synchronized HalfEdgeGraph getHalfEdgeGraph() {
+        if (halfEdgeGraph == null || !halfEdgeGraph.isFor(graph)) {
+            halfEdgeGraph = new HalfEdgeGraph(graph);
+        }
+        return halfEdgeGraph;
+    }
+
     public boolean isFoldnetMade() {
         return foldnetMade;
     }
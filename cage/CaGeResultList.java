@@ -1,6 +1,9 @@
 package cage;
 
+import cage.utility.Debug;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.NoSuchElementException;
 
@@ -23,14 +26,50 @@ import java.util.NoSuchElementException;
  * previous() will not return the same element repeatedly,
  * as stipulated in the contract.  Instead, if both calls succeed,
  * the same two elements will be returned in alternation.
+ *
+ * To bound the memory used in long sessions, only the most recent results
+ * are kept in memory. Older results are moved to a temporary file, and are
+ * read back when the cursor reaches them. Graph numbers are looked up in
+ * a hash table, so going to any graph takes constant time.
  */
 public class CaGeResultList {
 
-    private List<CaGeResult> results = new ArrayList<>();
+    private final List<CaGeResult> results = new ArrayList<>();
     private CaGeResult result = null;
     private int cursor = 0,  found,  highestGraphNo = 0,  highestGraphNoIndex = -1;
 
+    /*
+     * Only the last "window" results are kept in memory, the older ones are
+     * moved to a spill file and their place in results is null. The graph
+     * number of each result is kept in graphNos, and graphNoTable is an open
+     * addressing hash table from graph numbers to their index + 1.
+     */
+    private int window;
+    private ResultSpillFile spillFile;
+    private int[] graphNos = new int[16];
+    private long[] offsets = new long[16];
+    private int[] lengths = new int[16];
+    private int[] graphNoTable = new int[32];
+    //the index of a spilled result that was read back to be shown
+    private int loaded = -1;
+
+    /**
+     * Creates a list that keeps as many results in memory as set by
+     * <tt>CaGe.History.Window</tt>, or 1000 if it isn't set.
+     */
     public CaGeResultList() {
+        this(CaGe.getCaGePropertyAsInt("CaGe.History.Window", 1000));
+    }
+
+    /**
+     * Creates a list that keeps the last <tt>window</tt> results in memory,
+     * and moves older results to a temporary file.
+     *
+     * @param window The number of results kept in memory, or 0 to keep
+     *        them all.
+     */
+    public CaGeResultList(int window) {
+        this.window = Math.max(window, 0);
     }
 
     public void addGraph(EmbeddableGraph graph, int graphNo) {
@@ -45,6 +84,17 @@ public class CaGeResultList {
         }
         this.result = result;
         results.add(result);
+        if (graphNos.length == cursor) {
+            graphNos = Arrays.copyOf(graphNos, 2 * cursor);
+            offsets = Arrays.copyOf(offsets, 2 * cursor);
+            lengths = Arrays.copyOf(lengths, 2 * cursor);
+        }
+        graphNos[cursor] = result.getGraphNo();
+        addToTable(result.getGraphNo(), cursor);
+        releaseLoaded();
+        if (window > 0 && cursor >= window) {
+            spill(cursor - window);
+        }
     }
 
     public EmbeddableGraph getGraph() {
@@ -56,19 +106,31 @@ public class CaGeResultList {
     }
 
     public CaGeResult getResult() {
-        try {
-            result = results.get(cursor);
-        } catch (IndexOutOfBoundsException e) {
+        if (cursor < 0 || cursor >= results.size()) {
             return null;
         }
+        if (loaded != cursor) {
+            releaseLoaded();
+        }
+        CaGeResult current = results.get(cursor);
+        if (current == null) {
+            try {
+                current = spillFile.read(offsets[cursor], lengths[cursor]);
+            } catch (IOException ex) {
+                throw new RuntimeException(ex);
+            }
+            results.set(cursor, current);
+            loaded = cursor;
+        }
+        result = current;
         return result;
     }
 
     public boolean findGraphNo(int no) {
-        int n;
-        n = results.size();
-        for (found = 0; found < n; ++found) {
-            if (results.get(found).getGraphNo() == no) {
+        int mask = graphNoTable.length - 1;
+        for (int i = mix(no) & mask; graphNoTable[i] != 0; i = (i + 1) & mask) {
+            if (graphNos[graphNoTable[i] - 1] == no) {
+                found = graphNoTable[i] - 1;
                 return true;
             }
         }
@@ -80,6 +142,90 @@ public class CaGeResultList {
         getResult();
     }
 
+    /**
+     * Closes and deletes the file to which results were moved. The list
+     * can't be used anymore afterwards.
+     */
+    public void close() {
+        if (spillFile != null) {
+            try {
+                spillFile.close();
+            } catch (IOException ex) {
+                Debug.reportException(ex);
+            }
+            spillFile = null;
+        }
+    }
+
+    /*
+     * Moves the result at index to the spill file. If that fails, all
+     * results are kept in memory from then on.
+     */
+    private void spill(int index) {
+        CaGeResult spilled = results.get(index);
+        if (spilled == null) {
+            return;
+        }
+        try {
+            if (spillFile == null) {
+                spillFile = new ResultSpillFile();
+            }
+            offsets[index] = spillFile.write(spilled);
+            lengths[index] = spillFile.getRecordLength();
+        } catch (IOException ex) {
+            Debug.reportException(ex);
+            window = 0;
+            return;
+        }
+        results.set(index, null);
+    }
+
+    /*
+     * Moves a result that was read back to the spill file again. Its record
+     * is only written again if the result changed while it was shown (e.g.
+     * if it was embedded again). If that fails, all results are kept in
+     * memory from then on.
+     */
+    private void releaseLoaded() {
+        if (loaded >= 0) {
+            int index = loaded;
+            loaded = -1;
+            try {
+                offsets[index] = spillFile.rewrite(results.get(index), offsets[index], lengths[index]);
+                lengths[index] = spillFile.getRecordLength();
+            } catch (IOException ex) {
+                Debug.reportException(ex);
+                window = 0;
+                return;
+            }
+            results.set(index, null);
+        }
+    }
+
+    private void addToTable(int no, int index) {
+        if (2 * (index + 1) > graphNoTable.length) {
+            graphNoTable = new int[2 * graphNoTable.length];
+            for (int i = 0; i < index; ++i) {
+                addToTable(graphNos[i], i);
+            }
+        }
+        int mask = graphNoTable.length - 1;
+        int i = mix(no) & mask;
+        while (graphNoTable[i] != 0) {
+            if (graphNos[graphNoTable[i] - 1] == no) {
+                //like a search from the start, we find the first one
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        graphNoTable[i] = index + 1;
+    }
+
+    private static int mix(int no) {
+        int h = no * 0x9e3779b9;
+        return h ^ (h >>> 16);
+    }
+
     public int nextIndex() {
         return cursor + 1;
     }
@@ -99,11 +245,10 @@ public class CaGeResultList {
     }
 
     public int nextGraphNo() {
-        try {
-            return results.get(nextIndex()).getGraphNo();
-        } catch (Exception e) {
+        if (!hasNext()) {
             throw new NoSuchElementException();
         }
+        return graphNos[nextIndex()];
     }
 
     public int previousIndex() {
@@ -125,11 +270,10 @@ public class CaGeResultList {
     }
 
     public int previousGraphNo() {
-        try {
-            return results.get(previousIndex()).getGraphNo();
-        } catch (Exception e) {
+        if (!hasPrevious() || previousIndex() >= results.size()) {
             throw new NoSuchElementException();
         }
+        return graphNos[previousIndex()];
     }
 
     public int highestGraphNo() {
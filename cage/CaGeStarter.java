@@ -5,6 +5,7 @@ import cage.background.DefaultBackgroundRunner;
 import cage.background.TwoViewBatchBackgroundRunner;
 import cage.viewer.CaGeViewer;
 import cage.writer.CaGeWriter;
+import cage.writer.Compression;
 
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
@@ -26,6 +27,7 @@ public class CaGeStarter implements ActionListener {
     private List<CaGeViewer> viewers;
     private List<CaGeWriter> writers;
     private List<String> writeDests;
+    private List<Compression> writeCompressions;
     private int nViewers, nWriters;
     private CaGePipe generatorPipe = null;
     private ResultPanel resultPanel = null;
@@ -84,6 +86,7 @@ public class CaGeStarter implements ActionListener {
         viewers = outputPanel.getViewers();
         writers = outputPanel.getWriters();
         writeDests = outputPanel.getWriteDestinations();
+        writeCompressions = outputPanel.getWriteCompressions();
         try {
             setWriterOutputStreams();
         } catch (Exception ex) {
@@ -127,8 +130,11 @@ public class CaGeStarter implements ActionListener {
             generator = newGenerator;
         }
         try {
-            generatorPipe = new NativeCaGePipe(generator,
-                    CaGe.getCaGeProperty("CaGe.Generators.ErrFile"));
+            String errFile = CaGe.getCaGeProperty("CaGe.Generators.ErrFile");
+            //without viewers the graphs don't have to come in the generator's order
+            generatorPipe = nViewers > 0
+                    ? CaGePipeFactory.createCaGePipe(generator, errFile)
+                    : CaGePipeFactory.createUnorderedCaGePipe(generator, errFile);
             generatorPipe.setRunDir(runDir);
             generatorPipe.setPath(path);
         } catch (Exception e) {
@@ -179,7 +185,8 @@ public class CaGeStarter implements ActionListener {
         ExceptionGroup exceptionGroup = new ExceptionGroup();
         int n = Math.min(writers.size(), writeDests.size());
         for (int i = 0; i < n; ++i) {
-            setWriterOutputStream(writers.get(i), writeDests.get(i), exceptionGroup);
+            setWriterOutputStream(writers.get(i), writeDests.get(i),
+                    writeCompressions.get(i), exceptionGroup);
         }
         if (exceptionGroup.size() > 0) {
             throw exceptionGroup;
@@ -194,10 +201,11 @@ public class CaGeStarter implements ActionListener {
         }
     }
 
-    private void setWriterOutputStream(CaGeWriter writer, String dest, ExceptionGroup exceptionGroup) {
+    private void setWriterOutputStream(CaGeWriter writer, String dest,
+            Compression compression, ExceptionGroup exceptionGroup) {
         try {
-            writer.setOutputStream(Systoolbox.createOutputStream(dest,
-                    CaGe.getCaGeProperty("CaGe.Generators.RunDir")));
+            writer.setOutputStream(compression.wrap(Systoolbox.createOutputStream(dest,
+                    CaGe.getCaGeProperty("CaGe.Generators.RunDir"))));
         } catch (Exception ex) {
             exceptionGroup.add(ex);
         }
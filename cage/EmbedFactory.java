@@ -5,6 +5,14 @@ package cage;
  */
 public class EmbedFactory {
 
+    /**
+     * Whether the Java embedder should be used for the commands it supports
+     * even if the native libraries are available. (Setting
+     * <tt>CaGe.Embedders.Java</tt> in CaGe.ini)
+     */
+    private static final boolean preferJavaEmbedder =
+            CaGe.getCaGePropertyAsBoolean("CaGe.Embedders.Java", false);
+
     /**
      * Creates a native, non-constant embedder that ignores old embeddings and with an intensity factor of 1.0.
      * 
@@ -85,7 +93,9 @@ public class EmbedFactory {
     }
 
     /**
-     * Creates an embedder.
+     * Creates an embedder. Commands that consist of a single <tt>embed</tt>
+     * command are carried out in Java if the native libraries aren't
+     * available or <tt>CaGe.Embedders.Java</tt> is set.
      *
      * @param nativesAvailable Flag to indicate whether native embedders are available
      * @param isConstant Flag to indicate whether this is a constant embedder
@@ -96,11 +106,17 @@ public class EmbedFactory {
      * @param embeddedMode One of the constants defined in {@link Embedder}
      * @return an embedder object
      * @see cage.NativeEmbedEmbedder
+     * @see cage.JavaEmbedEmbedder
      */
     public static Embedder createEmbedder(boolean nativesAvailable, boolean isConstant,
             String[][] embed2D, String[][] embed3D,
             float intensityFactor, int embeddedMode) {
-        if (nativesAvailable) {
+        if ((preferJavaEmbedder || !nativesAvailable)
+                && JavaEmbedEmbedder.supports(embed2D) && JavaEmbedEmbedder.supports(embed3D)) {
+            return new JavaEmbedEmbedder(isConstant,
+                    embed2D, embed3D,
+                    intensityFactor, embeddedMode);
+        } else if (nativesAvailable) {
             return new NativeEmbedEmbedder(isConstant,
                     embed2D, embed3D,
                     intensityFactor, embeddedMode);
@@ -121,6 +137,29 @@ public class EmbedFactory {
             return new NativeEmbedEmbedder(embedder.isConstant(),
                     embedder.getEmbed2DNew(), embedder.getEmbed3DNew(),
                     embedder.getIntensityFactor(), embedder.getMode());
+        } else if(embedder instanceof JavaEmbedEmbedder){
+            return new JavaEmbedEmbedder(embedder.isConstant(),
+                    embedder.getEmbed2DNew(), embedder.getEmbed3DNew(),
+                    embedder.getIntensityFactor(), embedder.getMode());
+        } else {
+            throw new RuntimeException(
+                    "No non-native embedder object implemented yet");
+        }
+    }
+
+    /**
+     * Returns a new embedder with exactly the same settings as the given
+     * embedder, including its run directory and search path. The copy can be
+     * used at the same time as the original, e.g. in another thread.
+     *
+     * @param embedder The embedder to copy
+     * @return an independent copy of <tt>embedder</tt>
+     */
+    public static Embedder copyEmbedder(Embedder embedder){
+        if(embedder instanceof NativeEmbedEmbedder){
+            return ((NativeEmbedEmbedder) embedder).copy();
+        } else if(embedder instanceof JavaEmbedEmbedder){
+            return ((JavaEmbedEmbedder) embedder).copy();
         } else {
             throw new RuntimeException(
                     "No non-native embedder object implemented yet");
@@ -0,0 +1,454 @@
+package cage;
+
+import cage.utility.Debug;
+import cage.writer.ByteSink;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import lisken.systoolbox.ProcessChain;
+import lisken.systoolbox.Systoolbox;
+
+/**
+ * An <tt>embed</tt> process that stays alive and embeds one graph after the
+ * other, so a run doesn't start a process for every graph. The process is
+ * started with the option <tt>-l</tt>: each graph is sent as a record of a
+ * 4 byte length followed by the graph in writegraph format, and the
+ * embedding comes back as such a record. An empty record means that
+ * <tt>embed</tt> couldn't embed the graph.
+ *
+ * A watchdog thread kills the process when a graph takes longer than
+ * <tt>CaGe.Embedders.Timeout</tt> seconds, and closes processes that
+ * haven't been used for a while. A process that was killed, or that
+ * crashed, is started again for the next graph. {@link #abort()} kills the
+ * process if it is embedding a graph.
+ */
+class EmbedProcess {
+
+    private static final long timeout =
+            1000L * CaGe.getCaGePropertyAsInt("CaGe.Embedders.Timeout", 0);
+    // idle processes are closed after this many milliseconds
+    private static final long idleTimeout = 60000;
+    private static final long watchdogInterval = 500;
+
+    private static final List<EmbedProcess> processes = new ArrayList<>();
+    private static Thread watchdog;
+
+    private final String[][] command;
+    private final String runDir, path;
+    private final int dimension;
+    private final ByteSink record = new ByteSink();
+    private final float[] coordinates = new float[3];
+    private byte[] reply = new byte[1024];
+    private ProcessChain chain;
+    private DataOutputStream toEmbed;
+    private DataInputStream fromEmbed;
+    private String errFilename;
+    // the time at which the graph that is being embedded is overdue, or 0
+    private long deadline = 0;
+    private long lastUsed;
+    // why the process was killed while it was embedding a graph
+    private String killReason;
+
+    /**
+     * Makes an embedder process for <tt>embedCmds</tt>, which must be
+     * supported, see {@link #supports(java.lang.String[][])}. The process is
+     * started when the first graph is embedded.
+     *
+     * @param embedCmds The embedder commands.
+     * @param dimension The dimension of the coordinates that are embedded.
+     * @param runDir The run directory, or <code>null</code>.
+     * @param path The search path for <tt>embed</tt>, or <code>null</code>.
+     */
+    EmbedProcess(String[][] embedCmds, int dimension, String runDir, String path) {
+        String[] args = new String[embedCmds[0].length + 1];
+        System.arraycopy(embedCmds[0], 0, args, 0, embedCmds[0].length);
+        args[args.length - 1] = "-l";
+        this.command = new String[][]{args};
+        this.dimension = dimension;
+        this.runDir = runDir;
+        this.path = path;
+    }
+
+    /**
+     * Returns whether <tt>embedCmds</tt> is a single <tt>embed</tt> command
+     * that writes the graph as it was read, in writegraph format. Commands
+     * that renumber the vertices (<tt>-r</tt>), write another graph
+     * (<tt>-A</tt>, <tt>-S</tt>) or another format, or that write the process
+     * id (<tt>-z</tt>) are run as a process per graph.
+     *
+     * @param embedCmds The embedder commands.
+     * @return <tt>true</tt> if the commands can be run by an
+     *         <code>EmbedProcess</code>
+     */
+    static boolean supports(String[][] embedCmds) {
+        if (embedCmds == null || embedCmds.length != 1 || embedCmds[0].length == 0
+                || !new File(embedCmds[0][0]).getName().equals("embed")) {
+            return false;
+        }
+        String[] args = embedCmds[0];
+        for (int i = 1; i < args.length; ++i) {
+            String arg = args[i];
+            if (arg.length() < 2 || arg.charAt(0) != '-') {
+                continue;
+            }
+            switch (arg.charAt(1)) {
+                case 'A':
+                case 'S':
+                case 'h':
+                case 'l':
+                case 'r':
+                case 'z':
+                    return false;
+                case 'w':
+                    String format = arg.length() > 2 ? arg.substring(2)
+                            : i + 1 < args.length ? args[i + 1] : "";
+                    if (!format.startsWith("v")) {
+                        return false;
+                    }
+                    break;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Embeds <tt>graph</tt> and sets its coordinates. The coordinates the
+     * graph already has are sent along, for embedders that keep or refine
+     * them.
+     *
+     * @param graph The graph.
+     * @throws IOException if the graph couldn't be embedded or the process
+     *         was killed while embedding it
+     */
+    void embed(EmbeddableGraph graph) throws IOException {
+        encode(graph);
+        DataOutputStream out;
+        DataInputStream in;
+        synchronized (this) {
+            if (chain != null && chain.checkForExit() != -2) {
+                // died since the last graph, before the watchdog noticed
+                stop();
+            }
+            if (chain == null) {
+                start();
+            }
+            out = toEmbed;
+            in = fromEmbed;
+            killReason = null;
+            lastUsed = System.currentTimeMillis();
+            deadline = timeout > 0 ? lastUsed + timeout : Long.MAX_VALUE;
+        }
+        int length;
+        try {
+            out.writeInt(record.size());
+            record.writeTo(out);
+            out.flush();
+            length = in.readInt();
+            if (length > reply.length) {
+                reply = new byte[Math.max(length, 2 * reply.length)];
+            }
+            in.readFully(reply, 0, length);
+        } catch (IOException ex) {
+            String reason;
+            synchronized (this) {
+                deadline = 0;
+                reason = killReason;
+                stop();
+            }
+            if (reason != null) {
+                throw new IOException(reason);
+            }
+            throw new IOException("embedder process died, it is started again for the next graph", ex);
+        }
+        synchronized (this) {
+            deadline = 0;
+            lastUsed = System.currentTimeMillis();
+        }
+        if (length == 0) {
+            throw new IOException("embedder problem: no output for graph");
+        }
+        decode(graph, length);
+    }
+
+    /**
+     * Kills the process if it is embedding a graph. The graph fails and the
+     * process is started again for the next one.
+     */
+    synchronized void abort() {
+        if (deadline != 0) {
+            kill("embedding aborted");
+        }
+    }
+
+    /**
+     * Ends the process. A later graph starts a new one.
+     */
+    synchronized void close() {
+        if (deadline == 0) {
+            stop();
+        } else {
+            kill("embedder closed");
+        }
+    }
+
+    /**
+     * Returns the standard error output of the process, or <code>null</code>
+     * if there is none.
+     */
+    synchronized String getDiagnosticOutput() {
+        return errFilename == null ? null : Systoolbox.getFileContent(errFilename, true);
+    }
+
+    private void start() throws IOException {
+        errFilename = newErrFilename(runDir == null ? "." : runDir);
+        chain = new ProcessChain(command);
+        chain.setRunDir(runDir);
+        chain.setPath(path);
+        chain.setErrFile(errFilename);
+        try {
+            chain.start();
+        } catch (IOException ex) {
+            chain = null;
+            throw ex;
+        }
+        toEmbed = new DataOutputStream(new BufferedOutputStream(chain.getOutputStream()));
+        fromEmbed = new DataInputStream(new BufferedInputStream(chain.getInputStream()));
+        Debug.print("started embedder process " + chain);
+        register(this);
+    }
+
+    private void kill(String reason) {
+        killReason = reason;
+        if (chain != null) {
+            chain.destroy();
+        }
+    }
+
+    private void stop() {
+        if (chain == null) {
+            return;
+        }
+        unregister(this);
+        try {
+            // embed exits at the end of its input
+            toEmbed.close();
+        } catch (IOException ex) {
+        }
+        try {
+            fromEmbed.close();
+        } catch (IOException ex) {
+        }
+        chain.destroy();
+        chain = null;
+        if (errFilename != null && new File(errFilename).length() == 0) {
+            new File(errFilename).delete();
+        }
+    }
+
+    /*
+     * Checks the time of this process, called by the watchdog.
+     */
+    private synchronized void check(long now) {
+        if (chain == null) {
+            return;
+        }
+        if (deadline != 0) {
+            if (now > deadline) {
+                Debug.print("embedder process timed out");
+                kill("embedder took longer than " + timeout / 1000 + " seconds");
+            }
+        } else if (now - lastUsed > idleTimeout || chain.checkForExit() != -2) {
+            stop();
+        }
+    }
+
+    /*
+     * Writes the graph in writegraph format, like the native library does.
+     */
+    private void encode(EmbeddableGraph graph) {
+        record.reset();
+        boolean hasCoordinates = dimension == 2
+                ? graph.has2DCoordinates() : graph.has3DCoordinates();
+        record.append(">>writegraph").append(dimension).append("d<<\n");
+        int size = graph.getSize();
+        for (int v = 1; v <= size; ++v) {
+            record.append(v);
+            if (hasCoordinates) {
+                if (dimension == 2) {
+                    graph.get2DCoordinates(v, coordinates);
+                } else {
+                    graph.get3DCoordinates(v, coordinates);
+                }
+            }
+            for (int i = 0; i < dimension; ++i) {
+                record.append(' ').append(hasCoordinates ? coordinates[i] : 0.0f);
+            }
+            EdgeIterator edges = graph.getEdgeIterator(v);
+            while (edges.hasNext()) {
+                record.append(' ').append(edges.nextEdge());
+            }
+            record.append('\n');
+        }
+        record.append("0\n");
+    }
+
+    /*
+     * Reads the coordinates from the writegraph reply of embed.
+     */
+    private void decode(EmbeddableGraph graph, int length) throws IOException {
+        Scanner scanner = new Scanner(reply, length);
+        scanner.skipLine();
+        int size = graph.getSize();
+        for (int v = 1; v <= size; ++v) {
+            if (scanner.nextInt() != v) {
+                throw new IOException("embedder problem: graph data doesn't match the graph");
+            }
+            for (int i = 0; i < dimension; ++i) {
+                coordinates[i] = scanner.nextFloat();
+            }
+            if (dimension == 2) {
+                graph.set2DCoordinates(v, coordinates);
+            } else {
+                graph.set3DCoordinates(v, coordinates);
+            }
+            scanner.skipLine();
+        }
+    }
+
+    /*
+     * Chooses a new file for the error output in dir, like the native
+     * library does for each embedder run.
+     */
+    private static String newErrFilename(String dir) throws IOException {
+        synchronized (NativeEmbedEmbedder.class) {
+            for (int i = 1; i < 10000; ++i) {
+                File file = new File(dir, String.format("embed%04d.log", i));
+                if (file.createNewFile()) {
+                    return file.getPath();
+                }
+            }
+        }
+        return null;
+    }
+
+    private static void register(EmbedProcess process) {
+        synchronized (processes) {
+            processes.add(process);
+            if (watchdog == null) {
+                watchdog = new Thread("Embedder-Watchdog") {
+
+                    @Override
+                    public void run() {
+                        watch();
+                    }
+                };
+                watchdog.setDaemon(true);
+                watchdog.start();
+            }
+        }
+    }
+
+    private static void unregister(EmbedProcess process) {
+        synchronized (processes) {
+            processes.remove(process);
+        }
+    }
+
+    private static void watch() {
+        List<EmbedProcess> current = new ArrayList<>();
+        while (true) {
+            try {
+                Thread.sleep(watchdogInterval);
+            } catch (InterruptedException ex) {
+            }
+            synchronized (processes) {
+                current.clear();
+                current.addAll(processes);
+            }
+            long now = System.currentTimeMillis();
+            for (EmbedProcess process : current) {
+                process.check(now);
+            }
+        }
+    }
+
+    /**
+     * Reads numbers from the text of a reply without making strings.
+     */
+    private static class Scanner {
+
+        private final byte[] text;
+        private final int length;
+        private int pos = 0;
+
+        Scanner(byte[] text, int length) {
+            this.text = text;
+            this.length = length;
+        }
+
+        void skipLine() {
+            while (pos < length && text[pos++] != '\n') {
+            }
+        }
+
+        private int start() throws IOException {
+            while (pos < length && (text[pos] == ' ' || text[pos] == '\t')) {
+                ++pos;
+            }
+            if (pos == length || text[pos] == '\n') {
+                throw new IOException("embedder problem: graph data ends early");
+            }
+            return pos;
+        }
+
+        int nextInt() throws IOException {
+            int start = start();
+            int value = 0;
+            while (pos < length && text[pos] >= '0' && text[pos] <= '9') {
+                value = 10 * value + text[pos++] - '0';
+            }
+            if (pos == start) {
+                throw new IOException("embedder problem: number expected");
+            }
+            return value;
+        }
+
+        float nextFloat() throws IOException {
+            int start = start();
+            while (pos < length && text[pos] > ' ') {
+                ++pos;
+            }
+            // embed writes %8.3f, which doesn't need all of parseFloat
+            double value = 0, unit = 0;
+            boolean negative = false;
+            for (int i = start; i < pos; ++i) {
+                byte c = text[i];
+                if (c >= '0' && c <= '9') {
+                    value = 10 * value + (c - '0');
+                    unit *= 10;
+                } else if (c == '.' && unit == 0) {
+                    unit = 1;
+                } else if (c == '-' && i == start) {
+                    negative = true;
+                } else {
+                    try {
+                        return Float.parseFloat(new String(text, start, pos - start, StandardCharsets.ISO_8859_1));
+                    } catch (NumberFormatException ex) {
+                        throw new IOException("embedder problem: number expected", ex);
+                    }
+                }
+            }
+            if (unit > 1) {
+                value /= unit;
+            }
+            return (float) (negative ? -value : value);
+        }
+    }
+}
@@ -1,17 +1,20 @@
 package cage;
 
 import cage.utility.Debug;
+import cage.utility.LatencyRecorder;
 import cage.utility.StackTrace;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.io.IOException;
 
-import lisken.systoolbox.MessageQueue;
+import lisken.systoolbox.BoundedMessageQueue;
+import lisken.systoolbox.MPMCMessageQueue;
 import lisken.systoolbox.Systoolbox;
 
 public class EmbedThread extends Thread {
 
     private static int threadCount = 0;
+    private static final int defaultQueueCapacity = 256;
 
     /**
      * Creates a new thread for running the given <code>Embedder</code> and that
@@ -21,8 +24,24 @@ public class EmbedThread extends Thread {
      * @param priorityOffset The amount by which this thread has its priority lowered.
      */
     public EmbedThread(Embedder embedder, int priorityOffset) {
+        this(embedder, priorityOffset, defaultQueueCapacity);
+    }
+
+    /**
+     * Creates a new thread for running the given <code>Embedder</code> and that
+     * has its priority lowered by <tt>priorityOffset</tt>. At most
+     * <tt>queueCapacity</tt> tasks can wait to be handled: {@link #embed(cage.CaGeResult,
+     * java.beans.PropertyChangeListener, boolean, boolean, boolean)} blocks
+     * while the queue is full.
+     *
+     * @param embedder The <code>Embedder</code> to run in this thread.
+     * @param priorityOffset The amount by which this thread has its priority lowered.
+     * @param queueCapacity The maximum number of waiting tasks.
+     */
+    public EmbedThread(Embedder embedder, int priorityOffset, int queueCapacity) {
         super("Embedder " + ++threadCount);
         this.embedder = embedder;
+        this.queue = new MPMCMessageQueue(queueCapacity + 1, CaGe.debugMode);
         Systoolbox.lowerPriority(this, priorityOffset);
     }
 
@@ -38,7 +57,7 @@ public class EmbedThread extends Thread {
                 task.unfinished = false;
                 task.notifyAll();
             }
-            yield();
+            Thread.yield();
         }
         embeddingFinished();
     }
@@ -70,7 +89,11 @@ public class EmbedThread extends Thread {
         int graphNo = task.result.getGraphNo();
         if (task.do2D && !task.redo2D) {
             try {
+                long start = System.nanoTime();
                 embedder.embed2D(graph);
+                if (embed2DRecorder != null) {
+                    embed2DRecorder.record(System.nanoTime() - start);
+                }
                 task.result.setReembed2DMade(false);
                 task.success = true;
                 checkDiagnosticOutput();
@@ -82,7 +105,11 @@ public class EmbedThread extends Thread {
         }
         if (task.do3D) {
             try {
+                long start = System.nanoTime();
                 embedder.embed3D(graph);
+                if (embed3DRecorder != null) {
+                    embed3DRecorder.record(System.nanoTime() - start);
+                }
                 task.success = true;
                 checkDiagnosticOutput();
             } catch (Exception ex) {
@@ -154,25 +181,29 @@ public class EmbedThread extends Thread {
      */
     public void embed(CaGeResult result, PropertyChangeListener listener,
             boolean do2D, boolean do3D, boolean redo2D) {
+        EmbedTask newTask = new EmbedTask(result, listener, do2D, do3D, redo2D);
+        Debug.print("Created task");
         synchronized (this) {
-            EmbedTask newTask = new EmbedTask(result, listener, do2D, do3D, redo2D);
-            Debug.print("Created task");
-            queue.put(newTask);
-            Debug.print("Queued task");
             ++tasksGiven;
         }
+        // not synchronized: this thread may need its lock to empty the queue
+        queue.put(newTask);
+        Debug.print("Queued task");
     }
 
-    public synchronized void end() {
-        queue.put(null);
+    public void end() {
+        // once this thread has stopped, nobody will make room in its queue
+        while (!queue.offer(null) && isAlive()) {
+            Thread.yield();
+        }
     }
 
-    public synchronized void last() {
+    public void last() {
         setHalted(true);
         end();
     }
 
-    public synchronized void abort() {
+    public void abort() {
         last();
         embedder.abort();
     }
@@ -203,6 +234,19 @@ public class EmbedThread extends Thread {
                 new Boolean(task.success), task.result));
     }
 
+    /**
+     * Sets the recorders that the time of each 2D and 3D embedding is added
+     * to. Either may be <code>null</code>. This has to be done before the
+     * thread is started.
+     *
+     * @param embed2DRecorder The recorder for 2D embeddings.
+     * @param embed3DRecorder The recorder for 3D embeddings.
+     */
+    public void setRecorders(LatencyRecorder embed2DRecorder, LatencyRecorder embed3DRecorder) {
+        this.embed2DRecorder = embed2DRecorder;
+        this.embed3DRecorder = embed3DRecorder;
+    }
+
     public synchronized void setEmbedThreadListener(EmbedThreadListener embedThreadListener) {
         this.embedThreadListener = embedThreadListener;
     }
@@ -212,12 +256,13 @@ public class EmbedThread extends Thread {
     }
     
     private Embedder embedder;
-    private MessageQueue queue = new MessageQueue(CaGe.debugMode);
+    private final BoundedMessageQueue queue;
     private EmbedTask task;
     private boolean halted;
     private int tasksGiven = 0,  tasksCompleted = 0;
     private EmbedThreadListener embedThreadListener;
     private String diagnosticOutput;
+    private LatencyRecorder embed2DRecorder, embed3DRecorder;
 
     /**
      * class to group some settings of a task for the embedder
@@ -36,12 +36,33 @@ public interface EmbeddableGraph {
 
     public EdgeIterator getEdgeIterator(int vertex);
 
+    /**
+     * Returns the neighbour at position <code>index</code> in the list of
+     * edges of <code>vertex</code>, in the same order as the
+     * <code>EdgeIterator</code> for this vertex returns them. Together with
+     * {@link #getValency(int)} this allows iterating over the edges of a
+     * vertex without creating any objects.
+     * @param vertex The vertex whose edges are considered.
+     * @param index The position of the edge, starting from 0.
+     * @return The destination of the <code>index</code>-th edge.
+     */
+    public int getNeighbour(int vertex, int index);
+
     public boolean has2DCoordinates();
 
     public float[] get2DCoordinates(int vertex);
 
     public float[][] get2DCoordinates();
 
+    /**
+     * Copies the 2D coordinates of <code>vertex</code> into
+     * <code>coords</code>, so a single array can be reused for all vertices.
+     * @param vertex The vertex whose coordinates are requested.
+     * @param coords An array of length at least 2.
+     * @return <code>coords</code>
+     */
+    public float[] get2DCoordinates(int vertex, float[] coords);
+
     public void set2DCoordinates(int vertex, float[] coords);
 
     public boolean has3DCoordinates();
@@ -50,5 +71,14 @@ public interface EmbeddableGraph {
 
     public float[][] get3DCoordinates();
 
+    /**
+     * Copies the 3D coordinates of <code>vertex</code> into
+     * <code>coords</code>, so a single array can be reused for all vertices.
+     * @param vertex The vertex whose coordinates are requested.
+     * @param coords An array of length at least 3.
+     * @return <code>coords</code>
+     */
+    public float[] get3DCoordinates(int vertex, float[] coords);
+
     public void set3DCoordinates(int vertex, float[] coords);
 }
@@ -0,0 +1,251 @@
+package cage;
+
+import cage.utility.Debug;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A cache for the coordinates computed by embedders. An embedding is looked
+ * up by a key that is a hash of the embedder command (which includes the
+ * intensity factor), the dimension and the adjacency lists of the graph, so
+ * the same graph embedded by the same embedder is only embedded once.
+ *
+ * The most recently used embeddings are kept in memory; the number of them
+ * is set by <tt>CaGe.EmbedCache.Size</tt>. If <tt>CaGe.EmbedCache.Dir</tt>
+ * names a directory, all embeddings are also stored there, so they survive
+ * a restart of CaGe.
+ *
+ * Only graphs without coordinates of the requested dimension can be looked
+ * up, because for other graphs the result depends on the old coordinates.
+ */
+public class EmbeddingCache {
+
+    private static EmbeddingCache instance;
+    private static boolean configured = false;
+
+    private final Map<String, float[]> embeddings;
+    private final File directory;
+
+    /**
+     * Creates a new cache.
+     *
+     * @param size The number of embeddings kept in memory.
+     * @param directory The directory in which embeddings are stored, or
+     *        <code>null</code> to keep them in memory only.
+     */
+    public EmbeddingCache(final int size, File directory) {
+        this.embeddings = new LinkedHashMap<String, float[]>(16, 0.75f, true) {
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, float[]> eldest) {
+                return size() > size;
+            }
+        };
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+            Debug.print("can't create embedding cache directory " + directory);
+            directory = null;
+        }
+        this.directory = directory;
+    }
+
+    /**
+     * Returns the cache configured in CaGe.ini, or <code>null</code> if
+     * caching is switched off.
+     */
+    public static synchronized EmbeddingCache getInstance() {
+        if (!configured) {
+            configured = true;
+            int size = CaGe.getCaGePropertyAsInt("CaGe.EmbedCache.Size", 0);
+            String dir = CaGe.getCaGeProperty("CaGe.EmbedCache.Dir", "").trim();
+            if (size <= 0 && dir.length() == 0) {
+                return null;
+            }
+            instance = new EmbeddingCache(Math.max(size, 0),
+                    dir.length() == 0 ? null : new File(dir));
+        }
+        return instance;
+    }
+
+    /**
+     * Returns the key under which the embedding of <tt>graph</tt> by
+     * <tt>embedCmd</tt> is stored, or <code>null</code> if it can't be
+     * cached because <tt>graph</tt> already has coordinates of this
+     * dimension.
+     *
+     * @param embedCmd The embedder command, including all arguments.
+     * @param dimension 2 or 3
+     * @param graph The graph to embed.
+     * @return the key for the embedding or <code>null</code>
+     */
+    public static String getKey(String[][] embedCmd, int dimension, EmbeddableGraph graph) {
+        if (dimension == 2 ? graph.has2DCoordinates() : graph.has3DCoordinates()) {
+            return null;
+        }
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            return null;
+        }
+        StringBuilder cmd = new StringBuilder();
+        for (String[] command : embedCmd) {
+            for (String arg : command) {
+                cmd.append(arg).append(' ');
+            }
+            cmd.append('|');
+        }
+        digest.update(cmd.toString().getBytes(StandardCharsets.UTF_8));
+        int size = graph.getSize();
+        byte[] buffer = new byte[4 * (size + 2)];
+        int n = 0;
+        n = putInt(buffer, n, dimension);
+        n = putInt(buffer, n, size);
+        digest.update(buffer, 0, n);
+        for (int v = 1; v <= size; ++v) {
+            int valency = graph.getValency(v);
+            if (buffer.length < 4 * (valency + 1)) {
+                buffer = new byte[4 * (valency + 1)];
+            }
+            n = putInt(buffer, 0, valency);
+            for (int i = 0; i < valency; ++i) {
+                n = putInt(buffer, n, graph.getNeighbour(v, i));
+            }
+            digest.update(buffer, 0, n);
+        }
+        StringBuilder key = new StringBuilder();
+        for (byte b : digest.digest()) {
+            key.append(Character.forDigit((b >> 4) & 0xf, 16));
+            key.append(Character.forDigit(b & 0xf, 16));
+        }
+        return key.toString();
+    }
+
+    private static int putInt(byte[] buffer, int pos, int value) {
+        buffer[pos++] = (byte) (value >>> 24);
+        buffer[pos++] = (byte) (value >>> 16);
+        buffer[pos++] = (byte) (value >>> 8);
+        buffer[pos++] = (byte) value;
+        return pos;
+    }
+
+    /**
+     * Sets the coordinates of <tt>graph</tt> to the embedding stored under
+     * <tt>key</tt>, if there is one.
+     *
+     * @param key The key returned by {@link #getKey(java.lang.String[][], int, cage.EmbeddableGraph)}.
+     * @param dimension 2 or 3
+     * @param graph The graph that was used to compute the key.
+     * @return <tt>true</tt> if the embedding was found
+     */
+    public boolean restore(String key, int dimension, EmbeddableGraph graph) {
+        float[] coordinates;
+        synchronized (embeddings) {
+            coordinates = embeddings.get(key);
+        }
+        if (coordinates == null && directory != null) {
+            coordinates = read(key);
+            if (coordinates != null) {
+                synchronized (embeddings) {
+                    embeddings.put(key, coordinates);
+                }
+            }
+        }
+        int size = graph.getSize();
+        if (coordinates == null || coordinates.length != dimension * size) {
+            return false;
+        }
+        float[] coords = new float[dimension];
+        for (int v = 1; v <= size; ++v) {
+            System.arraycopy(coordinates, dimension * (v - 1), coords, 0, dimension);
+            if (dimension == 2) {
+                graph.set2DCoordinates(v, coords);
+            } else {
+                graph.set3DCoordinates(v, coords);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Stores the coordinates of <tt>graph</tt> under <tt>key</tt>.
+     *
+     * @param key The key returned by {@link #getKey(java.lang.String[][], int, cage.EmbeddableGraph)}
+     *        before <tt>graph</tt> was embedded.
+     * @param dimension 2 or 3
+     * @param graph The embedded graph.
+     */
+    public void store(String key, int dimension, EmbeddableGraph graph) {
+        if (dimension == 2 ? !graph.has2DCoordinates() : !graph.has3DCoordinates()) {
+            return;
+        }
+        int size = graph.getSize();
+        float[] coordinates = new float[dimension * size];
+        float[] coords = new float[dimension];
+        for (int v = 1; v <= size; ++v) {
+            if (dimension == 2) {
+                graph.get2DCoordinates(v, coords);
+            } else {
+                graph.get3DCoordinates(v, coords);
+            }
+            System.arraycopy(coords, 0, coordinates, dimension * (v - 1), dimension);
+        }
+        synchronized (embeddings) {
+            embeddings.put(key, coordinates);
+        }
+        if (directory != null) {
+            write(key, coordinates);
+        }
+    }
+
+    private float[] read(String key) {
+        File file = new File(directory, key);
+        if (!file.isFile()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            float[] coordinates = new float[in.readInt()];
+            for (int i = 0; i < coordinates.length; ++i) {
+                coordinates[i] = in.readFloat();
+            }
+            return coordinates;
+        } catch (IOException ex) {
+            Debug.reportException(ex);
+            return null;
+        }
+    }
+
+    /*
+     * Writes to a temporary file first, so other threads (or other CaGe
+     * processes sharing the directory) never read a partial embedding.
+     */
+    private void write(String key, float[] coordinates) {
+        File file = new File(directory, key);
+        File tmpFile = new File(directory, key + "." + Thread.currentThread().getId() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+            out.writeInt(coordinates.length);
+            for (float coordinate : coordinates) {
+                out.writeFloat(coordinate);
+            }
+        } catch (IOException ex) {
+            Debug.reportException(ex);
+            tmpFile.delete();
+            return;
+        }
+        if (!tmpFile.renameTo(file)) {
+            tmpFile.delete();
+        }
+    }
+}
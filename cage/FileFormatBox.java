@@ -28,20 +28,16 @@ public class FileFormatBox extends JComboBox<String> {
     private int dimension = 0;
     private JTextComponent filenameField;
     private String oldExtension;
+    private String extensionSuffix = "";
     private boolean addExtension;
     
     private final ActionListener actionListener = new ActionListener() {
         @Override
         public void actionPerformed(ActionEvent e) {
-            String currentName = filenameField.getText();
-            if (currentName.trim().startsWith("|")) {
+            if (filenameField.getText().trim().startsWith("|")) {
                 return;
             }
-            int cut = currentName.length() - oldExtension.length() - 1;
-            if (cut >= 0 &&
-                    currentName.substring(cut).equalsIgnoreCase("." + oldExtension)) {
-                filenameField.setText(currentName.substring(0, cut));
-            }
+            removeExtension();
             addExtension();
             if (e.getActionCommand().length() == 0) {
                 filenameField.requestFocus();
@@ -108,7 +104,34 @@ public class FileFormatBox extends JComboBox<String> {
         }
         CaGeWriter writer = getCaGeWriter();
         String extension = writer.getFileExtension();
-        filenameField.setText(currentName + "." + extension);
+        filenameField.setText(currentName + "." + extension + extensionSuffix);
         oldExtension = extension;
     }
+
+    private void removeExtension() {
+        String currentName = filenameField.getText();
+        String extension = "." + oldExtension + extensionSuffix;
+        int cut = currentName.length() - extension.length();
+        if (cut >= 0 &&
+                currentName.substring(cut).equalsIgnoreCase(extension)) {
+            filenameField.setText(currentName.substring(0, cut));
+        }
+    }
+
+    /**
+     * Sets what follows the extension of the format, like <tt>.gz</tt> for
+     * compressed files, and changes the extension in the text field.
+     *
+     * @param suffix The new suffix.
+     */
+    public void setExtensionSuffix(String suffix) {
+        boolean change = addExtension && !filenameField.getText().trim().startsWith("|");
+        if (change) {
+            removeExtension();
+        }
+        extensionSuffix = suffix;
+        if (change) {
+            addExtension();
+        }
+    }
 }
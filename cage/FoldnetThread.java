@@ -1,31 +1,54 @@
 package cage;
 
+import cage.foldnet.FoldingNet;
 import cage.utility.Debug;
+import cage.writer.ByteSink;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
+import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import lisken.systoolbox.BufferedFDOutputStream;
+import lisken.systoolbox.BoundedMessageQueue;
 import lisken.systoolbox.MutableInteger;
-import lisken.systoolbox.MessageQueue;
-import lisken.systoolbox.Pipe;
+import lisken.systoolbox.ProcessChain;
+import lisken.systoolbox.SPSCMessageQueue;
 import lisken.systoolbox.Systoolbox;
 
+/**
+ * Makes folding nets and appends them as PostScript pages to their files.
+ * The nets are made in process by {@link FoldingNet}, several at once on a
+ * pool of <tt>CaGe.Foldnet.Threads</tt> threads, and this thread writes the
+ * pages in the order in which the nets were asked for. The file for each
+ * filename stays open until the thread finishes. A filename starting with
+ * <tt>|</tt> is a command that each page is piped to.
+ */
 public class FoldnetThread extends Thread {
 
+    private static final int threads = CaGe.getCaGePropertyAsInt("CaGe.Foldnet.Threads", 0);
+
     public FoldnetThread() {
         super("Foldnet-Maker");
         Systoolbox.lowerPriority(this, 3);
         foldnetPageNos = new HashMap<>();
+        foldnetFiles = new HashMap<>();
+        pool = new ForkJoinPool(threads > 0 ? threads : Runtime.getRuntime().availableProcessors());
+        //last() relies on this thread taking fewer tasks at once than fit in the queue
+        maxPending = Math.min(2 * pool.getParallelism(), queue.capacity() / 2);
     }
 
     public void setRunDir(String runDir) {
@@ -39,120 +62,172 @@ public class FoldnetThread extends Thread {
     @Override
     public void run() {
         setHalted(false);
-        while (getNextTask()) {
+        boolean lastTask = false;
+        while (!lastTask || !pending.isEmpty()) {
+            // take the tasks that are waiting, but only wait for one if no net is being made
+            while (!lastTask && pending.size() < maxPending) {
+                Object entry;
+                if (pending.isEmpty()) {
+                    try {
+                        entry = queue.get();
+                    } catch (InterruptedException ex) {
+                        entry = null;
+                    }
+                } else if ((entry = queue.poll()) == BoundedMessageQueue.EMPTY) {
+                    break;
+                }
+                if (entry == null) {
+                    Debug.print("Task was null.");
+                    lastTask = true;
+                } else {
+                    Debug.print(entry.toString());
+                    submit((FoldnetTask) entry);
+                }
+            }
             if (halted()) {
                 break;
             }
-            processTask();
+            if (!pending.isEmpty()) {
+                processTask(pending.poll());
+            }
+        }
+        for (FoldnetTask task : pending) {
+            task.net.cancel(true);
         }
+        pending.clear();
+        pool.shutdownNow();
         finishFiles();
     }
 
-    private boolean getNextTask() {
-        Debug.print("Getting ...");
-        try {
-            task = (FoldnetTask) queue.get();
-        } catch (InterruptedException ex) {
-            task = null;
-        }
-		if(task == null)
-			Debug.print("Task was null.");
-		else
-			Debug.print(task.toString());
-        return task != null;
+    private void submit(FoldnetTask task) {
+        final CaGeResult result = task.result;
+        final int maxFacesize = task.maxFacesize;
+        task.net = pool.submit(() -> FoldingNet.unfold(result, maxFacesize));
+        pending.add(task);
     }
 
-    private void processTask() {
-        MutableInteger pageNo;
-        if ((pageNo = foldnetPageNos.get(task.filename)) == null) {
-            pageNo = new MutableInteger(0);
-            foldnetPageNos.put(task.filename, pageNo);
-        }
-        boolean append = pageNo.intValue() > 0;
-        pageNo.setValue(pageNo.intValue() + 1);
-        String command = "mkfoldnet" + (task.maxFacesize > 0 ? " -s " + task.maxFacesize : "") + (append ? " -n" : "") + " -p " + task.result.getGraphNo() + " " + pageNo.intValue();
+    private void processTask(FoldnetTask task) {
+        setCurrentTask(task);
+        FoldingNet net = null;
         try {
-            if (task.filename.trim().charAt(0) == '|') {
-                command += task.filename;
-                task.filename = "/dev/null";
-            }
-            setFoldnetPipe(new Pipe(Systoolbox.parseCmdLine(command),
-                    null, task.filename, append, "/dev/null"));
-            foldnetPipe.setRunDir(runDir);
-            foldnetPipe.setPath(path);
-            foldnetPipe.start();
-            EmbeddableGraph graph = task.result.getGraph();
-            String graphEncoding = "";
-            float[][] coordinate = graph.get3DCoordinates();
-            int graphSize = graph.getSize();
-            for (int i0 = 0, i1 = 1; i0 < graphSize; i0 = i1++) {
-                graphEncoding += Integer.toString(i1);
-                for (int j = 0; j < 3; ++j) {
-                    graphEncoding += " " + coordinate[i0][j];
-                }
-                EdgeIterator edges = graph.getEdgeIterator(i1);
-                while (edges.hasNext()) {
-                    graphEncoding += " " + edges.nextEdge();
-                }
-                graphEncoding += "\n";
+            net = task.net.get();
+        } catch (CancellationException | InterruptedException ex) {
+        } catch (ExecutionException ex) {
+            Debug.print("no foldnet for graph " + task.result.getGraphNo() + ": " + ex.getCause());
+        }
+        boolean succeeded = false;
+        if (net != null) {
+            MutableInteger pageNo;
+            if ((pageNo = foldnetPageNos.get(task.filename)) == null) {
+                pageNo = new MutableInteger(0);
+                foldnetPageNos.put(task.filename, pageNo);
             }
-            graphEncoding += "0\n";
-            try (BufferedFDOutputStream foldnetData = foldnetPipe.getOutputStream()) {
-                foldnetData.write(graphEncoding);
+            page.reset();
+            net.writePage(page, task.result.getGraphNo(), pageNo.intValue() + 1, pageNo.intValue() == 0);
+            try {
+                writePage(task.filename);
+                pageNo.setValue(pageNo.intValue() + 1);
+                succeeded = true;
+            } catch (IOException ex) {
+                Logger.getLogger(FoldnetThread.class.getName()).log(Level.SEVERE, null, ex);
             }
-        } catch (Exception ex) {
-            setFoldnetPipe(null);
-        }
-        Debug.print("foldnet pipe filled.");
-        int status = -1;
-        if (getFoldnetPipe() != null) {
-            status = foldnetPipe.waitForExit();
         }
-        Debug.print("foldnet pipe finished: " + status);
+        Debug.print("foldnet finished: " + succeeded);
         synchronized (this) {
-            setFoldnetPipe(null);
+            currentTask = null;
             ++tasksCompleted;
-            if (status != 0) {
+            if (!succeeded) {
                 ++tasksFailed;
-                pageNo.setValue(pageNo.intValue() - 1);
             }
         }
-        Debug.print("firing ...");
         fireTasksChanged();
-        Debug.print("fired.");
+    }
+
+    /*
+     * Appends the page to the file, or pipes it to the command.
+     */
+    private void writePage(String filename) throws IOException {
+        if (filename.trim().startsWith("|")) {
+            ProcessChain chain = new ProcessChain(
+                    Systoolbox.parseCmdLine(filename.trim().substring(1)));
+            chain.setRunDir(runDir);
+            chain.setPath(path);
+            setFoldnetPipe(chain);
+            try {
+                chain.start();
+                try (OutputStream in = chain.getOutputStream()) {
+                    page.writeTo(in);
+                }
+                try (InputStream out = chain.getInputStream()) {
+                    byte[] buffer = new byte[4096];
+                    while (out.read(buffer) >= 0) {
+                    }
+                }
+                int status = chain.waitForExit();
+                if (status != 0) {
+                    throw new IOException(filename + " exited with status " + status);
+                }
+            } finally {
+                setFoldnetPipe(null);
+            }
+        } else {
+            OutputStream file = foldnetFiles.get(filename);
+            if (file == null) {
+                file = new BufferedOutputStream(new FileOutputStream(filename));
+                foldnetFiles.put(filename, file);
+            }
+            page.writeTo(file);
+            file.flush();
+        }
     }
 
     public void makeFoldnet(CaGeResult result, int maxFacesize, String filename) {
         synchronized (this) {
-            queue.put(new FoldnetTask(result, maxFacesize, filename));
             ++tasksGiven;
         }
+        // the queue has a single producer: the lock keeps callers in line
+        synchronized (queue) {
+            queue.put(new FoldnetTask(result, maxFacesize, filename));
+        }
         fireTasksChanged();
     }
 
     private void finishFiles() {
-        Iterator<String> files = foldnetPageNos.keySet().iterator();
-        while (files.hasNext()) {
-            String filename = files.next();
-            MutableInteger pages = foldnetPageNos.get(filename);
-            if (pages.intValue() > 0) {
-                try (FileWriter file = new FileWriter(filename, true)) {
-                    file.write("\n%%Pages: " + pages.intValue() + "\n%%EOF\n\n");
-                } catch (IOException ex) {
-                    Logger.getLogger(FoldnetThread.class.getName()).log(Level.SEVERE, null, ex);
-                }
+        for (Map.Entry<String, OutputStream> entry : foldnetFiles.entrySet()) {
+            try (OutputStream file = entry.getValue()) {
+                page.reset();
+                FoldingNet.writeTrailer(page, foldnetPageNos.get(entry.getKey()).intValue());
+                page.writeTo(file);
+            } catch (IOException ex) {
+                Logger.getLogger(FoldnetThread.class.getName()).log(Level.SEVERE, null, ex);
             }
         }
+        foldnetFiles.clear();
     }
 
-    public synchronized void last() {
+    /*
+     * This thread only waits for a task while its queue is empty, so the
+     * null task is only needed then. If the queue is full, this thread
+     * takes at most maxPending tasks before it sees that it is halted, and
+     * stops without waiting for the queue, so nobody has to wait for room
+     * in it here.
+     */
+    public void last() {
         setHalted(true);
-        queue.put(null);
+        synchronized (queue) {
+            queue.offer(null);
+        }
     }
 
+    /**
+     * Gives up the net that is written next.
+     */
     public synchronized void abortCurrent() {
+        if (currentTask != null) {
+            currentTask.net.cancel(true);
+        }
         if (foldnetPipe != null) {
-            foldnetPipe.stop();
+            foldnetPipe.destroy();
         }
     }
 
@@ -165,12 +240,12 @@ public class FoldnetThread extends Thread {
         }
     }
 
-    private synchronized void setFoldnetPipe(Pipe foldnetPipe) {
+    private synchronized void setFoldnetPipe(ProcessChain foldnetPipe) {
         this.foldnetPipe = foldnetPipe;
     }
 
-    private synchronized Pipe getFoldnetPipe() {
-        return foldnetPipe;
+    private synchronized void setCurrentTask(FoldnetTask currentTask) {
+        this.currentTask = currentTask;
     }
 
     private synchronized void setHalted(boolean halted) {
@@ -230,14 +305,20 @@ public class FoldnetThread extends Thread {
             }
         }
     }
-    private MessageQueue queue = new MessageQueue(CaGe.debugMode);
-    private FoldnetTask task;
+    private final SPSCMessageQueue queue = new SPSCMessageQueue(256, CaGe.debugMode);
+    private final ForkJoinPool pool;
+    // the tasks whose nets are being made, in the order of their pages
+    private final ArrayDeque<FoldnetTask> pending = new ArrayDeque<>();
+    private final int maxPending;
+    private final ByteSink page = new ByteSink();
+    private FoldnetTask currentTask;
     private boolean halted;
-    private Pipe foldnetPipe = null;
+    private ProcessChain foldnetPipe = null;
     private int tasksGiven = 0,  tasksCompleted = 0,  tasksFailed = 0;
     private final List<PropertyChangeListener> propertyChangeListeners = new ArrayList<>();
     private String runDir,  path;
     private Map<String, MutableInteger> foldnetPageNos;
+    private Map<String, OutputStream> foldnetFiles;
 
     private class FoldnetTask {
 
@@ -257,5 +338,6 @@ public class FoldnetThread extends Thread {
         public CaGeResult result;
         public int maxFacesize;
         public String filename;
+        public Future<FoldingNet> net;
     }
 }
@@ -0,0 +1,683 @@
+package cage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+
+/**
+ * Reads graphs in planar code or writegraph format from a byte channel.
+ * This is a Java port of the readers and parsers in <tt>read_graphs.c</tt>.
+ *
+ * Just like in the native code reading is split in two steps. The reader
+ * ({@link #readNext()}) only segments the data stream into graph encodings,
+ * without further analysis. Such an encoding becomes the "last" encoding
+ * when {@link #commit()} is called, and only then can it be parsed into an
+ * <code>EmbeddableGraph</code> by {@link #takeGraph()}. This way graphs
+ * that are skipped are never decoded. Graphs that are known to be skipped
+ * can also be passed over by {@link #skip(int)}, which doesn't even copy
+ * their encodings.
+ *
+ * The data is read through a reusable direct <code>ByteBuffer</code>.
+ */
+public class GraphStreamReader {
+
+    public static final int UNKNOWN_FORMAT = 0;
+    public static final int WRITEGRAPH_FORMAT = 1;
+    public static final int PLANAR_CODE_FORMAT = 2;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final ReadableByteChannel channel;
+    private final InputStream in;
+    private final ByteBuffer buffer;
+    private boolean eof = false;
+
+    private int format = UNKNOWN_FORMAT;
+    private int dimension = 0;
+    private ByteOrder byteOrder = ByteOrder.nativeOrder();
+    private String header;
+
+    private Encoding current = new Encoding(), last = new Encoding();
+
+    public GraphStreamReader(ReadableByteChannel channel) {
+        this(channel, null);
+    }
+
+    public GraphStreamReader(InputStream in) {
+        this(Channels.newChannel(in), in);
+    }
+
+    private GraphStreamReader(ReadableByteChannel channel, InputStream in) {
+        this.channel = channel;
+        this.in = in;
+        buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        buffer.flip();
+    }
+
+    /**
+     * Returns the format of the data, one of {@link #UNKNOWN_FORMAT},
+     * {@link #WRITEGRAPH_FORMAT} and {@link #PLANAR_CODE_FORMAT}.
+     */
+    public int getFormat() {
+        return format;
+    }
+
+    /**
+     * Returns the dimension given in the writegraph header, or 0 if it isn't
+     * known in advance.
+     */
+    public int getDimension() {
+        return dimension;
+    }
+
+    /**
+     * Returns the header found at the start of the data, or <tt>null</tt> if
+     * there was none.
+     */
+    public String getHeader() {
+        return header;
+    }
+
+    /**
+     * Returns whether the end of the data was reached. This never blocks,
+     * like <tt>feof</tt> it only reports what earlier reads found out.
+     */
+    public boolean isAtEOF() {
+        return eof && !buffer.hasRemaining();
+    }
+
+    /**
+     * Returns whether reading on would have to wait for more data. For a
+     * reader on a channel this is the case as soon as the buffer is empty,
+     * for a reader on an <code>InputStream</code> only if that stream has no
+     * bytes available either.
+     */
+    public boolean wouldBlock() throws IOException {
+        if (buffer.hasRemaining() || eof) {
+            return false;
+        }
+        return in == null || in.available() == 0;
+    }
+
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private boolean fill() throws IOException {
+        if (eof) {
+            return false;
+        }
+        buffer.compact();
+        int n;
+        do {
+            n = channel.read(buffer);
+        } while (n == 0);
+        buffer.flip();
+        if (n < 0) {
+            eof = true;
+            return false;
+        }
+        return true;
+    }
+
+    private int nextByte() throws IOException {
+        if (!buffer.hasRemaining() && !fill()) {
+            return -1;
+        }
+        return buffer.get() & 0xff;
+    }
+
+    private int peekByte() throws IOException {
+        if (!buffer.hasRemaining() && !fill()) {
+            return -1;
+        }
+        return buffer.get(buffer.position()) & 0xff;
+    }
+
+    private static boolean isSpace(int c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f' || c == 0x0b;
+    }
+
+    private static boolean isDigit(int c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * Determines the format of the data. Without a header, data starting with
+     * a space or digit is taken to be writegraph, everything else planar code
+     * in native byte order.
+     *
+     * @return <tt>false</tt> if there is no data at all
+     * @throws IOException if the header isn't recognized
+     */
+    public boolean startReading() throws IOException {
+        if (format != UNKNOWN_FORMAT) {
+            return true;
+        }
+        int c = peekByte();
+        if (c < 0) {
+            return false;
+        }
+        if (isSpace(c) || isDigit(c)) {
+            format = WRITEGRAPH_FORMAT;
+            return true;
+        } else if (c != '>') {
+            format = PLANAR_CODE_FORMAT;
+            return true;
+        }
+        nextByte();
+        if (nextByte() != '>') {
+            throw new IOException("generator problem: unknown output format (start_reading)");
+        }
+        StringBuilder builder = new StringBuilder();
+        while ((c = nextByte()) != '<') {
+            if (c <= 0) {
+                throw new IOException("generator problem: unterminated header (start_reading)");
+            }
+            builder.append((char) c);
+        }
+        if (nextByte() != '<') {
+            throw new IOException("generator problem: unterminated header (start_reading)");
+        }
+        header = ">>" + builder + "<<";
+        String h = builder.toString().trim();
+        if (h.startsWith("writegraph")) {
+            String rest = h.substring("writegraph".length());
+            if (rest.startsWith("_")) {
+                rest = rest.substring(1);
+            }
+            format = WRITEGRAPH_FORMAT;
+            dimension = rest.startsWith("2d") ? 2 : rest.startsWith("3d") ? 3 : 0;
+        } else if (h.startsWith("planar_code") || h.startsWith("embed_code")) {
+            String rest = h.substring(h.indexOf("_code") + "_code".length());
+            format = PLANAR_CODE_FORMAT;
+            if (rest.startsWith("_le") || rest.startsWith(" le")) {
+                byteOrder = ByteOrder.LITTLE_ENDIAN;
+            } else if (rest.startsWith("_be") || rest.startsWith(" be")) {
+                byteOrder = ByteOrder.BIG_ENDIAN;
+            }
+        } else {
+            throw new IOException("generator problem: unknown output format " + header + " (start_reading)");
+        }
+        return true;
+    }
+
+    /**
+     * Reads the encoding of the next graph, without decoding it.
+     *
+     * @return <tt>false</tt> if the data ended before a complete graph
+     *         could be read
+     */
+    public boolean readNext() throws IOException {
+        current.clear();
+        switch (format) {
+            case WRITEGRAPH_FORMAT:
+                return readWritegraph(current);
+            case PLANAR_CODE_FORMAT:
+                return readPlanar(current);
+            default:
+                throw new IOException("generator problem: illegal format (reader)");
+        }
+    }
+
+    /**
+     * Skips up to <tt>max</tt> graphs without storing them, and returns the
+     * number of graphs skipped. This only scans the buffered data: for planar
+     * code it counts the zeros that end the vertices, for writegraph it looks
+     * for the line with a single 0. A graph is only skipped if it lies in the
+     * buffer completely and so does the graph after it, so the last complete
+     * graph is never skipped, even if the data ends in the middle of the
+     * next one. If 0 is returned, the next graph has to be read with
+     * {@link #readNext()}, which also refills the buffer.
+     *
+     * @param max The maximum number of graphs to skip.
+     * @return The number of graphs skipped.
+     */
+    public int skip(int max) {
+        int skipped = 0;
+        int p = buffer.position();
+        int end = skipGraph(p);
+        while (skipped < max && end >= 0) {
+            // the next graph must be complete too, in case the data ends in it
+            int next = skipGraph(end);
+            if (next < 0) {
+                break;
+            }
+            p = end;
+            end = next;
+            ++skipped;
+        }
+        buffer.position(p);
+        return skipped;
+    }
+
+    /*
+     * Returns the position after the graph at p, or -1 if that isn't in the
+     * buffer.
+     */
+    private int skipGraph(int p) {
+        switch (format) {
+            case WRITEGRAPH_FORMAT:
+                return skipWritegraph(p);
+            case PLANAR_CODE_FORMAT:
+                return skipPlanar(p);
+            default:
+                return -1;
+        }
+    }
+
+    /*
+     * Returns the position of the first digit of the graph after the one at
+     * p, or -1 if that isn't in the buffer.
+     */
+    private int skipWritegraph(int p) {
+        int limit = buffer.limit();
+        int status = 0;
+        while (p < limit) {
+            int c = buffer.get(p++) & 0xff;
+            switch (status) {
+                case 0:
+                    if (isDigit(c)) {
+                        status = 1;
+                    }
+                    break;
+                case 1:
+                    if (c == '\n') {
+                        status = 2;
+                    }
+                    break;
+                case 2:
+                    if (c == '0') {
+                        status = 3;
+                    } else if (!isSpace(c)) {
+                        status = 1;
+                    }
+                    break;
+                case 3:
+                    if (c == '\n') {
+                        status = 4;
+                    } else if (!isSpace(c)) {
+                        status = 1;
+                    }
+                    break;
+            }
+            if (status == 4) {
+                for (; p < limit; ++p) {
+                    if (isDigit(buffer.get(p) & 0xff)) {
+                        return p;
+                    }
+                }
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    /*
+     * Returns the position after the graph at p, or -1 if it doesn't end in
+     * the buffer.
+     */
+    private int skipPlanar(int p) {
+        int limit = buffer.limit();
+        if (p >= limit) {
+            return -1;
+        }
+        if (buffer.get(p) != 0) {
+            int vertices = buffer.get(p++) & 0xff;
+            while (vertices > 0) {
+                if (p >= limit) {
+                    return -1;
+                }
+                if (buffer.get(p++) == 0) {
+                    --vertices;
+                }
+            }
+            return p;
+        }
+        ++p;
+        if (p + 2 > limit) {
+            return -1;
+        }
+        int b1 = buffer.get(p) & 0xff, b2 = buffer.get(p + 1) & 0xff;
+        int vertices = byteOrder == ByteOrder.BIG_ENDIAN ? (b1 << 8) | b2 : (b2 << 8) | b1;
+        p += 2;
+        while (vertices > 0) {
+            if (p + 2 > limit) {
+                return -1;
+            }
+            if (buffer.get(p) == 0 && buffer.get(p + 1) == 0) {
+                --vertices;
+            }
+            p += 2;
+        }
+        return p;
+    }
+
+    /**
+     * Makes the graph read by the last successful call to {@link #readNext()}
+     * the one that will be returned by {@link #takeGraph()}.
+     */
+    public void commit() {
+        Encoding e = last;
+        last = current;
+        current = e;
+        current.clear();
+    }
+
+    /**
+     * Returns whether there is a committed graph that hasn't been taken yet.
+     */
+    public boolean hasGraph() {
+        return last.length > 0;
+    }
+
+    /**
+     * Decodes the committed graph. Each committed graph can be taken only once.
+     *
+     * @return the decoded graph
+     * @throws IOException if there is no graph or the data is corrupt
+     */
+    public EmbeddableGraph takeGraph() throws IOException {
+        if (last.length == 0) {
+            throw new IOException("No new graph to hand out (yet)");
+        }
+        try {
+            switch (format) {
+                case WRITEGRAPH_FORMAT:
+                    return parseWritegraph(last);
+                case PLANAR_CODE_FORMAT:
+                    return parsePlanar(last);
+                default:
+                    throw new IOException("generator problem: illegal format after reading");
+            }
+        } finally {
+            last.clear();
+        }
+    }
+
+    private boolean readWritegraph(Encoding encoding) throws IOException {
+        int c, status = 0;
+        while ((c = nextByte()) >= 0) {
+            encoding.add((byte) c);
+            switch (status) {
+                case 0:
+                    if (isDigit(c)) {
+                        status = 1;
+                    }
+                    break;
+                case 1:
+                    if (c == '\n') {
+                        status = 2;
+                    }
+                    break;
+                case 2:
+                    if (c == '0') {
+                        status = 3;
+                    } else if (!isSpace(c)) {
+                        status = 1;
+                    }
+                    break;
+                case 3:
+                    if (c == '\n') {
+                        status = 4;
+                    } else if (!isSpace(c)) {
+                        status = 1;
+                    }
+                    break;
+            }
+            if (status == 4) {
+                // skip to the first digit of the next graph
+                while ((c = peekByte()) >= 0 && !isDigit(c)) {
+                    nextByte();
+                }
+                break;
+            }
+        }
+        return status == 2 || status == 4;
+    }
+
+    private int readWord(boolean singleByte) throws IOException {
+        int b1 = nextByte();
+        if (singleByte || b1 < 0) {
+            return b1;
+        }
+        int b2 = nextByte();
+        if (b2 < 0) {
+            return -1;
+        }
+        return byteOrder == ByteOrder.BIG_ENDIAN ? (b1 << 8) | b2 : (b2 << 8) | b1;
+    }
+
+    private boolean readPlanar(Encoding encoding) throws IOException {
+        int c = peekByte();
+        if (c < 0) {
+            return false;
+        }
+        boolean singleByte = c != 0;
+        if (!singleByte) {
+            nextByte();
+        }
+        int vertices = readWord(singleByte);
+        if (vertices < 0) {
+            return false;
+        }
+        encoding.add(vertices);
+        while (vertices > 0) {
+            int n = readWord(singleByte);
+            if (n < 0) {
+                return false;
+            }
+            encoding.add(n);
+            if (n == 0) {
+                --vertices;
+            }
+        }
+        // find out whether this was the last graph
+        peekByte();
+        return true;
+    }
+
+    private EmbeddableGraph parsePlanar(Encoding encoding) {
+        int[] code = encoding.code;
+        int vertices = code[0];
+        JavaEmbeddableGraph graph = new JavaEmbeddableGraph(vertices, encoding.length - 1 - vertices);
+        int i = 1;
+        for (int v = 1; v <= vertices; ++v) {
+            graph.addVertex();
+            int w;
+            while ((w = code[i++]) != 0) {
+                graph.addEdge(w);
+            }
+        }
+        return graph;
+    }
+
+    private EmbeddableGraph parseWritegraph(Encoding encoding) throws IOException {
+        byte[] text = encoding.text;
+        int end = encoding.length;
+        int graphDimension = dimension;
+        double[] coords = new double[Math.max(graphDimension, 3)];
+        float[] coords2D = new float[2], coords3D = new float[3];
+        JavaEmbeddableGraph graph = new JavaEmbeddableGraph();
+        Tokenizer t = new Tokenizer(text);
+        int vertex = 0;
+        int lineStart = 0;
+        while (lineStart < end) {
+            int lineEnd = lineStart;
+            while (lineEnd < end && text[lineEnd] != '\n' && text[lineEnd] != '\r') {
+                ++lineEnd;
+            }
+            t.reset(lineStart, lineEnd);
+            lineStart = lineEnd + 1;
+
+            // parse vertex number
+            if (!t.nextToken() || !t.isInteger()) {
+                continue;
+            }
+            int i = t.intValue();
+            if (i == 0) {
+                break;
+            } else if (i != vertex + 1) {
+                continue;
+            }
+            vertex = i;
+
+            // parse coordinates, find dimension if initially unknown
+            int d;
+            if (graphDimension > 0) {
+                for (d = 0; d < graphDimension; ++d) {
+                    if (!t.nextToken() || !t.isNumber()) {
+                        throw new IOException("generator problem: graph data doesn't match format (parser)");
+                    }
+                    coords[d] = t.doubleValue();
+                }
+            } else {
+                for (d = 0; t.nextToken(); ++d) {
+                    // an integer larger than 1 is taken to be the first neighbour
+                    if (!t.isNumber() || (t.isInteger() && t.intValue() > 1)) {
+                        t.pushBack();
+                        break;
+                    }
+                    if (d == coords.length) {
+                        coords = Arrays.copyOf(coords, 2 * d);
+                    }
+                    coords[d] = t.doubleValue();
+                }
+                graphDimension = d;
+            }
+            graph.addVertex();
+            if (graphDimension == 2) {
+                coords2D[0] = (float) coords[0];
+                coords2D[1] = (float) coords[1];
+                graph.set2DCoordinates(vertex, coords2D);
+            } else if (graphDimension == 3) {
+                coords3D[0] = (float) coords[0];
+                coords3D[1] = (float) coords[1];
+                coords3D[2] = (float) coords[2];
+                graph.set3DCoordinates(vertex, coords3D);
+            }
+
+            // read connection list
+            while (t.nextToken() && t.isInteger()) {
+                graph.addEdge(t.intValue());
+            }
+        }
+        return graph;
+    }
+
+    /**
+     * Splits a line of writegraph text into whitespace separated tokens.
+     */
+    private static class Tokenizer {
+
+        private final byte[] text;
+        private int pos, end, tokenStart, tokenEnd;
+
+        Tokenizer(byte[] text) {
+            this.text = text;
+        }
+
+        void reset(int start, int end) {
+            this.pos = start;
+            this.end = end;
+        }
+
+        boolean nextToken() {
+            while (pos < end && isSpace(text[pos])) {
+                ++pos;
+            }
+            if (pos >= end) {
+                return false;
+            }
+            tokenStart = pos;
+            while (pos < end && !isSpace(text[pos])) {
+                ++pos;
+            }
+            tokenEnd = pos;
+            return true;
+        }
+
+        void pushBack() {
+            pos = tokenStart;
+        }
+
+        boolean isInteger() {
+            int i = tokenStart;
+            if (text[i] == '-' || text[i] == '+') {
+                ++i;
+            }
+            if (i == tokenEnd) {
+                return false;
+            }
+            for (; i < tokenEnd; ++i) {
+                if (!isDigit(text[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        int intValue() {
+            int i = tokenStart, value = 0;
+            boolean negative = text[i] == '-';
+            if (negative || text[i] == '+') {
+                ++i;
+            }
+            for (; i < tokenEnd; ++i) {
+                value = 10 * value + (text[i] - '0');
+            }
+            return negative ? -value : value;
+        }
+
+        boolean isNumber() {
+            if (isInteger()) {
+                return true;
+            }
+            try {
+                doubleValue();
+                return true;
+            } catch (NumberFormatException ex) {
+                return false;
+            }
+        }
+
+        double doubleValue() {
+            if (isInteger()) {
+                return intValue();
+            }
+            return Double.parseDouble(new String(text, tokenStart, tokenEnd - tokenStart));
+        }
+    }
+
+    /**
+     * The undecoded bytes (writegraph) or code words (planar code) of one graph.
+     */
+    private static class Encoding {
+
+        byte[] text = new byte[256];
+        int[] code = new int[256];
+        int length = 0;
+
+        void clear() {
+            length = 0;
+        }
+
+        void add(byte b) {
+            if (length == text.length) {
+                text = Arrays.copyOf(text, 2 * length);
+            }
+            text[length++] = b;
+        }
+
+        void add(int word) {
+            if (length == code.length) {
+                code = Arrays.copyOf(code, 2 * length);
+            }
+            code[length++] = word;
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package cage;
+
+import java.util.Arrays;
+
+/**
+ * The half-edges and faces of an {@link EmbeddableGraph}, built once from
+ * its rotation system in time and memory linear in the number of edges.
+ * A graph's structure is usually taken from its result with
+ * {@link CaGeResult#getHalfEdgeGraph()}, so all writers and viewers of the
+ * result share it.
+ *
+ * The half-edges are numbered per vertex in the order of the graph's
+ * adjacency lists: the half-edge from <tt>v</tt> to its neighbour at
+ * position <tt>index</tt> has number <tt>offset[v] + index</tt>, and the
+ * half-edges run from 0 to {@link #getEdgeCount()} - 1.
+ *
+ * The faces are those of the rotation system, i.e. following a half-edge
+ * <tt>v1 v2</tt>, the next half-edge of the face starts at <tt>v2</tt> and
+ * goes to the neighbour of <tt>v2</tt> that precedes <tt>v1</tt>. For a
+ * graph embedded clockwise, each face lies on the right of its half-edges.
+ * The faces are numbered in the order of their lowest half-edge, and each
+ * face starts at that half-edge.
+ */
+public final class HalfEdgeGraph {
+
+    private final EmbeddableGraph graph;
+    private final int n;
+    // the half-edges of vertex v are offset[v]..offset[v+1]-1
+    private final int[] offset;
+    private final int[] target;
+    private final int[] reverse;
+    // the half-edges of face f are faceEdges[faceStart[f]..faceStart[f+1]-1]
+    private final int[] faceEdges;
+    private final int[] faceStart;
+    private final int[] faceOf;
+    private final int[] positionInFace;
+
+    /**
+     * Builds the half-edges and faces of <tt>graph</tt>.
+     *
+     * @throws IllegalArgumentException if some edge of the graph doesn't
+     *         have an edge in the opposite direction, or is a loop
+     */
+    public HalfEdgeGraph(EmbeddableGraph graph) {
+        this.graph = graph;
+        n = graph.getSize();
+        offset = new int[n + 2];
+        for (int v = 1; v <= n; v++) {
+            offset[v + 1] = offset[v] + graph.getValency(v);
+        }
+        int edges = offset[n + 1];
+        int[] source = new int[edges];
+        target = new int[edges];
+        for (int v = 1; v <= n; v++) {
+            for (int e = offset[v]; e < offset[v + 1]; e++) {
+                source[e] = v;
+                target[e] = graph.getNeighbour(v, e - offset[v]);
+                if (target[e] == v) {
+                    // the sorts below would pair each half of a loop with itself
+                    throw new IllegalArgumentException("vertex " + v + " has a loop");
+                }
+            }
+        }
+        reverse = reverseEdges(source);
+
+        faceOf = new int[edges];
+        positionInFace = new int[edges];
+        faceEdges = new int[edges];
+        int[] starts = new int[edges + 1];
+        Arrays.fill(faceOf, -1);
+        int faces = 0;
+        int k = 0;
+        for (int e0 = 0; e0 < edges; e0++) {
+            if (faceOf[e0] >= 0) {
+                continue;
+            }
+            starts[faces] = k;
+            int e = e0;
+            do {
+                faceOf[e] = faces;
+                positionInFace[e] = k - starts[faces];
+                faceEdges[k++] = e;
+                e = getNextInFace(e);
+            } while (e != e0);
+            faces++;
+        }
+        starts[faces] = k;
+        faceStart = Arrays.copyOf(starts, faces + 1);
+    }
+
+    /**
+     * Pairs each half-edge with the half-edge in the opposite direction. The
+     * half-edges are sorted by (target, source) and by (source, target) with
+     * two stable counting sorts: position k of the first order then holds
+     * the reverse of the half-edge at position k of the second order.
+     */
+    private int[] reverseEdges(int[] source) {
+        int edges = source.length;
+        int[] all = new int[edges];
+        for (int e = 0; e < edges; e++) {
+            all[e] = e;
+        }
+        int[] byTarget = countingSort(all, target);
+        int[] bySource = countingSort(byTarget, source);
+        int[] result = new int[edges];
+        for (int k = 0; k < edges; k++) {
+            int e = bySource[k];
+            int r = byTarget[k];
+            if (source[r] != target[e] || target[r] != source[e]) {
+                throw new IllegalArgumentException("edge " + source[e] + "->"
+                        + target[e] + " exists, but not the edge in the opposite direction");
+            }
+            result[e] = r;
+        }
+        return result;
+    }
+
+    private int[] countingSort(int[] edges, int[] key) {
+        int[] start = new int[n + 2];
+        for (int e : edges) {
+            start[key[e] + 1]++;
+        }
+        for (int v = 1; v <= n + 1; v++) {
+            start[v] += start[v - 1];
+        }
+        int[] sorted = new int[edges.length];
+        for (int e : edges) {
+            sorted[start[key[e]]++] = e;
+        }
+        return sorted;
+    }
+
+    /**
+     * Returns whether this structure was built for <tt>graph</tt>.
+     */
+    public boolean isFor(EmbeddableGraph graph) {
+        return this.graph == graph && n == graph.getSize();
+    }
+
+    /**
+     * Returns the number of vertices.
+     */
+    public int getSize() {
+        return n;
+    }
+
+    /**
+     * Returns the number of half-edges, which is twice the number of edges.
+     */
+    public int getEdgeCount() {
+        return target.length;
+    }
+
+    /**
+     * Returns the half-edge from <tt>v</tt> to its neighbour at position
+     * <tt>index</tt>.
+     */
+    public int getEdge(int v, int index) {
+        return offset[v] + index;
+    }
+
+    public int getValency(int v) {
+        return offset[v + 1] - offset[v];
+    }
+
+    public int getSource(int e) {
+        return target[reverse[e]];
+    }
+
+    public int getTarget(int e) {
+        return target[e];
+    }
+
+    /**
+     * Returns the half-edge in the opposite direction of <tt>e</tt>.
+     */
+    public int getReverse(int e) {
+        return reverse[e];
+    }
+
+    /**
+     * Returns the half-edge that follows <tt>e</tt> in its face: from the
+     * target of <tt>e</tt> to the neighbour that precedes the source of
+     * <tt>e</tt>.
+     */
+    public int getNextInFace(int e) {
+        int r = reverse[e];
+        int v = target[e];
+        int valency = offset[v + 1] - offset[v];
+        return offset[v] + (r - offset[v] + valency - 1) % valency;
+    }
+
+    /**
+     * Returns the number of faces.
+     */
+    public int getFaceCount() {
+        return faceStart.length - 1;
+    }
+
+    /**
+     * Returns the face of half-edge <tt>e</tt>.
+     */
+    public int getFace(int e) {
+        return faceOf[e];
+    }
+
+    /**
+     * Returns the number of half-edges of face <tt>f</tt>, which is also its
+     * number of vertices.
+     */
+    public int getFaceSize(int f) {
+        return faceStart[f + 1] - faceStart[f];
+    }
+
+    /**
+     * Returns the <tt>i</tt>-th half-edge of face <tt>f</tt>, counting from
+     * 0 at its lowest half-edge.
+     */
+    public int getFaceEdge(int f, int i) {
+        return faceEdges[faceStart[f] + i];
+    }
+
+    /**
+     * Returns the <tt>i</tt>-th half-edge of the face of <tt>e</tt>,
+     * counting from 0 at <tt>e</tt>.
+     */
+    public int getEdgeInFace(int e, int i) {
+        int f = faceOf[e];
+        return faceEdges[faceStart[f] + (positionInFace[e] + i) % getFaceSize(f)];
+    }
+
+    /**
+     * Returns the number of faces with <tt>size</tt> vertices.
+     */
+    public int countFaces(int size) {
+        int count = 0;
+        for (int f = 0; f + 1 < faceStart.length; f++) {
+            if (faceStart[f + 1] - faceStart[f] == size) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of faces of each size: element <tt>s</tt> of the
+     * result is the number of faces with <tt>s</tt> vertices.
+     */
+    public int[] getFaceSizeCounts() {
+        int max = 0;
+        for (int f = 0; f + 1 < faceStart.length; f++) {
+            max = Math.max(max, faceStart[f + 1] - faceStart[f]);
+        }
+        int[] counts = new int[max + 1];
+        for (int f = 0; f + 1 < faceStart.length; f++) {
+            counts[faceStart[f + 1] - faceStart[f]]++;
+        }
+        return counts;
+    }
+}
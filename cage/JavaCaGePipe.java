@@ -0,0 +1,377 @@
+package cage;
+
+import cage.utility.Debug;
+import cage.utility.StackTrace;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import lisken.systoolbox.ProcessChain;
+import lisken.systoolbox.Systoolbox;
+
+/**
+ * A <code>CaGePipe</code> that doesn't use any native code. The generator
+ * commands are started as a {@link ProcessChain} and their output is read
+ * and decoded by a {@link GraphStreamReader}, which hands out
+ * {@link JavaEmbeddableGraph}s.
+ *
+ * Apart from that, this class behaves exactly like {@link NativeCaGePipe}:
+ * advancing happens either in the calling thread
+ * ({@link #yieldAndAdvanceBy(int)}) or in a separate flowing thread
+ * ({@link #advanceBy(int)}), and the same property changes are fired.
+ */
+public class JavaCaGePipe extends CaGePipe {
+
+    final static int priorityOffset = 2;
+    final static int defaultGraphNoFireInterval = 100;
+    static private int flowThreadCount = 0;
+    private final String[][] generatorCmds;
+    private ProcessChain chain;
+    private GraphStreamReader reader;
+    private boolean advanced1;
+    private int graphNoFireInterval = defaultGraphNoFireInterval;
+    private FlowingThread flowingThread = null;
+    private int advanceTarget = 0;
+
+    public JavaCaGePipe(String[][] generatorCmds,
+            String inFilename, String outFilename, String errFilename)
+            throws Exception {
+        super(generatorCmds, inFilename, outFilename, errFilename);
+        this.generatorCmds = generatorCmds;
+    }
+
+    public JavaCaGePipe(String[][] generatorCmds)
+            throws Exception {
+        this(generatorCmds, "/dev/null", null, null);
+    }
+
+    public JavaCaGePipe(String[][] generatorCmds, String errFilename)
+            throws Exception {
+        this(generatorCmds, "/dev/null", null, errFilename);
+    }
+
+    @Override
+    protected void startPipe(Object[] cmds, int i_fd, int o_fd,
+            byte[] i_name, byte[] o_name, boolean o_append, byte[] e_name) {
+        if (chain != null) {
+            chain.destroy();
+        }
+        chain = new ProcessChain(generatorCmds);
+        chain.setRunDir(runDir == null ? null : new String(runDir));
+        chain.setPath(path == null ? null : new String(path));
+        chain.setInFile(i_name == null ? null : new String(i_name));
+        chain.setErrFile(e_name == null ? null : new String(e_name));
+        try {
+            chain.start();
+            reader = new GraphStreamReader(chain.getInputStream());
+        } catch (IOException ex) {
+            reader = null;
+            throw new RuntimeException(ex);
+        }
+        advanced1 = false;
+    }
+
+    @Override
+    public int checkForExit() {
+        return chain == null ? -1 : chain.checkForExit();
+    }
+
+    @Override
+    public int waitForExit() {
+        return chain == null ? -1 : chain.waitForExit();
+    }
+
+    @Override
+    protected void finalizePipe() {
+        if (chain != null) {
+            chain.destroy();
+        }
+    }
+
+    @Override
+    public synchronized EmbeddableGraph getGraph() throws Exception {
+        if (flowing) {
+            throw new IOException("Don't retrieve a graph while flowing");
+        }
+        if (reader == null || !reader.hasGraph()) {
+            throw new IOException("No new graph to hand out (yet)");
+        }
+        return reader.takeGraph();
+    }
+
+    @Override
+    public boolean wouldBlock() {
+        try {
+            return reader == null || reader.wouldBlock();
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Reads and decodes the graphs directly in the calling thread. No
+     * <tt>flowing</tt> changes are fired and only one <tt>graphNo</tt> change
+     * for the whole batch.
+     */
+    @Override
+    public List<EmbeddableGraph> nextBatch(int max) throws Exception {
+        List<EmbeddableGraph> graphs = new ArrayList<>();
+        GraphStreamReader r = reader;
+        if (r == null || !isRunning()) {
+            return graphs;
+        }
+        if (isFlowing()) {
+            throw new IOException("Don't retrieve graphs while flowing");
+        }
+        if (r.getFormat() == GraphStreamReader.UNKNOWN_FORMAT) {
+            r.startReading();
+        }
+        while (graphs.size() < max && (graphs.isEmpty() || !r.wouldBlock())) {
+            if (!advanced1) {
+                if (r.getFormat() == GraphStreamReader.UNKNOWN_FORMAT || !r.readNext()) {
+                    break;
+                }
+            }
+            synchronized (this) {
+                advanced1 = false;
+                r.commit();
+                ++graphNo;
+            }
+            graphs.add(r.takeGraph());
+        }
+        boolean finished = !advanced1 && r.isAtEOF();
+        if (finished) {
+            setRunning(false);
+            r.close();
+        }
+        if (!graphs.isEmpty()) {
+            fireGraphNoChanged();
+        }
+        if (finished) {
+            fireRunningChanged();
+        }
+        return graphs;
+    }
+
+    @Override
+    public void setGraphNoFireInterval(int interval) {
+        graphNoFireInterval = interval != 0 ? interval : defaultGraphNoFireInterval;
+    }
+
+    private synchronized void setAdvanceTarget(int advanceTarget) {
+        this.advanceTarget = advanceTarget;
+    }
+
+    private synchronized int getAdvanceTarget() {
+        return advanceTarget;
+    }
+
+    private boolean shortOfAdvanceTarget(int n) {
+        int target = getAdvanceTarget();
+        return target < 0 || n < target;
+    }
+
+    class FlowingThread extends Thread {
+
+        boolean moreWork;
+
+        public FlowingThread() {
+            super("JavaFlowingThread-" + (++flowThreadCount));
+        }
+
+        @Override
+        public void run() {
+            while (waitForWork()) {
+                startAdvancing();
+            }
+        }
+
+        synchronized boolean waitForWork() {
+            try {
+                if (!moreWork) {
+                    wait();
+                }
+                moreWork = false;
+                return true;
+            } catch (InterruptedException ex) {
+                return false;
+            }
+        }
+
+        public synchronized void getToWork() {
+            moreWork = true;
+            this.notify();
+        }
+    }
+
+    @Override
+    public void advanceBy(final int d) {
+        advanceViaThread(d);
+    }
+
+    private void advanceViaThread(final int d) {
+        if (CaGe.debugMode) {
+            new StackTrace("debug: advanceViaThread(" + d + ") called").printStackTrace();
+        }
+        synchronized (this) {
+            getAdvancePermission();
+            if (flowingThread == null) {
+                flowingThread = new FlowingThread();
+                Systoolbox.lowerPriority(flowingThread, priorityOffset);
+                flowingThread.setDaemon(true);
+                flowingThread.start();
+                Debug.print("advance thread started.");
+            }
+            setAdvanceTarget(d < 0 ? d : graphNo + d);
+            flowingThread.getToWork();
+        }
+    }
+
+    @Override
+    public void yieldAndAdvanceBy(int d) {
+        getAdvancePermission();
+        setAdvanceTarget(d < 0 ? d : graphNo + d);
+        startAdvancing();
+        Thread.yield();
+    }
+
+    private synchronized void getAdvancePermission() {
+        if (isFlowing()) {
+            throw new RuntimeException("JavaCaGePipe: stop flowing before advancing");
+        }
+        flowing = true;
+        fireFlowingChanged();
+    }
+
+    private void startAdvancing() {
+        try {
+            advance();
+        } catch (Exception e) {
+            if (!isRunning()) {
+                return;
+            }
+            if (propertyChangeListeners.size() > 0) {
+                fireExceptionOccurred(e);
+            } else {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Reads graphs until the advance target is reached, flowing is switched
+     * off or the generator output ends. The graphs before the target are
+     * skipped over without being read, except those for which the graph
+     * number change is fired. This is the Java version of
+     * <tt>nStartAdvancing</tt> in <tt>NativeCaGePipe.c</tt>.
+     */
+    private void advance() throws IOException {
+        int n = graphNo;
+        GraphStreamReader r = reader;
+        if (r == null) {
+            synchronized (this) {
+                flowing = false;
+            }
+            fireFlowingChanged();
+            fireGraphNoChanged();
+            return;
+        }
+        if (!isRunning()) {
+            return;
+        }
+        if (r.getFormat() == GraphStreamReader.UNKNOWN_FORMAT) {
+            r.startReading();
+        }
+
+        int lastGraphNo = n;
+        boolean resetFlow = true;
+        // after graphs were skipped, the next one is committed even out of flow
+        boolean skipped = false;
+        while (skipped || shortOfAdvanceTarget(n)) {
+            if (!advanced1) {
+                // the graphs up to the target or the next graphNo event are skipped
+                int max = getAdvanceTarget() - n - 1;
+                if (graphNoFireInterval > 0) {
+                    max = Math.min(max, graphNoFireInterval - 1 - n % graphNoFireInterval);
+                }
+                if (max > 0 && isFlowing()) {
+                    int count = r.skip(max);
+                    if (count > 0) {
+                        n += count;
+                        skipped = true;
+                        continue;
+                    }
+                }
+                if (r.getFormat() == GraphStreamReader.UNKNOWN_FORMAT || !r.readNext()) {
+                    break;
+                }
+                advanced1 = true;
+            }
+            if (!skipped && !isFlowing()) {
+                Debug.print("out of flow while advancing");
+                resetFlow = false;
+                break;
+            }
+            synchronized (this) {
+                advanced1 = false;
+                r.commit();
+                graphNo = ++n;
+            }
+            skipped = false;
+            if (graphNoFireInterval > 0 && n % graphNoFireInterval == 0) {
+                fireGraphNoChanged();
+            }
+        }
+
+        if (!isRunning()) {
+            return;
+        }
+        boolean finished = !advanced1 && r.isAtEOF();
+        if (finished) {
+            setRunning(false);
+            r.close();
+        }
+        if (resetFlow) {
+            synchronized (this) {
+                flowing = false;
+            }
+            fireFlowingChanged();
+        }
+        if (n > lastGraphNo && !advanced1) {
+            fireGraphNoChanged();
+        }
+        if (finished) {
+            fireRunningChanged();
+        }
+    }
+
+    @Override
+    public void setFlowing(boolean flowingOn) {
+        if (!running) {
+            return;
+        }
+        Debug.print("setFlowing: " + flowingOn);
+        if (isFlowing() == flowingOn) {
+            return;
+        }
+        if (flowingOn) {
+            advanceViaThread(-1);
+        } else {
+            synchronized (this) {
+                flowing = false;
+                fireFlowingChanged();
+                fireGraphNoChanged();
+            }
+        }
+    }
+
+    @Override
+    public void stop() {
+        setRunning(false);
+        setFlowing(false);
+        if (chain != null) {
+            chain.destroy();
+        }
+        fireRunningChanged();
+    }
+}
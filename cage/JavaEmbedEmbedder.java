@@ -0,0 +1,304 @@
+package cage;
+
+import cage.embedder.SpringEmbedder;
+import java.io.File;
+
+/**
+ * An implementation of <code>Embedder</code> that embeds in the Java process
+ * with a {@link SpringEmbedder} instead of running <tt>embed</tt>. This only
+ * works for embedder commands that consist of a single <tt>embed</tt>
+ * command with options the Java embedder understands, see
+ * {@link #supports(java.lang.String[][])}. This class is package-private,
+ * because embedders should be created using {@link EmbedFactory}.
+ *
+ * The options that only change how <tt>embed</tt> works internally
+ * (<tt>-a</tt>, <tt>-o</tt>, <tt>-p</tt>, <tt>-s</tt> and <tt>-v</tt>) are
+ * ignored. Of the intensity factors given by <tt>-f</tt>, the second and
+ * third one scale the steps of the spring phases of 3D embeddings; the 2D
+ * embedding is always solved exactly.
+ *
+ * New embeddings are looked up in and added to the {@link EmbeddingCache},
+ * if it is switched on, under a key of their own.
+ */
+class JavaEmbedEmbedder extends Embedder {
+
+    // put in front of the commands for the keys of the embedding cache
+    private static final String[] cacheKeyPrefix = {"java", SpringEmbedder.class.getName()};
+
+    private final SpringEmbedder springEmbedder = new SpringEmbedder();
+    boolean isConstant = false;
+    String[][] embed2DOrigCmd, embed2DNewCmd;
+    String[][] embed3DOrigCmd, embed3DNewCmd, embed3DEmbeddedCmd;
+    String runDir, path;
+    float intensityFactor = 1.0f;
+    int embeddedMode = IGNORE_OLD_EMBEDDING;
+    private Options options2D, options3D;
+
+    JavaEmbedEmbedder(boolean isConstant,
+            String[][] embed2D, String[][] embed3D,
+            float intensityFactor, int embeddedMode) {
+        this.isConstant = isConstant;
+        this.embed2DOrigCmd = embed2D;
+        this.embed3DOrigCmd = embed3D;
+        this.intensityFactor = intensityFactor;
+        this.embeddedMode = embeddedMode;
+        computeEmbedders();
+    }
+
+    /**
+     * Returns whether <tt>embedCmds</tt> is a single <tt>embed</tt> command
+     * that the Java embedder can carry out. Tubular initial embeddings
+     * (<tt>-it</tt>), helix mode (<tt>-x</tt>), a boundary face given by a
+     * point (<tt>-c</tt>), renumbering (<tt>-r</tt>) and output formats other
+     * than writegraph are left to <tt>embed</tt>.
+     *
+     * @param embedCmds The embedder commands.
+     * @return <tt>true</tt> if the commands can be run in Java
+     */
+    static boolean supports(String[][] embedCmds) {
+        return embedCmds != null && Options.parse(embedCmds) != null;
+    }
+
+    /**
+     * Returns a new embedder with the same commands, settings, run directory
+     * and path as this one.
+     */
+    JavaEmbedEmbedder copy() {
+        JavaEmbedEmbedder copy = new JavaEmbedEmbedder(isConstant,
+                embed2DOrigCmd, embed3DOrigCmd, intensityFactor, embeddedMode);
+        copy.runDir = runDir;
+        copy.path = path;
+        return copy;
+    }
+
+    @Override
+    public void setConstant(boolean isConstant) {
+        this.isConstant = isConstant;
+    }
+
+    @Override
+    public boolean isConstant() {
+        return isConstant;
+    }
+
+    @Override
+    public void setEmbed2D(String[][] embed2D) {
+        this.embed2DOrigCmd = embed2D;
+        isConstant = false;
+        computeEmbedders();
+    }
+
+    @Override
+    public void setEmbed3D(String[][] embed3D) {
+        this.embed3DOrigCmd = embed3D;
+        isConstant = false;
+        computeEmbedders();
+    }
+
+    @Override
+    public void setRunDir(String runDir) {
+        this.runDir = runDir;
+    }
+
+    @Override
+    public void setPath(String path) {
+        this.path = path;
+    }
+
+    @Override
+    public void setIntensityFactor(float factor) {
+        this.intensityFactor = factor;
+        isConstant = false;
+        computeEmbedders();
+    }
+
+    @Override
+    public float getIntensityFactor() {
+        return intensityFactor;
+    }
+
+    @Override
+    public void setMode(int mode) {
+        this.embeddedMode = mode;
+        isConstant = false;
+        computeEmbedders();
+    }
+
+    @Override
+    public int getMode() {
+        return embeddedMode;
+    }
+
+    private void computeEmbedders() {
+        embed2DNewCmd = NativeEmbedEmbedder.setIntensity(embed2DOrigCmd, intensityFactor);
+        embed3DNewCmd = NativeEmbedEmbedder.setIntensity(embed3DOrigCmd, intensityFactor);
+        options2D = Options.parse(embed2DNewCmd);
+        options3D = Options.parse(embed3DNewCmd);
+        if (options2D == null || options3D == null) {
+            throw new IllegalArgumentException("embedder commands can't be run in Java");
+        }
+        switch (embeddedMode) {
+            case KEEP_OLD_EMBEDDING:
+                embed3DEmbeddedCmd = null;
+                break;
+            case REFINE_OLD_EMBEDDING:
+                embed3DEmbeddedCmd = NativeEmbedEmbedder.setRefine(
+                        new String[][]{embed3DNewCmd[0].clone()});
+                break;
+            default:
+                embed3DEmbeddedCmd = embed3DNewCmd;
+        }
+    }
+
+    @Override
+    public String[][] getEmbed2DNew() {
+        return embed2DNewCmd;
+    }
+
+    @Override
+    public String[][] getEmbed3DNew() {
+        return embed3DNewCmd;
+    }
+
+    @Override
+    public String[][] getEmbed3DRefine() {
+        return embed3DEmbeddedCmd;
+    }
+
+    private static String[][] cacheKeyCommand(String[][] embedCmd) {
+        return new String[][]{cacheKeyPrefix, embedCmd[0]};
+    }
+
+    @Override
+    public void embed2D(EmbeddableGraph graph)
+            throws Exception {
+        EmbeddingCache cache = EmbeddingCache.getInstance();
+        String key = cache == null ? null
+                : EmbeddingCache.getKey(cacheKeyCommand(embed2DNewCmd), 2, graph);
+        if (key != null && cache.restore(key, 2, graph)) {
+            return;
+        }
+        springEmbedder.embed2D(graph, options2D.outerStart, options2D.outerEnd);
+        if (key != null) {
+            cache.store(key, 2, graph);
+        }
+    }
+
+    @Override
+    public void embed3D(EmbeddableGraph graph)
+            throws Exception {
+        boolean refine = options3D.keep;
+        if (graph.has3DCoordinates()) {
+            if (embeddedMode == KEEP_OLD_EMBEDDING) {
+                return;
+            }
+            refine |= embeddedMode == REFINE_OLD_EMBEDDING;
+        }
+        EmbeddingCache cache = EmbeddingCache.getInstance();
+        String key = cache == null ? null
+                : EmbeddingCache.getKey(cacheKeyCommand(embed3DNewCmd), 3, graph);
+        if (key != null && cache.restore(key, 3, graph)) {
+            return;
+        }
+        springEmbedder.embed3D(graph, refine, options3D.factors);
+        if (key != null) {
+            cache.store(key, 3, graph);
+        }
+    }
+
+    @Override
+    public void reembed2D(EmbeddableGraph graph)
+            throws Exception {
+        springEmbedder.embed2D(graph, e1, e2);
+    }
+
+    @Override
+    public String getDiagnosticOutput() {
+        return null;
+    }
+
+    @Override
+    public void abort() {
+        springEmbedder.abort();
+    }
+
+    /**
+     * The options of an <tt>embed</tt> command that matter to the Java
+     * embedder.
+     */
+    private static class Options {
+
+        int outerStart, outerEnd;
+        float[] factors = {1.0f, 1.0f, 1.0f};
+        boolean keep;
+
+        /*
+         * Parses the options like getopt does, or returns null if the
+         * command isn't a single embed command the Java embedder can do.
+         */
+        static Options parse(String[][] embedCmds) {
+            if (embedCmds.length != 1 || embedCmds[0].length == 0
+                    || !new File(embedCmds[0][0]).getName().equals("embed")) {
+                return null;
+            }
+            String[] args = embedCmds[0];
+            Options options = new Options();
+            try {
+                for (int i = 1; i < args.length; ++i) {
+                    String arg = args[i];
+                    if (arg.length() < 2 || arg.charAt(0) != '-') {
+                        return null;
+                    }
+                    char option = arg.charAt(1);
+                    if ("rvx".indexOf(option) >= 0) {
+                        if (option != 'v') {
+                            return null;
+                        }
+                        continue;
+                    }
+                    String value = arg.length() > 2 ? arg.substring(2)
+                            : ++i < args.length ? args[i] : null;
+                    if (value == null) {
+                        return null;
+                    }
+                    switch (option) {
+                        case 'a':
+                        case 'd':
+                        case 'o':
+                        case 'p':
+                        case 's':
+                            break;
+                        case 'b':
+                            String[] edge = value.split(",");
+                            options.outerStart = Integer.parseInt(edge[0].trim());
+                            options.outerEnd = Integer.parseInt(edge[1].trim());
+                            break;
+                        case 'f':
+                            String[] factors = value.split(",");
+                            for (int j = 0; j < 3 && j < factors.length; ++j) {
+                                options.factors[j] = Float.parseFloat(factors[j].trim());
+                            }
+                            break;
+                        case 'i':
+                            if (value.charAt(0) == 'k') {
+                                options.keep = true;
+                            } else if (value.charAt(0) != 'p' && value.charAt(0) != 's') {
+                                return null;
+                            }
+                            break;
+                        case 'w':
+                            if (value.charAt(0) != 'v') {
+                                return null;
+                            }
+                            break;
+                        default:
+                            return null;
+                    }
+                }
+            } catch (RuntimeException ex) {
+                return null;
+            }
+            return options;
+        }
+    }
+}
@@ -0,0 +1,265 @@
+package cage;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+import lisken.systoolbox.MutableInteger;
+
+/**
+ * An <code>EmbeddableGraph</code> that is kept entirely in Java. This is
+ * the graph handed out by a {@link JavaCaGePipe}, so accessing its vertices,
+ * edges and coordinates doesn't require any native calls.
+ *
+ * The adjacency lists are stored in compressed sparse row form: the edges of
+ * vertex <tt>v</tt> are <tt>targets[offsets[v-1]]</tt> up to (but not
+ * including) <tt>targets[offsets[v]]</tt>. Coordinates are stored in flat
+ * arrays, 2 resp. 3 values per vertex. This keeps a graph down to a handful
+ * of objects, and {@link #getNeighbour(int, int)} and
+ * {@link #get3DCoordinates(int, float[])} give access to it without creating
+ * any new ones.
+ *
+ * Just like in the native implementation vertices are numbered starting
+ * from 1 and edges can only be added to the last added vertex.
+ */
+public class JavaEmbeddableGraph implements EmbeddableGraph {
+
+    private String comment;
+    private int size = 0;
+    private int[] offsets;
+    private int[] targets;
+    private float[] coordinates2D = null;
+    private float[] coordinates3D = null;
+
+    public JavaEmbeddableGraph() {
+        this(16);
+    }
+
+    /**
+     * Creates an empty graph with room for <tt>expectedSize</tt> vertices.
+     *
+     * @param expectedSize The expected number of vertices.
+     */
+    public JavaEmbeddableGraph(int expectedSize) {
+        this(expectedSize, 3 * expectedSize);
+    }
+
+    /**
+     * Creates an empty graph with room for <tt>expectedSize</tt> vertices
+     * and <tt>expectedEdges</tt> directed edges.
+     *
+     * @param expectedSize The expected number of vertices.
+     * @param expectedEdges The expected number of directed edges, i.e. the
+     *        sum of all valencies.
+     */
+    public JavaEmbeddableGraph(int expectedSize, int expectedEdges) {
+        offsets = new int[Math.max(expectedSize, 1) + 1];
+        targets = new int[Math.max(expectedEdges, 4)];
+    }
+
+    @Override
+    public String getComment() {
+        return comment;
+    }
+
+    @Override
+    public void setComment(String comment) {
+        this.comment = comment;
+    }
+
+    @Override
+    public void addVertex() {
+        if (size + 1 == offsets.length) {
+            offsets = Arrays.copyOf(offsets, 2 * offsets.length);
+            if (coordinates2D != null) {
+                coordinates2D = locateCoordinates(coordinates2D, size + 1, 2);
+            }
+            if (coordinates3D != null) {
+                coordinates3D = locateCoordinates(coordinates3D, size + 1, 3);
+            }
+        }
+        ++size;
+        offsets[size] = offsets[size - 1];
+    }
+
+    @Override
+    public void addEdge(int to) {
+        int edges = offsets[size];
+        if (edges == targets.length) {
+            targets = Arrays.copyOf(targets, 2 * edges);
+        }
+        targets[edges] = to;
+        offsets[size] = edges + 1;
+    }
+
+    @Override
+    public int getSize() {
+        return size;
+    }
+
+    @Override
+    public int getValency(int vertex) {
+        return offsets[vertex] - offsets[vertex - 1];
+    }
+
+    @Override
+    public EdgeIterator getEdgeIterator(int vertex) {
+        return new JavaEdgeIterator(targets, offsets[vertex - 1], offsets[vertex]);
+    }
+
+    @Override
+    public int getNeighbour(int vertex, int index) {
+        return targets[offsets[vertex - 1] + index];
+    }
+
+    @Override
+    public boolean has2DCoordinates() {
+        return coordinates2D != null;
+    }
+
+    @Override
+    public float[] get2DCoordinates(int vertex) {
+        return get2DCoordinates(vertex, new float[2]);
+    }
+
+    @Override
+    public float[] get2DCoordinates(int vertex, float[] coords) {
+        System.arraycopy(coordinates2D, 2 * (vertex - 1), coords, 0, 2);
+        return coords;
+    }
+
+    @Override
+    public float[][] get2DCoordinates() {
+        return copyCoordinates(coordinates2D, 2);
+    }
+
+    @Override
+    public void set2DCoordinates(int vertex, float[] coords) {
+        coordinates2D = locateCoordinates(coordinates2D, vertex, 2);
+        System.arraycopy(coords, 0, coordinates2D, 2 * (vertex - 1), 2);
+    }
+
+    @Override
+    public boolean has3DCoordinates() {
+        return coordinates3D != null;
+    }
+
+    @Override
+    public float[] get3DCoordinates(int vertex) {
+        return get3DCoordinates(vertex, new float[3]);
+    }
+
+    @Override
+    public float[] get3DCoordinates(int vertex, float[] coords) {
+        System.arraycopy(coordinates3D, 3 * (vertex - 1), coords, 0, 3);
+        return coords;
+    }
+
+    @Override
+    public float[][] get3DCoordinates() {
+        return copyCoordinates(coordinates3D, 3);
+    }
+
+    @Override
+    public void set3DCoordinates(int vertex, float[] coords) {
+        coordinates3D = locateCoordinates(coordinates3D, vertex, 3);
+        System.arraycopy(coords, 0, coordinates3D, 3 * (vertex - 1), 3);
+    }
+
+    /**
+     * Makes sure <tt>coordinates</tt> has room for <tt>vertex</tt> and all
+     * the vertices this graph has room for, like
+     * <tt>locate_xd_coordinates</tt> does for native graphs.
+     */
+    private float[] locateCoordinates(float[] coordinates, int vertex, int dimension) {
+        int length = dimension * Math.max(vertex, offsets.length - 1);
+        if (coordinates == null) {
+            coordinates = new float[length];
+        } else if (coordinates.length < length) {
+            coordinates = Arrays.copyOf(coordinates, Math.max(length, 2 * coordinates.length));
+        }
+        return coordinates;
+    }
+
+    private float[][] copyCoordinates(float[] coordinates, int dimension) {
+        float[][] result = new float[size][dimension];
+        if (coordinates != null) {
+            int n = Math.min(size, coordinates.length / dimension);
+            for (int i = 0; i < n; ++i) {
+                System.arraycopy(coordinates, dimension * i, result[i], 0, dimension);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns this graph in writegraph format (without header and trailing
+     * zero), just like the native implementation does.
+     *
+     * @return the writegraph representation of this graph
+     */
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (int v = 1; v <= size; ++v) {
+            builder.append(String.format("%4d", v));
+            if (has2DCoordinates()) {
+                builder.append("\t");
+                for (int i = 2 * (v - 1); i < 2 * v; ++i) {
+                    builder.append("\t").append(coordinates2D[i]);
+                }
+            }
+            if (has3DCoordinates()) {
+                builder.append("\t");
+                for (int i = 3 * (v - 1); i < 3 * v; ++i) {
+                    builder.append("\t").append(coordinates3D[i]);
+                }
+            }
+            builder.append("\t\t");
+            for (int i = offsets[v - 1]; i < offsets[v]; ++i) {
+                builder.append("  ").append(targets[i]);
+            }
+            builder.append("\n");
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Iterator over the neighbours of one vertex of a
+     * <code>JavaEmbeddableGraph</code>.
+     */
+    private static class JavaEdgeIterator implements EdgeIterator {
+
+        private final int[] targets;
+        private final int end;
+        private int position;
+
+        JavaEdgeIterator(int[] targets, int start, int end) {
+            this.targets = targets;
+            this.position = start;
+            this.end = end;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return position < end;
+        }
+
+        @Override
+        public Object next() throws NoSuchElementException {
+            return new MutableInteger(nextEdge());
+        }
+
+        @Override
+        public int nextEdge() throws NoSuchElementException {
+            if (position >= end) {
+                throw new NoSuchElementException();
+            }
+            return targets[position++];
+        }
+
+        @Override
+        public void remove() throws UnsupportedOperationException {
+            throw new UnsupportedOperationException("Graph edges can't be removed");
+        }
+    }
+}
@@ -27,6 +27,7 @@ public class NativeCaGePipe extends CaGePipe {
     @Override
     public native EmbeddableGraph getGraph();
 
+    @Override
     public native boolean wouldBlock();
 
     @Override
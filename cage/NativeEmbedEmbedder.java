@@ -10,11 +10,26 @@ import lisken.systoolbox.Systoolbox;
  * </code> that uses external processes should be created using {@link
  * EmbedFactory}.
  *
- * <b>Warning!</b> A <code>NativeEmbedEmbedder</code> is only capable of
- * embedding a <code>NativeEmbeddableGraph</code>.
+ * Graphs that are not a <code>NativeEmbeddableGraph</code> are copied into
+ * one before embedding, and the new coordinates are copied back afterwards.
+ *
+ * New embeddings are looked up in and added to the {@link EmbeddingCache},
+ * if it is switched on.
+ *
+ * If <tt>CaGe.Embedders.Persistent</tt> is set, an embedder command that
+ * {@link EmbedProcess} supports is run as a single process that embeds all
+ * graphs, instead of a process for every graph. Reembedding with another
+ * outer face always starts a process of its own.
  */
 class NativeEmbedEmbedder extends Embedder {
 
+    /**
+     * Whether embedder commands should be run as long-lived processes if
+     * they can. (Setting <tt>CaGe.Embedders.Persistent</tt> in CaGe.ini)
+     */
+    private static final boolean persistentProcesses =
+            CaGe.getCaGePropertyAsBoolean("CaGe.Embedders.Persistent", false);
+
     boolean isConstant = false;
     long nEmbed2DNew = 0, nReembed2D = 0;
     long nEmbed3DNew = 0, nEmbed3DEmbedded = 0;
@@ -27,6 +42,10 @@ class NativeEmbedEmbedder extends Embedder {
     String[][] reembed2DCmd;
     int reembed2DArg;
     byte[] errFilenameBytes;
+    // the long-lived processes for the commands, if they are used
+    EmbedProcess embed2DProcess, embed3DProcess, embed3DEmbeddedProcess;
+    // the process that embedded the last graph, for its diagnostic output
+    volatile EmbedProcess lastProcess;
 
     native long nCompileCommands(Object[] cmds, byte[] runDir, byte[] path);
 
@@ -65,6 +84,19 @@ class NativeEmbedEmbedder extends Embedder {
         computeEmbedders();
     }
 
+    /**
+     * Returns a new embedder with the same commands, settings, run directory
+     * and path as this one.
+     */
+    NativeEmbedEmbedder copy() {
+        NativeEmbedEmbedder copy = new NativeEmbedEmbedder(isConstant,
+                embed2DOrigCmd, embed3DOrigCmd, intensityFactor, embeddedMode);
+        copy.runDir = runDir;
+        copy.path = path;
+        copy.computeEmbedders();
+        return copy;
+    }
+
     @Override
     public void setConstant(boolean isConstant) {
         this.isConstant = isConstant;
@@ -151,6 +183,7 @@ class NativeEmbedEmbedder extends Embedder {
         nEmbed2DNew = nCompileCommands(Systoolbox.stringsToBytes(embed2DNewCmd),
                 runDir, path);
         prepareReembed2D(embed2DNewCmd);
+        embed2DProcess = replaceProcess(embed2DProcess, embed2DNewCmd, 2);
     }
 
     private void compute3DEmbedders() {
@@ -161,6 +194,7 @@ class NativeEmbedEmbedder extends Embedder {
         nFinalize(nEmbed3DNew);
         nEmbed3DNew = nCompileCommands(Systoolbox.stringsToBytes(embed3DNewCmd),
                 runDir, path);
+        embed3DProcess = replaceProcess(embed3DProcess, embed3DNewCmd, 3);
         computeEmbeddedEmbedders();
     }
 
@@ -193,6 +227,24 @@ class NativeEmbedEmbedder extends Embedder {
                         Systoolbox.stringsToBytes(embed3DEmbeddedCmd), runDir, path);
                 break;
         }
+        embed3DEmbeddedProcess = replaceProcess(embed3DEmbeddedProcess,
+                embed3DEmbeddedCmd == embed3DNewCmd ? null : embed3DEmbeddedCmd, 3);
+    }
+
+    /*
+     * Closes the old process and returns a new one for the commands, or
+     * null if they are run as a process per graph.
+     */
+    private EmbedProcess replaceProcess(EmbedProcess old, String[][] embedCmds, int dimension) {
+        if (old != null) {
+            old.close();
+        }
+        if (persistentProcesses && EmbedProcess.supports(embedCmds)) {
+            return new EmbedProcess(embedCmds, dimension,
+                    runDir == null ? null : new String(runDir),
+                    path == null ? null : new String(path));
+        }
+        return null;
     }
 
     @Override
@@ -210,7 +262,7 @@ class NativeEmbedEmbedder extends Embedder {
         return embed3DEmbeddedCmd;
     }
 
-    private static String[][] setIntensity(String[][] embed, float factor) {
+    static String[][] setIntensity(String[][] embed, float factor) {
         if (factor == 1.0f) {
             return embed;
         }
@@ -250,7 +302,7 @@ class NativeEmbedEmbedder extends Embedder {
         return new String[][]{embedCmd};
     }
 
-    private static String[][] setRefine(String[][] embed) {
+    static String[][] setRefine(String[][] embed) {
         Debug.print("{ setRefine");
         String[] embedCmd = embed[0];
         boolean addInitial = true;
@@ -281,15 +333,70 @@ class NativeEmbedEmbedder extends Embedder {
     @Override
     public void embed2D(EmbeddableGraph graph)
             throws Exception {
-        NativeEmbeddableGraph nGraph = (NativeEmbeddableGraph) graph;
-        nEmbed2D(nGraph.nGraph, nEmbed2DNew);
+        EmbeddingCache cache = EmbeddingCache.getInstance();
+        String key = cache == null ? null : EmbeddingCache.getKey(embed2DNewCmd, 2, graph);
+        if (key != null && cache.restore(key, 2, graph)) {
+            return;
+        }
+        if (embed2DProcess != null) {
+            lastProcess = embed2DProcess;
+            embed2DProcess.embed(graph);
+        } else {
+            lastProcess = null;
+            NativeEmbeddableGraph nGraph = NativeEmbeddableGraph.valueOf(graph);
+            nEmbed2D(nGraph.nGraph, nEmbed2DNew);
+            copy2DCoordinates(nGraph, graph);
+        }
+        if (key != null) {
+            cache.store(key, 2, graph);
+        }
     }
 
     @Override
     public void embed3D(EmbeddableGraph graph)
             throws Exception {
-        NativeEmbeddableGraph nGraph = (NativeEmbeddableGraph) graph;
-        nEmbed3D(nGraph.nGraph, nEmbed3DNew, nEmbed3DEmbedded);
+        EmbeddingCache cache = EmbeddingCache.getInstance();
+        String key = cache == null ? null : EmbeddingCache.getKey(embed3DNewCmd, 3, graph);
+        if (key != null && cache.restore(key, 3, graph)) {
+            return;
+        }
+        if (embed3DProcess != null) {
+            // chosen like nEmbed3D chooses between the commands
+            EmbedProcess process = embed3DProcess;
+            if (graph.has3DCoordinates() && nEmbed3DEmbedded != nEmbed3DNew) {
+                process = embed3DEmbeddedProcess;
+            }
+            lastProcess = process;
+            if (process != null) {
+                process.embed(graph);
+            }
+        } else {
+            lastProcess = null;
+            NativeEmbeddableGraph nGraph = NativeEmbeddableGraph.valueOf(graph);
+            nEmbed3D(nGraph.nGraph, nEmbed3DNew, nEmbed3DEmbedded);
+            copy3DCoordinates(nGraph, graph);
+        }
+        if (key != null) {
+            cache.store(key, 3, graph);
+        }
+    }
+
+    private static void copy2DCoordinates(NativeEmbeddableGraph from, EmbeddableGraph to) {
+        if (from != to && from.has2DCoordinates()) {
+            float[][] coordinates = from.get2DCoordinates();
+            for (int i = 0; i < coordinates.length; ++i) {
+                to.set2DCoordinates(i + 1, coordinates[i]);
+            }
+        }
+    }
+
+    private static void copy3DCoordinates(NativeEmbeddableGraph from, EmbeddableGraph to) {
+        if (from != to && from.has3DCoordinates()) {
+            float[][] coordinates = from.get3DCoordinates();
+            for (int i = 0; i < coordinates.length; ++i) {
+                to.set3DCoordinates(i + 1, coordinates[i]);
+            }
+        }
     }
 
     private void prepareReembed2D(String[][] embed2D) {
@@ -312,13 +419,17 @@ class NativeEmbedEmbedder extends Embedder {
         reembed2DCmd[0][reembed2DArg] = "-b" + e1 + "," + e2;
         nReembed2D = nCompileCommands(Systoolbox.stringsToBytes(reembed2DCmd),
                 runDir, path);
-        NativeEmbeddableGraph nGraph = (NativeEmbeddableGraph) graph;
+        lastProcess = null;
+        NativeEmbeddableGraph nGraph = NativeEmbeddableGraph.valueOf(graph);
         nEmbed2D(nGraph.nGraph, nReembed2D);
+        copy2DCoordinates(nGraph, graph);
     }
 
     @Override
     public String getDiagnosticOutput() {
-        if (errFilenameBytes != null) {
+        if (lastProcess != null) {
+            return lastProcess.getDiagnosticOutput();
+        } else if (errFilenameBytes != null) {
             return Systoolbox.getFileContent(new String(errFilenameBytes), true);
         } else {
             return null;
@@ -330,6 +441,9 @@ class NativeEmbedEmbedder extends Embedder {
         if (nEmbedPID != 0) {
             nStop(nEmbedPID);
         }
+        if (lastProcess != null) {
+            lastProcess.abort();
+        }
     }
 
     @Override
@@ -341,6 +455,9 @@ class NativeEmbedEmbedder extends Embedder {
             nFinalize(nEmbed3DEmbedded);
         }
         nEmbed2DNew = nReembed2D = nEmbed3DNew = nEmbed3DEmbedded = 0;
+        embed2DProcess = replaceProcess(embed2DProcess, null, 2);
+        embed3DProcess = replaceProcess(embed3DProcess, null, 3);
+        embed3DEmbeddedProcess = replaceProcess(embed3DEmbeddedProcess, null, 3);
         super.finalize();
     }
 }
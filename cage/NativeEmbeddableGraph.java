@@ -24,12 +24,16 @@ public class NativeEmbeddableGraph implements EmbeddableGraph {
 
     private native NativeEdgeIterator nGetEdgeIterator(long nGraph, int vertex);
 
+    private native int nGetNeighbour(long nGraph, int vertex, int index);
+
     private native boolean nHas2DCoordinates(long nGraph);
 
     private native float[] nGet2DCoordinates(long nGraph, int vertex);
 
     private native float[][] nGetAll2DCoordinates(long nGraph);
 
+    private native void nCopy2DCoordinates(long nGraph, int vertex, float[] coords);
+
     private native void nSet2DCoordinates(long nGraph, int vertex, float[] coords);
 
     private native boolean nHas3DCoordinates(long nGraph);
@@ -38,6 +42,8 @@ public class NativeEmbeddableGraph implements EmbeddableGraph {
 
     private native float[][] nGetAll3DCoordinates(long nGraph);
 
+    private native void nCopy3DCoordinates(long nGraph, int vertex, float[] coords);
+
     private native void nSet3DCoordinates(long nGraph, int vertex, float[] coords);
 
     private native byte[] toBytes(long nGraph);
@@ -52,6 +58,43 @@ public class NativeEmbeddableGraph implements EmbeddableGraph {
         this.nGraph = nGraph;
     }
 
+    /**
+     * Returns <tt>graph</tt> itself if it is a <code>NativeEmbeddableGraph</code>,
+     * otherwise a native copy of it (including its coordinates) that can be
+     * passed to native code.
+     *
+     * @param graph The graph to convert.
+     * @return a native version of <tt>graph</tt>
+     */
+    public static NativeEmbeddableGraph valueOf(EmbeddableGraph graph) {
+        if (graph instanceof NativeEmbeddableGraph) {
+            return (NativeEmbeddableGraph) graph;
+        }
+        NativeEmbeddableGraph result = new NativeEmbeddableGraph();
+        int n = graph.getSize();
+        for (int v = 1; v <= n; ++v) {
+            result.addVertex();
+            EdgeIterator it = graph.getEdgeIterator(v);
+            while (it.hasNext()) {
+                result.addEdge(it.nextEdge());
+            }
+        }
+        if (graph.has2DCoordinates()) {
+            for (int v = 1; v <= n; ++v) {
+                result.set2DCoordinates(v, graph.get2DCoordinates(v));
+            }
+        }
+        if (graph.has3DCoordinates()) {
+            for (int v = 1; v <= n; ++v) {
+                result.set3DCoordinates(v, graph.get3DCoordinates(v));
+            }
+        }
+        if (graph.getComment() != null) {
+            result.setComment(graph.getComment());
+        }
+        return result;
+    }
+
     @Override
     public String getComment() {
         byte[] bytes = nGetComment(nGraph);
@@ -96,6 +139,11 @@ public class NativeEmbeddableGraph implements EmbeddableGraph {
         return nGetEdgeIterator(nGraph, vertex);
     }
 
+    @Override
+    public int getNeighbour(int vertex, int index) {
+        return nGetNeighbour(nGraph, vertex, index);
+    }
+
     @Override
     public boolean has2DCoordinates() {
         return nHas2DCoordinates(nGraph);
@@ -111,6 +159,12 @@ public class NativeEmbeddableGraph implements EmbeddableGraph {
         return nGetAll2DCoordinates(nGraph);
     }
 
+    @Override
+    public float[] get2DCoordinates(int vertex, float[] coords) {
+        nCopy2DCoordinates(nGraph, vertex, coords);
+        return coords;
+    }
+
     @Override
     public void set2DCoordinates(int vertex, float[] coords) {
         nSet2DCoordinates(nGraph, vertex, coords);
@@ -131,6 +185,12 @@ public class NativeEmbeddableGraph implements EmbeddableGraph {
         return nGetAll3DCoordinates(nGraph);
     }
 
+    @Override
+    public float[] get3DCoordinates(int vertex, float[] coords) {
+        nCopy3DCoordinates(nGraph, vertex, coords);
+        return coords;
+    }
+
     @Override
     public void set3DCoordinates(int vertex, float[] coords) {
         nSet3DCoordinates(nGraph, vertex, coords);
@@ -12,6 +12,7 @@ import cage.viewer.ViewerFactory;
 import cage.viewer.twoview.BatchTwoViewConfigurationPanel;
 import cage.viewer.twoview.BatchTwoViewModel;
 import cage.writer.CaGeWriter;
+import cage.writer.Compression;
 import cage.writer.WriterConfigurationHandler;
 
 import java.awt.CardLayout;
@@ -803,6 +804,34 @@ public class OutputPanel extends JPanel {
         return writeDests;
     }
     
+    /**
+     * Returns how the output to each of the destinations in {@link
+     * #getWriteDestinations()} is compressed, in the same order.
+     */
+    public List<Compression> getWriteCompressions() {
+        ButtonModel dest;
+        List<Compression> compressions = new ArrayList<>();
+        dest = outAdjDestGroup.getSelection();
+        if (outAdjFile.getModel().equals(dest)) {
+            compressions.add(outAdjFilePanel.getCompression());
+        } else if(outAdjPipe.getModel().equals(dest)){
+            compressions.add(outAdjPipePanel.getCompression());
+        }
+        dest = out2DDestGroup.getSelection();
+        if (out2DFile.getModel().equals(dest)) {
+            compressions.add(out2DFilePanel.getCompression());
+        } else if(out2DPipe.getModel().equals(dest)){
+            compressions.add(out2DPipePanel.getCompression());
+        }
+        dest = out3DDestGroup.getSelection();
+        if (out3DFile.getModel().equals(dest)) {
+            compressions.add(out3DFilePanel.getCompression());
+        } else if(out3DPipe.getModel().equals(dest)){
+            compressions.add(out3DPipePanel.getCompression());
+        }
+        return compressions;
+    }
+    
     public boolean isBatchProcessorSelected(){
         return out2DBatch.isSelected();
     }
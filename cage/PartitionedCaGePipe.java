@@ -0,0 +1,334 @@
+package cage;
+
+import cage.utility.Debug;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import lisken.systoolbox.BoundedMessageQueue;
+import lisken.systoolbox.MPMCMessageQueue;
+
+/**
+ * A <code>CaGePipe</code> that runs several copies of a generator at once,
+ * each generating one part of the graphs. The generators that support it
+ * (plantri and buckygen with a <tt>res/mod</tt> argument, fullgen with
+ * <tt>mod res mod</tt>) split the search tree in <tt>mod</tt> parts and
+ * only output the graphs of part <tt>res</tt>, so together the copies
+ * output each graph exactly once.
+ *
+ * Each part is a pipe of its own, read by its own thread, and the graphs of
+ * all parts are merged into one stream in the order in which they arrive.
+ * The graph numbers are given out by this pipe, so they are unique, but the
+ * order of the graphs differs from that of a single generator. This is only
+ * meant for background runs, which don't need the graphs in the generator's
+ * order, so advancing always happens in the calling thread.
+ *
+ * The generator's error output of part <tt>res</tt> goes to the error file
+ * with <tt>.res</tt> appended.
+ */
+public class PartitionedCaGePipe extends CaGePipe {
+
+    // the number of graphs a part takes from its generator at once
+    private static final int partBatchSize = 64;
+    // put on the queue by a part thread when its generator is finished
+    private static final Object PART_FINISHED = new Object();
+
+    private final CaGePipe[] parts;
+    private final int[] partGraphNos;
+    private final BoundedMessageQueue queue;
+    private PartThread[] partThreads;
+    private int partsRunning;
+    private boolean stopped;
+    private EmbeddableGraph graph;
+
+    /**
+     * Creates the pipes for the parts of <tt>generatorCmds</tt>. Use
+     * {@link #partition(java.lang.String[][], int, int)} first to check
+     * whether the generator can be split.
+     *
+     * @param generatorCmds The generator commands, without partition arguments.
+     * @param partitions The number of parts.
+     * @param errFilename The file for the generators' error output.
+     * @throws Exception if one of the pipes can't be created
+     */
+    public PartitionedCaGePipe(String[][] generatorCmds, int partitions, String errFilename)
+            throws Exception {
+        super(generatorCmds, "/dev/null", null, null);
+        parts = new CaGePipe[partitions];
+        partGraphNos = new int[partitions];
+        for (int res = 0; res < partitions; res++) {
+            String[][] cmds = partition(generatorCmds, res, partitions);
+            if (cmds == null) {
+                throw new IllegalArgumentException("can't partition " + generatorCmds[0][0]);
+            }
+            parts[res] = CaGePipeFactory.createCaGePipe(cmds,
+                    errFilename == null ? null : errFilename + "." + res);
+        }
+        queue = new MPMCMessageQueue(4 * partBatchSize * partitions);
+    }
+
+    /**
+     * Returns the commands for part <tt>res</tt> of <tt>mod</tt> parts of
+     * the output of <tt>generatorCmds</tt>, or <code>null</code> if the
+     * generator doesn't support this or the commands are already a part.
+     * Only the first command of the chain is changed, filters stay the same.
+     *
+     * @param generatorCmds The generator commands.
+     * @param res The part, starting from 0.
+     * @param mod The number of parts.
+     * @return the commands for the part or <code>null</code>
+     */
+    public static String[][] partition(String[][] generatorCmds, int res, int mod) {
+        String[] generator = generatorCmds[0];
+        String name = new File(generator[0]).getName();
+        String[] extra;
+        if (name.equals("fullgen")) {
+            for (String arg : generator) {
+                if (arg.equals("mod")) {
+                    return null;
+                }
+            }
+            extra = new String[]{"mod", Integer.toString(res), Integer.toString(mod)};
+        } else if (name.startsWith("plantri") || name.equals("buckygen")) {
+            for (int i = 1; i < generator.length; i++) {
+                if (generator[i].matches("\\d+/\\d+")) {
+                    return null;
+                }
+            }
+            extra = new String[]{res + "/" + mod};
+        } else {
+            return null;
+        }
+        String[][] cmds = generatorCmds.clone();
+        cmds[0] = new String[generator.length + extra.length];
+        System.arraycopy(generator, 0, cmds[0], 0, generator.length);
+        System.arraycopy(extra, 0, cmds[0], generator.length, extra.length);
+        return cmds;
+    }
+
+    /**
+     * Returns the number of graphs a part hands over at once. Taking fewer
+     * graphs from this pipe at a time only adds overhead.
+     */
+    public int getBatchSize() {
+        return partBatchSize;
+    }
+
+    /**
+     * Returns the number of parts.
+     */
+    public int getPartitions() {
+        return parts.length;
+    }
+
+    /**
+     * Returns the number of graphs each part has generated so far. These
+     * graphs haven't all been handed out yet.
+     */
+    public synchronized int[] getPartGraphNos() {
+        return partGraphNos.clone();
+    }
+
+    @Override
+    public void setRunDir(String dir) {
+        super.setRunDir(dir);
+        for (CaGePipe part : parts) {
+            part.setRunDir(dir);
+        }
+    }
+
+    @Override
+    public void setPath(String p) {
+        super.setPath(p);
+        for (CaGePipe part : parts) {
+            part.setPath(p);
+        }
+    }
+
+    @Override
+    protected void startPipe(Object[] cmds, int i_fd, int o_fd,
+            byte[] i_name, byte[] o_name, boolean o_append, byte[] e_name) {
+        List<Object> stale = new ArrayList<>();
+        queue.drainTo(stale, Integer.MAX_VALUE);
+        synchronized (this) {
+            stopped = false;
+            partsRunning = parts.length;
+            for (int i = 0; i < parts.length; i++) {
+                partGraphNos[i] = 0;
+            }
+        }
+        partThreads = new PartThread[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            try {
+                parts[i].start();
+            } catch (Exception ex) {
+                throw new RuntimeException(ex);
+            }
+            partThreads[i] = new PartThread(i);
+        }
+        for (PartThread partThread : partThreads) {
+            partThread.start();
+        }
+    }
+
+    @Override
+    public int checkForExit() {
+        int status = 0;
+        for (CaGePipe part : parts) {
+            int partStatus = part.checkForExit();
+            if (partStatus < 0) {
+                return partStatus;
+            }
+            status = Math.max(status, partStatus);
+        }
+        return status;
+    }
+
+    @Override
+    public int waitForExit() {
+        int status = 0;
+        for (CaGePipe part : parts) {
+            status = Math.max(status, part.waitForExit());
+        }
+        return status;
+    }
+
+    @Override
+    protected void finalizePipe() {
+    }
+
+    @Override
+    public boolean wouldBlock() {
+        return queue.size() == 0;
+    }
+
+    /**
+     * Takes the graphs that the parts have generated in the meantime, waiting
+     * for the first one. Only one <tt>graphNo</tt> change is fired for the
+     * whole batch.
+     */
+    @Override
+    public List<EmbeddableGraph> nextBatch(int max) throws Exception {
+        List<EmbeddableGraph> graphs = new ArrayList<>();
+        if (!isRunning()) {
+            return graphs;
+        }
+        List<Object> entries = new ArrayList<>();
+        boolean finished = false;
+        while (graphs.isEmpty() && !finished) {
+            entries.clear();
+            queue.getAll(entries, max);
+            if (isStopped()) {
+                return graphs;
+            }
+            for (Object entry : entries) {
+                if (entry == PART_FINISHED) {
+                    synchronized (this) {
+                        finished = --partsRunning == 0;
+                    }
+                } else {
+                    graphs.add((EmbeddableGraph) entry);
+                }
+            }
+        }
+        synchronized (this) {
+            graphNo += graphs.size();
+            if (!graphs.isEmpty()) {
+                graph = graphs.get(graphs.size() - 1);
+            }
+        }
+        if (finished) {
+            setRunning(false);
+        }
+        if (!graphs.isEmpty()) {
+            fireGraphNoChanged();
+        }
+        if (finished) {
+            fireRunningChanged();
+        }
+        return graphs;
+    }
+
+    @Override
+    public void advanceBy(int n) throws Exception {
+        yieldAndAdvanceBy(n);
+    }
+
+    @Override
+    public void yieldAndAdvanceBy(int n) throws Exception {
+        while (n > 0 && isRunning()) {
+            n -= nextBatch(n).size();
+        }
+    }
+
+    @Override
+    public synchronized EmbeddableGraph getGraph() throws Exception {
+        return graph;
+    }
+
+    @Override
+    public void setGraphNoFireInterval(int interval) {
+    }
+
+    @Override
+    public void stop() {
+        synchronized (this) {
+            stopped = true;
+        }
+        for (CaGePipe part : parts) {
+            part.stop();
+        }
+        // make room for part threads that are waiting to put a graph, and
+        // wake up a thread that is waiting in nextBatch
+        List<Object> stale = new ArrayList<>();
+        queue.drainTo(stale, Integer.MAX_VALUE);
+        queue.offer(PART_FINISHED);
+        setRunning(false);
+        fireRunningChanged();
+    }
+
+    private synchronized boolean isStopped() {
+        return stopped;
+    }
+
+    /**
+     * Reads the graphs of one part and puts them on the queue.
+     */
+    private class PartThread extends Thread {
+
+        private final int res;
+
+        PartThread(int res) {
+            super("PartitionedCaGePipe-" + res);
+            this.res = res;
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            CaGePipe part = parts[res];
+            try {
+                while (part.isRunning() && !isStopped()) {
+                    List<EmbeddableGraph> graphs = part.nextBatch(partBatchSize);
+                    synchronized (PartitionedCaGePipe.this) {
+                        partGraphNos[res] += graphs.size();
+                    }
+                    for (EmbeddableGraph g : graphs) {
+                        if (isStopped()) {
+                            return;
+                        }
+                        queue.put(g);
+                    }
+                }
+            } catch (Exception ex) {
+                if (!isStopped()) {
+                    Debug.reportException(ex);
+                    fireExceptionOccurred(ex);
+                }
+            }
+            if (!isStopped()) {
+                queue.put(PART_FINISHED);
+            }
+        }
+    }
+}
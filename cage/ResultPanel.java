@@ -401,6 +401,9 @@ public class ResultPanel extends JPanel {
         foldnetDialog.useInfo(false);
         foldnetDialog.setNearComponent(foldnetButton);
 
+        if (results != null) {
+            results.close();
+        }
         results = new CaGeResultList();
         highestGeneratedGraphNo = 0;
         generator.addPropertyChangeListener(generatorListener);
@@ -578,6 +581,9 @@ public class ResultPanel extends JPanel {
         pipeGraphNo.setEnabled(false);
         viewGraphNo.setText("0");
         flowButton.setEnabled(true);
+        if (results != null) {
+            results.close();
+        }
         results = new CaGeResultList();
         highestGeneratedGraphNo = 0;
         reviewPrevLabel.setText("\u00a0");
@@ -0,0 +1,232 @@
+package cage;
+
+import cage.writer.ByteSink;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A temporary file to which {@link CaGeResultList} moves the results it
+ * doesn't keep in memory. Each result is appended as one record, and is
+ * read back by its offset and length. A result that changed while it was
+ * read back is written over its old record if it still fits. The file is
+ * deleted when it is closed, or else when the program ends. All numbers are
+ * little-endian.
+ * <pre>
+ * varint   graph number
+ * varint   number of vertices n
+ * varint   flags: 1 if the graph has 2D coordinates, 2 if it has 3D
+ *          coordinates, 4 if the 2D embedding was made again, 8 if the
+ *          folding net was made
+ * varint   number of saved 2D PostScript drawings
+ * varint   length of the comment, followed by the comment in UTF-8
+ * varints  for each vertex its neighbours, followed by 0
+ * floats   if it has 2D coordinates: x and y of each vertex
+ * floats   if it has 3D coordinates: x, y and z of each vertex
+ * </pre>
+ */
+class ResultSpillFile implements Closeable {
+
+    private static final int HAS_2D = 1;
+    private static final int HAS_3D = 2;
+    private static final int REEMBED_2D_MADE = 4;
+    private static final int FOLDNET_MADE = 8;
+
+    private final File file;
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+    private final OutputStream out;
+    private final ByteSink sink = new ByteSink();
+    private final float[] coords = new float[3];
+    private ByteBuffer buffer = ByteBuffer.allocate(1024).order(ByteOrder.LITTLE_ENDIAN);
+    private long length = 0;
+    private int recordLength = 0;
+
+    ResultSpillFile() throws IOException {
+        file = File.createTempFile("cage-results", ".tmp");
+        file.deleteOnExit();
+        raf = new RandomAccessFile(file, "rw");
+        channel = raf.getChannel();
+        out = Channels.newOutputStream(channel);
+    }
+
+    /**
+     * Appends <tt>result</tt> and returns the offset of its record. The
+     * length of the record is given by {@link #getRecordLength()}.
+     */
+    long write(CaGeResult result) throws IOException {
+        encode(result);
+        return append();
+    }
+
+    /**
+     * Writes <tt>result</tt> again after it was read back from the record of
+     * <tt>length</tt> bytes at <tt>offset</tt>. If the result didn't change,
+     * its record is kept. Otherwise the new record is written over the old
+     * one if it fits, and appended if it doesn't. Returns the offset of the
+     * record, whose length is given by {@link #getRecordLength()}.
+     */
+    long rewrite(CaGeResult result, long offset, int length) throws IOException {
+        encode(result);
+        recordLength = sink.size();
+        if (recordLength == length) {
+            fill(offset, length);
+            if (sink.contentEquals(buffer)) {
+                return offset;
+            }
+        }
+        if (recordLength <= length) {
+            channel.position(offset);
+            sink.writeTo(out);
+            channel.position(this.length);
+            return offset;
+        }
+        return append();
+    }
+
+    private long append() throws IOException {
+        long offset = length;
+        sink.writeTo(out);
+        recordLength = sink.size();
+        length += recordLength;
+        return offset;
+    }
+
+    private void encode(CaGeResult result) {
+        EmbeddableGraph graph = result.getGraph();
+        int n = graph.getSize();
+        boolean has2D = graph.has2DCoordinates();
+        boolean has3D = graph.has3DCoordinates();
+        sink.reset();
+        sink.appendVarint(result.getGraphNo()).appendVarint(n)
+                .appendVarint((has2D ? HAS_2D : 0) | (has3D ? HAS_3D : 0)
+                        | (result.isReembed2DMade() ? REEMBED_2D_MADE : 0)
+                        | (result.isFoldnetMade() ? FOLDNET_MADE : 0))
+                .appendVarint(result.getSaved2DPS());
+        String comment = graph.getComment();
+        byte[] bytes = comment == null ? new byte[0] : comment.getBytes(StandardCharsets.UTF_8);
+        sink.appendVarint(bytes.length);
+        for (byte b : bytes) {
+            sink.appendByte(b);
+        }
+        for (int v = 1; v <= n; ++v) {
+            int valency = graph.getValency(v);
+            for (int i = 0; i < valency; ++i) {
+                sink.appendVarint(graph.getNeighbour(v, i));
+            }
+            sink.appendByte(0);
+        }
+        if (has2D) {
+            for (int v = 1; v <= n; ++v) {
+                graph.get2DCoordinates(v, coords);
+                sink.appendFloat32(coords[0]).appendFloat32(coords[1]);
+            }
+        }
+        if (has3D) {
+            for (int v = 1; v <= n; ++v) {
+                graph.get3DCoordinates(v, coords);
+                sink.appendFloat32(coords[0]).appendFloat32(coords[1]).appendFloat32(coords[2]);
+            }
+        }
+    }
+
+    /**
+     * Returns the length of the record that was written last.
+     */
+    int getRecordLength() {
+        return recordLength;
+    }
+
+    /**
+     * Reads the record of <tt>length</tt> bytes at <tt>offset</tt> back into
+     * a new result.
+     */
+    CaGeResult read(long offset, int length) throws IOException {
+        fill(offset, length);
+        int graphNo = readVarint();
+        int n = readVarint();
+        int flags = readVarint();
+        int saved2DPS = readVarint();
+        byte[] bytes = new byte[readVarint()];
+        buffer.get(bytes);
+        JavaEmbeddableGraph graph = new JavaEmbeddableGraph(n);
+        if (bytes.length > 0) {
+            graph.setComment(new String(bytes, StandardCharsets.UTF_8));
+        }
+        for (int v = 1; v <= n; ++v) {
+            graph.addVertex();
+            int to;
+            while ((to = readVarint()) != 0) {
+                graph.addEdge(to);
+            }
+        }
+        if ((flags & HAS_2D) != 0) {
+            for (int v = 1; v <= n; ++v) {
+                coords[0] = buffer.getFloat();
+                coords[1] = buffer.getFloat();
+                graph.set2DCoordinates(v, coords);
+            }
+        }
+        if ((flags & HAS_3D) != 0) {
+            for (int v = 1; v <= n; ++v) {
+                coords[0] = buffer.getFloat();
+                coords[1] = buffer.getFloat();
+                coords[2] = buffer.getFloat();
+                graph.set3DCoordinates(v, coords);
+            }
+        }
+        CaGeResult result = new CaGeResult(graph, graphNo);
+        result.setReembed2DMade((flags & REEMBED_2D_MADE) != 0);
+        result.setFoldnetMade((flags & FOLDNET_MADE) != 0);
+        result.setSaved2DPS(saved2DPS);
+        return result;
+    }
+
+    /*
+     * Reads the record of length bytes at offset into the buffer.
+     */
+    private void fill(long offset, int length) throws IOException {
+        if (buffer.capacity() < length) {
+            buffer = ByteBuffer.allocate(Math.max(2 * buffer.capacity(), length))
+                    .order(ByteOrder.LITTLE_ENDIAN);
+        }
+        buffer.clear().limit(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new IOException("result record past the end of " + file);
+            }
+        }
+        buffer.flip();
+    }
+
+    private int readVarint() {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            value |= (b & 0x7f) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    /**
+     * Closes and deletes the file.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            raf.close();
+        } finally {
+            file.delete();
+        }
+    }
+}
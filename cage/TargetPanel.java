@@ -1,6 +1,7 @@
 package cage;
 
 import cage.writer.CaGeWriter;
+import cage.writer.Compression;
 import cage.writer.WriterConfigurationHandler;
 import cage.writer.WriterFactory;
 
@@ -10,6 +11,7 @@ import java.text.MessageFormat;
 import javax.swing.BorderFactory;
 import javax.swing.Box;
 import javax.swing.BoxLayout;
+import javax.swing.JComboBox;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JTextField;
@@ -26,6 +28,7 @@ public class TargetPanel extends JPanel {
     
     protected FileFormatBox fileFormat;
     protected JTextField fileName = new JTextField();
+    protected JComboBox<Compression> compression = new JComboBox<>(Compression.values());
     private String targetTemplate;
     private boolean addExtension = true;
 
@@ -59,6 +62,18 @@ public class TargetPanel extends JPanel {
         fileFormat.setBorder(BorderFactory.createEmptyBorder(0, 10, 0, 10));
         fileFormat.setMaximumSize(fileFormat.getPreferredSize());
 
+        JLabel compressionLabel = new JLabel("Compression");
+        compressionLabel.setLabelFor(compression);
+        compressionLabel.setBorder(BorderFactory.createEmptyBorder(0, 10, 0, 10));
+        compression.setMaximumSize(compression.getPreferredSize());
+        compression.addActionListener(new ActionListener() {
+
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                fileFormat.setExtensionSuffix(getCompression().getSuffix());
+            }
+        });
+
         fileName.setColumns(15);
         fileName.setMaximumSize(fileName.getPreferredSize());
         fileName.addActionListener(new FilePanelActionListener());
@@ -74,6 +89,8 @@ public class TargetPanel extends JPanel {
         add(Box.createHorizontalGlue());
         add(fileFormatLabel, null);
         add(fileFormat, null);
+        add(compressionLabel, null);
+        add(compression, null);
     }
 
     public void addActionListener(ActionListener l) {
@@ -105,6 +122,14 @@ public class TargetPanel extends JPanel {
         return fileFormat.getConfigurationHandler();
     }
 
+    /**
+     *
+     * @return How the output to this target is compressed
+     */
+    public Compression getCompression() {
+        return (Compression) compression.getSelectedItem();
+    }
+
     /**
      *
      * @return The name of the target
@@ -4,19 +4,26 @@ import cage.CaGe;
 import cage.CaGePipe;
 import cage.CaGeResult;
 import cage.CaGeTimer;
+import cage.EmbedFactory;
 import cage.EmbedThread;
 import cage.EmbedThreadListener;
+import cage.Embedder;
 import cage.EmbeddableGraph;
 import cage.GeneratorInfo;
+import cage.PartitionedCaGePipe;
 import cage.utility.Debug;
+import cage.utility.LatencyRecorder;
 import cage.utility.StackTrace;
 
+import java.awt.GraphicsEnvironment;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
-import lisken.systoolbox.MessageQueue;
+import lisken.systoolbox.MPMCMessageQueue;
 import lisken.systoolbox.Systoolbox;
 
 /**
@@ -30,12 +37,31 @@ import lisken.systoolbox.Systoolbox;
  * This method then stores this runners, creates a {@link RunnerControl} for it and
  * invokes the <code>start()</code> method.
  * 
+ * The graphs are embedded by a number of <code>EmbedThread</code>s (see
+ * <tt>CaGe.Background.EmbedThreads</tt>), each with its own copy of the
+ * embedder. While they are busy, the generator is advanced to read graphs
+ * ahead in batches, up to <tt>CaGe.Background.EmbedQueueSize</tt> graphs
+ * that aren't handled yet. The embedded graphs are passed on to {@link
+ * #embeddingsMade(java.util.List)} in the order of their graph numbers.
+ * 
+ * The time spent in the generator and the embedders is recorded in the
+ * {@link RunMetrics} of the runner, see {@link #getMetrics()}.
+ * 
+ * A run can continue an earlier one that was stopped, see {@link
+ * #resumeAfter(int)}: the generator is advanced past the graphs that were
+ * already handled without decoding them, and the graph numbers go on from
+ * there.
+ * 
  * @author nvcleemp
  */
 public abstract class AbstractBackgroundRunner extends Thread implements BackgroundRunner {
 
     private static final int graphNoFireInterval = CaGe.getCaGePropertyAsInt("CaGe.GraphNoFireInterval.Background", 10);
     private static final int graphNoFirePeriod = CaGe.getCaGePropertyAsInt("CaGe.GraphNoFirePeriod.Background", 10000);
+    private static final int embedThreadCount = CaGe.getCaGePropertyAsInt("CaGe.Background.EmbedThreads", 0);
+    private static final int embedQueueSize = CaGe.getCaGePropertyAsInt("CaGe.Background.EmbedQueueSize", 0);
+    //the maximum number of events that are taken from the queue at once
+    private static final int eventBatchSize = 64;
     
     protected StringBuffer infoText = new StringBuffer();
     private PropertyChangeListener propertyChangeListener = new PropertyChangeListener() {
@@ -46,15 +72,32 @@ public abstract class AbstractBackgroundRunner extends Thread implements Backgro
             if (CaGe.debugMode) {
                 new StackTrace("queueing property change: " + e.getPropertyName() + " = " + e.getNewValue() + " (old value: " + e.getOldValue() + ")").printStackTrace();
             }
-            queue.put(e);
+            if (Thread.currentThread() != AbstractBackgroundRunner.this) {
+                queue.put(e);
+            } else if (!queue.offer(e)) {
+                //this runner is the only consumer, so it would wait forever
+                throw new IllegalStateException("the event queue of " + getName() + " is full");
+            }
         }
     };
     private int graphNo = 0;
+    //the graph after which an earlier run is resumed
+    private int resumeGraphNo = 0;
     private final List<PropertyChangeListener> propertyChangeListeners = new ArrayList<>();
-    private MessageQueue queue = new MessageQueue(CaGe.debugMode);
+    private MPMCMessageQueue queue;
+    private final List<Object> events = new ArrayList<>();
+    private int nextEvent = 0;
     private boolean doEmbed2D;
     private boolean doEmbed3D;
-    private EmbedThread embedThread;
+    private EmbedThread[] embedThreads;
+    private int embedThreadsRunning;
+    
+    //the maximum number of graphs that are read but not yet handled
+    private int maxGraphsAhead;
+    //the number of the last graph that was given to an embedder
+    private int lastEmbeddingGraphNo = 0;
+    //the embedded graphs that wait for the graphs before them
+    private final Map<Integer, PropertyChangeEvent> finishedEmbeddings = new HashMap<>();
     private EmbedThreadListener embedThreadListener = new EmbedThreadListener() {
 
         @Override
@@ -75,6 +118,11 @@ public abstract class AbstractBackgroundRunner extends Thread implements Backgro
 
         @Override
         public void embeddingFinished() {
+            synchronized (this) {
+                if (--embedThreadsRunning > 0) {
+                    return;
+                }
+            }
             if (!generatorRunning) {
                 end();
             }
@@ -91,6 +139,9 @@ public abstract class AbstractBackgroundRunner extends Thread implements Backgro
      */
     private CaGeTimer timer = null;
     
+    private final RunMetrics metrics = new RunMetrics(this);
+    private final LatencyRecorder generatorRecorder = metrics.stage("generator");
+    
     protected GeneratorInfo generatorInfo;
     protected boolean halted;
     protected PropertyChangeEvent event;
@@ -103,10 +154,44 @@ public abstract class AbstractBackgroundRunner extends Thread implements Backgro
         this.generatorInfo = generatorInfo;
         this.doEmbed2D = doEmbed2D;
         this.doEmbed3D = doEmbed3D;
+        int threads = embedThreadCount > 0 ? embedThreadCount : Runtime.getRuntime().availableProcessors();
+        List<Embedder> embedders = new ArrayList<>();
+        embedders.add(generatorInfo.getEmbedder());
+        try {
+            while (embedders.size() < threads) {
+                embedders.add(EmbedFactory.copyEmbedder(generatorInfo.getEmbedder()));
+            }
+        } catch (RuntimeException ex) {
+            //this embedder can't be copied: use fewer threads
+            Debug.reportException(ex);
+        }
+        embedThreads = new EmbedThread[embedders.size()];
+        embedThreadsRunning = embedThreads.length;
+        maxGraphsAhead = Math.max(embedQueueSize > 0 ? embedQueueSize : 2 * embedThreads.length, 1);
+        if (generator instanceof PartitionedCaGePipe) {
+            //take whole batches of the parts, also with few embed threads
+            maxGraphsAhead = Math.max(maxGraphsAhead, ((PartitionedCaGePipe) generator).getBatchSize());
+        }
+        LatencyRecorder embed2DRecorder = doEmbed2D ? metrics.stage("embed2D") : null;
+        LatencyRecorder embed3DRecorder = doEmbed3D ? metrics.stage("embed3D") : null;
+        for (int i = 0; i < embedThreads.length; i++) {
+            embedThreads[i] = new EmbedThread(embedders.get(i), 3, maxGraphsAhead);
+            embedThreads[i].setRecorders(embed2DRecorder, embed3DRecorder);
+            embedThreads[i].setEmbedThreadListener(embedThreadListener);
+        }
+        /* The events in this queue belong to the graphs that are read but not
+         * yet handled, at most maxGraphsAhead: the graphNo event of the batch
+         * a graph was read in and the coordinates event of its embedding.
+         * Apart from these, there are only a few flowing, running and
+         * exception events per generator or part of it. With a capacity of
+         * several times this, the queue never fills up, so this runner, its
+         * only consumer, never waits to post an event itself; the listener
+         * above checks this.
+         */
+        queue = new MPMCMessageQueue(8 * maxGraphsAhead + 64, CaGe.debugMode);
         generator.addPropertyChangeListener(propertyChangeListener);
-        embedThread = new EmbedThread(generatorInfo.getEmbedder(), 3);
-        embedThread.setEmbedThreadListener(embedThreadListener);
-        if (graphNoFirePeriod > 0) {
+        //the timer only refreshes the display, and would start the AWT event queue
+        if (graphNoFirePeriod > 0 && !GraphicsEnvironment.isHeadless()) {
             timer = new CaGeTimer(this, graphNoFirePeriod);
         }
     }
@@ -129,9 +214,7 @@ public abstract class AbstractBackgroundRunner extends Thread implements Backgro
                 firePropertyChange(e);
                 break;
             case 'c':
-                CaGeResult result = (CaGeResult) e.getNewValue();
-                boolean success = ((Boolean) e.getOldValue()).booleanValue();
-                handleResult(result, success);
+                resultReceived(e);
                 break;
             default:
                 Debug.print("unimplemented property change: " + e.getPropertyName());
@@ -152,14 +235,48 @@ public abstract class AbstractBackgroundRunner extends Thread implements Backgro
         if (generatorFlowing) {
             return;
         }
-        if (embedThread == null) {
+        if (embedThreads == null) {
+            return;
+        }
+        //the graphs are already taken from the generator in requestGraphs()
+        requestGraphs();
+    }
+    
+    private EmbedThread leastBusyEmbedThread() {
+        EmbedThread result = embedThreads[0];
+        for (EmbedThread thread : embedThreads) {
+            if (thread.tasksLeft() < result.tasksLeft()) {
+                result = thread;
+            }
+        }
+        return result;
+    }
+    
+    /*
+     * Takes a batch of graphs from the generator and hands them to the
+     * embedders, unless there are already enough graphs waiting to be
+     * handled. The generator announces each batch with a graphNo change,
+     * which brings us back here for the next batch.
+     */
+    private void requestGraphs() {
+        int room = maxGraphsAhead - (lastEmbeddingGraphNo - graphNo);
+        if (room <= 0 || embedThreads == null) {
             return;
         }
         try {
-            EmbeddableGraph graph = generator.getGraph();
-            embedThread.embed(new CaGeResult(graph, graphNo), propertyChangeListener, doEmbed2D, doEmbed3D, false);
+            if (generator.isRunning()) {
+                long start = System.nanoTime();
+                List<EmbeddableGraph> graphs = generator.nextBatch(room);
+                generatorRecorder.record(System.nanoTime() - start, graphs.size());
+                int no = generator.getGraphNo() - graphs.size();
+                for (EmbeddableGraph graph : graphs) {
+                    lastEmbeddingGraphNo = ++no;
+                    leastBusyEmbedThread().embed(new CaGeResult(graph, no), propertyChangeListener, doEmbed2D, doEmbed3D, false);
+                }
+            }
         } catch (Exception ex) {
             generator.fireExceptionOccurred(ex);
+            end();
         }
     }
 
@@ -168,8 +285,10 @@ public abstract class AbstractBackgroundRunner extends Thread implements Backgro
         Debug.print("running: " + generatorRunning);
         if (generatorRunning) {
             fireRunningChanged();
-        } else if (embedThread != null && embedThread.isAlive()) {
-            embedThread.end();
+        } else if (embedThreads != null && embedThreads[0].isAlive()) {
+            for (EmbedThread embedThread : embedThreads) {
+                embedThread.end();
+            }
         } else {
             end();
         }
@@ -203,31 +322,58 @@ public abstract class AbstractBackgroundRunner extends Thread implements Backgro
         }
     }
     
-    private void handleResult(CaGeResult result, boolean success){
-        if(success){
-            
-            embeddingMade(result);
-            
-            graphNo = result.getGraphNo();
-            if (graphNo == 1 || (graphNoFireInterval > 0 && graphNo % graphNoFireInterval == 0)) {
-                fireGraphNoChanged();
-            }
-            
-            try {
-                if (generator.isRunning()) {
-                    generator.yieldAndAdvanceBy(1);
-                }
-            } catch (Exception ex) {
-                generator.fireExceptionOccurred(ex);
-                end();
+    /*
+     * Stores the result of an embedding and handles all the results that are
+     * now available in the order of the graph numbers.
+     */
+    private void resultReceived(PropertyChangeEvent e) {
+        CaGeResult result = (CaGeResult) e.getNewValue();
+        finishedEmbeddings.put(result.getGraphNo(), e);
+        List<CaGeResult> results = new ArrayList<>();
+        boolean success = true;
+        while (success && (e = finishedEmbeddings.remove(graphNo + results.size() + 1)) != null) {
+            success = ((Boolean) e.getOldValue()).booleanValue();
+            if (success) {
+                results.add((CaGeResult) e.getNewValue());
             }
+        }
+        if (!results.isEmpty()) {
+            handleResults(results);
+        }
+        if (success) {
+            requestGraphs();
         } else {
             end();
         }
     }
+    
+    private void handleResults(List<CaGeResult> results){
+        int previousGraphNo = graphNo;
+        
+        embeddingsMade(results);
+        
+        graphNo = results.get(results.size() - 1).getGraphNo();
+        if (previousGraphNo == 0 || (graphNoFireInterval > 0
+                && graphNo / graphNoFireInterval > previousGraphNo / graphNoFireInterval)) {
+            fireGraphNoChanged();
+        }
+    }
 
     protected abstract void embeddingMade(CaGeResult result);
 
+    /**
+     * Called with a block of embedded graphs with consecutive graph numbers.
+     * This implementation calls {@link #embeddingMade(cage.CaGeResult)} for
+     * each of them.
+     * 
+     * @param results the embedded graphs in the order of their graph numbers
+     */
+    protected void embeddingsMade(List<CaGeResult> results) {
+        for (CaGeResult result : results) {
+            embeddingMade(result);
+        }
+    }
+
     @SuppressWarnings("CallToThreadDumpStack")
     @Override
     public void fireExceptionOccurred(Exception e) {
@@ -255,36 +401,135 @@ public abstract class AbstractBackgroundRunner extends Thread implements Backgro
     }
 
     /**
-     * Calls the <code>start()</code> method of the <code>Thread</code> which causes
-     * this thread to run parallel with the current thread and invoke its <code>run()</code>
-     * method, and also starts the generator and the embedders.
+     * Makes this run continue an earlier one that was stopped after graph
+     * <tt>graphNo</tt>. The generator has to put out its graphs in the same
+     * order each time, so it can't be split in parts. Has to be called
+     * before the runner is started.
+     *
+     * @param graphNo The number of the last graph the earlier run handled.
+     */
+    public void resumeAfter(int graphNo) {
+        if (generator instanceof PartitionedCaGePipe) {
+            throw new IllegalStateException("a run with a generator that is split in parts can't be resumed");
+        }
+        resumeGraphNo = graphNo;
+    }
+
+    //the number of graphs the earlier run handled, or 0
+    int getResumeGraphNo() {
+        return resumeGraphNo;
+    }
+
+    /*
+     * Advances the generator past the graphs the resumed run has handled.
+     * The generator's events aren't queued meanwhile: nothing waits for
+     * them, and with this many graphs they would fill up the queue.
+     */
+    private void skipResumedGraphs() {
+        generator.removePropertyChangeListener(propertyChangeListener);
+        try {
+            long start = System.nanoTime();
+            int n;
+            while (generator.isRunning() && (n = generator.getGraphNo()) < resumeGraphNo) {
+                generator.yieldAndAdvanceBy(resumeGraphNo - n);
+                if (generator.getGraphNo() == n) {
+                    break;
+                }
+            }
+            metrics.stage("skip").record(System.nanoTime() - start, generator.getGraphNo());
+        } catch (Exception ex) {
+            fireExceptionOccurred(ex);
+        } finally {
+            generator.addPropertyChangeListener(propertyChangeListener);
+        }
+        if (generator.getGraphNo() < resumeGraphNo) {
+            fireExceptionOccurred(new Exception("the generator stopped after graph "
+                    + generator.getGraphNo() + ", before graph " + resumeGraphNo
+                    + " where the run is resumed"));
+            end();
+            return;
+        }
+        graphNo = lastEmbeddingGraphNo = resumeGraphNo;
+        if (!generator.isRunning()) {
+            //the generator ended with the graphs that were skipped
+            propertyChangeListener.propertyChange(
+                    new PropertyChangeEvent(generator, "running", true, false));
+        }
+    }
+
+    /**
+     * Returns the figures of this run.
+     */
+    public RunMetrics getMetrics() {
+        return metrics;
+    }
+
+    //the number of events that wait to be handled by this thread
+    int eventQueueDepth() {
+        return queue.size();
+    }
+
+    //the number of graphs that were given to the embedders but aren't embedded yet
+    int embedBacklog() {
+        EmbedThread[] threads = embedThreads;
+        int backlog = 0;
+        if (threads != null) {
+            for (EmbedThread thread : threads) {
+                backlog += thread.tasksLeft();
+            }
+        }
+        return backlog;
+    }
+
+    //the number of graphs that were read but aren't written yet
+    int graphsAhead() {
+        return lastEmbeddingGraphNo - graphNo;
+    }
+
+    /**
+     * Returns a line for the info text with the number of graphs each part
+     * has generated, if the generator is split in parts, and an empty string
+     * otherwise.
+     */
+    protected String getPartitionInfo() {
+        if (!(generator instanceof PartitionedCaGePipe)) {
+            return "";
+        }
+        StringBuilder info = new StringBuilder("generator parts:");
+        for (int partGraphNo : ((PartitionedCaGePipe) generator).getPartGraphNos()) {
+            info.append("\t ").append(partGraphNo);
+        }
+        return info.append("\n").toString();
+    }
+
+    /**
+     * Starts the generator and the embedders, and then calls the <code>start()</code>
+     * method of the <code>Thread</code> which causes this thread to run parallel with
+     * the current thread and invoke its <code>run()</code> method.
      * 
      * @throws IllegalThreadStateException 
      */
     @Override
     public void start() throws IllegalThreadStateException {
         Debug.print("Started BackgroundRunner");
+        metrics.start();
         
-        //start the thread (will cause the run() method to be invoked)
-        super.start();
-        
-        //start the generator process and the embedder thread
+        //start the generator process and the embedder threads
         try {
             generator.start();
-            embedThread.start();
+            for (EmbedThread embedThread : embedThreads) {
+                embedThread.start();
+            }
         } catch (Exception ex) {
             Debug.reportException(ex);
+            fireExceptionOccurred(ex);
             abort();
         }
         
-        //advance the generator to the first graph.
-        try {
-            generator.yieldAndAdvanceBy(1);
-        } catch (Exception ex) {
-            Debug.reportException(ex);
-            generator.fireExceptionOccurred(ex);
-            end();
-        }
+        /* start the thread (will cause the run() method to be invoked), which
+         * takes the first graphs from the generator.
+         */
+        super.start();
         
         //in case there is a CaGeTimer we also start it at this point
         if (timer != null) {
@@ -304,11 +549,13 @@ public abstract class AbstractBackgroundRunner extends Thread implements Backgro
             timer.stop();
         }
         
-        //in case there is an EmbedThread we remove its listeners and stop it.
-        if (embedThread != null) {
-            embedThread.setEmbedThreadListener(null);
-            embedThread.abort();
-            embedThread = null;
+        //in case there are EmbedThreads we remove their listeners and stop them.
+        if (embedThreads != null) {
+            for (EmbedThread embedThread : embedThreads) {
+                embedThread.setEmbedThreadListener(null);
+                embedThread.abort();
+            }
+            embedThreads = null;
         }
         
         //finally we also stop the generator
@@ -340,15 +587,21 @@ public abstract class AbstractBackgroundRunner extends Thread implements Backgro
     /*
      * Called in run() method to get the next event. Will return false once
      * an exception occurs or the queue contains a null (meaning that the end()
-     * method has been invoked).
+     * method has been invoked). The events are taken from the queue in
+     * batches.
      */
     private boolean getNextEvent() {
-        try {
-            event = (PropertyChangeEvent) queue.get();
-        } catch (InterruptedException ex) {
-            fireExceptionOccurred(ex);
-            event = null;
+        if (nextEvent == events.size()) {
+            events.clear();
+            nextEvent = 0;
+            try {
+                queue.getAll(events, eventBatchSize);
+            } catch (InterruptedException ex) {
+                fireExceptionOccurred(ex);
+                events.add(null);
+            }
         }
+        event = (PropertyChangeEvent) events.get(nextEvent++);
         return event != null;
     }
 
@@ -365,17 +618,22 @@ public abstract class AbstractBackgroundRunner extends Thread implements Backgro
     /**
      * Called at the end of the run() method to perform any clean up that needs
      * to be performed at this time. The generator has already been stopped at
-     * the moment that this method is invoked. The embedder thread, if any, is
+     * the moment that this method is invoked. The embedder threads, if any, are
      * still running, but will be stopped once this method returns.
      */
     protected abstract void cleanUp();
     
     private void cleanUpEmbedder(){
-        if (embedThread != null) {
-            embedThread.end();
-            try {
-                embedThread.join();
-            } catch (InterruptedException ex) {
+        EmbedThread[] threads = embedThreads;
+        if (threads != null) {
+            for (EmbedThread embedThread : threads) {
+                embedThread.end();
+            }
+            for (EmbedThread embedThread : threads) {
+                try {
+                    embedThread.join();
+                } catch (InterruptedException ex) {
+                }
             }
         }
     }
@@ -391,6 +649,7 @@ public abstract class AbstractBackgroundRunner extends Thread implements Backgro
         cleanUp();
         //kill the embedder in case it is running
         cleanUpEmbedder();
+        metrics.stop();
         //signal that the Backgroundrunner has finished
         fireRunningChanged();
     }
@@ -402,12 +661,15 @@ public abstract class AbstractBackgroundRunner extends Thread implements Backgro
 
     @Override
     public void run() {
+        if (resumeGraphNo > 0) {
+            skipResumedGraphs();
+        }
+        requestGraphs();
         while (getNextEvent()) {
             if (halted()) {
                 break;
             }
             handlePropertyChange(event);
-            Thread.yield();
         }
         finish();
     }
@@ -0,0 +1,211 @@
+package cage.background;
+
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * The progress of a background run, saved in a file from time to time by
+ * {@link DefaultBackgroundRunner} so the run can be resumed after it was
+ * stopped, e.g. because the machine was restarted. A checkpoint holds the
+ * generator command, the number of the last graph that was written and the
+ * length of each output file at that moment, and whatever else the one who
+ * started the run wants to keep in it with {@link #setProperty(java.lang.String,
+ * java.lang.String)}.
+ *
+ * The output files are opened through {@link #openOutput(java.io.File)}, so
+ * their lengths can be recorded. Before a checkpoint is saved, the writers
+ * are flushed and the files are synced to disk, and the checkpoint file is
+ * replaced in one step, so it never claims more output than there is.
+ * Resuming a run truncates each output file to its recorded length, which
+ * removes the graphs written after the checkpoint, and appends to it.
+ */
+public class Checkpoint {
+
+    private static final String GRAPH_NO = "graphNo";
+    private static final String GENERATOR = "generator";
+    private static final String OUTPUT = "output.";
+
+    private final File file;
+    private final Properties properties = new Properties();
+    private final List<Output> outputs = new ArrayList<>();
+    private final boolean resumed;
+
+    /**
+     * Creates a checkpoint for a new run, which is saved in <tt>file</tt>.
+     */
+    public Checkpoint(File file) {
+        this(file, false);
+    }
+
+    private Checkpoint(File file, boolean resumed) {
+        this.file = file;
+        this.resumed = resumed;
+    }
+
+    /**
+     * Reads the checkpoint in <tt>file</tt> to resume the run it belongs to.
+     * Later checkpoints of the resumed run are saved in the same file.
+     *
+     * @throws IOException if the file can't be read
+     */
+    public static Checkpoint load(File file) throws IOException {
+        Checkpoint checkpoint = new Checkpoint(file, true);
+        try (InputStream in = new FileInputStream(file)) {
+            checkpoint.properties.load(in);
+        }
+        if (checkpoint.properties.getProperty(GRAPH_NO) == null) {
+            throw new IOException(file + " is not a checkpoint of a background run");
+        }
+        return checkpoint;
+    }
+
+    /**
+     * Returns whether this checkpoint was read from a file to resume a run.
+     */
+    public boolean isResumed() {
+        return resumed;
+    }
+
+    /**
+     * Returns the number of the last graph that was written when this
+     * checkpoint was saved, or 0 for a new run.
+     */
+    public synchronized int getGraphNo() {
+        return Integer.parseInt(properties.getProperty(GRAPH_NO, "0"));
+    }
+
+    /**
+     * Returns the generator command of the run, as recorded by the runner
+     * the checkpoint was given to.
+     */
+    public synchronized String getGenerator() {
+        return properties.getProperty(GENERATOR);
+    }
+
+    synchronized void setGenerator(String generator) {
+        properties.setProperty(GENERATOR, generator);
+    }
+
+    public synchronized String getProperty(String key) {
+        return properties.getProperty(key);
+    }
+
+    public synchronized void setProperty(String key, String value) {
+        properties.setProperty(key, value);
+    }
+
+    /**
+     * Opens the next output file of the run. For a new run the file is
+     * created or emptied. For a resumed run the file has to be the same as
+     * when the checkpoint was saved, and it is truncated to the length it
+     * had then.
+     *
+     * @param output The file.
+     * @return A stream that appends to the file, and whose length goes into
+     *         the checkpoints.
+     * @throws IOException if the file can't be opened, or doesn't match the
+     *         checkpoint
+     */
+    public synchronized OutputStream openOutput(File output) throws IOException {
+        String key = OUTPUT + outputs.size();
+        long length = 0;
+        if (resumed) {
+            String recorded = properties.getProperty(key + ".file");
+            if (recorded == null || !new File(recorded).equals(output.getAbsoluteFile())) {
+                throw new IOException(output + " wasn't output " + (outputs.size() + 1)
+                        + " of the run in " + file);
+            }
+            length = Long.parseLong(properties.getProperty(key + ".length"));
+            try (RandomAccessFile raf = new RandomAccessFile(output, "rw")) {
+                if (raf.length() < length) {
+                    throw new IOException(output + " is shorter than at the checkpoint in " + file);
+                }
+                raf.setLength(length);
+            }
+        }
+        properties.setProperty(key + ".file", output.getAbsolutePath());
+        properties.setProperty(key + ".length", Long.toString(length));
+        FileOutputStream out = new FileOutputStream(output, resumed);
+        Output result = new Output(out, out.getFD(), length);
+        outputs.add(result);
+        return result;
+    }
+
+    /**
+     * Saves the checkpoint after graph <tt>graphNo</tt> was written. The
+     * writers have to be flushed before.
+     *
+     * @throws IOException if an output file can't be synced or the
+     *         checkpoint can't be written
+     */
+    synchronized void save(int graphNo) throws IOException {
+        for (int i = 0; i < outputs.size(); ++i) {
+            Output output = outputs.get(i);
+            output.sync();
+            properties.setProperty(OUTPUT + i + ".length", Long.toString(output.getLength()));
+        }
+        properties.setProperty(GRAPH_NO, Integer.toString(graphNo));
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            properties.store(out, "CaGe background run checkpoint");
+            out.getFD().sync();
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Deletes the checkpoint file, once the run is finished.
+     */
+    public void delete() {
+        file.delete();
+    }
+
+    /**
+     * An output file that counts the bytes written to it.
+     */
+    private static class Output extends FilterOutputStream {
+
+        private final FileDescriptor fd;
+        private long length;
+
+        Output(OutputStream out, FileDescriptor fd, long length) {
+            super(out);
+            this.fd = fd;
+            this.length = length;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            ++length;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            length += len;
+        }
+
+        long getLength() {
+            return length;
+        }
+
+        void sync() throws IOException {
+            flush();
+            fd.sync();
+        }
+    }
+}
@@ -4,8 +4,11 @@ import cage.CaGe;
 import cage.CaGePipe;
 import cage.CaGeResult;
 import cage.GeneratorInfo;
+import cage.utility.Debug;
+import cage.utility.LatencyRecorder;
 import cage.writer.CaGeWriter;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -14,15 +17,23 @@ import lisken.systoolbox.Systoolbox;
 /**
  * Default implementation of BackgroundRunner that takes a list of CaGeWriter's and
  * writes the graphs to file or pipe using these writers.
+ * 
+ * If it is given a {@link Checkpoint}, the writers are flushed and the
+ * checkpoint is saved every <tt>CaGe.Background.CheckpointInterval</tt>
+ * seconds, so the run can be resumed from there.
  */
 public class DefaultBackgroundRunner extends AbstractBackgroundRunner {
     
     //counter used to give each DefaultBackgroundRunner a unique name.
     private static int threadCount = 0;
+    private static final int checkpointInterval = CaGe.getCaGePropertyAsInt("CaGe.Background.CheckpointInterval", 300);
     
     private CaGeWriter[] writer;
+    private LatencyRecorder[] writerRecorder;
     private List<CaGeWriter> writers;
     private List<String> writeDests;
+    private Checkpoint checkpoint;
+    private long nextCheckpoint;
 
     public DefaultBackgroundRunner(CaGePipe generator, GeneratorInfo generatorInfo,
             boolean doEmbed2D, boolean doEmbed3D,
@@ -34,8 +45,27 @@ public class DefaultBackgroundRunner extends AbstractBackgroundRunner {
         writer = new CaGeWriter[writers.size()];
         
         writer = writers.toArray(writer);
+        writerRecorder = new LatencyRecorder[writer.length];
+        for (int i = 0; i < writer.length; ++i) {
+            writerRecorder[i] = getMetrics().stage("write" + (i + 1));
+        }
     }
     
+    /**
+     * Saves the progress of this run in <tt>checkpoint</tt>, whose output
+     * files have to be the ones the writers write to. If the checkpoint was
+     * read to resume a run, this run continues after its graph number.
+     * Has to be called before the runner is started.
+     */
+    public void setCheckpoint(Checkpoint checkpoint) {
+        this.checkpoint = checkpoint;
+        checkpoint.setGenerator(Systoolbox.makeCmdLine(generatorInfo.getGenerator()));
+        if (checkpoint.isResumed()) {
+            resumeAfter(checkpoint.getGraphNo());
+        }
+        nextCheckpoint = System.currentTimeMillis() + 1000L * checkpointInterval;
+    }
+
     @Override
     public String getInfoText() {
         infoText.append("generator:\t ").append(generatorInfo.getGeneratorName()).append("\n");
@@ -49,7 +79,7 @@ public class DefaultBackgroundRunner extends AbstractBackgroundRunner {
             infoText.append(dimension <= 0 ? "adj" : dimension + "D");
             infoText.append(" >\t ").append(writeDests.get(i)).append("\n");
         }
-        return infoText.toString();
+        return infoText.toString() + getPartitionInfo();
     }
     
     @Override
@@ -61,11 +91,56 @@ public class DefaultBackgroundRunner extends AbstractBackgroundRunner {
         writer = null;
     }
 
+    @Override
+    protected void embeddingsMade(List<CaGeResult> results) {
+        boolean failed = false;
+        for (int i = 0; i < writer.length; ++i) {
+            try {
+                long start = System.nanoTime();
+                writer[i].outputResults(results);
+                writerRecorder[i].record(System.nanoTime() - start, results.size());
+                writer[i].throwLastIOException();
+            } catch (Exception ex) {
+                failed = true;
+                fireExceptionOccurred(ex);
+                end();
+            }
+        }
+        //a checkpoint after a failed block would claim graphs that weren't written
+        if (!failed && checkpoint != null && checkpointInterval > 0
+                && System.currentTimeMillis() >= nextCheckpoint) {
+            saveCheckpoint(results.get(results.size() - 1).getGraphNo());
+        }
+    }
+
+    /*
+     * A checkpoint that can't be saved is reported, but the run goes on: an
+     * earlier checkpoint is still valid, and a later one may succeed. The
+     * last exception of a writer is checked before flushing it, since
+     * flush() clears it.
+     */
+    private void saveCheckpoint(int graphNo) {
+        nextCheckpoint = System.currentTimeMillis() + 1000L * checkpointInterval;
+        try {
+            for (CaGeWriter w : writer) {
+                w.throwLastIOException();
+                w.flush();
+                w.throwLastIOException();
+            }
+            checkpoint.save(graphNo);
+        } catch (IOException ex) {
+            Debug.reportException(ex);
+            fireExceptionOccurred(ex);
+        }
+    }
+
     @Override
     protected void embeddingMade(CaGeResult result) {
         for (int i = 0; i < writer.length; ++i) {
             try {
+                long start = System.nanoTime();
                 writer[i].outputResult(result);
+                writerRecorder[i].record(System.nanoTime() - start);
                 writer[i].throwLastIOException();
             } catch (Exception ex) {
                 fireExceptionOccurred(ex);
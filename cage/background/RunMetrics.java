@@ -0,0 +1,220 @@
+package cage.background;
+
+import cage.CaGe;
+import cage.utility.Debug;
+import cage.utility.LatencyRecorder;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * The figures of a background run: how many graphs it has handled, how long
+ * each stage took per graph and how many graphs wait between the stages.
+ * The stages are recorded by {@link LatencyRecorder}s: <tt>generator</tt>
+ * for reading and decoding graphs, <tt>embed2D</tt> and <tt>embed3D</tt>
+ * for the embedders, and one for each writer or for the export. Comparing
+ * their total times shows whether a run is held up by the generator, the
+ * embedders or the output.
+ *
+ * While the run is going, the figures are published as MBeans under
+ * <tt>cage:type=BackgroundRunner</tt> if <tt>CaGe.Metrics.JMX</tt> is on,
+ * and logged as a line of <tt>key=value</tt> pairs every
+ * <tt>CaGe.Metrics.LogInterval</tt> seconds and at the end, if that is
+ * larger than 0.
+ */
+public class RunMetrics implements RunMetricsMBean {
+
+    private static final boolean jmx = CaGe.getCaGePropertyAsBoolean("CaGe.Metrics.JMX", true);
+    private static final int logInterval = CaGe.getCaGePropertyAsInt("CaGe.Metrics.LogInterval", 0);
+
+    private final AbstractBackgroundRunner runner;
+    private final Map<String, LatencyRecorder> stages = new LinkedHashMap<>();
+    private final List<ObjectName> registeredNames = new ArrayList<>();
+    private long startTime, endTime;
+    private boolean running;
+    private Thread logThread;
+
+    RunMetrics(AbstractBackgroundRunner runner) {
+        this.runner = runner;
+    }
+
+    /**
+     * Returns the recorder of the stage with the given name, which is made
+     * if there is none yet.
+     */
+    public synchronized LatencyRecorder stage(String name) {
+        LatencyRecorder recorder = stages.get(name);
+        if (recorder == null) {
+            recorder = new LatencyRecorder(name);
+            stages.put(name, recorder);
+            if (running) {
+                register(recorder, ",stage=" + ObjectName.quote(name));
+            }
+        }
+        return recorder;
+    }
+
+    synchronized void start() {
+        startTime = System.nanoTime();
+        running = true;
+        register(this, "");
+        for (LatencyRecorder recorder : stages.values()) {
+            register(recorder, ",stage=" + ObjectName.quote(recorder.getName()));
+        }
+        if (logInterval > 0) {
+            logThread = new Thread(runner.getName() + " metrics") {
+
+                @Override
+                public void run() {
+                    try {
+                        while (true) {
+                            sleep(logInterval * 1000L);
+                            log();
+                        }
+                    } catch (InterruptedException ex) {
+                    }
+                }
+            };
+            logThread.setDaemon(true);
+            logThread.start();
+        }
+    }
+
+    void stop() {
+        Thread thread;
+        synchronized (this) {
+            if (!running) {
+                return;
+            }
+            endTime = System.nanoTime();
+            running = false;
+            thread = logThread;
+            logThread = null;
+            unregisterAll();
+        }
+        if (thread != null) {
+            thread.interrupt();
+            log();
+        }
+    }
+
+    private void log() {
+        Logger.getLogger(RunMetrics.class.getName()).info(getSummary());
+    }
+
+    private void register(Object mbean, String stageKey) {
+        if (!jmx) {
+            return;
+        }
+        try {
+            ObjectName name = new ObjectName("cage:type=BackgroundRunner,name="
+                    + ObjectName.quote(runner.getName()) + stageKey);
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (!server.isRegistered(name)) {
+                server.registerMBean(mbean, name);
+                registeredNames.add(name);
+            }
+        } catch (Exception ex) {
+            Debug.reportException(ex);
+        }
+    }
+
+    private void unregisterAll() {
+        if (registeredNames.isEmpty()) {
+            return;
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName name : registeredNames) {
+            try {
+                server.unregisterMBean(name);
+            } catch (Exception ex) {
+                Debug.reportException(ex);
+            }
+        }
+        registeredNames.clear();
+    }
+
+    @Override
+    public String getRunner() {
+        return runner.getName();
+    }
+
+    @Override
+    public synchronized boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getGraphs() {
+        return runner.getGraphNo();
+    }
+
+    @Override
+    public synchronized double getElapsedSeconds() {
+        if (startTime == 0) {
+            return 0.0;
+        }
+        return ((running ? System.nanoTime() : endTime) - startTime) / 1e9;
+    }
+
+    @Override
+    public double getGraphsPerSecond() {
+        double seconds = getElapsedSeconds();
+        //the graphs of a resumed run were handled by the earlier one
+        return seconds > 0 ? (getGraphs() - runner.getResumeGraphNo()) / seconds : 0.0;
+    }
+
+    @Override
+    public int getEventQueueDepth() {
+        return runner.eventQueueDepth();
+    }
+
+    @Override
+    public int getEmbedBacklog() {
+        return runner.embedBacklog();
+    }
+
+    @Override
+    public int getGraphsAhead() {
+        return runner.graphsAhead();
+    }
+
+    @Override
+    public synchronized String[] getStages() {
+        return stages.keySet().toArray(new String[stages.size()]);
+    }
+
+    /**
+     * Returns all figures on one line of <tt>key=value</tt> pairs.
+     */
+    @Override
+    public String getSummary() {
+        StringBuilder line = new StringBuilder("metrics");
+        line.append(" runner=").append(ObjectName.quote(getRunner()))
+                .append(" elapsed_s=").append(LatencyRecorder.format(getElapsedSeconds()))
+                .append(" graphs=").append(getGraphs())
+                .append(" graphs_per_s=").append(LatencyRecorder.format(getGraphsPerSecond()))
+                .append(" event_queue=").append(getEventQueueDepth())
+                .append(" embed_backlog=").append(getEmbedBacklog())
+                .append(" graphs_ahead=").append(getGraphsAhead());
+        List<LatencyRecorder> recorders;
+        synchronized (this) {
+            recorders = new ArrayList<>(stages.values());
+        }
+        for (LatencyRecorder recorder : recorders) {
+            recorder.appendTo(line.append(' '));
+        }
+        return line.toString();
+    }
+
+    @Override
+    public String toString() {
+        return getSummary();
+    }
+}
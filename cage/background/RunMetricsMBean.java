@@ -0,0 +1,29 @@
+package cage.background;
+
+/**
+ * Management interface of the {@link RunMetrics} of a background runner.
+ * The time spent in each stage is published by a separate
+ * {@link cage.utility.LatencyRecorderMBean}.
+ */
+public interface RunMetricsMBean {
+
+    String getRunner();
+
+    boolean isRunning();
+
+    int getGraphs();
+
+    double getElapsedSeconds();
+
+    double getGraphsPerSecond();
+
+    int getEventQueueDepth();
+
+    int getEmbedBacklog();
+
+    int getGraphsAhead();
+
+    String[] getStages();
+
+    String getSummary();
+}
@@ -4,28 +4,52 @@ import cage.CaGe;
 import cage.CaGePipe;
 import cage.CaGeResult;
 import cage.GeneratorInfo;
+import cage.utility.Debug;
+import cage.utility.LatencyRecorder;
 import cage.viewer.twoview.BatchTwoViewModel;
 import cage.viewer.twoview.TwoViewModel;
 import cage.viewer.twoview.TwoViewSaver;
+import cage.viewer.twoview.TwoViewSavers;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
+import lisken.systoolbox.MPMCMessageQueue;
 import lisken.systoolbox.Systoolbox;
 
 /**
  * Implementation of BackgroundRunner that exports all graphs as images to files
  * according to a file name template it receives.
  * 
+ * The images are painted and encoded by a number of export threads (see
+ * <tt>CaGe.Background.ExportThreads</tt>), each with its own model and saver,
+ * so this runner can take the next graphs while they are busy. At most twice
+ * as many graphs as there are export threads wait to be exported. If the
+ * batch model asks for an archive, all images are written as entries of a
+ * single zip file instead of separate files.
+ * 
  * @author nvcleemp
  */
 public class TwoViewBatchBackgroundRunner extends AbstractBackgroundRunner {
     
+    private static final int exportThreadCount = CaGe.getCaGePropertyAsInt("CaGe.Background.ExportThreads", 0);
+    
     private static int batchRunnerCount = 0;
     
-    private final TwoViewModel model;
-    private final TwoViewSaver saver;
+    private final TwoViewSavers saverType;
     private final File folder;
     private final String fileNameTemplate;
+    private final File archiveFile;
+    private ZipOutputStream archive;
+    private final ExportThread[] exportThreads;
+    private final MPMCMessageQueue exportQueue;
     
     /**
      * 
@@ -37,13 +61,20 @@ public class TwoViewBatchBackgroundRunner extends AbstractBackgroundRunner {
             BatchTwoViewModel batchTwoViewModel) {
         super(String.format("TwoView Batch runner %d", ++batchRunnerCount), generator, generatorInfo, true, false);
         
-        //create a TwoViewModel to handle the results
-        model = new TwoViewModel();
-        
-        //construct the saver and copy the folder and the file name template
-        saver = batchTwoViewModel.getSaver().getSaver(model);
+        //copy the saver type, the folder and the file name template
+        saverType = batchTwoViewModel.getSaver();
         folder = batchTwoViewModel.getFolder();
         fileNameTemplate = batchTwoViewModel.getFileNameTemplate();
+        archiveFile = batchTwoViewModel.isArchive() ?
+                new File(folder, batchTwoViewModel.getArchiveName()) : null;
+        
+        //create the export threads, each with its own model and saver
+        int threads = exportThreadCount > 0 ? exportThreadCount : Runtime.getRuntime().availableProcessors();
+        exportThreads = new ExportThread[threads];
+        for (int i = 0; i < threads; i++) {
+            exportThreads[i] = new ExportThread(i);
+        }
+        exportQueue = new MPMCMessageQueue(2 * threads);
         
         //build the info text once
         buildInfoText();
@@ -66,6 +97,10 @@ public class TwoViewBatchBackgroundRunner extends AbstractBackgroundRunner {
         infoText.append("File template:\t ").append(
                     new File(folder, fileNameTemplate).getPath())
                 .append("\n");
+        if (archiveFile != null) {
+            infoText.append("Archive:\t ").append(archiveFile.getPath())
+                    .append("\n");
+        }
         
     }
 
@@ -73,16 +108,59 @@ public class TwoViewBatchBackgroundRunner extends AbstractBackgroundRunner {
     public void start() throws IllegalThreadStateException {
         if(!(folder.exists() || folder.mkdirs())){
             end();
+        } else if (archiveFile != null) {
+            try {
+                archive = new ZipOutputStream(new BufferedOutputStream(
+                        new FileOutputStream(archiveFile)));
+            } catch (IOException ex) {
+                fireExceptionOccurred(ex);
+                end();
+            }
+        }
+        for (ExportThread exportThread : exportThreads) {
+            exportThread.start();
         }
         super.start();
     }
 
     @Override
     protected void embeddingMade(CaGeResult result) {
-        model.setResult(result);
+        //blocks while all export threads are busy and enough graphs are waiting
+        exportQueue.put(result);
+    }
+    
+    /*
+     * Writes the image of the current graph of the model to the archive, or
+     * to its own file if there is no archive.
+     */
+    private void export(TwoViewModel model, TwoViewSaver saver,
+            ByteArrayOutputStream buffer, CRC32 crc) throws IOException {
+        CaGeResult result = model.getResult();
         String fileName = String.format(fileNameTemplate, result.getGraphNo());
-        File file = new File(folder, fileName);
-        saver.saveFile(file);
+        if (archive == null) {
+            try (OutputStream out = new BufferedOutputStream(
+                    new FileOutputStream(new File(folder, fileName)))) {
+                saver.save(out);
+            }
+            return;
+        }
+        buffer.reset();
+        saver.save(buffer);
+        ZipEntry entry = new ZipEntry(fileName);
+        if (!saverType.isCompressible()) {
+            //store images that are compressed already as they are
+            crc.reset();
+            crc.update(buffer.toByteArray());
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(buffer.size());
+            entry.setCompressedSize(buffer.size());
+            entry.setCrc(crc.getValue());
+        }
+        synchronized (archive) {
+            archive.putNextEntry(entry);
+            buffer.writeTo(archive);
+            archive.closeEntry();
+        }
     }
 
     @Override
@@ -90,14 +168,68 @@ public class TwoViewBatchBackgroundRunner extends AbstractBackgroundRunner {
         /*
          * just return the content of infoText. We added our data to this 
          * StringBuffer during construction and any error that occured was
-         * appended to it.
+         * appended to it. Only the progress of the generator parts changes.
          */
-        return infoText.toString();
+        return infoText.toString() + getPartitionInfo();
     }
 
     @Override
     protected void cleanUp() {
-        //do nothing
+        //let the export threads finish the graphs that are waiting
+        for (ExportThread exportThread : exportThreads) {
+            exportQueue.put(null);
+        }
+        for (ExportThread exportThread : exportThreads) {
+            try {
+                exportThread.join();
+            } catch (InterruptedException ex) {
+            }
+        }
+        if (archive != null) {
+            try {
+                archive.close();
+            } catch (IOException ex) {
+                Debug.reportException(ex);
+            }
+        }
+    }
+    
+    /**
+     * Takes graphs from the export queue and exports them, until it takes
+     * <code>null</code>.
+     */
+    private class ExportThread extends Thread {
+        
+        private final TwoViewModel model = new TwoViewModel();
+        private final TwoViewSaver saver = saverType.getSaver(model);
+        private final LatencyRecorder exportRecorder = getMetrics().stage("export");
+
+        ExportThread(int number) {
+            super(TwoViewBatchBackgroundRunner.this.getName() + " export " + number);
+            setDaemon(true);
+            Systoolbox.lowerPriority(this, 2);
+        }
+
+        @Override
+        public void run() {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            CRC32 crc = new CRC32();
+            try {
+                CaGeResult result;
+                while ((result = (CaGeResult) exportQueue.get()) != null) {
+                    model.setResult(result);
+                    try {
+                        long start = System.nanoTime();
+                        export(model, saver, buffer, crc);
+                        exportRecorder.record(System.nanoTime() - start);
+                    } catch (IOException ex) {
+                        fireExceptionOccurred(ex);
+                    }
+                }
+            } catch (InterruptedException ex) {
+                Debug.reportException(ex);
+            }
+        }
     }
     
 }
@@ -5,7 +5,9 @@
 package cage.embedder;
 
 import java.io.InputStream;
-import java.util.Scanner;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
 
 /**
  * Embedder for benzenoids.
@@ -21,10 +23,17 @@ public class BenzenoidEmbedder {
 
     /**
      * This class embeds benzenoids for CaGe.
+     * @param input The graphs from CaGe in writegraph format
+     */
+    public BenzenoidEmbedder(Reader input) {
+        this.io = new IO(input, 100, 3);
+    }
+
+    /**
      * @param input A string representing the graphs from CaGe
      */
     public BenzenoidEmbedder(String input) {
-        this.io = new IO(input, 100, 3);
+        this(new StringReader(input));
     }
     
     public void startEmbedding() {
@@ -181,13 +190,8 @@ public class BenzenoidEmbedder {
                 usage();
         }
 
-        Scanner sc = new Scanner(System.in);
-        String input = "";
-        while(sc.hasNext()) {
-            input += sc.nextLine() + '\n';
-        }
-
-        BenzenoidEmbedder embedder = new BenzenoidEmbedder(input);
+        // the graphs are read and embedded one by one as they arrive
+        BenzenoidEmbedder embedder = new BenzenoidEmbedder(new InputStreamReader(System.in));
 
         embedder.startEmbedding();
     }
@@ -8,19 +8,31 @@ package cage.embedder;
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.PrintStream;
+import java.io.Reader;
 import java.io.StringReader;
 import java.text.MessageFormat;
+import java.util.Arrays;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
+ * Reads graphs in writegraph format. The input is read line by line while
+ * the graphs are requested, so graphs can be handled as soon as they arrive
+ * and the input never has to be kept in memory.
  *
  * @author Simon Buelens
  */
 public class IO {
 
-    private String input;
+    private final BufferedReader input;
+    // a line that was read, but belongs to the next graph
+    private String pendingLine;
+    // start and end positions of the fields on the current line
+    private int [] fieldStart = new int [16];
+    private int [] fieldEnd = new int [16];
     private int [][] currentGraph;
     private double [][] graphCoords;
     private int graphStartColumns;
@@ -28,97 +40,138 @@ public class IO {
     private int dimension = 0;
     private int nrVertices = 0;
 
-    public IO(String input, int graphStartRows, int graphStartColumns) {
-        this.input = input;
+    public IO(Reader input, int graphStartRows, int graphStartColumns) {
+        this.input = (input instanceof BufferedReader) ? (BufferedReader) input : new BufferedReader(input);
         this.graphStartRows = graphStartRows;
         this.graphStartColumns = graphStartColumns;
     }
 
+    public IO(InputStream input, int graphStartRows, int graphStartColumns) {
+        this(new InputStreamReader(input), graphStartRows, graphStartColumns);
+    }
+
+    public IO(String input, int graphStartRows, int graphStartColumns) {
+        this(new StringReader(input), graphStartRows, graphStartColumns);
+    }
+
     /**
-     * Searches the next graph in the input string. If a graph is found, the amount of vertices
+     * Reads the next graph from the input. If a graph is found, the amount of vertices
      * is returned and the vertices can be requested with <code>getCurrentGraph()</code>.
      * If the input code contained coordinates for the vertices, they can be requested with
      * <code>getGraphCoords()</code>.
      * @return the amount of vertices in the graph just found or 0 if no graph is found.
      */
     public int findNextGraph() {
-        // Find in what kind of code the graph is written
-        String header = "";
-        int nl = 0;
-        while (header.trim().equals("")) {
-            nl = input.indexOf('\n');
-            if (nl == -1) {
-                input = "";
-                return 0;
+        try {
+            // Find in what kind of code the graph is written
+            String header;
+            do {
+                header = nextLine();
+                if (header == null) {
+                    return 0;
+                }
+            } while (splitFields(header) == 0);
+            if (header.trim().equalsIgnoreCase(">>writegraph2d<<")) {
+                this.dimension = 2;
             }
-            header = input.substring(0,nl);
-            this.input = input.substring(nl + 1);
-        }
-        if (header.equalsIgnoreCase(">>writegraph2d<<")) {
-            this.dimension = 2;
-        }
-        else if (header.equalsIgnoreCase(">>writegraph3d<<")) {
-            this.dimension = 3;
-        }
-        else {
-            if (dimension == 0) {
-                throw new RuntimeException("Graph should start with >>writegraph2d<< or >>writegraph3d<<.\n" +
-                        "Instead given input was found:\n" +
-                        "\t\t" + ((nl==-1)?input.substring(0,nl):input));
+            else if (header.trim().equalsIgnoreCase(">>writegraph3d<<")) {
+                this.dimension = 3;
+            }
+            else {
+                if (dimension == 0) {
+                    throw new RuntimeException("Graph should start with >>writegraph2d<< or >>writegraph3d<<.\n" +
+                            "Instead given input was found:\n" +
+                            "\t\t" + header);
+                }
+                // only the first graph in the input has a header
+                pendingLine = header;
             }
-        }
 
-        currentGraph = new int [this.graphStartRows][this.graphStartColumns];
-        graphCoords = new double [currentGraph.length][dimension];
-        BufferedReader reader = new BufferedReader(new StringReader(input));
-        String line = "";
-        nrVertices = 0;
-        try {
-            while ((line = reader.readLine()) != null) {
-                if (line.equals(""))
+            currentGraph = new int [this.graphStartRows][this.graphStartColumns];
+            graphCoords = new double [currentGraph.length][dimension];
+            nrVertices = 0;
+            String line;
+            while ((line = nextLine()) != null) {
+                int fields = splitFields(line);
+                if (fields == 0)
                     continue;
-                if (line.trim().charAt(0) == '0') {
+                if (line.charAt(fieldStart[0]) == '0') {
                     // End of graph reached
-                    input = input.substring(input.indexOf("0")+1);
                     if (nrVertices > 0)
                         return nrVertices;
-                }
-                if ((line = line.trim()).equals(""))
                     continue;
-                String[] vertices = line.replaceAll("\t", "").split(" +");
-                if (vertices.length > 0) {
-                    int vertex = Integer.parseInt(vertices[0]) - 1;
-                    if (vertex >= currentGraph.length) {
-                        doubleCurrentGraph(currentGraph);
-                        doubleGraphCoords(getGraphCoords());
-                    }
-                    // If the amount of neighbours exceeds the start length
-                    if (vertices.length - 1 - dimension> this.graphStartColumns) {
-                        currentGraph[vertex] = new int[vertices.length - 1 - dimension];
-                    }
-                    for (int i = 0; i<dimension; i++) {
-                        graphCoords[vertex][i] = Double.parseDouble(vertices[i+1]);
-                    }
-                    for (int i = dimension + 1; i < vertices.length; i++) {
-                        currentGraph[vertex][i - 1 - dimension] = Integer.parseInt(vertices[i]);
-                    }
-                    nrVertices++;
                 }
-                nl = input.indexOf("\n");
-                if (nl == -1)
-                    input = "";
-                else
-                    this.input = input.substring(input.indexOf("\n") + 1);
+                int vertex = parseInt(line, 0) - 1;
+                while (vertex >= currentGraph.length) {
+                    doubleCurrentGraph(currentGraph);
+                    doubleGraphCoords(getGraphCoords());
+                }
+                // If the amount of neighbours exceeds the start length
+                if (fields - 1 - dimension > this.graphStartColumns) {
+                    currentGraph[vertex] = new int[fields - 1 - dimension];
+                }
+                for (int i = 0; i<dimension; i++) {
+                    graphCoords[vertex][i] = Double.parseDouble(line.substring(fieldStart[i+1], fieldEnd[i+1]));
+                }
+                for (int i = dimension + 1; i < fields; i++) {
+                    currentGraph[vertex][i - 1 - dimension] = parseInt(line, i);
+                }
+                nrVertices++;
             }
         } catch (IOException ex) {
             Logger.getLogger(IO.class.getName()).log(Level.SEVERE, null, ex);
             return 0;
         }
-        if (nrVertices == 0)
-            return this.findNextGraph();
         return nrVertices;
     }
 
+    private String nextLine() throws IOException {
+        if (pendingLine != null) {
+            String line = pendingLine;
+            pendingLine = null;
+            return line;
+        }
+        return input.readLine();
+    }
+
+    /*
+     * Finds the fields on a line, which are separated by spaces and tabs,
+     * and returns the number of fields. The fields themselves are only
+     * copied out of the line when they are parsed.
+     */
+    private int splitFields(String line) {
+        int fields = 0;
+        int length = line.length();
+        int pos = 0;
+        while (true) {
+            while (pos < length && Character.isWhitespace(line.charAt(pos)))
+                pos++;
+            if (pos == length)
+                return fields;
+            if (fields == fieldStart.length) {
+                fieldStart = Arrays.copyOf(fieldStart, 2 * fields);
+                fieldEnd = Arrays.copyOf(fieldEnd, 2 * fields);
+            }
+            fieldStart[fields] = pos;
+            while (pos < length && !Character.isWhitespace(line.charAt(pos)))
+                pos++;
+            fieldEnd[fields++] = pos;
+        }
+    }
+
+    private int parseInt(String line, int field) {
+        int start = fieldStart[field];
+        int end = fieldEnd[field];
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            int digit = line.charAt(i) - '0';
+            if (digit < 0 || digit > 9)
+                throw new NumberFormatException("For input string: \"" + line.substring(start, end) + "\"");
+            value = 10 * value + digit;
+        }
+        return value;
+    }
+
     private void doubleCurrentGraph(int[][] matrix) {
         currentGraph = new int [matrix.length*2][this.graphStartColumns];
         System.arraycopy(matrix, 0, currentGraph, 0, matrix.length);
@@ -0,0 +1,104 @@
+package cage.embedder;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Moves all vertices of a graph at once by the forces acting on them, instead
+ * of one vertex after the other. All forces of one sweep are calculated from
+ * the same coordinates (a Jacobi iteration), so they can be calculated in
+ * parallel: the vertices are divided in blocks which are handled by a
+ * fork-join pool, and the new coordinates are written to a second buffer that
+ * is swapped in when the sweep is finished.
+ *
+ * The rows of the coordinate array are swapped, not the array itself, so
+ * other references to it (like the one in {@link IO}) stay valid.
+ */
+class JacobiRelaxation {
+
+    /**
+     * Calculates the force on a vertex. This is called from several threads
+     * at once, so it should only read the coordinates.
+     */
+    interface Forces {
+
+        void calculateForce(int vertex, double[] force);
+    }
+
+    // the number of vertices that is handled by one task
+    private static final int blockSize = 64;
+
+    private final ForkJoinPool pool;
+    private final double[][] coords;
+    private final double[][] buffer;
+    private final int nrVertices;
+
+    /**
+     * @param pool the pool that calculates the forces
+     * @param coords the coordinates of the vertices, which will be updated
+     * @param nrVertices the number of vertices to move, starting from vertex 0
+     */
+    JacobiRelaxation(ForkJoinPool pool, double[][] coords, int nrVertices) {
+        this.pool = pool;
+        this.coords = coords;
+        this.nrVertices = nrVertices;
+        this.buffer = new double[nrVertices][];
+        for (int v = 0; v < nrVertices; v++) {
+            buffer[v] = new double[coords[v].length];
+        }
+    }
+
+    /**
+     * Moves every vertex by <tt>t</tt> times the force on it.
+     * @param t the percentage of the force vector to move the vertices by
+     * @param forces calculates the force on each vertex
+     * @return the largest distance (in any direction) a vertex was moved
+     */
+    double sweep(double t, Forces forces) {
+        double maxMove = pool.invoke(new Block(0, nrVertices, t, forces));
+        for (int v = 0; v < nrVertices; v++) {
+            double[] temp = coords[v];
+            coords[v] = buffer[v];
+            buffer[v] = temp;
+        }
+        return maxMove;
+    }
+
+    // the tasks are never serialized
+    @SuppressWarnings("serial")
+    private class Block extends RecursiveTask<Double> {
+
+        private final int from, to;
+        private final double t;
+        private final Forces forces;
+
+        Block(int from, int to, double t, Forces forces) {
+            this.from = from;
+            this.to = to;
+            this.t = t;
+            this.forces = forces;
+        }
+
+        @Override
+        protected Double compute() {
+            if (to - from > blockSize) {
+                int middle = (from + to) >>> 1;
+                Block first = new Block(from, middle, t, forces);
+                first.fork();
+                double second = new Block(middle, to, t, forces).compute();
+                return Math.max(first.join(), second);
+            }
+            double maxMove = 0.0;
+            double[] force = new double[3];
+            for (int v = from; v < to; v++) {
+                forces.calculateForce(v, force);
+                for (int i = 0; i < 3; i++) {
+                    double move = t * force[i];
+                    buffer[v][i] = coords[v][i] + move;
+                    maxMove = Math.max(maxMove, Math.abs(move));
+                }
+            }
+            return maxMove;
+        }
+    }
+}
@@ -6,8 +6,11 @@
 
 package cage.embedder;
 
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
 import java.util.Random;
-import java.util.Scanner;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  *
@@ -42,6 +45,12 @@ public class NanoconeEmbedder {
     private boolean print;
     private int minLayers;
     private boolean solo = false;
+    // The amount of threads for the parallel relaxation, 0 to move the vertices one by one
+    private int threads = 0;
+    // Stop the parallel relaxation when no vertex moves more than this
+    private double tolerance = 1e-6;
+    private ForkJoinPool pool;
+    private final double [] force = new double [3];
 
     /**
      * @param args the command line arguments
@@ -53,13 +62,8 @@ public class NanoconeEmbedder {
                 usage();
         }
 
-        Scanner sc = new Scanner(System.in);
-        String input = "";
-        while(sc.hasNext()) {
-            input += sc.nextLine() + '\n';
-        }
-
-        NanoconeEmbedder embedder = new NanoconeEmbedder(input);
+        // the graphs are read and embedded one by one as they arrive
+        NanoconeEmbedder embedder = new NanoconeEmbedder(new InputStreamReader(System.in));
 
         int p, print, layers;
         for (int i=0; i<args.length; i++) {
@@ -172,15 +176,41 @@ public class NanoconeEmbedder {
                     usage();
                 embedder.setMinimumLayers(layers);
             }
+            else if (args[i].equals("-j")) {
+                if (args.length < i + 2)
+                    usage();
+                int threads = 0;
+                try {
+                    threads = Integer.parseInt(args[i + 1]);
+                } catch (NumberFormatException e) {
+                    usage();
+                }
+                if (threads < 0)
+                    usage();
+                embedder.setThreads(threads);
+            }
+            else if (args[i].equals("-e")) {
+                if (args.length < i + 2)
+                    usage();
+                double tolerance = 0.0;
+                try {
+                    tolerance = Double.parseDouble(args[i + 1]);
+                } catch (NumberFormatException e) {
+                    usage();
+                }
+                if (tolerance < 0.0)
+                    usage();
+                embedder.setTolerance(tolerance);
+            }
         }
         embedder.startEmbedding();
     }
     
     /**
      * This class can pre-embed nanocones for CaGe. It will search the depth of the first pentagon itself.
-     * @param input A string representing the graphs from CaGe
+     * @param input The graphs from CaGe in writegraph format
      */
-    public NanoconeEmbedder(String input) {
+    public NanoconeEmbedder(Reader input) {
         this.graphStartRows = 100;
         this.graphStartColumns = 3;
         this.io = new IO(input, graphStartRows, graphStartColumns);
@@ -201,6 +231,13 @@ public class NanoconeEmbedder {
         show[2] = 0;
     }
 
+    /**
+     * @param input A string representing the graphs from CaGe
+     */
+    public NanoconeEmbedder(String input) {
+        this(new StringReader(input));
+    }
+
     public void startEmbedding() {
         while ((nrVertices = io.findNextGraph()) > 0) {
             this.currentGraph = io.getCurrentGraph();
@@ -465,14 +502,29 @@ public class NanoconeEmbedder {
         if (phases == 2)
             return;
 
-        maxStep = nrVertices*this.steps[1];
-        for (int step=0; step<maxStep; step++) {
-            vertex = step % nrVertices;
-            t = (1.0 - step/maxStep);
-            t = 0.05 * t * t * t;
-            findLocalOptimum(vertex, t, factors[2], 0, true);
-            if (this.show[1] != 0  && (step + 1)%(maxStep/this.show[1]) == 0)
-                io.printGraph(System.out);
+        if (threads > 0) {
+            // Move all vertices at once and stop when they hardly move anymore.
+            JacobiRelaxation relaxation = new JacobiRelaxation(getPool(), graphCoords, nrVertices);
+            int sweeps = this.steps[1];
+            for (int sweep=0; sweep<sweeps; sweep++) {
+                t = (1.0 - sweep/sweeps);
+                t = 0.05 * t * t * t;
+                double move = relaxation.sweep(t, (v, f) -> calculateForce(v, factors[2], 0, true, f));
+                if (this.show[1] != 0  && (sweep + 1)%Math.max(sweeps/this.show[1], 1) == 0)
+                    io.printGraph(System.out);
+                if (move < tolerance)
+                    break;
+            }
+        } else {
+            maxStep = nrVertices*this.steps[1];
+            for (int step=0; step<maxStep; step++) {
+                vertex = step % nrVertices;
+                t = (1.0 - step/maxStep);
+                t = 0.05 * t * t * t;
+                findLocalOptimum(vertex, t, factors[2], 0, true);
+                if (this.show[1] != 0  && (step + 1)%(maxStep/this.show[1]) == 0)
+                    io.printGraph(System.out);
+            }
         }
 
 
@@ -666,7 +718,20 @@ public class NanoconeEmbedder {
      * @param forceConvex use this to stress the fact that you want the graph to be convex.
      */
     private void findLocalOptimum(int vertex, double t, double factor, double forceConvex, boolean quadratic) {
-        double x = 0.0, y = 0.0, z = 0.0, d;
+        calculateForce(vertex, factor, forceConvex, quadratic, force);
+        graphCoords[vertex][0] += t*force[0];
+        graphCoords[vertex][1] += t*force[1];
+        graphCoords[vertex][2] += t*force[2];
+    }
+
+    /**
+     * Calculate the force that is applied to <code>vertex</code>, as described for
+     * {@link #findLocalOptimum(int, double, double, double, boolean)}, without moving the vertex.
+     * The coordinates are only read, so this can be called for several vertices at once.
+     * @param force the array to store the force vector in
+     */
+    private void calculateForce(int vertex, double factor, double forceConvex, boolean quadratic, double [] force) {
+        double x = 0.0, y = 0.0, z = 0.0, d, e;
 
         // Calculate forces applied to the vertex by it's neighbours and it's neighbours' neighbours.
 
@@ -676,10 +741,10 @@ public class NanoconeEmbedder {
                 if (d > epsilon) {
                     if (!quadratic)
                         d = (l - d) / d;
-                    else if (l - d < 0)
-                        d = - Math.pow(l - d, 2) / d;
-                    else
-                        d = Math.pow(l - d, 2) / d;
+                    else {
+                        e = l - d;
+                        d = e * Math.abs(e) / d;
+                    }
                     x += d*(graphCoords[vertex][0] - graphCoords[n - 1][0]);
                     y += d*(graphCoords[vertex][1] - graphCoords[n - 1][1]);
                     z += d*(graphCoords[vertex][2] - graphCoords[n - 1][2]);
@@ -689,10 +754,10 @@ public class NanoconeEmbedder {
                             if (d > epsilon) {
                                 if (!quadratic)
                                     d = (vertexDistanceInHexagon - d) / d;
-                                else if (vertexDistanceInHexagon - d < 0)
-                                    d = - Math.pow(vertexDistanceInHexagon - d, 2) / d;
-                                else
-                                    d = Math.pow(vertexDistanceInHexagon - d, 2) / d;
+                                else {
+                                    e = vertexDistanceInHexagon - d;
+                                    d = e * Math.abs(e) / d;
+                                }
                                 x += factor*d*(graphCoords[vertex][0] - graphCoords[n - 1][0]);
                                 y += factor*d*(graphCoords[vertex][1] - graphCoords[n - 1][1]);
                                 z += factor*d*(graphCoords[vertex][2] - graphCoords[n - 1][2]);
@@ -713,9 +778,9 @@ public class NanoconeEmbedder {
             z *= d;
         }
 
-        graphCoords[vertex][0] += t*x;
-        graphCoords[vertex][1] += t*y;
-        graphCoords[vertex][2] += t*z;
+        force[0] = x;
+        force[1] = y;
+        force[2] = z;
     }
 
     /**
@@ -906,8 +971,13 @@ public class NanoconeEmbedder {
                 "               If the graph has less layers, layers will be added. \n" +
                 "               Then the embedding will be calculated.\n" +
                 "               Afterwards the added layers are removed again. Should be at least 0.\n" +
+                "   -j n        the amount of threads that move the vertices in phase 3. With 1 or more\n" +
+                "               threads all vertices are moved at once, using the forces of the previous\n" +
+                "               step, and the phase ends as soon as no vertex moves more than the\n" +
+                "               tolerance. With 0 the vertices are moved one after the other.\n" +
+                "   -e d        the tolerance for -j, in double format (x.xxx)\n" +
                 "\n" +
-                "The default is:    -p 4 -f 0.25,0.15,0.22,0.35 -s 50,500,500 -sp 0 -l 1.42 -print 1 -layers 3";
+                "The default is:    -p 4 -f 0.25,0.15,0.22,0.35 -s 50,500,500 -sp 0 -l 1.42 -print 1 -layers 3 -j 0 -e 0.000001";
         System.err.println(output);
         System.exit(1);
     }
@@ -955,5 +1025,19 @@ public class NanoconeEmbedder {
         this.solo = b;
     }
 
+    private void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    private void setTolerance(double tolerance) {
+        this.tolerance = tolerance;
+    }
+
+    private ForkJoinPool getPool() {
+        if (pool == null)
+            pool = new ForkJoinPool(threads);
+        return pool;
+    }
+
 
 }
@@ -6,10 +6,13 @@
 
 package cage.embedder;
 
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
-import java.util.Scanner;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  *
@@ -42,6 +45,12 @@ public class NanotubeEmbedder {
     private double [] factors;
     private int b1;
     private int b2;
+    // The amount of threads for the parallel relaxation, 0 to move the vertices one by one
+    private int threads = 0;
+    // Stop the parallel relaxation when no vertex moves more than this
+    private double tolerance = 1e-6;
+    private ForkJoinPool pool;
+    private final double [] force = new double [3];
 
 
     public static void main (String [] args) {
@@ -52,13 +61,8 @@ public class NanotubeEmbedder {
                 usage();
         }
 
-        Scanner sc = new Scanner(System.in);
-        String input = "";
-        while(sc.hasNext()) {
-            input += sc.nextLine() + '\n';
-        }
-
-        NanotubeEmbedder embedder = new NanotubeEmbedder(input);
+        // the graphs are read and embedded one by one as they arrive
+        NanotubeEmbedder embedder = new NanotubeEmbedder(new InputStreamReader(System.in));
 
         int p;
         for (int i=0; i<args.length; i++) {
@@ -92,15 +96,41 @@ public class NanotubeEmbedder {
                 }
                 embedder.setFactors(factors);
             }
+            else if (args[i].equals("-j")) {
+                if (args.length < i + 2)
+                    usage();
+                int threads = 0;
+                try {
+                    threads = Integer.parseInt(args[i + 1]);
+                } catch (NumberFormatException e) {
+                    usage();
+                }
+                if (threads < 0)
+                    usage();
+                embedder.setThreads(threads);
+            }
+            else if (args[i].equals("-e")) {
+                if (args.length < i + 2)
+                    usage();
+                double tolerance = 0.0;
+                try {
+                    tolerance = Double.parseDouble(args[i + 1]);
+                } catch (NumberFormatException e) {
+                    usage();
+                }
+                if (tolerance < 0.0)
+                    usage();
+                embedder.setTolerance(tolerance);
+            }
         }
         embedder.startEmbedding();
     }
 
     /**
      * This class can pre-embed nanocones for CaGe. It will search the depth of the first pentagon itself.
-     * @param input A string representing the graphs from CaGe
+     * @param input The graphs from CaGe in writegraph format
      */
-    public NanotubeEmbedder(String input) {
+    public NanotubeEmbedder(Reader input) {
         this.graphStartRows = 100;
         this.graphStartColumns = 3;
         this.io = new IO(input, graphStartRows, graphStartColumns);
@@ -113,6 +143,13 @@ public class NanotubeEmbedder {
         // Set the factors for the different phases
     }
 
+    /**
+     * @param input A string representing the graphs from CaGe
+     */
+    public NanotubeEmbedder(String input) {
+        this(new StringReader(input));
+    }
+
     public void startEmbedding() {
         while ((nrVertices = io.findNextGraph()) > 0) {
             this.currentGraph = io.getCurrentGraph();
@@ -536,12 +573,24 @@ public class NanotubeEmbedder {
          * In this last phase, we rearrange all the vertices to become a local minimum.
          */
 
-        maxStep = (nrVertices)*250;
-        for (int step=0; step<maxStep; step++) {
-            vertex = step % nrVertices;
-            t = (1.0 - step/maxStep);
-            t = 0.1 * t * t * t;
-            findLocalOptimum(vertDepth[0][vertex], t, factors[2], 0, false);
+        if (threads > 0) {
+            // Move all vertices at once and stop when they hardly move anymore.
+            JacobiRelaxation relaxation = new JacobiRelaxation(getPool(), graphCoords, nrVertices);
+            int sweeps = 250;
+            for (int sweep=0; sweep<sweeps; sweep++) {
+                t = (1.0 - sweep/sweeps);
+                t = 0.1 * t * t * t;
+                if (relaxation.sweep(t, (v, f) -> calculateForce(v, factors[2], 0, false, f)) < tolerance)
+                    break;
+            }
+        } else {
+            maxStep = (nrVertices)*250;
+            for (int step=0; step<maxStep; step++) {
+                vertex = step % nrVertices;
+                t = (1.0 - step/maxStep);
+                t = 0.1 * t * t * t;
+                findLocalOptimum(vertDepth[0][vertex], t, factors[2], 0, false);
+            }
         }
 
     }
@@ -562,7 +611,20 @@ public class NanotubeEmbedder {
      * @param forceConvex use this to stress the fact that you want the graph to be convex.
      */
     private void findLocalOptimum(int vertex, double t, double factor, double forceConvex, boolean quadratic) {
-        double x = 0.0, y = 0.0, z = 0.0, d;
+        calculateForce(vertex, factor, forceConvex, quadratic, force);
+        graphCoords[vertex][0] += t*force[0];
+        graphCoords[vertex][1] += t*force[1];
+        graphCoords[vertex][2] += t*force[2];
+    }
+
+    /**
+     * Calculate the force that is applied to <code>vertex</code>, as described for
+     * {@link #findLocalOptimum(int, double, double, double, boolean)}, without moving the vertex.
+     * The coordinates are only read, so this can be called for several vertices at once.
+     * @param force the array to store the force vector in
+     */
+    private void calculateForce(int vertex, double factor, double forceConvex, boolean quadratic, double [] force) {
+        double x = 0.0, y = 0.0, z = 0.0, d, e;
 
         // Calculate forces applied to the vertex by it's neighbours and it's neighbours' neighbours.
 
@@ -572,10 +634,10 @@ public class NanotubeEmbedder {
                 if (d > epsilon) {
                     if (!quadratic)
                         d = (l - d) / d;
-                    else if (l - d < 0)
-                        d = - Math.pow(l - d, 2) / d;
-                    else
-                        d = Math.pow(l - d, 2) / d;
+                    else {
+                        e = l - d;
+                        d = e * Math.abs(e) / d;
+                    }
                     x += d*(graphCoords[vertex][0] - graphCoords[n - 1][0]);
                     y += d*(graphCoords[vertex][1] - graphCoords[n - 1][1]);
                     z += d*(graphCoords[vertex][2] - graphCoords[n - 1][2]);
@@ -585,10 +647,10 @@ public class NanotubeEmbedder {
                             if (d > epsilon) {
                                 if (!quadratic)
                                     d = (vertexDistanceInHexagon - d) / d;
-                                else if (vertexDistanceInHexagon - d < 0)
-                                    d = - Math.pow(vertexDistanceInHexagon - d, 2) / d;
-                                else
-                                    d = Math.pow(vertexDistanceInHexagon - d, 2) / d;
+                                else {
+                                    e = vertexDistanceInHexagon - d;
+                                    d = e * Math.abs(e) / d;
+                                }
                                 x += factor*d*(graphCoords[vertex][0] - graphCoords[n - 1][0]);
                                 y += factor*d*(graphCoords[vertex][1] - graphCoords[n - 1][1]);
                                 z += factor*d*(graphCoords[vertex][2] - graphCoords[n - 1][2]);
@@ -601,15 +663,15 @@ public class NanotubeEmbedder {
 
         // Add a force from the inside of the graph.
         if (forceConvex > 0) {
-            d = Math.sqrt(Math.pow(graphCoords[vertex][0], 2) + Math.pow(graphCoords[vertex][1], 2));
+            d = Math.sqrt(graphCoords[vertex][0] * graphCoords[vertex][0] + graphCoords[vertex][1] * graphCoords[vertex][1]);
             d *= (1 + forceConvex);
             x *= d;
             y *= d;
         }
 
-        graphCoords[vertex][0] += t*x;
-        graphCoords[vertex][1] += t*y;
-        graphCoords[vertex][2] += t*z;
+        force[0] = x;
+        force[1] = y;
+        force[2] = z;
     }
     
     /**
@@ -725,8 +787,13 @@ public class NanotubeEmbedder {
                 "               phases. You can specify upto 3 different factors.\n" +
                 "               If you specify less then 3, the phases that follow will use the same factor\n" +
                 "               as the last one specified. They should be doubles (x.xxx), seperated by comma's.\n" +
+                "   -j n        the amount of threads that move the vertices in phase 3. With 1 or more\n" +
+                "               threads all vertices are moved at once, using the forces of the previous\n" +
+                "               step, and the phase ends as soon as no vertex moves more than the\n" +
+                "               tolerance. With 0 the vertices are moved one after the other.\n" +
+                "   -e d        the tolerance for -j, in double format (x.xxx)\n" +
                 "\n" +
-                "The default is:    -p 3 -f 0.05,0.15,0.25";
+                "The default is:    -p 3 -f 0.05,0.15,0.25 -j 0 -e 0.000001";
         System.err.println(output);
         System.exit(1);
     }
@@ -808,4 +875,18 @@ public class NanotubeEmbedder {
                 this.factors[i] = factors[factors.length - 1];
     }
 
+    private void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    private void setTolerance(double tolerance) {
+        this.tolerance = tolerance;
+    }
+
+    private ForkJoinPool getPool() {
+        if (pool == null)
+            pool = new ForkJoinPool(threads);
+        return pool;
+    }
+
 }
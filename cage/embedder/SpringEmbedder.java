@@ -0,0 +1,571 @@
+package cage.embedder;
+
+import cage.EmbeddableGraph;
+import java.util.Random;
+
+/**
+ * Embeds a planar graph in the plane or in space without leaving the Java
+ * process, for the cases in which the <tt>embed</tt> program would be run.
+ * The embedder works on the graph in memory and keeps its work arrays
+ * between graphs, so one instance can embed many graphs one after the other.
+ *
+ * In 2D this is Tutte's method with uniform weights (<tt>embed -pt</tt>):
+ * the outer face is a regular polygon and every other vertex lies at the
+ * barycenter of its neighbours. The linear system is solved with conjugate
+ * gradients. For a 3-connected graph the result is a planar drawing with
+ * convex faces.
+ *
+ * In 3D the vertices are first put on a sphere: the outer face of the Tutte
+ * drawing at the south pole, each further breadth-first level on the next
+ * circle of latitude, and each vertex at the longitude of its direction in
+ * the Tutte drawing. The positions are then refined with the spring model
+ * of <tt>tkspring</tt>: three phases of bond forces, first against a
+ * central repulsion, then against a repulsion between the neighbours of a
+ * vertex and last against forces that pull the angles at each vertex
+ * towards 120 degrees. Each phase cools down, i.e. the largest displacement
+ * per step shrinks to zero.
+ *
+ * Like <tt>embed</tt>, the result is centered and scaled to an average edge
+ * length of 1.4.
+ */
+public class SpringEmbedder {
+
+    private static final double edgeLength = 1.4;
+    private static final double bestAngle = 2.0 / 3.0 * Math.PI;
+
+    private volatile boolean aborted;
+    private int n;
+    // the directed edges: the neighbours of v are target[offset[v]..offset[v+1]-1]
+    private int[] offset = new int[2];
+    private int[] target = new int[0];
+    private double[] x = new double[0], y = new double[0], z = new double[0];
+    private double[] dx = new double[0], dy = new double[0], dz = new double[0];
+    // work arrays for the conjugate gradients and the breadth-first search
+    private double[] r = new double[0], p = new double[0], q = new double[0];
+    private int[] level = new int[0];
+    private boolean[] fixed = new boolean[0];
+    private Random random;
+
+    /**
+     * Embeds <tt>graph</tt> in the plane.
+     *
+     * @param graph The graph.
+     * @param outerStart The start of a directed edge that has the outer face
+     *        on its right (clockwise), or 0 to take a largest face.
+     * @param outerEnd The end of that edge.
+     * @throws InterruptedException if the embedding was aborted
+     * @throws IllegalArgumentException if the edge doesn't exist or the
+     *         outer face doesn't close
+     */
+    public void embed2D(EmbeddableGraph graph, int outerStart, int outerEnd)
+            throws InterruptedException {
+        aborted = false;
+        load(graph, false);
+        tutte(outerFace(outerStart, outerEnd));
+        normalize(false);
+        float[] c = new float[2];
+        for (int v = 1; v <= n; v++) {
+            c[0] = (float) x[v];
+            c[1] = (float) y[v];
+            graph.set2DCoordinates(v, c);
+        }
+    }
+
+    /**
+     * Embeds <tt>graph</tt> in space. The factors multiply the number of
+     * steps like <tt>embed -f</tt> does: the second one those of the first
+     * two spring phases, which find the shape, and the third one those of
+     * the last phase, which evens out the bond lengths and angles.
+     *
+     * @param graph The graph.
+     * @param refine Whether to start from the 3D coordinates of the graph
+     *        and only run the last phase.
+     * @param factors The factors for the number of steps.
+     * @throws InterruptedException if the embedding was aborted
+     */
+    public void embed3D(EmbeddableGraph graph, boolean refine, float[] factors)
+            throws InterruptedException {
+        aborted = false;
+        random = new Random(0);
+        refine &= graph.has3DCoordinates();
+        load(graph, refine);
+        int steps = n < 200 ? 200 : n;
+        if (!refine) {
+            tutte(outerFace(0, 0));
+            sphere();
+            relax(0, Math.round(factors[1] * steps / 20));
+            relax(1, Math.round(factors[1] * steps));
+        }
+        relax(2, Math.round(factors[2] * steps / 10));
+        normalize(true);
+        float[] c = new float[3];
+        for (int v = 1; v <= n; v++) {
+            c[0] = (float) x[v];
+            c[1] = (float) y[v];
+            c[2] = (float) z[v];
+            graph.set3DCoordinates(v, c);
+        }
+    }
+
+    /**
+     * Stops the embedding that is running in another thread. It throws an
+     * <code>InterruptedException</code>.
+     */
+    public void abort() {
+        aborted = true;
+    }
+
+    private void checkAborted() throws InterruptedException {
+        if (aborted) {
+            throw new InterruptedException("embedding aborted");
+        }
+    }
+
+    private void load(EmbeddableGraph graph, boolean withCoordinates) {
+        n = graph.getSize();
+        if (offset.length < n + 2) {
+            int capacity = Math.max(n + 2, 2 * offset.length);
+            offset = new int[capacity];
+            x = new double[capacity];
+            y = new double[capacity];
+            z = new double[capacity];
+            dx = new double[capacity];
+            dy = new double[capacity];
+            dz = new double[capacity];
+            r = new double[capacity];
+            p = new double[capacity];
+            q = new double[capacity];
+            level = new int[capacity];
+            fixed = new boolean[capacity];
+        }
+        offset[1] = 0;
+        for (int v = 1; v <= n; v++) {
+            offset[v + 1] = offset[v] + graph.getValency(v);
+        }
+        if (target.length < offset[n + 1]) {
+            target = new int[Math.max(offset[n + 1], 2 * target.length)];
+        }
+        float[] c = new float[3];
+        for (int v = 1; v <= n; v++) {
+            for (int i = offset[v]; i < offset[v + 1]; i++) {
+                target[i] = graph.getNeighbour(v, i - offset[v]);
+            }
+            if (withCoordinates) {
+                graph.get3DCoordinates(v, c);
+                x[v] = c[0];
+                y[v] = c[1];
+                z[v] = c[2];
+            } else {
+                x[v] = y[v] = z[v] = 0;
+            }
+        }
+    }
+
+    /*
+     * Returns the directed edge from w to v, or -1.
+     */
+    private int edge(int w, int v) {
+        for (int i = offset[w]; i < offset[w + 1]; i++) {
+            if (target[i] == v) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /*
+     * Returns the edge that follows edge e (from v to w) in its face: from w
+     * to the neighbour of w that follows v. The neighbours are in clockwise
+     * order, so the face lies on the left of e.
+     */
+    private int nextInFace(int v, int e) {
+        int w = target[e];
+        int back = edge(w, v);
+        return back + 1 < offset[w + 1] ? back + 1 : offset[w];
+    }
+
+    private int source(int e) {
+        int low = 1, high = n;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (offset[mid] <= e) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    /*
+     * Returns an edge of the outer face: the given edge or an edge of a
+     * largest face.
+     */
+    private int outerFace(int outerStart, int outerEnd) {
+        if (outerStart > 0) {
+            int e = outerEnd > 0 && outerEnd <= n ? edge(outerEnd, outerStart) : -1;
+            if (e < 0) {
+                throw new IllegalArgumentException("Start edge " + outerStart + "->"
+                        + outerEnd + " does not exist");
+            }
+            return e;
+        }
+        int edges = offset[n + 1];
+        boolean[] visited = new boolean[edges];
+        int best = -1, bestSize = 0;
+        for (int e0 = 0; e0 < edges; e0++) {
+            if (visited[e0]) {
+                continue;
+            }
+            int size = 0;
+            int e = e0;
+            int v = source(e0);
+            do {
+                visited[e] = true;
+                size++;
+                int w = target[e];
+                e = nextInFace(v, e);
+                v = w;
+            } while (e != e0 && size <= edges);
+            if (size > bestSize) {
+                best = e0;
+                bestSize = size;
+            }
+        }
+        return best;
+    }
+
+    /*
+     * Puts the vertices of the face on the left of edge e0 on a regular
+     * polygon on the unit circle and all other vertices at the barycenter of
+     * their neighbours.
+     */
+    private void tutte(int e0) throws InterruptedException {
+        for (int v = 1; v <= n; v++) {
+            fixed[v] = false;
+            level[v] = 0;
+        }
+        if (e0 < 0) {
+            return;
+        }
+        // a face has at most as many edges as the graph, unless the rotation system isn't closed
+        int edges = offset[n + 1];
+        int size = 0;
+        int steps = 0;
+        int e = e0;
+        int v = source(e0);
+        do {
+            if (!fixed[v]) {
+                fixed[v] = true;
+                size++;
+            }
+            int w = target[e];
+            e = nextInFace(v, e);
+            v = w;
+            if (++steps > edges) {
+                throw new IllegalArgumentException("the outer face doesn't close: "
+                        + "the rotation system is broken");
+            }
+        } while (e != e0);
+        int i = 0;
+        steps = 0;
+        e = e0;
+        v = source(e0);
+        do {
+            if (level[v] == 0) {
+                // the outer face lies on the left, outside the circle, so go round clockwise
+                double angle = -2 * Math.PI * i++ / size;
+                x[v] = Math.cos(angle);
+                y[v] = Math.sin(angle);
+                level[v] = -1;
+            }
+            int w = target[e];
+            e = nextInFace(v, e);
+            v = w;
+            if (++steps > edges) {
+                throw new IllegalArgumentException("the outer face doesn't close: "
+                        + "the rotation system is broken");
+            }
+        } while (e != e0);
+        solve(x);
+        solve(y);
+    }
+
+    /*
+     * Solves the Tutte equations for the coordinates in c with conjugate
+     * gradients: deg(v) c[v] - sum of c[w] over the neighbours w = 0 for all
+     * vertices v that are not fixed.
+     */
+    private void solve(double[] c) throws InterruptedException {
+        double rr = 0;
+        for (int v = 1; v <= n; v++) {
+            if (fixed[v]) {
+                r[v] = p[v] = 0;
+                continue;
+            }
+            double residual = 0;
+            for (int i = offset[v]; i < offset[v + 1]; i++) {
+                residual += c[target[i]];
+            }
+            residual -= (offset[v + 1] - offset[v]) * c[v];
+            r[v] = p[v] = residual;
+            rr += residual * residual;
+        }
+        double tolerance = 1e-20 * n;
+        for (int iteration = 0; iteration < 2 * n && rr > tolerance; iteration++) {
+            if ((iteration & 63) == 0) {
+                checkAborted();
+            }
+            double pq = 0;
+            for (int v = 1; v <= n; v++) {
+                if (fixed[v]) {
+                    q[v] = 0;
+                    continue;
+                }
+                double value = (offset[v + 1] - offset[v]) * p[v];
+                for (int i = offset[v]; i < offset[v + 1]; i++) {
+                    value -= p[target[i]];
+                }
+                q[v] = value;
+                pq += p[v] * value;
+            }
+            if (pq <= 0) {
+                break;
+            }
+            double alpha = rr / pq;
+            double rrNew = 0;
+            for (int v = 1; v <= n; v++) {
+                c[v] += alpha * p[v];
+                r[v] -= alpha * q[v];
+                rrNew += r[v] * r[v];
+            }
+            double beta = rrNew / rr;
+            for (int v = 1; v <= n; v++) {
+                p[v] = r[v] + beta * p[v];
+            }
+            rr = rrNew;
+        }
+    }
+
+    /*
+     * Moves the vertices of the Tutte drawing onto a sphere of radius
+     * sqrt(n): the latitude is given by the breadth-first level from the
+     * outer face, the longitude by the direction from the center.
+     */
+    private void sphere() {
+        int[] queue = new int[n];
+        int head = 0, tail = 0;
+        for (int v = 1; v <= n; v++) {
+            if (fixed[v]) {
+                level[v] = 0;
+                queue[tail++] = v;
+            } else {
+                level[v] = -1;
+            }
+        }
+        int maxLevel = 0;
+        while (head < tail) {
+            int v = queue[head++];
+            maxLevel = Math.max(maxLevel, level[v]);
+            for (int i = offset[v]; i < offset[v + 1]; i++) {
+                int w = target[i];
+                if (level[w] < 0) {
+                    level[w] = level[v] + 1;
+                    queue[tail++] = w;
+                }
+            }
+        }
+        double radius = Math.sqrt(n);
+        for (int v = 1; v <= n; v++) {
+            double latitude = -0.5 * Math.PI
+                    + (Math.max(level[v], 0) + 0.5) * Math.PI / (maxLevel + 1.0);
+            double longitude = Math.atan2(y[v], x[v]);
+            x[v] = Math.cos(latitude) * Math.cos(longitude) * radius;
+            y[v] = Math.cos(latitude) * Math.sin(longitude) * radius;
+            z[v] = Math.sin(latitude) * radius;
+        }
+    }
+
+    /*
+     * Runs one phase of the spring model of tkspring for the given number
+     * of steps.
+     */
+    private void relax(int phase, int steps) throws InterruptedException {
+        for (int step = 0; step < steps; step++) {
+            checkAborted();
+            for (int v = 1; v <= n; v++) {
+                dx[v] = dy[v] = dz[v] = 0;
+            }
+            double arg = 1.0 - (double) step / steps;
+            double temperature;
+            switch (phase) {
+                case 0:
+                    temperature = arg * arg;
+                    bondForces(0);
+                    centralRepulsion();
+                    break;
+                case 1:
+                    temperature = arg * arg * arg * arg;
+                    bondForces(0);
+                    localRepulsion();
+                    break;
+                default:
+                    temperature = 0.4 * arg * arg * arg;
+                    bondForces(1.414);
+                    angularForces();
+                    break;
+            }
+            displace(temperature);
+        }
+    }
+
+    private void bondForces(double bondLength) {
+        for (int v = 1; v <= n; v++) {
+            for (int i = offset[v]; i < offset[v + 1]; i++) {
+                int w = target[i];
+                if (w <= v) {
+                    continue;
+                }
+                double ex = x[v] - x[w], ey = y[v] - y[w], ez = z[v] - z[w];
+                double length = Math.sqrt(ex * ex + ey * ey + ez * ez);
+                if (length < 0.01) {
+                    continue;
+                }
+                double preferred = offset[v + 1] - offset[v] == 1 || offset[w + 1] - offset[w] == 1
+                        ? 0.78 * bondLength : bondLength;
+                double factor = (length - preferred) / length;
+                dx[v] -= ex * factor;
+                dy[v] -= ey * factor;
+                dz[v] -= ez * factor;
+                dx[w] += ex * factor;
+                dy[w] += ey * factor;
+                dz[w] += ez * factor;
+            }
+        }
+    }
+
+    private void centralRepulsion() {
+        double cx = 0, cy = 0, cz = 0;
+        for (int v = 1; v <= n; v++) {
+            cx += x[v];
+            cy += y[v];
+            cz += z[v];
+        }
+        cx /= n;
+        cy /= n;
+        cz /= n;
+        double strength = 0.5 * Math.sqrt(n);
+        for (int v = 1; v <= n; v++) {
+            double ex = nonZero(x[v] - cx), ey = nonZero(y[v] - cy), ez = nonZero(z[v] - cz);
+            double factor = strength / (ex * ex + ey * ey + ez * ez);
+            dx[v] += ex * factor;
+            dy[v] += ey * factor;
+            dz[v] += ez * factor;
+        }
+    }
+
+    private void localRepulsion() {
+        for (int w = 1; w <= n; w++) {
+            for (int j = offset[w]; j + 1 < offset[w + 1]; j++) {
+                int v = target[j];
+                for (int k = j + 1; k < offset[w + 1]; k++) {
+                    int u = target[k];
+                    double ex = nonZero(x[v] - x[u]), ey = nonZero(y[v] - y[u]), ez = nonZero(z[v] - z[u]);
+                    double factor = 1.0 / (ex * ex + ey * ey + ez * ez);
+                    dx[v] += ex * factor;
+                    dy[v] += ey * factor;
+                    dz[v] += ez * factor;
+                    dx[u] -= ex * factor;
+                    dy[u] -= ey * factor;
+                    dz[u] -= ez * factor;
+                }
+            }
+        }
+    }
+
+    /*
+     * Pulls each vertex u towards the point that makes the angle at u
+     * between two of its neighbours v and w the best angle.
+     */
+    private void angularForces() {
+        double s = 0.5 * Math.sin((Math.PI - bestAngle) / 2.0);
+        for (int u = 1; u <= n; u++) {
+            for (int j = offset[u]; j + 1 < offset[u + 1]; j++) {
+                int v = target[j];
+                for (int k = j + 1; k < offset[u + 1]; k++) {
+                    int w = target[k];
+                    double ux = x[u] - x[v], uy = y[u] - y[v], uz = z[u] - z[v];
+                    double wx = x[w] - x[v], wy = y[w] - y[v], wz = z[w] - z[v];
+                    // the normal of vw in the plane of u, v and w
+                    double cx = wy * uz - wz * uy, cy = wz * ux - wx * uz, cz = wx * uy - wy * ux;
+                    double nx = cy * wz - cz * wy, ny = cz * wx - cx * wz, nz = cx * wy - cy * wx;
+                    double normalLength = Math.sqrt(nx * nx + ny * ny + nz * nz);
+                    if (normalLength == 0) {
+                        continue;
+                    }
+                    double factor = s * Math.sqrt(wx * wx + wy * wy + wz * wz) / normalLength;
+                    dx[u] += 0.05 * (0.5 * wx + factor * nx - ux);
+                    dy[u] += 0.05 * (0.5 * wy + factor * ny - uy);
+                    dz[u] += 0.05 * (0.5 * wz + factor * nz - uz);
+                }
+            }
+        }
+    }
+
+    private double nonZero(double d) {
+        return d == 0.0 ? 0.1 * (random.nextDouble() - 0.5) : d;
+    }
+
+    private void displace(double temperature) {
+        double max = 0;
+        for (int v = 1; v <= n; v++) {
+            max = Math.max(max, dx[v] * dx[v] + dy[v] * dy[v] + dz[v] * dz[v]);
+        }
+        max = Math.sqrt(max);
+        double factor = max > temperature ? temperature / max : 1.0;
+        for (int v = 1; v <= n; v++) {
+            x[v] += dx[v] * factor;
+            y[v] += dy[v] * factor;
+            z[v] += dz[v] * factor;
+        }
+    }
+
+    /*
+     * Moves the center of the vertices to the origin and scales to the
+     * average edge length.
+     */
+    private void normalize(boolean spatial) {
+        double cx = 0, cy = 0, cz = 0;
+        for (int v = 1; v <= n; v++) {
+            cx += x[v];
+            cy += y[v];
+            cz += z[v];
+        }
+        if (n > 0) {
+            cx /= n;
+            cy /= n;
+            cz /= n;
+        }
+        double sum = 0;
+        int edges = 0;
+        for (int v = 1; v <= n; v++) {
+            x[v] -= cx;
+            y[v] -= cy;
+            z[v] = spatial ? z[v] - cz : 0;
+        }
+        for (int v = 1; v <= n; v++) {
+            for (int i = offset[v]; i < offset[v + 1]; i++) {
+                int w = target[i];
+                double ex = x[v] - x[w], ey = y[v] - y[w], ez = z[v] - z[w];
+                sum += Math.sqrt(ex * ex + ey * ey + ez * ez);
+                edges++;
+            }
+        }
+        double scale = sum > 0 ? edgeLength * edges / sum : 1;
+        for (int v = 1; v <= n; v++) {
+            x[v] *= scale;
+            y[v] *= scale;
+            z[v] *= scale;
+        }
+    }
+}
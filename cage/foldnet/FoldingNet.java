@@ -0,0 +1,156 @@
+package cage.foldnet;
+
+import cage.CaGeResult;
+import cage.EmbeddableGraph;
+import cage.HalfEdgeGraph;
+import cage.writer.ByteSink;
+
+/**
+ * A folding net of a 3D embedded graph: its faces cut open along a spanning
+ * tree and laid out in the plane without overlaps. A vertex of the graph
+ * can occur several times in the net. The net vertices are numbered from
+ * 1 and the edges are sorted by their lower and then their higher vertex.
+ */
+public class FoldingNet {
+
+    // the size of the drawing on a page, in PostScript points
+    private static final double pageWidth = 480;
+    private static final double pageHeight = 730;
+    private static final double margin = 60;
+
+    private final int size;
+    private final double[] x, y;
+    private final int[] edges;
+    private final boolean[] thick;
+
+    FoldingNet(int size, double[] x, double[] y, int[] edges, boolean[] thick) {
+        this.size = size;
+        this.x = x;
+        this.y = y;
+        this.edges = edges;
+        this.thick = thick;
+    }
+
+    /**
+     * Makes a folding net of <tt>graph</tt>, which must have 3D coordinates.
+     * Faces with more than <tt>maxFacesize</tt> vertices are left out.
+     *
+     * @param graph The graph.
+     * @param maxFacesize The largest face in the net, or 0 for all faces.
+     * @return the net or <code>null</code> if no net without overlapping
+     *         faces was found
+     * @throws IllegalArgumentException if the graph isn't embedded as a
+     *         closed surface or has vertices with the same coordinates
+     */
+    public static FoldingNet unfold(EmbeddableGraph graph, int maxFacesize) {
+        return new Unfolder(graph, new HalfEdgeGraph(graph), maxFacesize).unfold();
+    }
+
+    /**
+     * Makes a folding net of the graph of <tt>result</tt> like
+     * {@link #unfold(cage.EmbeddableGraph, int)}, with the faces the result
+     * already holds.
+     */
+    public static FoldingNet unfold(CaGeResult result, int maxFacesize) {
+        return new Unfolder(result.getGraph(), result.getHalfEdgeGraph(), maxFacesize).unfold();
+    }
+
+    /**
+     * Returns the number of vertices of the net.
+     */
+    public int getSize() {
+        return size;
+    }
+
+    public double getX(int v) {
+        return x[v];
+    }
+
+    public double getY(int v) {
+        return y[v];
+    }
+
+    /**
+     * Returns the number of edges of the net.
+     */
+    public int getEdgeCount() {
+        return thick.length;
+    }
+
+    public int getEdgeStart(int i) {
+        return edges[2 * i];
+    }
+
+    public int getEdgeEnd(int i) {
+        return edges[2 * i + 1];
+    }
+
+    /**
+     * Returns whether edge <tt>i</tt> borders a face that was left out of
+     * the net.
+     */
+    public boolean isThick(int i) {
+        return thick[i];
+    }
+
+    /**
+     * Writes the net as one PostScript page, scaled to fill the page, in
+     * the format of <tt>mkfoldnet</tt>. The first page of a document starts
+     * with the PostScript header.
+     *
+     * @param out The buffer to write the page to.
+     * @param label The page label, usually the graph number.
+     * @param pageNo The number of the page in the document.
+     * @param header Whether to write the PostScript header first.
+     */
+    public void writePage(ByteSink out, int label, int pageNo, boolean header) {
+        double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE;
+        double maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+        for (int v = 1; v <= size; v++) {
+            minX = Math.min(minX, x[v]);
+            minY = Math.min(minY, y[v]);
+            maxX = Math.max(maxX, x[v]);
+            maxY = Math.max(maxY, y[v]);
+        }
+        double[] px = x, py = y;
+        double dx = maxX - minX, dy = maxY - minY;
+        //the longer side goes along the longer side of the page
+        if (dy < dx) {
+            px = y;
+            py = x;
+            double t = minX;
+            minX = minY;
+            minY = t;
+            t = dx;
+            dx = dy;
+            dy = t;
+        }
+        double scale = dx == 0 || dy / dx > pageHeight / pageWidth
+                ? pageHeight / dy : pageWidth / dx;
+        double shiftX = margin - minX * scale;
+        double shiftY = margin - minY * scale;
+
+        if (header) {
+            out.append("%!PS-Adobe-3.0\n");
+        }
+        out.append("\n%%Page: ").append(label).append(' ').append(pageNo).append("\n\n");
+        out.append("newpath\n");
+        for (int i = 0; i < thick.length; i++) {
+            int v = edges[2 * i];
+            int w = edges[2 * i + 1];
+            out.appendFixed(px[v] * scale + shiftX, 6).append(' ')
+                    .appendFixed(py[v] * scale + shiftY, 6).append(" moveto\n");
+            out.appendFixed(px[w] * scale + shiftX, 6).append(' ')
+                    .appendFixed(py[w] * scale + shiftY, 6).append(" lineto\n");
+            out.append(thick[i] ? "2.0" : "1").append(" setlinewidth\nstroke\n");
+        }
+        out.append("showpage\n");
+    }
+
+    /**
+     * Writes the end of a PostScript document of <tt>pages</tt> pages.
+     */
+    public static void writeTrailer(ByteSink out, int pages) {
+        out.append("\n%%Pages: ").append(pages).append("\n%%EOF\n\n");
+    }
+}
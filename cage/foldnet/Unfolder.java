@@ -0,0 +1,574 @@
+package cage.foldnet;
+
+import cage.EmbeddableGraph;
+import cage.HalfEdgeGraph;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Cuts a 3D embedded planar graph open along the edges of a spanning tree
+ * of its faces and lays the faces out flat, like <tt>mkfoldnet</tt> does.
+ *
+ * The faces are those of the rotation system. Faces with more than
+ * <tt>maxFacesize</tt> vertices are left out of the net; their edges are
+ * drawn thicker. Starting from the smallest face, the faces are added in
+ * breadth-first order, each one glued to a face that is already in the net.
+ * A face that would overlap the net when glued to one neighbour waits until
+ * another neighbour is in the net. If some faces can't be glued at all,
+ * the net is started again from a random face with the neighbours taken
+ * in a random order, a fixed number of times.
+ *
+ * If the faces of the net aren't connected, because the faces between them
+ * are left out, each connected part is unfolded on its own, and the parts
+ * are put next to each other in rows.
+ *
+ * Faces that aren't flat in 3D are cut in a strip of triangles starting at
+ * the edge they are glued along, and the triangles are unfolded one after
+ * the other, so the length of every edge of the graph is kept.
+ */
+class Unfolder {
+
+    // the number of times the net is started again if it can't be completed
+    private static final int attempts = 20;
+    /* non-adjacent edges of the net must be this fraction of the mean edge
+     * length apart (FAKTOR1 in mkfoldnet)
+     */
+    private static final double minDistanceFactor = 1.0 / 30.0;
+
+    private final double[][] coords;
+    private final HalfEdgeGraph faces;
+    private final boolean[] inNet;
+    // the connected parts of the faces in the net, -1 for the other faces
+    private final int[] component;
+    private final int[] componentRoot;
+    private final int[] componentSize;
+    private final double meanEdgeLength;
+    private final double minDistance;
+
+    // the state of the current attempt
+    private boolean[] placed;
+    // the net vertex of the source of each directed edge in its face
+    private int[] netVertex;
+    private double[] x, y;
+    private int netVertexCount;
+    private Map<Long, List<Integer>> grid;
+    private double cellSize;
+    private double[][] faceBox;
+    private int[] candidateStamp;
+    private int stamp;
+    // where the next part of the net goes
+    private double rowX, rowY, rowHeight;
+    private int partsInRow;
+
+    Unfolder(EmbeddableGraph graph, HalfEdgeGraph faces, int maxFacesize) {
+        this.faces = faces;
+        int n = graph.getSize();
+        coords = new double[n + 1][3];
+        float[] c = new float[3];
+        for (int v = 1; v <= n; v++) {
+            graph.get3DCoordinates(v, c);
+            coords[v][0] = c[0];
+            coords[v][1] = c[1];
+            coords[v][2] = c[2];
+        }
+        int edges = faces.getEdgeCount();
+        double totalLength = 0;
+        for (int e = 0; e < edges; e++) {
+            totalLength += distance3D(faces.getSource(e), faces.getTarget(e));
+        }
+        meanEdgeLength = edges == 0 ? 1 : totalLength / edges;
+        minDistance = meanEdgeLength * minDistanceFactor;
+        inNet = new boolean[faces.getFaceCount()];
+        for (int f = 0; f < inNet.length; f++) {
+            inNet[f] = maxFacesize <= 0 || faces.getFaceSize(f) <= maxFacesize;
+        }
+        component = new int[inNet.length];
+        Arrays.fill(component, -1);
+        List<Integer> roots = new ArrayList<>();
+        List<Integer> sizes = new ArrayList<>();
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int f0 = 0; f0 < inNet.length; f0++) {
+            if (!inNet[f0] || component[f0] >= 0) {
+                continue;
+            }
+            //the smallest face of each part is where its unfolding starts
+            int root = f0;
+            int size = 0;
+            component[f0] = roots.size();
+            queue.add(f0);
+            while (!queue.isEmpty()) {
+                int f = queue.poll();
+                size++;
+                if (faces.getFaceSize(f) < faces.getFaceSize(root)) {
+                    root = f;
+                }
+                for (int i = 0; i < faces.getFaceSize(f); i++) {
+                    int g = faces.getFace(faces.getReverse(faces.getFaceEdge(f, i)));
+                    if (inNet[g] && component[g] < 0) {
+                        component[g] = roots.size();
+                        queue.add(g);
+                    }
+                }
+            }
+            roots.add(root);
+            sizes.add(size);
+        }
+        componentRoot = new int[roots.size()];
+        componentSize = new int[roots.size()];
+        for (int i = 0; i < roots.size(); i++) {
+            componentRoot[i] = roots.get(i);
+            componentSize[i] = sizes.get(i);
+        }
+    }
+
+    private double distance3D(int v, int w) {
+        double dx = coords[w][0] - coords[v][0];
+        double dy = coords[w][1] - coords[v][1];
+        double dz = coords[w][2] - coords[v][2];
+        return Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+
+    /**
+     * Makes the net.
+     *
+     * @return the net or <code>null</code> if no net without overlapping
+     *         faces was found
+     */
+    FoldingNet unfold() {
+        int root = -1;
+        for (int f = 0; f < faces.getFaceCount(); f++) {
+            if (inNet[f] && (root < 0 || faces.getFaceSize(f) < faces.getFaceSize(root))) {
+                root = f;
+            }
+        }
+        if (root < 0) {
+            throw new IllegalArgumentException("the graph has no faces that fit in a net");
+        }
+        Random random = new Random(0);
+        for (int attempt = 0; attempt < attempts; attempt++) {
+            if (attempt > 0) {
+                do {
+                    root = random.nextInt(faces.getFaceCount());
+                } while (!inNet[root]);
+            }
+            if (layOut(root, attempt > 0 ? random : null)) {
+                return makeNet();
+            }
+        }
+        return null;
+    }
+
+    /*
+     * Tries to lay out all faces of the net, starting from root and then
+     * from the roots of the other parts. Returns false if some faces can't
+     * be glued without overlaps.
+     */
+    private boolean layOut(int root, Random random) {
+        int edges = faces.getEdgeCount();
+        placed = new boolean[faces.getFaceCount()];
+        netVertex = new int[edges];
+        x = new double[edges + 1];
+        y = new double[edges + 1];
+        netVertexCount = 0;
+        cellSize = 2 * meanEdgeLength;
+        faceBox = new double[faces.getFaceCount()][];
+        candidateStamp = new int[faces.getFaceCount()];
+        stamp = 0;
+        rowX = rowY = rowHeight = 0;
+        partsInRow = 0;
+
+        for (int c = -1; c < componentRoot.length; c++) {
+            //the part of root comes first
+            if (c == component[root]) {
+                continue;
+            }
+            int firstVertex = netVertexCount + 1;
+            int partRoot = c < 0 ? root : componentRoot[c];
+            if (layOutPart(partRoot, random) < componentSize[component[partRoot]]) {
+                return false;
+            }
+            if (componentRoot.length > 1) {
+                movePart(firstVertex);
+            }
+        }
+        return true;
+    }
+
+    /*
+     * Lays out the faces of the part of root, starting from root. Returns
+     * the number of faces that could be glued without overlaps. The faces
+     * are only checked against the faces of the same part.
+     */
+    private int layOutPart(int root, Random random) {
+        grid = new HashMap<>();
+        int size = faces.getFaceSize(root);
+        double[] px = new double[size];
+        double[] py = new double[size];
+        int first = faces.getFaceEdge(root, 0);
+        px[0] = 0;
+        py[0] = 0;
+        px[1] = 0;
+        py[1] = distance3D(faces.getSource(first), faces.getTarget(first));
+        placeFace(first, px, py);
+        commit(first, px, py, -1);
+
+        int facesPlaced = 1;
+        //the edges along which a face can be glued to the net
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        addGlueEdges(first, queue, random);
+        while (!queue.isEmpty()) {
+            int e = queue.poll();
+            int f = faces.getFace(e);
+            if (placed[f]) {
+                continue;
+            }
+            int r = faces.getReverse(e);
+            size = faces.getFaceSize(f);
+            if (px.length < size) {
+                px = new double[size];
+                py = new double[size];
+            }
+            int a = netVertex[faces.getNextInFace(r)];
+            int b = netVertex[r];
+            px[0] = x[a];
+            py[0] = y[a];
+            px[1] = x[b];
+            py[1] = y[b];
+            placeFace(e, px, py);
+            if (!overlaps(e, px, py, a, b)) {
+                commit(e, px, py, r);
+                facesPlaced++;
+                addGlueEdges(e, queue, random);
+            }
+        }
+        return facesPlaced;
+    }
+
+    /*
+     * Moves the net vertices from firstVertex on, which belong to the part
+     * that was laid out last, next to the parts before it. The rows hold
+     * about as many parts as there are rows.
+     */
+    private void movePart(int firstVertex) {
+        double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE;
+        double maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+        for (int v = firstVertex; v <= netVertexCount; v++) {
+            minX = Math.min(minX, x[v]);
+            minY = Math.min(minY, y[v]);
+            maxX = Math.max(maxX, x[v]);
+            maxY = Math.max(maxY, y[v]);
+        }
+        if (partsInRow * partsInRow >= componentRoot.length) {
+            rowY += rowHeight + meanEdgeLength;
+            rowX = rowHeight = 0;
+            partsInRow = 0;
+        }
+        double dx = rowX - minX;
+        double dy = rowY - minY;
+        for (int v = firstVertex; v <= netVertexCount; v++) {
+            x[v] += dx;
+            y[v] += dy;
+        }
+        rowX += maxX - minX + meanEdgeLength;
+        rowHeight = Math.max(rowHeight, maxY - minY);
+        partsInRow++;
+    }
+
+    /*
+     * Adds the edges along which the neighbours of the face of e that aren't
+     * in the net yet can be glued to it.
+     */
+    private void addGlueEdges(int e, ArrayDeque<Integer> queue, Random random) {
+        int size = faces.getFaceSize(faces.getFace(e));
+        List<Integer> glueEdges = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            int r = faces.getReverse(faces.getEdgeInFace(e, i));
+            if (inNet[faces.getFace(r)] && !placed[faces.getFace(r)]) {
+                glueEdges.add(r);
+            }
+        }
+        if (random != null) {
+            Collections.shuffle(glueEdges, random);
+        }
+        queue.addAll(glueEdges);
+    }
+
+    /*
+     * Calculates the positions of the vertices of the face of e, starting
+     * with the source of e, given the positions of the source and target of
+     * e in px[0], py[0] and px[1], py[1]. The faces are laid out clockwise,
+     * so the face lies on the right of e.
+     */
+    private void placeFace(int e, double[] px, double[] py) {
+        int size = faces.getFaceSize(faces.getFace(e));
+        int left = 0;
+        int right = 1;
+        boolean extendRight = true;
+        for (int placedVertices = 2; placedVertices < size; placedVertices++) {
+            int next = extendRight ? right + 1 : (left + size - 1) % size;
+            placeVertex(faces.getSource(faces.getEdgeInFace(e, left)), px[left], py[left],
+                    faces.getSource(faces.getEdgeInFace(e, right)), px[right], py[right],
+                    faces.getSource(faces.getEdgeInFace(e, next)), px, py, next);
+            if (extendRight) {
+                right = next;
+            } else {
+                left = next;
+            }
+            extendRight = !extendRight;
+        }
+    }
+
+    /*
+     * Places vertex c on the right of the line from a to b, at the same
+     * distance from a and b as in 3D (bette_C_ein in mkfoldnet).
+     */
+    private void placeVertex(int a, double ax, double ay, int b, double bx, double by,
+            int c, double[] px, double[] py, int index) {
+        double[] a3 = coords[a];
+        double[] b3 = coords[b];
+        double[] c3 = coords[c];
+        double abx = b3[0] - a3[0];
+        double aby = b3[1] - a3[1];
+        double abz = b3[2] - a3[2];
+        double ab2 = abx * abx + aby * aby + abz * abz;
+        if (ab2 == 0) {
+            throw new IllegalArgumentException("vertices " + a + " and " + b + " have the same coordinates");
+        }
+        double t = ((c3[0] - a3[0]) * abx + (c3[1] - a3[1]) * aby + (c3[2] - a3[2]) * abz) / ab2;
+        double hx = c3[0] - a3[0] - t * abx;
+        double hy = c3[1] - a3[1] - t * aby;
+        double hz = c3[2] - a3[2] - t * abz;
+        double h = Math.sqrt(hx * hx + hy * hy + hz * hz);
+        double dx = bx - ax;
+        double dy = by - ay;
+        double length = Math.sqrt(dx * dx + dy * dy);
+        px[index] = ax + t * dx + h * dy / length;
+        py[index] = ay + t * dy - h * dx / length;
+    }
+
+    /*
+     * Adds the face of e to the net with the vertex positions in px, py.
+     * If it is glued along r, the source and target of e are the net
+     * vertices of the target and source of r.
+     */
+    private void commit(int e, double[] px, double[] py, int r) {
+        int f = faces.getFace(e);
+        int size = faces.getFaceSize(f);
+        double[] box = {Double.MAX_VALUE, Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE};
+        for (int i = 0; i < size; i++) {
+            int v;
+            if (r >= 0 && i == 0) {
+                v = netVertex[faces.getNextInFace(r)];
+            } else if (r >= 0 && i == 1) {
+                v = netVertex[r];
+            } else {
+                v = ++netVertexCount;
+                x[v] = px[i];
+                y[v] = py[i];
+            }
+            netVertex[faces.getEdgeInFace(e, i)] = v;
+            box[0] = Math.min(box[0], px[i]);
+            box[1] = Math.min(box[1], py[i]);
+            box[2] = Math.max(box[2], px[i]);
+            box[3] = Math.max(box[3], py[i]);
+        }
+        placed[f] = true;
+        faceBox[f] = box;
+        for (long cx = cell(box[0] - minDistance); cx <= cell(box[2] + minDistance); cx++) {
+            for (long cy = cell(box[1] - minDistance); cy <= cell(box[3] + minDistance); cy++) {
+                List<Integer> faces = grid.get(key(cx, cy));
+                if (faces == null) {
+                    faces = new ArrayList<>(4);
+                    grid.put(key(cx, cy), faces);
+                }
+                faces.add(f);
+            }
+        }
+    }
+
+    private long cell(double coordinate) {
+        return (long) Math.floor(coordinate / cellSize);
+    }
+
+    private static long key(long cx, long cy) {
+        return (cx << 32) ^ (cy & 0xffffffffL);
+    }
+
+    /*
+     * Checks whether the face of e, at the positions in px, py and glued
+     * along the net vertices a and b, comes too close to a face in the net.
+     */
+    private boolean overlaps(int e, double[] px, double[] py, int a, int b) {
+        int size = faces.getFaceSize(faces.getFace(e));
+        double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE;
+        double maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+        for (int i = 0; i < size; i++) {
+            minX = Math.min(minX, px[i]);
+            minY = Math.min(minY, py[i]);
+            maxX = Math.max(maxX, px[i]);
+            maxY = Math.max(maxY, py[i]);
+        }
+        stamp++;
+        for (long cx = cell(minX - minDistance); cx <= cell(maxX + minDistance); cx++) {
+            for (long cy = cell(minY - minDistance); cy <= cell(maxY + minDistance); cy++) {
+                List<Integer> faces = grid.get(key(cx, cy));
+                if (faces == null) {
+                    continue;
+                }
+                for (int g : faces) {
+                    if (candidateStamp[g] == stamp) {
+                        continue;
+                    }
+                    candidateStamp[g] = stamp;
+                    double[] box = faceBox[g];
+                    if (box[0] > maxX + minDistance || box[2] < minX - minDistance
+                            || box[1] > maxY + minDistance || box[3] < minY - minDistance) {
+                        continue;
+                    }
+                    if (overlaps(px, py, size, a, b, g)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /*
+     * Checks whether the new face with positions px, py (its first two
+     * vertices are the net vertices a and b) comes too close to face g.
+     * Edges that share a net vertex may touch.
+     */
+    private boolean overlaps(double[] px, double[] py, int size, int a, int b, int g) {
+        int gSize = faces.getFaceSize(g);
+        int gFirst = faces.getFaceEdge(g, 0);
+        for (int i = 0; i < size; i++) {
+            int j = (i + 1) % size;
+            //the net vertices of the new face: only the first two exist already
+            int vi = i == 0 ? a : i == 1 ? b : -1;
+            int vj = j == 0 ? a : j == 1 ? b : -1;
+            for (int k = 0; k < gSize; k++) {
+                int w1 = netVertex[faces.getEdgeInFace(gFirst, k)];
+                int w2 = netVertex[faces.getEdgeInFace(gFirst, k + 1)];
+                if (vi == w1 || vi == w2 || vj == w1 || vj == w2) {
+                    continue;
+                }
+                if (segmentDistance(px[i], py[i], px[j], py[j],
+                        x[w1], y[w1], x[w2], y[w2]) < minDistance) {
+                    return true;
+                }
+            }
+        }
+        //no edges cross, so one face can only lie completely inside the other
+        for (int i = 2; i < size; i++) {
+            if (insideFace(px[i], py[i], g)) {
+                return true;
+            }
+        }
+        for (int k = 0; k < gSize; k++) {
+            int w = netVertex[faces.getEdgeInFace(gFirst, k)];
+            if (w != a && w != b && insidePolygon(x[w], y[w], px, py, size)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean insideFace(double qx, double qy, int g) {
+        int gSize = faces.getFaceSize(g);
+        int gFirst = faces.getFaceEdge(g, 0);
+        boolean inside = false;
+        for (int k = 0; k < gSize; k++) {
+            int w1 = netVertex[faces.getEdgeInFace(gFirst, k)];
+            int w2 = netVertex[faces.getEdgeInFace(gFirst, k + 1)];
+            if ((y[w1] > qy) != (y[w2] > qy)
+                    && qx < (x[w2] - x[w1]) * (qy - y[w1]) / (y[w2] - y[w1]) + x[w1]) {
+                inside = !inside;
+            }
+        }
+        return inside;
+    }
+
+    private static boolean insidePolygon(double qx, double qy, double[] px, double[] py, int size) {
+        boolean inside = false;
+        for (int i = 0, j = size - 1; i < size; j = i++) {
+            if ((py[i] > qy) != (py[j] > qy)
+                    && qx < (px[j] - px[i]) * (qy - py[i]) / (py[j] - py[i]) + px[i]) {
+                inside = !inside;
+            }
+        }
+        return inside;
+    }
+
+    private static double segmentDistance(double x1, double y1, double x2, double y2,
+            double x3, double y3, double x4, double y4) {
+        double d1 = cross(x3, y3, x4, y4, x1, y1);
+        double d2 = cross(x3, y3, x4, y4, x2, y2);
+        double d3 = cross(x1, y1, x2, y2, x3, y3);
+        double d4 = cross(x1, y1, x2, y2, x4, y4);
+        if (((d1 > 0 && d2 < 0) || (d1 < 0 && d2 > 0))
+                && ((d3 > 0 && d4 < 0) || (d3 < 0 && d4 > 0))) {
+            return 0;
+        }
+        return Math.min(Math.min(pointSegmentDistance(x1, y1, x3, y3, x4, y4),
+                pointSegmentDistance(x2, y2, x3, y3, x4, y4)),
+                Math.min(pointSegmentDistance(x3, y3, x1, y1, x2, y2),
+                pointSegmentDistance(x4, y4, x1, y1, x2, y2)));
+    }
+
+    private static double cross(double ax, double ay, double bx, double by, double cx, double cy) {
+        return (bx - ax) * (cy - ay) - (by - ay) * (cx - ax);
+    }
+
+    private static double pointSegmentDistance(double qx, double qy,
+            double ax, double ay, double bx, double by) {
+        double dx = bx - ax;
+        double dy = by - ay;
+        double length2 = dx * dx + dy * dy;
+        double t = length2 == 0 ? 0 : ((qx - ax) * dx + (qy - ay) * dy) / length2;
+        t = Math.max(0, Math.min(1, t));
+        double ex = ax + t * dx - qx;
+        double ey = ay + t * dy - qy;
+        return Math.sqrt(ex * ex + ey * ey);
+    }
+
+    /*
+     * Collects the edges of the net: the edges of every face in the net,
+     * where an edge along which two faces are glued is only taken once.
+     * Edges on the border of a face that is left out are marked thick.
+     */
+    private FoldingNet makeNet() {
+        List<long[]> edgeList = new ArrayList<>();
+        for (int e = 0; e < faces.getEdgeCount(); e++) {
+            if (!placed[faces.getFace(e)]) {
+                continue;
+            }
+            int v = netVertex[e];
+            int w = netVertex[faces.getNextInFace(e)];
+            int r = faces.getReverse(e);
+            boolean glued = placed[faces.getFace(r)] && netVertex[r] == w && netVertex[faces.getNextInFace(r)] == v;
+            if (glued && r < e) {
+                continue;
+            }
+            long thick = inNet[faces.getFace(r)] ? 0 : 1;
+            edgeList.add(new long[]{((long) Math.min(v, w) << 32) | Math.max(v, w), thick});
+        }
+        Collections.sort(edgeList, (e1, e2) -> Long.compare(e1[0], e2[0]));
+        int[] edges = new int[2 * edgeList.size()];
+        boolean[] thick = new boolean[edgeList.size()];
+        for (int i = 0; i < edgeList.size(); i++) {
+            long[] edge = edgeList.get(i);
+            edges[2 * i] = (int) (edge[0] >>> 32);
+            edges[2 * i + 1] = (int) edge[0];
+            thick[i] = edge[1] != 0;
+        }
+        return new FoldingNet(netVertexCount, Arrays.copyOf(x, netVertexCount + 1),
+                Arrays.copyOf(y, netVertexCount + 1), edges, thick);
+    }
+}
@@ -0,0 +1,135 @@
+package cage.utility;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts events and how long they took, in a histogram with a bucket per
+ * power of two microseconds. Recording is cheap and doesn't lock, so it can
+ * be done for each graph by several threads at once. Percentiles are given
+ * as the upper bound of their bucket, so they are at most twice too high.
+ */
+public class LatencyRecorder implements LatencyRecorderMBean {
+
+    //bucket i counts the events that took less than 2^i microseconds
+    private static final int buckets = 40;
+
+    private final String name;
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+    private final AtomicLongArray histogram = new AtomicLongArray(buckets);
+
+    public LatencyRecorder(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Records one event that took <tt>nanos</tt> nanoseconds.
+     */
+    public void record(long nanos) {
+        record(nanos, 1);
+    }
+
+    /**
+     * Records <tt>events</tt> events that were handled together in
+     * <tt>nanos</tt> nanoseconds, as if each took an equal share.
+     */
+    public void record(long nanos, int events) {
+        if (events <= 0) {
+            return;
+        }
+        long each = nanos / events;
+        count.add(events);
+        totalNanos.add(nanos);
+        histogram.addAndGet(bucket(each), events);
+        long max;
+        while (each > (max = maxNanos.get()) && !maxNanos.compareAndSet(max, each)) {
+        }
+    }
+
+    private static int bucket(long nanos) {
+        return Math.min(buckets - 1, 64 - Long.numberOfLeadingZeros(nanos / 1000));
+    }
+
+    /**
+     * Returns the upper bound in microseconds of the bucket that holds the
+     * given fraction of the events, or 0 if there are no events.
+     */
+    public long getPercentileMicros(double fraction) {
+        long total = 0;
+        for (int i = 0; i < buckets; ++i) {
+            total += histogram.get(i);
+        }
+        long rank = (long) Math.ceil(fraction * total);
+        long seen = 0;
+        for (int i = 0; i < buckets && total > 0; ++i) {
+            seen += histogram.get(i);
+            if (seen >= rank) {
+                return 1L << i;
+            }
+        }
+        return 0;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public long getCount() {
+        return count.sum();
+    }
+
+    @Override
+    public double getTotalMillis() {
+        return totalNanos.sum() / 1e6;
+    }
+
+    @Override
+    public double getMeanMicros() {
+        long n = count.sum();
+        return n == 0 ? 0.0 : totalNanos.sum() / 1e3 / n;
+    }
+
+    @Override
+    public double getMaxMicros() {
+        return maxNanos.get() / 1e3;
+    }
+
+    @Override
+    public long getMedianMicros() {
+        return getPercentileMicros(0.5);
+    }
+
+    @Override
+    public long getP99Micros() {
+        return getPercentileMicros(0.99);
+    }
+
+    /**
+     * Appends the figures of this recorder as <tt>key=value</tt> pairs, with
+     * keys that start with the name of the recorder.
+     */
+    public StringBuilder appendTo(StringBuilder line) {
+        return line.append(name).append(".n=").append(getCount())
+                .append(' ').append(name).append(".total_ms=").append(format(getTotalMillis()))
+                .append(' ').append(name).append(".mean_us=").append(format(getMeanMicros()))
+                .append(' ').append(name).append(".p50_us=").append(getMedianMicros())
+                .append(' ').append(name).append(".p99_us=").append(getP99Micros())
+                .append(' ').append(name).append(".max_us=").append(format(getMaxMicros()));
+    }
+
+    //the log lines are read by programs, so never use a decimal comma
+    public static String format(double value) {
+        return String.format(Locale.ROOT, "%.1f", value);
+    }
+
+    @Override
+    public String toString() {
+        return appendTo(new StringBuilder()).toString();
+    }
+}
@@ -0,0 +1,21 @@
+package cage.utility;
+
+/**
+ * Management interface of a {@link LatencyRecorder}. All times are per event.
+ */
+public interface LatencyRecorderMBean {
+
+    String getName();
+
+    long getCount();
+
+    double getTotalMillis();
+
+    double getMeanMicros();
+
+    double getMaxMicros();
+
+    long getMedianMicros();
+
+    long getP99Micros();
+}
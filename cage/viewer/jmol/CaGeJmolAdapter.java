@@ -1,11 +1,11 @@
 package cage.viewer.jmol;
 
-import cage.EdgeIterator;
 import cage.EmbeddableGraph;
 import cage.GeneratorInfo;
 
 import java.io.BufferedReader;
 import java.io.InputStream;
+import java.util.Arrays;
 import java.util.Hashtable;
 
 import org.jmol.api.JmolAdapter;
@@ -26,6 +26,17 @@ public class CaGeJmolAdapter extends JmolAdapter{
     private EmbeddableGraph clientFile;
     private GeneratorInfo generatorInfo;
 
+    //snapshot of the current graph: the neighbours of vertex v are
+    //neighbours[firstNeighbour[v]] up to neighbours[firstNeighbour[v+1]]
+    private int size = -1;
+    private int[] firstNeighbour = new int[2];
+    private int[] neighbours = new int[0];
+    private float[] coordinates = new float[0];
+    private final float[] vertexCoordinates = new float[3];
+    private boolean topologyUnchanged;
+    //the unique IDs of the atoms, so they aren't boxed again for each atom and bond
+    private Integer[] ids = new Integer[0];
+
     public CaGeJmolAdapter() {
         super("CaGeJmolAdapter");
     }
@@ -69,12 +80,80 @@ public class CaGeJmolAdapter extends JmolAdapter{
         return clientFile;
     }
 
+    /**
+     * Sets the graph the viewer will read, and takes a snapshot of its
+     * adjacency lists and coordinates. The iterators feed the viewer from
+     * this snapshot, so each vertex is asked for its coordinates only once.
+     * Afterwards {@link #isTopologyUnchanged()} tells whether the graph has
+     * the same adjacency lists as the previous one.
+     *
+     * @param graph The graph to show.
+     */
     public void setGraph(EmbeddableGraph graph) {
         this.clientFile = graph;
+        int n = graph.getSize();
+        boolean same = n == size;
+        if (firstNeighbour.length < n + 2) {
+            firstNeighbour = Arrays.copyOf(firstNeighbour, n + 2);
+        }
+        int k = 0;
+        for (int v = 1; v <= n; v++) {
+            same &= firstNeighbour[v] == k;
+            firstNeighbour[v] = k;
+            int valency = graph.getValency(v);
+            if (neighbours.length < k + valency) {
+                neighbours = Arrays.copyOf(neighbours, Math.max(2 * neighbours.length, k + valency));
+            }
+            for (int i = 0; i < valency; i++) {
+                int to = graph.getNeighbour(v, i);
+                same &= neighbours[k] == to;
+                neighbours[k++] = to;
+            }
+        }
+        same &= firstNeighbour[n + 1] == k;
+        firstNeighbour[n + 1] = k;
+        topologyUnchanged = same;
+        size = n;
+
+        if (coordinates.length < 3 * n) {
+            coordinates = new float[3 * n];
+        }
+        for (int v = 1; v <= n; v++) {
+            graph.get3DCoordinates(v, vertexCoordinates);
+            System.arraycopy(vertexCoordinates, 0, coordinates, 3 * (v - 1), 3);
+        }
+
+        if (ids.length <= n) {
+            int old = ids.length;
+            ids = Arrays.copyOf(ids, Math.max(2 * old, n + 1));
+            for (int i = old; i < ids.length; i++) {
+                ids[i] = Integer.valueOf(i);
+            }
+        }
+    }
+
+    /**
+     * Returns whether the last graph that was set has the same adjacency
+     * lists as the one before it, so the viewer only needs to move the
+     * atoms instead of loading a new model.
+     */
+    public boolean isTopologyUnchanged() {
+        return topologyUnchanged;
+    }
+
+    /**
+     * Returns the coordinates of the last graph that was set: x, y and z of
+     * vertex 1, then those of vertex 2, and so on. The array can be longer
+     * than needed and is overwritten by the next call to {@link #setGraph}.
+     */
+    public float[] getCoordinates() {
+        return coordinates;
     }
 
     public void setGeneratorInfo(GeneratorInfo generatorInfo) {
         this.generatorInfo = generatorInfo;
+        //the element symbols may change, so the next graph has to be loaded
+        size = -1;
     }
 
     @Override
@@ -98,8 +177,7 @@ public class CaGeJmolAdapter extends JmolAdapter{
     public JmolAdapter.BondIterator getBondIterator(Object clientFile) {
         if(!(clientFile instanceof EmbeddableGraph))
             throw new RuntimeException("CaGeJmolAdpater used with wrong clientFile.");
-        EmbeddableGraph graph = (EmbeddableGraph)clientFile;
-        JmolAdapter.BondIterator it = new MyBondIterator(graph);
+        JmolAdapter.BondIterator it = new MyBondIterator();
         return it;
     }
 
@@ -116,27 +194,27 @@ public class CaGeJmolAdapter extends JmolAdapter{
         @Override
         public boolean hasNext() {
             position++;
-            return (position <= graph.getSize());
+            return (position <= size);
         }
 
         @Override
         public Object getUniqueID() {
-            return Integer.valueOf(position);
+            return ids[position];
         }
 
         @Override
         public float getX() {
-            return graph.get3DCoordinates(position)[0];
+            return coordinates[3 * position - 3];
         }
 
         @Override
         public float getY() {
-            return graph.get3DCoordinates(position)[1];
+            return coordinates[3 * position - 2];
         }
 
         @Override
         public float getZ() {
-            return graph.get3DCoordinates(position)[2];
+            return coordinates[3 * position - 1];
         }
 
         @Override
@@ -148,46 +226,31 @@ public class CaGeJmolAdapter extends JmolAdapter{
 
     private class MyBondIterator extends JmolAdapter.BondIterator {
 
-        private EmbeddableGraph graph;
+        private int vertex = 1;
         private int position = -1;
-        private int[][] edges;
-
-        public MyBondIterator(EmbeddableGraph graph) {
-            this.graph = graph;
-            int edgesSize = 0;
-            for (int i = 1; i <= graph.getSize(); i++) {
-                edgesSize += graph.getValency(i);
-            }
-            edgesSize /= 2;
-            edges = new int[edgesSize][2];
-            int j = 0;
-            for (int i = 1; i <= graph.getSize(); i++) {
-                EdgeIterator it = graph.getEdgeIterator(i);
-                while (it.hasNext()) {
-                    int to = it.nextEdge();
-                    if(to > i){
-                        edges[j][0]=i;
-                        edges[j][1]=to;
-                        j++;
-                    }
-                }
-            }
-        }
 
         @Override
         public boolean hasNext() {
-            position++;
-            return position < edges.length;
+            //each edge is given once, from its smallest vertex
+            while (++position < firstNeighbour[size + 1]) {
+                while (position >= firstNeighbour[vertex + 1]) {
+                    vertex++;
+                }
+                if (neighbours[position] > vertex) {
+                    return true;
+                }
+            }
+            return false;
         }
 
         @Override
         public Object getAtomUniqueID1() {
-            return Integer.valueOf(edges[position][0]);
+            return ids[vertex];
         }
 
         @Override
         public Object getAtomUniqueID2() {
-            return Integer.valueOf(edges[position][1]);
+            return ids[neighbours[position]];
         }
 
         @Override
@@ -12,11 +12,14 @@ import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Graphics;
 import java.awt.Rectangle;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.Map;
 import javax.swing.JPanel;
 
 import org.jmol.api.JmolViewer;
+import org.jmol.modelset.ModelSet;
+import org.jmol.viewer.Viewer;
 
 public class JmolPanel extends JPanel {
 
@@ -37,11 +40,21 @@ public class JmolPanel extends JPanel {
     }
 
     public void setGraph(EmbeddableGraph graph){
+        adapter.setGraph(graph);
+        if (adapter.isTopologyUnchanged() && viewer instanceof Viewer
+                && viewer.getAtomCount() == graph.getSize()) {
+            /*
+             * The same graph with new coordinates, e.g. after re-embedding:
+             * we only move the atoms, so the model, the view and the effect
+             * of the stored commands are kept.
+             */
+            moveAtoms(graph.getSize());
+            return;
+        }
         /*
          * First we set the graph on the adapter and then we trigger the viewer
          * to reread the graph from the adapter.
          */
-        adapter.setGraph(graph);
         viewer.openDOM(null);
         for (String value : storedCommands.values()) {
             viewer.evalString(value);
@@ -49,6 +62,18 @@ public class JmolPanel extends JPanel {
         viewer.evalString("delay;");
     }
 
+    private void moveAtoms(int atomCount) {
+        ModelSet modelSet = ((Viewer) viewer).getModelSet();
+        float[] coordinates = adapter.getCoordinates();
+        for (int i = 0; i < atomCount; i++) {
+            modelSet.setAtomCoord(i, coordinates[3 * i], coordinates[3 * i + 1], coordinates[3 * i + 2]);
+        }
+        BitSet atoms = new BitSet(atomCount);
+        atoms.set(0, atomCount);
+        modelSet.calcBoundBoxDimensions(atoms);
+        viewer.refresh(0, null);
+    }
+
     public void setGeneratorInfo(GeneratorInfo generatorInfo) {
         adapter.setGeneratorInfo(generatorInfo);
     }
@@ -8,4 +8,5 @@ public interface BatchTwoViewConfigurationListener {
     void fileNameTemplateChanged();
     void folderChanged();
     void saverChanged(TwoViewSavers oldSaver, TwoViewSavers newSaver);
+    void archiveChanged();
 }
@@ -7,6 +7,7 @@ import java.awt.EventQueue;
 import java.awt.FlowLayout;
 import javax.swing.AbstractListModel;
 import javax.swing.ComboBoxModel;
+import javax.swing.JCheckBox;
 import javax.swing.JComboBox;
 import javax.swing.JPanel;
 import javax.swing.JTextField;
@@ -23,6 +24,7 @@ public class BatchTwoViewConfigurationPanel extends JPanel{
     private JTextField filenameField;
     private BrowseComponent folderSelector;
     private SaverComboBoxModel comboBoxModel;
+    private JCheckBox archiveBox;
     
     private BatchTwoViewConfigurationListener listener = new BatchTwoViewConfigurationListener() {
 
@@ -40,6 +42,11 @@ public class BatchTwoViewConfigurationPanel extends JPanel{
         public void saverChanged(TwoViewSavers oldSaver, TwoViewSavers newSaver) {
             //do nothing: the combo box model takes care of this
         }
+
+        @Override
+        public void archiveChanged() {
+            archiveBox.setSelected(batchTwoViewModel.isArchive());
+        }
     };
 
     public BatchTwoViewConfigurationPanel(BatchTwoViewModel batchTwoViewModel) {
@@ -74,9 +81,20 @@ public class BatchTwoViewConfigurationPanel extends JPanel{
             }
         });
         
+        archiveBox = new JCheckBox("zip archive", batchTwoViewModel.isArchive());
+        archiveBox.setToolTipText("write all images to a single zip file in the folder");
+        archiveBox.addChangeListener(new ChangeListener() {
+
+            @Override
+            public void stateChanged(ChangeEvent e) {
+                batchTwoViewModel.setArchive(archiveBox.isSelected());
+            }
+        });
+        
         add(folderSelector);
         add(filenameField);
         add(new JComboBox<>(comboBoxModel));
+        add(archiveBox);
     }
     
     public void setFilenameTemplate(String template){
@@ -127,5 +145,10 @@ public class BatchTwoViewConfigurationPanel extends JPanel{
         public void saverChanged(TwoViewSavers oldSaver, TwoViewSavers newSaver) {
             fireContentsChanged(this, -1, -1);
         }
+
+        @Override
+        public void archiveChanged() {
+            //do nothing
+        }
     }
 }
@@ -15,6 +15,7 @@ public class BatchTwoViewModel {
     private File folder;
     private String fileNameTemplate;
     private TwoViewSavers saver;
+    private boolean archive;
 
     public BatchTwoViewModel() {
         folder = new File(CaGe.getCaGeProperty("CaGe.Generators.RunDir"));
@@ -69,6 +70,43 @@ public class BatchTwoViewModel {
         }
     }
     
+    /**
+     * Returns whether all images are written to a single zip archive in the
+     * folder instead of one file per graph. The entries of the archive are
+     * named according to the file name template.
+     */
+    public boolean isArchive() {
+        return archive;
+    }
+
+    public void setArchive(boolean archive) {
+        if(this.archive != archive){
+            this.archive = archive;
+            fireArchiveChanged();
+        }
+    }
+
+    /**
+     * Returns the name of the archive: the part of the file name template
+     * before the graph number, followed by <tt>.zip</tt>.
+     */
+    public String getArchiveName() {
+        String name = fileNameTemplate == null ? "" : fileNameTemplate;
+        int numberStart = name.indexOf('%');
+        if(numberStart >= 0){
+            name = name.substring(0, numberStart);
+        } else if(name.endsWith(saver.getExtension())){
+            name = name.substring(0, name.length() - saver.getExtension().length());
+        }
+        while(name.endsWith("_") || name.endsWith("-") || name.endsWith(".")){
+            name = name.substring(0, name.length() - 1);
+        }
+        if(name.isEmpty()){
+            name = "images";
+        }
+        return name + ".zip";
+    }
+    
     private List<BatchTwoViewConfigurationListener> listeners = 
             new ArrayList<>();
     
@@ -92,6 +130,12 @@ public class BatchTwoViewModel {
         }
     }
     
+    private void fireArchiveChanged(){
+        for (BatchTwoViewConfigurationListener l : listeners) {
+            l.archiveChanged();
+        }
+    }
+    
     private void fireSaverChanged(TwoViewSavers oldSaver, TwoViewSavers newSaver){
         for (BatchTwoViewConfigurationListener l : listeners) {
             l.saverChanged(oldSaver, newSaver);
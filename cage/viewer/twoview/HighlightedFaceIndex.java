@@ -0,0 +1,49 @@
+package cage.viewer.twoview;
+
+import cage.EmbeddableGraph;
+import cage.HalfEdgeGraph;
+import java.util.BitSet;
+
+/**
+ * The edges of a graph that lie on a face of a given size. The faces are
+ * taken from the graph's {@link HalfEdgeGraph}, so this takes time linear
+ * in the number of edges, and the result is stored as one bit per directed
+ * edge, numbered like the half-edges.
+ */
+final class HighlightedFaceIndex {
+
+    private final HalfEdgeGraph faces;
+    private final int faceSize;
+    private final BitSet highlighted;
+
+    HighlightedFaceIndex(HalfEdgeGraph faces, int faceSize) {
+        this.faces = faces;
+        this.faceSize = faceSize;
+        highlighted = new BitSet(faces.getEdgeCount());
+        for (int f = 0; f < faces.getFaceCount(); f++) {
+            if (faces.getFaceSize(f) == faceSize) {
+                for (int i = 0; i < faceSize; i++) {
+                    int e = faces.getFaceEdge(f, i);
+                    highlighted.set(e);
+                    highlighted.set(faces.getReverse(e));
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns whether this index was built for <tt>graph</tt> and faces of
+     * size <tt>faceSize</tt>.
+     */
+    boolean isFor(EmbeddableGraph graph, int faceSize) {
+        return faces.isFor(graph) && this.faceSize == faceSize;
+    }
+
+    /**
+     * Returns whether the edge from <tt>v</tt> to its neighbour at position
+     * <tt>index</tt> lies on a face of the highlighted size.
+     */
+    boolean isHighlighted(int v, int index) {
+        return highlighted.get(faces.getEdge(v, index));
+    }
+}
@@ -8,9 +8,14 @@ import cage.CaGe;
 
 import cage.utility.Debug;
 
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import javax.imageio.ImageIO;
 
 /**
@@ -24,6 +29,8 @@ public class PngTwoViewSaver implements TwoViewSaver{
     private final TwoViewModel model;
     private final int width;
     private final int height;
+    //reused for every graph
+    private final BufferedImage image;
 
     public PngTwoViewSaver(TwoViewModel model) {
         this.model = model;
@@ -35,21 +42,31 @@ public class PngTwoViewSaver implements TwoViewSaver{
                 width - 5 - graphicsTwoViewPainter.getMaxVertexSize() / 2,
                 height - 5 - (graphicsTwoViewPainter.getMaxVertexSize() - 1) / 2,
                 5 + graphicsTwoViewPainter.getMaxVertexSize() / 2);
+        image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
     }
 
     @Override
     public void saveFile(File file) {
-        BufferedImage im = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+            save(out);
+        } catch (IOException ex) {
+            Debug.reportException(ex);
+        }
+    }
+
+    @Override
+    public void save(OutputStream out) throws IOException {
         graphicsTwoViewPainter.setGraph(model.getResult().getGraph());
         
-        graphicsTwoViewPainter.setGraphics(im.createGraphics());
+        Graphics2D graphics = image.createGraphics();
+        graphics.setComposite(AlphaComposite.Clear);
+        graphics.fillRect(0, 0, width, height);
+        graphics.setComposite(AlphaComposite.SrcOver);
+        graphicsTwoViewPainter.setGraphics(graphics);
         graphicsTwoViewPainter.paintGraph();
+        graphics.dispose();
         
-        try {
-            ImageIO.write(im, "PNG", file);
-        } catch (IOException ex) {
-            Debug.reportException(ex);
-        }
+        ImageIO.write(image, "PNG", out);
     }
     
 }
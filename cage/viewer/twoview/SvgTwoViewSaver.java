@@ -7,6 +7,9 @@ import java.awt.Dimension;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 
 /**
  * Implementation of TwoViewSaver that saves the graph as a SVG image.
@@ -25,16 +28,28 @@ public class SvgTwoViewSaver implements TwoViewSaver {
     
     @Override
     public void saveFile(File file){
+        paintGraph();
+        try (FileWriter writer = new FileWriter(file)) {
+            writer.write(svgTwoViewPainter.getSvgContent());
+        } catch (IOException ex) {
+            Debug.reportException(ex);
+        }
+    }
+
+    @Override
+    public void save(OutputStream out) throws IOException {
+        paintGraph();
+        Writer writer = new OutputStreamWriter(out);
+        writer.write(svgTwoViewPainter.getSvgContent());
+        writer.flush();
+    }
+
+    private void paintGraph() {
         svgTwoViewPainter.setGraph(model.getResult().getGraph());
         svgTwoViewPainter.setSvgDimension(new Dimension(
                     CaGe.getCaGePropertyAsInt("TwoView.Width", 550),
                     CaGe.getCaGePropertyAsInt("TwoView.Height", 400)));
         svgTwoViewPainter.setRotation(0);
         svgTwoViewPainter.paintGraph();
-        try (FileWriter writer = new FileWriter(file)) {
-            writer.write(svgTwoViewPainter.getSvgContent());
-        } catch (IOException ex) {
-            Debug.reportException(ex);
-        }
     }
 }
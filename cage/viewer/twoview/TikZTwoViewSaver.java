@@ -4,6 +4,9 @@ import cage.utility.Debug;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 
 /**
  * Implementation of TwoViewSaver that saves the graph as a TikZ picture.
@@ -30,5 +33,14 @@ public class TikZTwoViewSaver implements TwoViewSaver {
             Debug.reportException(ex);
         }
     }
+
+    @Override
+    public void save(OutputStream out) throws IOException {
+        tikzTwoViewPainter.setGraph(model.getResult().getGraph());
+        tikzTwoViewPainter.paintGraph();
+        Writer writer = new OutputStreamWriter(out);
+        writer.write(tikzTwoViewPainter.getTikzContent());
+        writer.flush();
+    }
     
 }
@@ -7,8 +7,10 @@ package cage.viewer.twoview;
 
 import cage.CaGe;
 import cage.CaGeResult;
+import cage.EmbeddableGraph;
 import cage.EmbedThread;
 import cage.GeneratorInfo;
+import cage.HalfEdgeGraph;
 import cage.utility.Debug;
 
 import java.beans.PropertyChangeEvent;
@@ -58,6 +60,7 @@ public class TwoViewModel {
 
     private boolean highlightFaces = false;
     private int highlightedFaces = 5;
+    private HighlightedFaceIndex highlightedFaceIndex;
     
     private boolean embedderRunning = false;
 
@@ -181,6 +184,29 @@ public class TwoViewModel {
         }
     }
 
+    /**
+     * Returns the edges of <tt>graph</tt> that lie on a face of the
+     * highlighted size, or <code>null</code> if the graph has no faces. This
+     * is only computed once per graph and face size, so all painters that
+     * use this model share it, and the faces of the current result are
+     * shared with its other users.
+     */
+    synchronized HighlightedFaceIndex getHighlightedFaceIndex(EmbeddableGraph graph) {
+        if (highlightedFaceIndex == null
+                || !highlightedFaceIndex.isFor(graph, highlightedFaces)) {
+            HalfEdgeGraph faces;
+            try {
+                faces = result != null && result.getGraph() == graph
+                        ? result.getHalfEdgeGraph() : new HalfEdgeGraph(graph);
+            } catch (IllegalArgumentException ex) {
+                //a loop or an edge without its opposite: there are no faces to highlight
+                return null;
+            }
+            highlightedFaceIndex = new HighlightedFaceIndex(faces, highlightedFaces);
+        }
+        return highlightedFaceIndex;
+    }
+
     public CaGeResult getResult() {
         return result;
     }
@@ -1,9 +1,6 @@
 package cage.viewer.twoview;
 
-import cage.EdgeIterator;
 import cage.EmbeddableGraph;
-import java.util.ArrayList;
-import java.util.List;
 
 /**
  *
@@ -20,20 +17,10 @@ public abstract class TwoViewPainter {
     private double scale, delta, horOffset, verOffset;
     private int rotation = 0;
 
-    private boolean isPartOfHighlightedFace[][];
-    private boolean highlightedFacesAlreadyDetermined = false;
-
     protected TwoViewModel model;
 
     public TwoViewPainter(TwoViewModel model) {
         this.model = model;
-        this.model.addTwoViewListener(new TwoViewAdapter() {
-            @Override
-            public void highlightedFacesChanged() {
-                highlightedFacesAlreadyDetermined = false;
-                isPartOfHighlightedFace = new boolean[graphSize+1][graphSize+1];
-            }
-        });
     }
 
     public void setGraph(EmbeddableGraph graph) {
@@ -44,96 +31,6 @@ public abstract class TwoViewPainter {
             return;
         }
         calculateBoundingBox();
-
-        isPartOfHighlightedFace = new boolean[graphSize+1][graphSize+1];
-        highlightedFacesAlreadyDetermined = false;
-    }
-
-    /**
-     * @param embedding a list with the ordered list of neighbours of each vertex
-     * @return true if edge v1 v2 is part of a pentagon
-     */
-    private boolean edgeIsPartOfFaceWithGivenSize(int v1, int v2, List<List<Integer>> embedding) {
-        int v1_temp = v1;
-        int v2_temp = v2;
-
-        //First investigating the face at one of the edge
-        for(int i = 0; i < model.getHighlightedFacesSize(); i++) {
-            List<Integer> neighbours = embedding.get(v2_temp);
-            int previous_index = neighbours.indexOf(v1_temp);
-            if(previous_index == -1) {
-                throw new RuntimeException("Vertex " + v1_temp + " not found in list of neighbours of " + v2_temp);
-            }
-            v1_temp = v2_temp;
-            v2_temp = neighbours.get((previous_index - 1 + neighbours.size()) % neighbours.size());
-            if(v1_temp == v1 && v2_temp == v2 && i < model.getHighlightedFacesSize()-1) {
-                //prevent faces that have a size that is a divisor of the requested
-                //size to be highlighted
-                v1_temp = -1;
-                break;
-            }
-        }
-        if(v1_temp == v1 && v2_temp == v2) {
-            return true;
-        }
-
-        v1_temp = v1;
-        v2_temp = v2;
-        //Investigating the face to the other side of the edge
-        for(int i = 0; i < model.getHighlightedFacesSize(); i++) {
-            List<Integer> neighbours = embedding.get(v2_temp);
-            int previous_index = neighbours.indexOf(v1_temp);
-            if(previous_index == -1) {
-                throw new RuntimeException("Vertex " + v1_temp + " not found in list of neighbours of " + v2_temp);
-            }
-            v1_temp = v2_temp;
-            v2_temp = neighbours.get((previous_index + 1) % neighbours.size());
-            if(v1_temp == v1 && v2_temp == v2 && i < model.getHighlightedFacesSize()-1) {
-                //prevent faces that have a size that is a divisor of the requested
-                //size to be highlighted
-                v1_temp = -1;
-                break;
-            }
-        }
-
-        return v1_temp == v1 && v2_temp == v2;
-    }
-
-    private void determineHighlightedFaces() {
-        //The neighbours of each vertex
-        List<List<Integer>> embedding = new ArrayList<>();
-
-        //For i = 0
-        embedding.add(new ArrayList<Integer>());
-        for (int i = 1; i <= graphSize; i++) {
-            EdgeIterator it = graph.getEdgeIterator(i);
-            List<Integer> neighbours = new ArrayList<>();
-            while(it.hasNext()) {
-                neighbours.add(it.nextEdge());
-            }
-            embedding.add(neighbours);
-        }
-
-        for (int i = graphSize; i > 0; --i) {
-            EdgeIterator it = graph.getEdgeIterator(i);
-            while(it.hasNext()) {
-                int j = it.nextEdge();
-
-                //Algorithm is not really efficient, but it is certainly not a bottleneck
-                if(edgeIsPartOfFaceWithGivenSize(i, j, embedding)) {
-                    isPartOfHighlightedFace[i][j] = true;
-                    isPartOfHighlightedFace[j][i] = true;
-                }
-                //TODO: why does this not work? Fixed by recreating array when face size changes
-                //else {
-                //    isPartOfHighlightedFace[i][j] = false;
-                //    isPartOfHighlightedFace[j][i] = false;
-                //}
-            }
-        }
-
-        highlightedFacesAlreadyDetermined = true;
-
     }
 
     public void setPaintArea(double horMin, double horMax, double verMin, double verMax) {
@@ -285,8 +182,8 @@ public abstract class TwoViewPainter {
     }
 
     public void paintGraph() {
-        if(model.highlightFaces() && !highlightedFacesAlreadyDetermined)
-            determineHighlightedFaces();
+        HighlightedFaceIndex faceIndex =
+                model.highlightFaces() ? model.getHighlightedFaceIndex(graph) : null;
 
         beginGraph();
 
@@ -296,18 +193,7 @@ public abstract class TwoViewPainter {
 
         if(startWithEdges()){
             beginEdges();
-            for (int i = graphSize; i > 0; --i) {
-                EdgeIterator it = graph.getEdgeIterator(i);
-                while (it.hasNext()) {
-                    int j = it.nextEdge();
-                    if (j >= i) {
-                        continue; // draw only edges to vertices that aren't drawn yet
-                    }
-
-                    paintEdge(p[i].x, p[i].y, p[j].x, p[j].y, i, j,
-                            model.highlightFaces() && isPartOfHighlightedFace[i][j]);
-                }
-            }
+            paintEdges(faceIndex);
             beginVertices();
             for (int i = graphSize; i > 0; --i) {
                 paintVertex(p[i].x, p[i].y, i);
@@ -318,21 +204,25 @@ public abstract class TwoViewPainter {
                 paintVertex(p[i].x, p[i].y, i);
             }
             beginEdges();
-            for (int i = graphSize; i > 0; --i) {
-                EdgeIterator it = graph.getEdgeIterator(i);
-                while (it.hasNext()) {
-                    int j = it.nextEdge();
-                    if (j >= i) {
-                        continue; // draw only edges to vertices that aren't drawn yet
-                    }
+            paintEdges(faceIndex);
+        }
+        endGraph();
+        
+    }
 
-                    paintEdge(p[i].x, p[i].y, p[j].x, p[j].y, i, j,
-                            model.highlightFaces() && isPartOfHighlightedFace[i][j]);
+    private void paintEdges(HighlightedFaceIndex faceIndex) {
+        for (int i = graphSize; i > 0; --i) {
+            int valency = graph.getValency(i);
+            for (int k = 0; k < valency; k++) {
+                int j = graph.getNeighbour(i, k);
+                if (j >= i) {
+                    continue; // draw only edges to vertices that aren't drawn yet
                 }
+
+                paintEdge(p[i].x, p[i].y, p[j].x, p[j].y, i, j,
+                        faceIndex != null && faceIndex.isHighlighted(i, k));
             }
         }
-        endGraph();
-        
     }
 
     protected abstract void beginGraph();
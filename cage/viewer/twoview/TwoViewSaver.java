@@ -1,6 +1,8 @@
 package cage.viewer.twoview;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
 
 /**
  *
@@ -8,4 +10,13 @@ import java.io.File;
  */
 public interface TwoViewSaver {
     void saveFile(File file);
+
+    /**
+     * Writes the image of the current graph of the model to <tt>out</tt>,
+     * e.g. an entry of an archive. The stream is not closed.
+     *
+     * @param out the stream to write the image to
+     * @throws IOException if the image can't be written
+     */
+    void save(OutputStream out) throws IOException;
 }
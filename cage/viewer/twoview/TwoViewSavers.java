@@ -6,19 +6,19 @@ package cage.viewer.twoview;
  * @author nvcleemp
  */
 public enum TwoViewSavers {
-    SVG(".svg"){
+    SVG(".svg", true){
         @Override
         public SvgTwoViewSaver getSaver(TwoViewModel model){
             return new SvgTwoViewSaver(model);
         }
     },
-    TIKZ(".tikz"){
+    TIKZ(".tikz", true){
         @Override
         public TikZTwoViewSaver getSaver(TwoViewModel model){
             return new TikZTwoViewSaver(model);
         }
     },
-    PNG(".png"){
+    PNG(".png", false){
         @Override
         public PngTwoViewSaver getSaver(TwoViewModel model){
             return new PngTwoViewSaver(model);
@@ -26,14 +26,24 @@ public enum TwoViewSavers {
     };
     
     private String extension;
+    private boolean compressible;
     
-    private TwoViewSavers(String extension){
+    private TwoViewSavers(String extension, boolean compressible){
         this.extension = extension;
+        this.compressible = compressible;
     }
     
     public String getExtension(){
         return extension;
     }
     
+    /**
+     * Returns whether the files of this type get smaller when they are
+     * compressed, i.e. whether they should be deflated in an archive.
+     */
+    public boolean isCompressible(){
+        return compressible;
+    }
+    
     public abstract TwoViewSaver getSaver(TwoViewModel model);
 }
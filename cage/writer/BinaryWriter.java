@@ -0,0 +1,288 @@
+package cage.writer;
+
+import cage.BinaryGraphFile;
+import cage.CaGeResult;
+import cage.EmbeddableGraph;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * A CaGeWriter which outputs the graphs in a compact binary format with an
+ * index of the graphs at the end, so {@link BinaryGraphFile} can fetch any
+ * graph without reading the ones before it. The adjacency lists are stored
+ * as varints like in <tt>planar_code</tt>, and the coordinates as blocks of
+ * floats, one for each axis. The format is described in
+ * {@link BinaryGraphFile}.
+ *
+ * The index is collected in a temporary file while the graphs are written,
+ * and is appended when the writer is stopped. A file whose writer wasn't
+ * stopped has no index and can't be read.
+ */
+public class BinaryWriter extends CaGeWriter {
+
+    private final float[] coordinates = new float[3];
+    private boolean headerWritten, footerWritten;
+    //the offset in the file at which the next graph starts
+    private long position;
+    private long count;
+    private int maxRecordLength;
+    private int lastGraphNo;
+    private boolean consecutive, ascending;
+    private File indexFile;
+    private DataOutputStream index;
+
+    @Override
+    public String getFormatName() {
+        return "CaGe binary";
+    }
+
+    @Override
+    public String getFileExtension() {
+        return "cgb";
+    }
+
+    @Override
+    public void setOutputStream(OutputStream out) {
+        super.setOutputStream(out);
+        discardIndex();
+        headerWritten = footerWritten = false;
+        position = 0;
+        count = 0;
+        maxRecordLength = 0;
+        consecutive = ascending = true;
+    }
+
+    /**
+     * Reads the graphs written before to rebuild the index. The graphs of a
+     * background run are numbered from 1 without gaps, so the earlier run
+     * has to have written exactly <tt>graphNo</tt> graphs.
+     */
+    @Override
+    public void resumeOutputStream(OutputStream out, InputStream written, int graphNo)
+            throws IOException {
+        setOutputStream(out);
+        InputStream in = new BufferedInputStream(written);
+        byte[] header = new byte[BinaryGraphFile.HEADER_LENGTH];
+        int length = 0, n;
+        while (length < header.length && (n = in.read(header, length, header.length - length)) > 0) {
+            length += n;
+        }
+        if (length > 0) {
+            if (length < header.length
+                    || !Arrays.equals(Arrays.copyOf(header, 8), BinaryGraphFile.HEADER_MAGIC)
+                    || header[8] != dimension) {
+                throw new IOException("the earlier output isn't a binary graph file of dimension " + dimension);
+            }
+            headerWritten = true;
+            position = header.length;
+            int c;
+            while ((c = in.read()) >= 0) {
+                long start = position++;
+                n = readVarint(in, c);
+                int flags = readVarint(in, readByte(in));
+                for (int v = 1; v <= n; ++v) {
+                    while (readVarint(in, readByte(in)) != 0) {
+                    }
+                }
+                if ((flags & BinaryGraphFile.HAS_COORDINATES) != 0) {
+                    while (position % 4 != 0) {
+                        readByte(in);
+                    }
+                    for (long skip = 4L * dimension * n; skip > 0; --skip) {
+                        readByte(in);
+                    }
+                }
+                addToIndex(start, (int) count + 1);
+                maxRecordLength = (int) Math.max(maxRecordLength, position - start);
+            }
+        }
+        if (count != graphNo) {
+            throw new IOException("the earlier output holds " + count + " graphs instead of " + graphNo);
+        }
+    }
+
+    //reads the rest of a varint that starts with byte b
+    private int readVarint(InputStream in, int b) throws IOException {
+        int value = b & 0x7f;
+        for (int shift = 7; (b & 0x80) != 0; shift += 7) {
+            b = readByte(in);
+            value |= (b & 0x7f) << shift;
+        }
+        return value;
+    }
+
+    private int readByte(InputStream in) throws IOException {
+        int b = in.read();
+        if (b < 0) {
+            throw new EOFException("the earlier output ends in the middle of a graph");
+        }
+        ++position;
+        return b;
+    }
+
+    @Override
+    public void outputResult(CaGeResult result) {
+        EmbeddableGraph graph = result.getGraph();
+        ByteSink sink = sink();
+        if (!headerWritten) {
+            appendHeader(sink);
+            position = sink.size();
+            headerWritten = true;
+        }
+        int start = sink.size();
+        int n = graph.getSize();
+        boolean hasCoordinates = dimension == 2 ? graph.has2DCoordinates()
+                : dimension == 3 && graph.has3DCoordinates();
+        sink.appendVarint(n).appendVarint(hasCoordinates ? BinaryGraphFile.HAS_COORDINATES : 0);
+        for (int v = 1; v <= n; ++v) {
+            int valency = graph.getValency(v);
+            for (int i = 0; i < valency; ++i) {
+                sink.appendVarint(graph.getNeighbour(v, i));
+            }
+            sink.appendByte(0);
+        }
+        if (hasCoordinates) {
+            while ((position + sink.size() - start) % 4 != 0) {
+                sink.appendByte(0);
+            }
+            for (int d = 0; d < dimension; ++d) {
+                for (int v = 1; v <= n; ++v) {
+                    if (dimension == 2) {
+                        graph.get2DCoordinates(v, coordinates);
+                    } else {
+                        graph.get3DCoordinates(v, coordinates);
+                    }
+                    sink.appendFloat32(coordinates[d]);
+                }
+            }
+        }
+        try {
+            addToIndex(position, result.getGraphNo());
+        } catch (IOException ex) {
+            lastException = ex;
+            return;
+        }
+        int recordLength = sink.size() - start;
+        position += recordLength;
+        maxRecordLength = Math.max(maxRecordLength, recordLength);
+        out(sink);
+    }
+
+    private void appendHeader(ByteSink sink) {
+        for (byte b : BinaryGraphFile.HEADER_MAGIC) {
+            sink.appendByte(b);
+        }
+        sink.appendByte(dimension);
+        for (int i = 9; i < BinaryGraphFile.HEADER_LENGTH; ++i) {
+            sink.appendByte(0);
+        }
+    }
+
+    private void addToIndex(long offset, int graphNo) throws IOException {
+        if (index == null) {
+            indexFile = File.createTempFile("cage-index", ".tmp");
+            indexFile.deleteOnExit();
+            index = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile)));
+        }
+        index.writeLong(offset);
+        index.writeInt(graphNo);
+        if (count > 0) {
+            consecutive &= graphNo == lastGraphNo + 1;
+            ascending &= graphNo > lastGraphNo;
+        }
+        lastGraphNo = graphNo;
+        ++count;
+    }
+
+    private void discardIndex() {
+        if (index != null) {
+            try {
+                index.close();
+            } catch (IOException ex) {
+            }
+            index = null;
+        }
+        if (indexFile != null) {
+            indexFile.delete();
+            indexFile = null;
+        }
+    }
+
+    /*
+     * Appends the index: first all offsets, then all graph numbers, each
+     * read from the temporary file in a pass of its own, and then the
+     * trailer.
+     */
+    private void writeFooter() throws IOException {
+        ByteSink sink = sink();
+        if (!headerWritten) {
+            appendHeader(sink);
+            position = sink.size();
+            headerWritten = true;
+        }
+        if (index != null) {
+            index.close();
+            index = null;
+            for (int pass = 0; pass < 2; ++pass) {
+                try (DataInputStream in = new DataInputStream(
+                        new BufferedInputStream(new FileInputStream(indexFile)))) {
+                    for (long i = 0; i < count; ++i) {
+                        long offset = in.readLong();
+                        int graphNo = in.readInt();
+                        if (pass == 0) {
+                            sink.appendInt64(offset);
+                        } else {
+                            sink.appendInt32(graphNo);
+                        }
+                        if (sink.size() >= 1 << 16) {
+                            sink.writeTo(out);
+                            sink.reset();
+                        }
+                    }
+                }
+            }
+        }
+        sink.appendInt64(position)
+                .appendInt64(count)
+                .appendInt32(maxRecordLength)
+                .appendInt32((consecutive ? BinaryGraphFile.CONSECUTIVE : 0)
+                        | (ascending ? BinaryGraphFile.ASCENDING : 0));
+        for (byte b : BinaryGraphFile.TRAILER_MAGIC) {
+            sink.appendByte(b);
+        }
+        sink.writeTo(out);
+        sink.reset();
+    }
+
+    /**
+     * Appends the index and closes the stream.
+     */
+    @Override
+    public void stop() {
+        IOException footerException = null;
+        if (out != null && !footerWritten) {
+            footerWritten = true;
+            try {
+                writeFooter();
+            } catch (IOException ex) {
+                footerException = ex;
+            }
+        }
+        discardIndex();
+        super.stop();
+        if (lastException == null) {
+            lastException = footerException;
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package cage.writer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A growable byte buffer that writers encode a result into before it is
+ * written to the output stream. The buffer is kept between results, so once
+ * it has grown to the size of the largest result, encoding doesn't allocate
+ * anything. Characters are stored as ISO-8859-1, which covers all output
+ * formats of CaGe.
+ *
+ * Numbers are formatted without creating strings. Floats get the same
+ * decimal representation as <code>Float.toString</code>: the shortest one
+ * that reads back as the same float, with at least one digit after the
+ * decimal point.
+ */
+public class ByteSink {
+
+    private static final double[] POWERS_OF_TEN = new double[13];
+
+    static {
+        POWERS_OF_TEN[0] = 1.0;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10.0;
+        }
+    }
+
+    private byte[] buffer;
+    private int count;
+
+    public ByteSink() {
+        this(1024);
+    }
+
+    public ByteSink(int capacity) {
+        buffer = new byte[capacity];
+    }
+
+    private void ensureCapacity(int extra) {
+        if (count + extra > buffer.length) {
+            byte[] newBuffer = new byte[Math.max(2 * buffer.length, count + extra)];
+            System.arraycopy(buffer, 0, newBuffer, 0, count);
+            buffer = newBuffer;
+        }
+    }
+
+    public ByteSink append(char c) {
+        ensureCapacity(1);
+        buffer[count++] = (byte) (c < 256 ? c : '?');
+        return this;
+    }
+
+    public ByteSink append(String s) {
+        int length = s.length();
+        ensureCapacity(length);
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            buffer[count++] = (byte) (c < 256 ? c : '?');
+        }
+        return this;
+    }
+
+    public ByteSink append(int i) {
+        if (i == Integer.MIN_VALUE) {
+            return append(Integer.toString(i));
+        }
+        ensureCapacity(11);
+        if (i < 0) {
+            buffer[count++] = '-';
+            i = -i;
+        }
+        appendDigits(i, 0);
+        return this;
+    }
+
+    /**
+     * Writes <tt>value</tt> in decimal, padded with zeros to at least
+     * <tt>width</tt> digits. The caller ensures the capacity.
+     */
+    private void appendDigits(long value, int width) {
+        int digits = 1;
+        for (long v = value / 10; v > 0; v /= 10) {
+            digits++;
+        }
+        digits = Math.max(digits, width);
+        int pos = count + digits;
+        for (int i = 0; i < digits; i++) {
+            buffer[--pos] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        count += digits;
+    }
+
+    public ByteSink append(float f) {
+        float abs = Math.abs(f);
+        if (abs == 0.0f) {
+            return append(Float.floatToRawIntBits(f) < 0 ? "-0.0" : "0.0");
+        }
+        // Float.toString uses scientific notation outside of this range
+        if (!(abs >= 1e-3f && abs < 1e7f)) {
+            return append(Float.toString(f));
+        }
+        // a float has at most 9 significant digits and abs >= 1e-3
+        double value = abs;
+        for (int k = 1; k < POWERS_OF_TEN.length; k++) {
+            long scaled = (long) Math.rint(value * POWERS_OF_TEN[k]);
+            if ((float) (scaled / POWERS_OF_TEN[k]) == abs) {
+                ensureCapacity(22);
+                if (f < 0) {
+                    buffer[count++] = '-';
+                }
+                long unit = (long) POWERS_OF_TEN[k];
+                appendDigits(scaled / unit, 0);
+                buffer[count++] = '.';
+                appendDigits(scaled % unit, k);
+                return this;
+            }
+        }
+        return append(Float.toString(f));
+    }
+
+    public ByteSink append(double d) {
+        return append(Double.toString(d));
+    }
+
+    /**
+     * Writes <tt>d</tt> with exactly <tt>decimals</tt> digits after the
+     * decimal point, like <tt>%.6f</tt> in C does for 6 decimals.
+     */
+    public ByteSink appendFixed(double d, int decimals) {
+        double scaled = Math.rint(Math.abs(d) * POWERS_OF_TEN[decimals]);
+        if (Double.isNaN(d) || scaled >= Long.MAX_VALUE) {
+            return append(String.format("%." + decimals + "f", d));
+        }
+        long digits = (long) scaled;
+        ensureCapacity(22);
+        if (d < 0 && digits != 0) {
+            buffer[count++] = '-';
+        }
+        long unit = (long) POWERS_OF_TEN[decimals];
+        appendDigits(digits / unit, 0);
+        if (decimals > 0) {
+            buffer[count++] = '.';
+            appendDigits(digits % unit, decimals);
+        }
+        return this;
+    }
+
+    /**
+     * Appends the lowest 8 bits of <tt>b</tt> as a single byte.
+     */
+    public ByteSink appendByte(int b) {
+        ensureCapacity(1);
+        buffer[count++] = (byte) b;
+        return this;
+    }
+
+    /**
+     * Appends <tt>i</tt> as an unsigned varint: 7 bits per byte, lowest
+     * first, with the high bit set on all bytes but the last.
+     */
+    public ByteSink appendVarint(int i) {
+        ensureCapacity(5);
+        while ((i & ~0x7f) != 0) {
+            buffer[count++] = (byte) (i | 0x80);
+            i >>>= 7;
+        }
+        buffer[count++] = (byte) i;
+        return this;
+    }
+
+    /**
+     * Appends <tt>i</tt> as 4 bytes, little-endian.
+     */
+    public ByteSink appendInt32(int i) {
+        ensureCapacity(4);
+        buffer[count++] = (byte) i;
+        buffer[count++] = (byte) (i >>> 8);
+        buffer[count++] = (byte) (i >>> 16);
+        buffer[count++] = (byte) (i >>> 24);
+        return this;
+    }
+
+    /**
+     * Appends <tt>l</tt> as 8 bytes, little-endian.
+     */
+    public ByteSink appendInt64(long l) {
+        appendInt32((int) l);
+        return appendInt32((int) (l >>> 32));
+    }
+
+    /**
+     * Appends the IEEE 754 bits of <tt>f</tt> as 4 bytes, little-endian.
+     */
+    public ByteSink appendFloat32(float f) {
+        return appendInt32(Float.floatToRawIntBits(f));
+    }
+
+    /**
+     * Returns the number of bytes in the buffer.
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Empties the buffer, keeping its capacity.
+     */
+    public void reset() {
+        count = 0;
+    }
+
+    /**
+     * Writes the contents of the buffer to <tt>out</tt>. The buffer is not
+     * emptied.
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(buffer, 0, count);
+    }
+
+    /**
+     * Returns whether the buffer holds the same bytes as <tt>other</tt> has
+     * from its position to its limit. The position of <tt>other</tt> is not
+     * changed.
+     */
+    public boolean contentEquals(ByteBuffer other) {
+        if (other.remaining() != count) {
+            return false;
+        }
+        int start = other.position();
+        for (int i = 0; i < count; i++) {
+            if (buffer[i] != other.get(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return new String(buffer, 0, count, StandardCharsets.ISO_8859_1);
+    }
+}
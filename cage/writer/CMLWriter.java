@@ -1,13 +1,13 @@
 package cage.writer;
 
 import cage.CaGeResult;
-import cage.EdgeIterator;
 import cage.EmbeddableGraph;
 
-import java.util.NoSuchElementException;
-
 public class CMLWriter extends AbstractChemicalWriter {
 
+    private final float[] coords = new float[3];
+    private float[] vertexCoords = new float[0];
+
     @Override
     public String getFormatName() {
         return "CML";
@@ -20,73 +20,94 @@ public class CMLWriter extends AbstractChemicalWriter {
 
     @Override
     public String encodeResult(CaGeResult result) {
+        ByteSink sink = new ByteSink();
+        encodeResult(result, sink);
+        return sink.toString();
+    }
+
+    /**
+     * Encodes <tt>result</tt> as CML and appends it to <tt>sink</tt>.
+     */
+    public void encodeResult(CaGeResult result, ByteSink sink) {
         EmbeddableGraph graph = result.getGraph();
-        StringBuilder builder = new StringBuilder();
-        String sep;
         int i, k, n = graph.getSize();
-        float[][] coordinate =
-                dimension == 2 ? graph.get2DCoordinates() : graph.get3DCoordinates();
-        builder.append("<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?>\n");
-        builder.append("<!DOCTYPE molecule SYSTEM \"cml.dtd\" []>\n");
-        builder.append("<molecule convention=\"MathGraph\">\n");
-        builder.append("  <atomArray>\n");
-        builder.append("    <stringArray builtin=\"id\">");
-        sep = "";
+        sink.append("<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?>\n");
+        sink.append("<!DOCTYPE molecule SYSTEM \"cml.dtd\" []>\n");
+        sink.append("<molecule convention=\"MathGraph\">\n");
+        sink.append("  <atomArray>\n");
+        sink.append("    <stringArray builtin=\"id\">");
         for (i = 1; i <= n; ++i) {
-            builder.append(sep).append("a").append(i);
-            sep = " ";
+            if (i > 1) {
+                sink.append(' ');
+            }
+            sink.append('a').append(i);
         }
-        builder.append("</stringArray>\n");
-        builder.append("    <stringArray builtin=\"elementType\">");
-        sep = "";
+        sink.append("</stringArray>\n");
+        sink.append("    <stringArray builtin=\"elementType\">");
         for (i = 1; i <= n; ++i) {
             String element = elementRule.getElement(graph, i);
             if (element == null) {
                 element = "X";
             }
-            builder.append(sep).append(element);
-            sep = " ";
+            if (i > 1) {
+                sink.append(' ');
+            }
+            sink.append(element);
+        }
+        sink.append("</stringArray>\n");
+        // fetch the coordinates of each vertex once, then write them per axis
+        if (vertexCoords.length < dimension * n) {
+            vertexCoords = new float[Math.max(dimension * n, 2 * vertexCoords.length)];
+        }
+        for (i = 1; i <= n; ++i) {
+            if (dimension == 2) {
+                graph.get2DCoordinates(i, coords);
+            } else {
+                graph.get3DCoordinates(i, coords);
+            }
+            System.arraycopy(coords, 0, vertexCoords, dimension * (i - 1), dimension);
         }
-        builder.append("</stringArray>\n");
         for (k = 0; k < dimension; ++k) {
-            builder.append("    <floatArray builtin=\"").append("xyz".substring(k, k + 1)).append(dimension).append("\">");
-            sep = "";
-            for (i = 0; i < n; ++i) {
-                builder.append(sep).append(coordinate[i][k]);
-                sep = " ";
+            sink.append("    <floatArray builtin=\"").append("xyz".charAt(k)).append(dimension).append("\">");
+            for (i = 1; i <= n; ++i) {
+                if (i > 1) {
+                    sink.append(' ');
+                }
+                sink.append(vertexCoords[dimension * (i - 1) + k]);
             }
-            builder.append("</floatArray>\n");
+            sink.append("</floatArray>\n");
         }
-        builder.append("  </atomArray>\n");
-        builder.append("  <bondArray>\n");
-        StringBuffer from = new StringBuffer();
-        StringBuffer to = new StringBuffer();
-        sep = "";
-        for (i = 1; i <= n; ++i) {
-            EdgeIterator edgeIterator = graph.getEdgeIterator(i);
-            try {
-                for (;;) {
-                    int j = edgeIterator.nextEdge();
+        sink.append("  </atomArray>\n");
+        sink.append("  <bondArray>\n");
+        // the first array holds the lower end of each edge, the second one the higher end
+        for (int end = 0; end < 2; ++end) {
+            sink.append("    <stringArray builtin=\"atomRef\">");
+            boolean first = true;
+            for (i = 1; i <= n; ++i) {
+                int valency = graph.getValency(i);
+                for (int e = 0; e < valency; ++e) {
+                    int j = graph.getNeighbour(i, e);
                     if (j <= i) {
                         continue;
                     }
-                    from.append(sep).append("a").append(i);
-                    to.append(sep).append("a").append(j);
-                    sep = " ";
+                    if (!first) {
+                        sink.append(' ');
+                    }
+                    first = false;
+                    sink.append('a').append(end == 0 ? i : j);
                 }
-            } catch (NoSuchElementException e) {
             }
+            sink.append("</stringArray>\n");
         }
-        builder.append("    <stringArray builtin=\"atomRef\">").append(from).append("</stringArray>\n");
-        builder.append("    <stringArray builtin=\"atomRef\">").append(to).append("</stringArray>\n");
-        builder.append("  </bondArray>\n");
-        builder.append("</molecule>\n");
-        return builder.toString();
+        sink.append("  </bondArray>\n");
+        sink.append("</molecule>\n");
     }
 
     @Override
     public void outputResult(CaGeResult result) {
-        out(encodeResult(result));
+        ByteSink sink = sink();
+        encodeResult(result, sink);
+        out(sink);
     }
 }
 
@@ -1,10 +1,13 @@
 package cage.writer;
 
 import cage.CaGeOutlet;
+import cage.CaGeResult;
 import cage.GeneratorInfo;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.List;
 
 public abstract class CaGeWriter implements CaGeOutlet {
 
@@ -19,6 +22,7 @@ public abstract class CaGeWriter implements CaGeOutlet {
     OutputStream out;
     GeneratorInfo generatorInfo;
     IOException lastException;
+    private final ByteSink sink = new ByteSink();
 
     @Override
     public void setDimension(int dimension) {
@@ -39,6 +43,24 @@ public abstract class CaGeWriter implements CaGeOutlet {
         this.out = out;
     }
 
+    /**
+     * Continues the output of an earlier run of this writer that was
+     * stopped after graph <tt>graphNo</tt>: <tt>out</tt> appends to what
+     * that run wrote, and <tt>written</tt> reads it. Unlike {@link
+     * #setOutputStream(java.io.OutputStream)}, nothing like a header is
+     * written. This implementation only sets the stream, which is enough
+     * for writers that keep no state between graphs.
+     *
+     * @param out The stream to append to.
+     * @param written The output of the earlier run, uncompressed.
+     * @param graphNo The number of the last graph the earlier run wrote.
+     * @throws IOException if the earlier output can't be read or continued
+     */
+    public void resumeOutputStream(OutputStream out, InputStream written, int graphNo)
+            throws IOException {
+        this.out = out;
+    }
+
     @Override
     public void stop() {
         lastException = null;
@@ -52,6 +74,43 @@ public abstract class CaGeWriter implements CaGeOutlet {
         }
     }
 
+    /**
+     * Outputs a block of results. This implementation calls {@link
+     * #outputResult(cage.CaGeResult)} for each of them and stops at the first
+     * one that causes an <code>IOException</code>.
+     *
+     * @param results the results to output, in order
+     */
+    public void outputResults(List<CaGeResult> results) {
+        for (CaGeResult result : results) {
+            outputResult(result);
+            if (lastException != null) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns the sink to encode the next result into. It is empty, but keeps
+     * the buffer of the previous result, so encoding into it and writing it
+     * with {@link #out(cage.writer.ByteSink)} doesn't allocate anything.
+     */
+    ByteSink sink() {
+        sink.reset();
+        return sink;
+    }
+
+    boolean out(ByteSink output) {
+        lastException = null;
+        try {
+            output.writeTo(out);
+        } catch (IOException ex) {
+            lastException = ex;
+        }
+        output.reset();
+        return lastException != null;
+    }
+
     boolean out(String output) {
         return out(output.getBytes());
     }
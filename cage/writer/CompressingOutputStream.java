@@ -0,0 +1,222 @@
+package cage.writer;
+
+import cage.CaGe;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * An output stream that gzips what is written to it on other threads. The
+ * data is cut in blocks of a megabyte, and each block is compressed by a
+ * pool of <tt>CaGe.Compression.Threads</tt> threads into a gzip member of its
+ * own, so the writer only copies bytes while the compression overlaps with
+ * generating and embedding the next graphs. The members are written in
+ * order, which makes the output an ordinary gzip file that
+ * <tt>gunzip</tt> and <code>GZIPInputStream</code> read in one go.
+ *
+ * At most two blocks per thread of the pool are waiting; the writer waits
+ * for the oldest one before it starts another. The blocks and their
+ * deflaters are reused, and all deflaters are ended when the stream is
+ * closed, also if writing failed.
+ */
+public class CompressingOutputStream extends OutputStream {
+
+    private static final int blockSize = 1 << 20;
+    private static final int threads = CaGe.getCaGePropertyAsInt("CaGe.Compression.Threads", 0);
+    private static final ForkJoinPool pool =
+            new ForkJoinPool(threads > 0 ? threads : Runtime.getRuntime().availableProcessors());
+    //the fixed gzip header: deflate, no flags, no time, unknown OS
+    private static final byte[] header = {0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+    private final OutputStream out;
+    private final int level;
+    private final int maxPending = 2 * pool.getParallelism();
+    private final ArrayDeque<Block> pending = new ArrayDeque<>();
+    private final ArrayDeque<Block> free = new ArrayDeque<>();
+    private Block block;
+    private boolean closed;
+
+    /**
+     * Creates a stream that writes the compressed data to <tt>out</tt>.
+     *
+     * @param out The stream for the compressed data.
+     * @param level The deflate level, from 1 (fastest) to 9 (smallest), or
+     *              <code>Deflater.DEFAULT_COMPRESSION</code>.
+     */
+    public CompressingOutputStream(OutputStream out, int level) {
+        this.out = out;
+        this.level = level;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        if (block == null || block.length == blockSize) {
+            nextBlock();
+        }
+        block.data[block.length++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        while (len > 0) {
+            if (block == null || block.length == blockSize) {
+                nextBlock();
+            }
+            int n = Math.min(len, blockSize - block.length);
+            System.arraycopy(b, off, block.data, block.length, n);
+            block.length += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * Compresses what has been written so far and writes it out. This ends
+     * the current gzip member, so flushing often makes the output larger.
+     */
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        submit();
+        while (!pending.isEmpty()) {
+            writeOldest();
+        }
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            flush();
+        } finally {
+            closed = true;
+            for (Block b : pending) {
+                b.future.cancel(false);
+                b.end();
+            }
+            pending.clear();
+            if (block != null) {
+                block.end();
+                block = null;
+            }
+            for (Block b : free) {
+                b.end();
+            }
+            free.clear();
+            out.close();
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+    }
+
+    private void nextBlock() throws IOException {
+        submit();
+        // write out what is done, and wait if too much is still waiting
+        while (!pending.isEmpty() && (pending.size() >= maxPending || pending.peek().future.isDone())) {
+            writeOldest();
+        }
+        block = free.isEmpty() ? new Block(level) : free.poll();
+        block.length = 0;
+    }
+
+    private void submit() {
+        if (block != null && block.length > 0) {
+            final Block b = block;
+            b.future = pool.submit(() -> b.compress());
+            pending.add(b);
+        } else if (block != null) {
+            free.add(block);
+        }
+        block = null;
+    }
+
+    /*
+     * Writes out the oldest pending block. If its compression failed, it
+     * stays pending, so close() still ends its deflater.
+     */
+    private void writeOldest() throws IOException {
+        Block b = pending.peek();
+        try {
+            b.future.get();
+        } catch (InterruptedException ex) {
+            throw new IOException("compression interrupted", ex);
+        } catch (ExecutionException ex) {
+            throw new IOException("compression failed", ex.getCause());
+        }
+        pending.poll();
+        out.write(b.compressed, 0, b.compressedLength);
+        free.add(b);
+    }
+
+    /**
+     * A block of data and its compressed form as a complete gzip member.
+     * Compressing and ending the deflater are synchronized, so a block whose
+     * compression is still running when the stream is closed is ended
+     * after it.
+     */
+    private static class Block {
+
+        final byte[] data = new byte[blockSize];
+        int length;
+        //deflate can make data a little larger, but never by this much
+        byte[] compressed = new byte[blockSize + blockSize / 64 + 64];
+        int compressedLength;
+        final Deflater deflater;
+        final CRC32 crc = new CRC32();
+        //the compression of the block, while it is pending
+        Future<Block> future;
+
+        Block(int level) {
+            deflater = new Deflater(level, true);
+        }
+
+        synchronized Block compress() {
+            System.arraycopy(header, 0, compressed, 0, header.length);
+            int n = header.length;
+            deflater.reset();
+            deflater.setInput(data, 0, length);
+            deflater.finish();
+            while (!deflater.finished()) {
+                if (n == compressed.length - 8) {
+                    byte[] larger = new byte[2 * compressed.length];
+                    System.arraycopy(compressed, 0, larger, 0, n);
+                    compressed = larger;
+                }
+                n += deflater.deflate(compressed, n, compressed.length - 8 - n);
+            }
+            crc.reset();
+            crc.update(data, 0, length);
+            n = putInt(compressed, n, (int) crc.getValue());
+            compressedLength = putInt(compressed, n, length);
+            return this;
+        }
+
+        synchronized void end() {
+            deflater.end();
+        }
+
+        //stores a little-endian int, as gzip wants it
+        private static int putInt(byte[] b, int off, int value) {
+            b[off] = (byte) value;
+            b[off + 1] = (byte) (value >>> 8);
+            b[off + 2] = (byte) (value >>> 16);
+            b[off + 3] = (byte) (value >>> 24);
+            return off + 4;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package cage.writer;
+
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+
+/**
+ * The ways in which the output of a writer can be compressed. Both
+ * compressed variants write gzip files with the blocks compressed on other
+ * threads by a {@link CompressingOutputStream}; the fast one spends less
+ * time per block and makes somewhat larger files.
+ */
+public enum Compression {
+
+    NONE("none", "", 0),
+    GZIP("gzip", ".gz", Deflater.DEFAULT_COMPRESSION),
+    FAST("fast gzip", ".gz", Deflater.BEST_SPEED);
+
+    private final String title;
+    private final String suffix;
+    private final int level;
+
+    private Compression(String title, String suffix, int level) {
+        this.title = title;
+        this.suffix = suffix;
+        this.level = level;
+    }
+
+    /**
+     * Returns what is appended to the file extension of the format, like
+     * <tt>.gz</tt>.
+     */
+    public String getSuffix() {
+        return suffix;
+    }
+
+    /**
+     * Returns a stream that compresses what is written to it into
+     * <tt>out</tt>, or <tt>out</tt> itself if there is no compression.
+     */
+    public OutputStream wrap(OutputStream out) {
+        return this == NONE ? out : new CompressingOutputStream(out, level);
+    }
+
+    /**
+     * Returns the compression with the given name or title, ignoring case,
+     * or <code>null</code> if there is none.
+     */
+    public static Compression forName(String name) {
+        for (Compression compression : values()) {
+            if (compression.name().equalsIgnoreCase(name)
+                    || compression.title.equalsIgnoreCase(name)) {
+                return compression;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return title;
+    }
+}
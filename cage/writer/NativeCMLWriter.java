@@ -22,13 +22,13 @@ public class NativeCMLWriter extends AbstractChemicalWriter {
     @Override
     public String encodeResult(CaGeResult result) {
         return new String(nEncodeGraph(
-                (NativeEmbeddableGraph) result.getGraph(), elementRule, dimension));
+                NativeEmbeddableGraph.valueOf(result.getGraph()), elementRule, dimension));
     }
 
     @Override
     public void outputResult(CaGeResult result) {
         out(nEncodeGraph(
-                (NativeEmbeddableGraph) result.getGraph(), elementRule, dimension));
+                NativeEmbeddableGraph.valueOf(result.getGraph()), elementRule, dimension));
     }
 }
 
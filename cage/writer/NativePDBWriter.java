@@ -26,7 +26,7 @@ public class NativePDBWriter extends AbstractChemicalWriter {
         byte[] encoding;
         lastException = null;
         try {
-            encoding = nEncodeGraph((NativeEmbeddableGraph) result.getGraph(),
+            encoding = nEncodeGraph(NativeEmbeddableGraph.valueOf(result.getGraph()),
                     elementRule, dimension);
         } catch (IOException ex) {
             lastException = ex;
@@ -40,7 +40,7 @@ public class NativePDBWriter extends AbstractChemicalWriter {
         byte[] encoding;
         lastException = null;
         try {
-            encoding = nEncodeGraph((NativeEmbeddableGraph) result.getGraph(),
+            encoding = nEncodeGraph(NativeEmbeddableGraph.valueOf(result.getGraph()),
                     elementRule, dimension);
             out(encoding);
         } catch (IOException ex) {
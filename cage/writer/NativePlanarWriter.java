@@ -29,7 +29,7 @@ public class NativePlanarWriter extends CaGeWriter {
 
     @Override
     public void outputResult(CaGeResult result) {
-        out(nEncodeGraph((NativeEmbeddableGraph) result.getGraph()));
+        out(nEncodeGraph(NativeEmbeddableGraph.valueOf(result.getGraph())));
     }
 }
 
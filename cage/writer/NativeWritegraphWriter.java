@@ -29,7 +29,7 @@ public class NativeWritegraphWriter extends CaGeWriter {
 
     @Override
     public void outputResult(CaGeResult result) {
-        out(nEncodeGraph((NativeEmbeddableGraph) result.getGraph(), dimension));
+        out(nEncodeGraph(NativeEmbeddableGraph.valueOf(result.getGraph()), dimension));
     }
 }
 
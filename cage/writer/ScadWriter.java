@@ -24,7 +24,9 @@ public class ScadWriter extends CaGeWriter {
 
     @Override
     public void outputResult(CaGeResult result) {
-        out(type.processResult(result));
+        ByteSink sink = sink();
+        type.processResult(result, sink);
+        out(sink);
     }
     
     public void setType(ScadType type){
@@ -1,7 +1,6 @@
 package cage.writer;
 
 import cage.CaGeResult;
-import cage.EdgeIterator;
 import cage.ElementRule;
 import cage.EmbeddableGraph;
 import cage.GeneratorInfo;
@@ -26,6 +25,8 @@ public class SpinputWriter extends CaGeWriter {
     private float scalingFactor = 1.0f; 
     
     private final Map<String, Integer> atomNumber = new HashMap<>();
+    
+    private final float[] coordinates = new float[3];
 
     public SpinputWriter() {
         //we only give the values for the elements currently used in CaGe
@@ -57,46 +58,46 @@ public class SpinputWriter extends CaGeWriter {
     @Override
     public void outputResult(CaGeResult result) {
         EmbeddableGraph graph = result.getGraph();
-        float[][] coordinate = graph.get3DCoordinates();
-        
-        StringBuilder sb = new StringBuilder("\n\n0 1\n");
+        ByteSink sink = sink();
+        sink.append("\n\n0 1\n");
         
-        for (int i = 0; i < graph.getSize(); i++) {
-            sb.append("\t").append(getElementNumber(graph, i+1));
+        for (int i = 1; i <= graph.getSize(); i++) {
+            graph.get3DCoordinates(i, coordinates);
+            sink.append('\t').append(getElementNumber(graph, i));
             for (int j = 0; j < 3; j++) {
-                sb.append("\t").append(coordinate[i][j]*scalingFactor);
+                sink.append('\t').append(coordinates[j]*scalingFactor);
             }
-            sb.append("\n");
+            sink.append('\n');
         }
-        sb.append("ENDCART\nATOMLABELS\n");
-        for (int i = 0; i < graph.getSize(); i++) {
-            sb.append('"').append(getElementName(graph, i+1));
-            sb.append(i+1).append('"').append("\n");
+        sink.append("ENDCART\nATOMLABELS\n");
+        for (int i = 1; i <= graph.getSize(); i++) {
+            sink.append('"').append(getElementName(graph, i));
+            sink.append(i).append('"').append('\n');
         }
-        sb.append("ENDATOMLABELS\nHESSIAN\n");
+        sink.append("ENDATOMLABELS\nHESSIAN\n");
         for (int i = 1; i <= graph.getSize(); i++) {
-            sb.append("\t0");
+            sink.append("\t0");
             if(i%12==0){
-                sb.append("\n");
+                sink.append('\n');
             }
         }
         if(graph.getSize()%12!=0){
-            sb.append("\n");
+            sink.append('\n');
         }
         
         for (int i = 1; i <= graph.getSize(); i++) {
-            EdgeIterator edgeIterator = graph.getEdgeIterator(i);
-            while(edgeIterator.hasNext()) {
-                int to = edgeIterator.nextEdge();
+            int valency = graph.getValency(i);
+            for (int j = 0; j < valency; j++) {
+                int to = graph.getNeighbour(i, j);
                 if(i < to){
-                    sb.append("\t").append(i).append("\t").append(to).append("\t1\n");
+                    sink.append('\t').append(i).append('\t').append(to).append("\t1\n");
                 }
             }
         }
         
-        sb.append("ENDHESS\n");
+        sink.append("ENDHESS\n");
         
-        out(sb.toString());
+        out(sink);
     }
     
     private String getElementName(EmbeddableGraph graph, int vertex){
@@ -1,6 +1,7 @@
 package cage.writer.scad;
 
 import cage.CaGeResult;
+import cage.writer.ByteSink;
 
 /**
  * Interface for the different types of SCAD outputs.
@@ -15,11 +16,11 @@ public interface ScadType {
     String getName();
     
     /**
-     * Process a graph and return the corresponding SCAD code.
+     * Process a graph and append the corresponding SCAD code to the sink.
      * @param result the graph that needs to be output
-     * @return the SCAD code as a single string
+     * @param sink the sink that receives the SCAD code
      */
-    String processResult(CaGeResult result);
+    void processResult(CaGeResult result, ByteSink sink);
     
     /**
      * Does this type require resolution setting.
@@ -6,7 +6,8 @@
 package cage.writer.scad;
 
 import cage.CaGeResult;
-import cage.EdgeIterator;
+import cage.EmbeddableGraph;
+import cage.writer.ByteSink;
 
 /**
  * Super class for all ScadTypes that are based on vertices and edges.
@@ -16,11 +17,11 @@ public abstract class VertexEdgeType implements ScadType {
     
     private int minAngle; //the minimum angle of a fragment
     private int minSize;  //the minimum size of a fragment times 100
+    private final float[] coordinates = new float[3];
 
     @Override
-    public String processResult(CaGeResult result) {
-        StringBuilder sb = new StringBuilder();
-        sb
+    public void processResult(CaGeResult result, ByteSink sink) {
+        sink
             .append("module vertex(p, $fa=").append(minAngle)
             .append(", $fs=").append(minSize*0.01).append(") {\n")
             .append("    translate(p) sphere(r=")
@@ -36,33 +37,35 @@ public abstract class VertexEdgeType implements ScadType {
             .append("}\n\n");
 
         
-        for (int i = 1; i <= result.getGraph().getSize(); i++) {
-            sb.append("v").append(i).append(" = [")
-                .append(result.getGraph().get3DCoordinates(i)[0]*10).append(", ")
-                .append(result.getGraph().get3DCoordinates(i)[1]*10).append(", ")
-                .append(result.getGraph().get3DCoordinates(i)[2]*10).append("];\n");
+        EmbeddableGraph graph = result.getGraph();
+        int size = graph.getSize();
+        for (int i = 1; i <= size; i++) {
+            graph.get3DCoordinates(i, coordinates);
+            sink.append("v").append(i).append(" = [")
+                .append(coordinates[0]*10).append(", ")
+                .append(coordinates[1]*10).append(", ")
+                .append(coordinates[2]*10).append("];\n");
         }
         
-        sb.append("\n");
+        sink.append("\n");
         
-        for (int i = 1; i <= result.getGraph().getSize(); i++) {
-            sb
+        for (int i = 1; i <= size; i++) {
+            sink
                 .append("vertex(v").append(i).append(");\n");
         }
         
-        sb.append("\n");
+        sink.append("\n");
         
-        for (int i = 1; i <= result.getGraph().getSize(); i++) {
-            EdgeIterator it = result.getGraph().getEdgeIterator(i);
-            while(it.hasNext()){
-                int n = it.nextEdge();
+        for (int i = 1; i <= size; i++) {
+            int valency = graph.getValency(i);
+            for (int j = 0; j < valency; j++) {
+                int n = graph.getNeighbour(i, j);
                 if(i < n){
-                    sb.append("edge(v").append(i).append(", v").append(n).append(");\n");
+                    sink.append("edge(v").append(i).append(", v").append(n).append(");\n");
                 }
             }
         }
         
-        return sb.toString();
     }
 
     @Override
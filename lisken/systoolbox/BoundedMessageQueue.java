@@ -0,0 +1,232 @@
+package lisken.systoolbox;
+
+import cage.utility.StackTrace;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A message queue with a fixed capacity, backed by a ring buffer. Unlike
+ * {@link MessageQueue}, {@link #put(Object)} blocks while the queue is full,
+ * so a fast producer is slowed down to the speed of its consumer instead of
+ * filling up the memory. Neither <code>put</code> nor {@link #get()} take a
+ * lock: a thread that has to wait parks itself and is woken up by the thread
+ * on the other side of the queue.
+ *
+ * Because <code>put</code> blocks, a thread must never put an entry on a
+ * full queue that only it consumes itself. Users of the queue have to choose
+ * a capacity that rules this out.
+ *
+ * Just like with <code>MessageQueue</code>, <code>null</code> is a valid
+ * entry.
+ *
+ * @see SPSCMessageQueue
+ * @see MPMCMessageQueue
+ */
+public abstract class BoundedMessageQueue {
+
+    /**
+     * Returned by {@link #poll()} when the queue is empty.
+     */
+    public static final Object EMPTY = new Object();
+
+    /**
+     * Stored in the ring buffer instead of <code>null</code> entries.
+     */
+    private static final Object NULL_ENTRY = new Object();
+
+    /**
+     * Upper bound for the time a waiting thread parks before checking the
+     * queue again, in case it missed a wake up call.
+     */
+    private static final long maxParkNanos = TimeUnit.MILLISECONDS.toNanos(10);
+
+    public volatile boolean debug;
+
+    private final int capacity;
+    private final ConcurrentLinkedQueue<Thread> waitingConsumers = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<Thread> waitingProducers = new ConcurrentLinkedQueue<>();
+
+    /**
+     * @param capacity The maximum number of entries in this queue. The ring
+     *        buffer is rounded up to a power of two, but the queue never
+     *        holds more than <tt>capacity</tt> entries.
+     * @param debug Flag to indicate whether puts should be traced.
+     */
+    protected BoundedMessageQueue(int capacity, boolean debug) {
+        this.debug = debug;
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+    }
+
+    /**
+     * Returns the smallest power of two that is not smaller than
+     * <tt>capacity</tt>.
+     */
+    protected static int ringSize(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity, 2));
+        return size < capacity ? size << 1 : size;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the number of entries in this queue. If other threads are
+     * using the queue, this is only an estimate.
+     */
+    public abstract int size();
+
+    /**
+     * Adds an entry to the ring buffer, if there is room for it.
+     *
+     * @param entry The entry to add, never <code>null</code>.
+     * @return <tt>false</tt> if the queue is full
+     */
+    protected abstract boolean insert(Object entry);
+
+    /**
+     * Removes the first entry from the ring buffer.
+     *
+     * @return The first entry or {@link #EMPTY} if there is none.
+     */
+    protected abstract Object remove();
+
+    /**
+     * Puts an entry on the queue if this is possible without waiting.
+     *
+     * @param entry The entry to put in the queue.
+     * @return <tt>false</tt> if the queue is full
+     */
+    public boolean offer(Object entry) {
+        if (!insert(entry == null ? NULL_ENTRY : entry)) {
+            return false;
+        }
+        wakeUp(waitingConsumers, 1);
+        return true;
+    }
+
+    /**
+     * Removes the first entry from the queue if there is one.
+     *
+     * @return The first entry or {@link #EMPTY} if the queue is empty.
+     */
+    public Object poll() {
+        Object entry = remove();
+        if (entry == EMPTY) {
+            return EMPTY;
+        }
+        wakeUp(waitingProducers, 1);
+        return entry == NULL_ENTRY ? null : entry;
+    }
+
+    /**
+     * Waits while the queue is full and then puts a new item on the queue.
+     * @param entry The entry to put in the queue.
+     */
+    @SuppressWarnings("CallToThreadDumpStack")
+    public void put(Object entry) {
+        if (debug) {
+            new StackTrace("put: " + entry).printStackTrace();
+        }
+        boolean interrupted = false;
+        while (!offer(entry)) {
+            park(waitingProducers, false);
+            interrupted |= Thread.interrupted();
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Waits until there is an item in the queue and returns its entry.
+     * @return The entry of the first item in the queue.
+     * @throws InterruptedException
+     */
+    public Object get() throws InterruptedException {
+        Object entry;
+        while ((entry = poll()) == EMPTY) {
+            park(waitingConsumers, true);
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Moves up to <tt>max</tt> entries from this queue to <tt>entries</tt>
+     * without waiting.
+     *
+     * @param entries The list to add the entries to.
+     * @param max The maximum number of entries to move.
+     * @return The number of entries moved.
+     */
+    public int drainTo(List<Object> entries, int max) {
+        int n = 0;
+        Object entry;
+        while (n < max && (entry = remove()) != EMPTY) {
+            entries.add(entry == NULL_ENTRY ? null : entry);
+            ++n;
+        }
+        if (n > 0) {
+            wakeUp(waitingProducers, n);
+        }
+        return n;
+    }
+
+    /**
+     * Waits until there is an item in the queue and then moves up to
+     * <tt>max</tt> entries from this queue to <tt>entries</tt>. This only
+     * wakes up waiting producers once for the whole batch.
+     *
+     * @param entries The list to add the entries to.
+     * @param max The maximum number of entries to move.
+     * @return The number of entries moved, at least 1.
+     * @throws InterruptedException
+     */
+    public int getAll(List<Object> entries, int max) throws InterruptedException {
+        int n;
+        while ((n = drainTo(entries, max)) == 0) {
+            park(waitingConsumers, true);
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+        return n;
+    }
+
+    /*
+     * Parks the current thread until it is woken up by the other side of the
+     * queue. The thread registers itself before checking the queue once more,
+     * so a wake up call can't get lost in between.
+     */
+    private void park(ConcurrentLinkedQueue<Thread> waiting, boolean forEntry) {
+        Thread current = Thread.currentThread();
+        waiting.add(current);
+        try {
+            if (forEntry ? size() == 0 : size() >= capacity) {
+                LockSupport.parkNanos(this, maxParkNanos);
+            }
+        } finally {
+            waiting.remove(current);
+        }
+    }
+
+    /*
+     * Wakes up as many waiting threads as there are new entries or free
+     * slots. A thread is taken off the waiting list when it is woken up, so
+     * the next call wakes up another one.
+     */
+    private static void wakeUp(ConcurrentLinkedQueue<Thread> waiting, int count) {
+        Thread thread;
+        while (count-- > 0 && (thread = waiting.poll()) != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+}
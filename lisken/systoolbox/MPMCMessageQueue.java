@@ -0,0 +1,88 @@
+package lisken.systoolbox;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A <code>BoundedMessageQueue</code> that can be used by any number of
+ * producers and consumers at the same time. Every slot of the ring buffer
+ * has a sequence number that tells whether it is ready to be written or to
+ * be read, so threads only compete for a position with a single
+ * compare-and-swap (after D. Vyukov's bounded MPMC queue).
+ */
+public class MPMCMessageQueue extends BoundedMessageQueue {
+
+    private final AtomicReferenceArray<Object> buffer;
+    private final AtomicLongArray sequence;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    public MPMCMessageQueue(int capacity) {
+        this(capacity, false);
+    }
+
+    public MPMCMessageQueue(int capacity, boolean debug) {
+        super(capacity, debug);
+        int size = ringSize(capacity);
+        buffer = new AtomicReferenceArray<>(size);
+        sequence = new AtomicLongArray(size);
+        mask = size - 1;
+        for (int i = 0; i < size; ++i) {
+            sequence.set(i, i);
+        }
+    }
+
+    @Override
+    protected boolean insert(Object entry) {
+        long t = tail.get();
+        while (true) {
+            if (t - head.get() >= capacity()) {
+                return false;
+            }
+            int index = (int) t & mask;
+            long difference = sequence.get(index) - t;
+            if (difference == 0) {
+                if (tail.compareAndSet(t, t + 1)) {
+                    buffer.lazySet(index, entry);
+                    sequence.set(index, t + 1);
+                    return true;
+                }
+                t = tail.get();
+            } else if (difference < 0) {
+                return false;
+            } else {
+                t = tail.get();
+            }
+        }
+    }
+
+    @Override
+    protected Object remove() {
+        long h = head.get();
+        while (true) {
+            int index = (int) h & mask;
+            long difference = sequence.get(index) - (h + 1);
+            if (difference == 0) {
+                if (head.compareAndSet(h, h + 1)) {
+                    Object entry = buffer.get(index);
+                    buffer.lazySet(index, null);
+                    sequence.set(index, h + mask + 1);
+                    return entry;
+                }
+                h = head.get();
+            } else if (difference < 0) {
+                return EMPTY;
+            } else {
+                h = head.get();
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        long h = head.get();
+        return (int) Math.max(tail.get() - h, 0);
+    }
+}
@@ -0,0 +1,228 @@
+package lisken.systoolbox;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A pipeline of external commands started without native code. This is the
+ * pure Java counterpart of {@link Pipe}: the commands are given in the same
+ * <code>String[][]</code> form, every command reads the output of its
+ * predecessor and the output of the last command can be read by this process.
+ *
+ * Just like the native implementation, commands are searched in the search
+ * path given by {@link #setPath(String)} (relative to the run directory) and
+ * are then refused when they contain a directory part.
+ */
+public class ProcessChain {
+
+    private final String[][] cmds;
+    private File runDir;
+    private String[] path;
+    private File inFile, errFile;
+    private Process[] processes;
+    private Thread[] pumps;
+
+    public ProcessChain(String[][] commands) {
+        cmds = commands;
+    }
+
+    public void setRunDir(String dir) {
+        runDir = dir == null || dir.length() == 0 ? null : new File(dir);
+    }
+
+    public void setPath(String p) {
+        path = p == null || p.length() == 0 ? null : p.split(File.pathSeparator);
+    }
+
+    public void setInFile(String filename) {
+        inFile = filename == null ? null : new File(filename);
+    }
+
+    public void setErrFile(String filename) {
+        errFile = filename == null ? null : new File(filename);
+    }
+
+    /**
+     * Starts all commands of this chain. The first command reads from the
+     * input file (if any), the standard error output of all commands is
+     * collected in the error file (if any, otherwise it is discarded).
+     *
+     * @throws IOException if one of the commands can't be started
+     */
+    public synchronized void start() throws IOException {
+        int n = cmds.length;
+        if (n == 0) {
+            throw new IOException("empty command pipe");
+        }
+        processes = new Process[n];
+        pumps = new Thread[n - 1];
+        if (errFile != null) {
+            // like creat(2) in the native pipe, start with an empty file
+            new FileOutputStream(errFile).close();
+        }
+        try {
+            for (int i = 0; i < n; ++i) {
+                ProcessBuilder builder = new ProcessBuilder(resolve(cmds[i]));
+                if (runDir != null) {
+                    builder.directory(runDir);
+                }
+                if (path != null) {
+                    builder.environment().put("PATH", Systoolbox.join(path, File.pathSeparator));
+                }
+                if (i == 0 && inFile != null) {
+                    builder.redirectInput(ProcessBuilder.Redirect.from(inFile));
+                }
+                builder.redirectError(errFile == null
+                        ? ProcessBuilder.Redirect.to(new File("/dev/null"))
+                        : ProcessBuilder.Redirect.appendTo(errFile));
+                processes[i] = builder.start();
+                if (i > 0) {
+                    pumps[i - 1] = new Pump(processes[i - 1].getInputStream(),
+                            processes[i].getOutputStream());
+                    pumps[i - 1].start();
+                } else if (inFile != null) {
+                    processes[i].getOutputStream().close();
+                }
+            }
+        } catch (IOException ex) {
+            destroy();
+            throw ex;
+        }
+    }
+
+    /**
+     * Returns the standard input of the first command, if it wasn't
+     * redirected from a file.
+     */
+    public OutputStream getOutputStream() {
+        return processes[0].getOutputStream();
+    }
+
+    /**
+     * Returns the standard output of the last command.
+     */
+    public InputStream getInputStream() {
+        return processes[processes.length - 1].getInputStream();
+    }
+
+    /**
+     * Returns the exit status of the last command, -2 if it is still running
+     * and -1 if the chain was never started.
+     */
+    public synchronized int checkForExit() {
+        if (processes == null) {
+            return -1;
+        }
+        try {
+            return processes[processes.length - 1].exitValue();
+        } catch (IllegalThreadStateException ex) {
+            return -2;
+        }
+    }
+
+    /**
+     * Waits for the last command to finish and returns its exit status,
+     * or -1 if the chain was never started.
+     */
+    public int waitForExit() {
+        Process last;
+        synchronized (this) {
+            if (processes == null) {
+                return -1;
+            }
+            last = processes[processes.length - 1];
+        }
+        try {
+            return last.waitFor();
+        } catch (InterruptedException ex) {
+            return -1;
+        }
+    }
+
+    /**
+     * Kills all commands of this chain.
+     */
+    public synchronized void destroy() {
+        if (processes == null) {
+            return;
+        }
+        for (Process process : processes) {
+            if (process != null) {
+                process.destroy();
+            }
+        }
+    }
+
+    private String[] resolve(String[] cmd) throws IOException {
+        if (path == null) {
+            return cmd;
+        }
+        String name = cmd[0];
+        if (name.indexOf('/') >= 0 || name.indexOf('\\') >= 0) {
+            throw new IOException("pipe restricted - won't run commands in other directories");
+        }
+        for (String dir : path) {
+            File file = new File(dir, name);
+            if (!file.isAbsolute() && runDir != null) {
+                file = new File(runDir, file.getPath());
+            }
+            if (file.isFile() && file.canExecute()) {
+                String[] result = Arrays.copyOf(cmd, cmd.length);
+                result[0] = file.getAbsolutePath();
+                return result;
+            }
+        }
+        throw new IOException("exec failure - possibly caused by restricted search path: " + name);
+    }
+
+    @Override
+    public String toString() {
+        List<String> names = new ArrayList<>();
+        for (String[] cmd : cmds) {
+            names.add(cmd.length > 0 ? cmd[0] : "");
+        }
+        return "ProcessChain" + names;
+    }
+
+    /**
+     * Copies the output of one command into the input of the next.
+     */
+    private static class Pump extends Thread {
+
+        private final InputStream in;
+        private final OutputStream out;
+
+        Pump(InputStream in, OutputStream out) {
+            super("ProcessChain pump");
+            setDaemon(true);
+            this.in = in;
+            this.out = out;
+        }
+
+        @Override
+        public void run() {
+            byte[] buffer = new byte[8192];
+            int n;
+            try {
+                while ((n = in.read(buffer)) >= 0) {
+                    out.write(buffer, 0, n);
+                }
+            } catch (IOException ex) {
+            }
+            try {
+                out.close();
+            } catch (IOException ex) {
+            }
+            try {
+                in.close();
+            } catch (IOException ex) {
+            }
+        }
+    }
+}
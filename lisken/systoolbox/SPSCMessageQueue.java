@@ -0,0 +1,67 @@
+package lisken.systoolbox;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A <code>BoundedMessageQueue</code> for one producer and one consumer. Each
+ * side only writes its own position in the ring buffer, so no
+ * compare-and-swap is needed at all.
+ *
+ * Several threads may put entries on this queue as long as they never do
+ * so at the same time, e.g. because they hold a common lock. The same goes
+ * for taking entries from it.
+ */
+public class SPSCMessageQueue extends BoundedMessageQueue {
+
+    private final Object[] buffer;
+    private final int mask;
+    //position of the next entry to remove, only written by the consumer
+    private final AtomicLong head = new AtomicLong();
+    //position of the next entry to insert, only written by the producer
+    private final AtomicLong tail = new AtomicLong();
+    //the last value of head seen by the producer
+    private long cachedHead = 0;
+
+    public SPSCMessageQueue(int capacity) {
+        this(capacity, false);
+    }
+
+    public SPSCMessageQueue(int capacity, boolean debug) {
+        super(capacity, debug);
+        buffer = new Object[ringSize(capacity)];
+        mask = buffer.length - 1;
+    }
+
+    @Override
+    protected boolean insert(Object entry) {
+        long t = tail.get();
+        if (t - cachedHead >= capacity()) {
+            cachedHead = head.get();
+            if (t - cachedHead >= capacity()) {
+                return false;
+            }
+        }
+        buffer[(int) t & mask] = entry;
+        tail.set(t + 1);
+        return true;
+    }
+
+    @Override
+    protected Object remove() {
+        long h = head.get();
+        if (h == tail.get()) {
+            return EMPTY;
+        }
+        int index = (int) h & mask;
+        Object entry = buffer[index];
+        buffer[index] = null;
+        head.set(h + 1);
+        return entry;
+    }
+
+    @Override
+    public int size() {
+        long h = head.get();
+        return (int) Math.max(tail.get() - h, 0);
+    }
+}